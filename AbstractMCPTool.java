@@ -1,5 +1,7 @@
 package mcpTools;
 
+import java.util.Map;
+
 /**
  * Abstract base class for MCP tool implementations
  */
@@ -23,68 +25,61 @@ public abstract class AbstractMCPTool implements MCPTool {
     }
 
     /**
-     * Logs the execution of a tool with its parameters
-     */
-    protected void logExecution(Map<String, Object> params) {
-        System.out.println("Executing tool: " + getName());
-        System.out.println("Parameters:");
-        for (Map.Entry<String, Object> entry : params.entrySet()) {
-            System.out.println("  " + entry.getKey() + ": " + entry.getValue());
-        }
-    }
-}
-
-/**
- * Abstract base class for KV store tools
- */
-public abstract class KVStoreTool extends AbstractMCPTool {
-    protected KVStoreTool(String name, String description) {
-        super(name, description);
-    }
-
-    /**
-     * Gets a KV namespace ID from parameters
+     * Returns how the tool takes part in caching, or null if it does not. A
+     * tool opts in by overriding this, much as the tools of
+     * {@link ToolRunner} are registered with a {@link ToolResultCache.Policy}.
      */
-    protected String getNamespaceId(Map<String, Object> params) {
-        return (String) params.get("namespaceId");
+    protected ToolResultCache.Policy cachePolicy() {
+        return null;
     }
 
     /**
-     * Gets a key from parameters
+     * Executes the tool through the shared {@link ToolResultCache} as declared
+     * by {@link #cachePolicy()}. Only successful results are cached.
      */
-    protected String getKey(Map<String, Object> params) {
-        return (String) params.get("key");
+    public final ToolResult executeCached(Map<String, Object> params) throws ToolExecutionException {
+        return executeCached(params, ToolResultCache.shared());
     }
-}
 
-/**
- * Abstract base class for R2 bucket tools
- */
-public abstract class R2BucketTool extends AbstractMCPTool {
-    protected R2BucketTool(String name, String description) {
-        super(name, description);
+    final ToolResult executeCached(Map<String, Object> params, ToolResultCache cache)
+            throws ToolExecutionException {
+        try {
+            return cache.compute(getName(), params, cachePolicy(), () -> {
+                try {
+                    return execute(params);
+                } catch (ToolExecutionException e) {
+                    throw new Failure(e);
+                }
+            }, ToolResult::isSuccess);
+        } catch (Failure e) {
+            throw e.getCause();
+        }
     }
 
     /**
-     * Gets a bucket name from parameters
+     * Carries a {@link ToolExecutionException} out of a cached call
      */
-    protected String getBucketName(Map<String, Object> params) {
-        return (String) params.get("bucket");
-    }
-}
+    private static final class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
 
-/**
- * Abstract base class for Claude AI tools
- */
-public abstract class ClaudeTool extends AbstractMCPTool {
-    protected ClaudeTool(String name, String description) {
-        super(name, description);
+        Failure(ToolExecutionException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized ToolExecutionException getCause() {
+            return (ToolExecutionException) super.getCause();
+        }
     }
 
     /**
-     * Gets the model name from parameters
+     * Logs the execution of a tool with its parameters
      */
-    protected String getModel(Map<String, Object> params) {
-        return (String) params.getOrDefault("model", "claude-3-sonnet-20240229");
+    protected void logExecution(Map<String, Object> params) {
+        System.out.println("Executing tool: " + getName());
+        System.out.println("Parameters:");
+        for (Map.Entry<String, Object> entry : params.entrySet()) {
+            System.out.println("  " + entry.getKey() + ": " + entry.getValue());
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,806 @@
+package mcpTools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Columnar in-memory time-series store behind the analytics_get tool.
+ *
+ * Tool-call events are appended to an open chunk of primitive arrays. Full
+ * chunks are sealed into compressed columns: delta-of-delta timestamps,
+ * bit-packed dictionary codes for tool names, Gorilla XOR-encoded durations
+ * and a success bitmap. Queries decode the overlapping chunks into reusable
+ * primitive arrays and aggregate with tight loops indexed by dictionary code.
+ * Duration percentiles come from a log-bucketed histogram filled during the
+ * scan, accurate to about 3%, so no samples are copied or sorted.
+ * Per-minute and per-hour rollups are maintained on ingest.
+ *
+ * Each zone keeps raw events, minute buckets and hour buckets for its own
+ * retention period, measured back from the newest event recorded.
+ *
+ * The store lives in memory. Processes that handle one call and exit, such
+ * as the CLI runners, pass an event log: every call is appended to it, and
+ * each query first loads the events that this and other processes appended
+ * since the previous query, so analytics_get sees the calls of earlier
+ * processes while recording a call never reads the log.
+ *
+ * The log is split into hourly segments, files named after the given path
+ * with the epoch hour of their events appended. Segments are only ever
+ * appended to, never rewritten, so processes sharing the log cannot lose
+ * each other's events. A segment is deleted once all of its events are past
+ * the raw retention; writers append to the segment of the hour they record,
+ * so by then none is writing to it.
+ */
+public class AnalyticsStore implements AutoCloseable {
+
+    public static final long MINUTE = 60_000L;
+    public static final long HOUR = 60 * MINUTE;
+    public static final long DAY = 24 * HOUR;
+
+    private static final int CHUNK_ROWS = 4096;
+    private static final long SEGMENT_MILLIS = HOUR;
+
+    /**
+     * How long each resolution is kept
+     */
+    public record Retention(long rawMillis, long minuteMillis, long hourMillis) {
+
+        public static final Retention DEFAULT = new Retention(7 * DAY, 2 * DAY, 90 * DAY);
+    }
+
+    /**
+     * Aggregates for one tool over a time range
+     */
+    public record ToolStats(String tool, long count, long errors, double sumMillis,
+            double minMillis, double maxMillis, double p50, double p90, double p99) {
+
+        public double meanMillis() {
+            return count == 0 ? 0 : sumMillis / count;
+        }
+    }
+
+    /**
+     * Pre-aggregated counts and durations for one tool in one time bucket
+     */
+    public record RollupPoint(long bucketStart, String tool, long count, long errors,
+            double sumMillis, double maxMillis) {
+    }
+
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+    private final Retention retention;
+    private final Path log;
+
+    // Segment appended to by this store, and the hour it holds
+    private final Object appendLock = new Object();
+    private FileChannel segment;
+    private long segmentHour;
+
+    // Bytes of each segment loaded so far, and the newest event loaded
+    private final Object loadLock = new Object();
+    private final Map<Path, Long> loadedBytes = new HashMap<>();
+    private long newest = Long.MIN_VALUE;
+
+    public AnalyticsStore() {
+        this(Retention.DEFAULT);
+    }
+
+    public AnalyticsStore(Retention retention) {
+        this.retention = retention;
+        this.log = null;
+    }
+
+    /**
+     * Opens a store backed by an event log. The events already in it are
+     * loaded by the first query.
+     */
+    public AnalyticsStore(Path logFile, Retention retention) throws IOException {
+        this.retention = retention;
+        this.log = logFile.toAbsolutePath();
+        Files.createDirectories(log.getParent());
+    }
+
+    /**
+     * Records a single tool call. With an event log it is only appended to
+     * the log, and the next query loads it from there like the calls of
+     * other processes.
+     */
+    public void record(String zoneId, String tool, long timestampMillis, double durationMillis, boolean success) {
+        if (log == null) {
+            append(zoneId, tool, timestampMillis, durationMillis, success);
+            return;
+        }
+        // One write per event: appends of a short line are not interleaved
+        // with those of other processes sharing the log
+        String line = zoneId + '\t' + tool + '\t' + timestampMillis + '\t' + durationMillis + '\t'
+                + (success ? '1' : '0') + '\n';
+        long hour = Math.floorDiv(timestampMillis, SEGMENT_MILLIS);
+        synchronized (appendLock) {
+            try {
+                if (segment == null || segmentHour != hour) {
+                    if (segment != null) {
+                        segment.close();
+                        segment = null;
+                    }
+                    segment = FileChannel.open(segmentPath(hour), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    segmentHour = hour;
+                }
+                segment.write(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not append to the analytics log", e);
+            }
+        }
+    }
+
+    private void append(String zoneId, String tool, long timestampMillis, double durationMillis, boolean success) {
+        series.computeIfAbsent(zoneId, id -> new Series(retention))
+                .append(tool, timestampMillis, durationMillis, success);
+    }
+
+    private Path segmentPath(long hour) {
+        return log.resolveSibling(log.getFileName() + "." + hour);
+    }
+
+    /**
+     * Loads the events appended to the log since the previous call, by this
+     * store or any other, then deletes the segments past the raw retention
+     */
+    private void load() {
+        if (log == null) {
+            return;
+        }
+        synchronized (loadLock) {
+            try {
+                loadSegments();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read the analytics log", e);
+            }
+        }
+    }
+
+    private void loadSegments() throws IOException {
+        String prefix = log.getFileName() + ".";
+        Map<Long, Path> segments = new TreeMap<>();
+        try (Stream<Path> files = Files.list(log.getParent())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(prefix)) {
+                    continue;
+                }
+                String hour = name.substring(prefix.length());
+                if (!hour.isEmpty() && hour.chars().allMatch(Character::isDigit)) {
+                    segments.put(Long.parseLong(hour), file);
+                }
+            }
+        }
+        loadedBytes.keySet().retainAll(segments.values());
+
+        List<String[]> events = new ArrayList<>();
+        for (Path file : segments.values()) {
+            long loaded = loadedBytes.getOrDefault(file, 0L);
+            byte[] bytes;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // Up to the size seen now; later appends wait for the next load
+                ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(Math.max(0, channel.size() - loaded)));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, loaded + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                bytes = Arrays.copyOf(buffer.array(), buffer.position());
+            } catch (NoSuchFileException e) {
+                // Deleted as expired by another process
+                continue;
+            }
+            // A line still being written is loaded once it is complete
+            int end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') {
+                end--;
+            }
+            loadedBytes.put(file, loaded + end);
+            for (String line : new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n")) {
+                String[] fields = line.split("\t");
+                if (fields.length != 5) {
+                    continue;
+                }
+                try {
+                    newest = Math.max(newest, Long.parseLong(fields[2]));
+                    Double.parseDouble(fields[3]);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                events.add(fields);
+            }
+        }
+
+        long cutoff = newest - retention.rawMillis();
+        for (String[] fields : events) {
+            long timestamp = Long.parseLong(fields[2]);
+            if (timestamp >= cutoff) {
+                append(fields[0], fields[1], timestamp, Double.parseDouble(fields[3]), "1".equals(fields[4]));
+            }
+        }
+        for (Map.Entry<Long, Path> entry : segments.entrySet()) {
+            if ((entry.getKey() + 1) * SEGMENT_MILLIS <= cutoff) {
+                Files.deleteIfExists(entry.getValue());
+                loadedBytes.remove(entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            if (segment != null) {
+                segment.close();
+                segment = null;
+            }
+        }
+    }
+
+    /**
+     * Groups the calls in [since, until) by tool, with duration percentiles
+     */
+    public List<ToolStats> groupByTool(String zoneId, long since, long until) {
+        load();
+        Series s = series.get(zoneId);
+        return s == null ? List.of() : s.groupByTool(since, until);
+    }
+
+    /**
+     * Returns the pre-aggregated rollup at {@link #MINUTE} or {@link #HOUR}
+     * resolution for buckets starting in [since, until)
+     */
+    public List<RollupPoint> rollup(String zoneId, long resolution, long since, long until) {
+        load();
+        Series s = series.get(zoneId);
+        return s == null ? List.of() : s.rollup(resolution, since, until);
+    }
+
+    /**
+     * Number of compressed bytes held for a zone, excluding the open chunk
+     */
+    public long compressedBytes(String zoneId) {
+        load();
+        Series s = series.get(zoneId);
+        return s == null ? 0 : s.compressedBytes();
+    }
+
+    /**
+     * All events for one zone. Writers synchronise on the series; readers take
+     * a snapshot of the sealed chunk list and copy the open chunk.
+     */
+    private static final class Series {
+        private final Retention retention;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        private volatile List<Chunk> sealed = List.of();
+        private long[] timestamps = new long[CHUNK_ROWS];
+        private int[] codes = new int[CHUNK_ROWS];
+        private double[] durations = new double[CHUNK_ROWS];
+        private final long[] failures = new long[CHUNK_ROWS / 64];
+        private int rows;
+
+        private final Rollup minutes;
+        private final Rollup hours;
+
+        Series(Retention retention) {
+            this.retention = retention;
+            this.minutes = new Rollup(MINUTE, retention.minuteMillis());
+            this.hours = new Rollup(HOUR, retention.hourMillis());
+        }
+
+        synchronized void append(String tool, long timestamp, double duration, boolean success) {
+            int code = dictionary.computeIfAbsent(tool, name -> {
+                names.add(name);
+                return names.size() - 1;
+            });
+
+            timestamps[rows] = timestamp;
+            codes[rows] = code;
+            durations[rows] = duration;
+            if (!success) {
+                failures[rows >>> 6] |= 1L << rows;
+            }
+            rows++;
+
+            minutes.add(timestamp, code, duration, success);
+            hours.add(timestamp, code, duration, success);
+
+            if (rows == CHUNK_ROWS) {
+                long cutoff = timestamp - retention.rawMillis();
+                List<Chunk> next = new ArrayList<>(sealed.size() + 1);
+                for (Chunk chunk : sealed) {
+                    if (chunk.maxTimestamp >= cutoff) {
+                        next.add(chunk);
+                    }
+                }
+                next.add(Chunk.seal(timestamps, codes, durations, failures, rows));
+                sealed = Collections.unmodifiableList(next);
+                Arrays.fill(failures, 0L);
+                rows = 0;
+            }
+        }
+
+        List<ToolStats> groupByTool(long since, long until) {
+            List<Chunk> chunks;
+            Columns open = new Columns(CHUNK_ROWS);
+            String[] dictionarySnapshot;
+            synchronized (this) {
+                chunks = sealed;
+                System.arraycopy(timestamps, 0, open.timestamps, 0, rows);
+                System.arraycopy(codes, 0, open.codes, 0, rows);
+                System.arraycopy(durations, 0, open.durations, 0, rows);
+                System.arraycopy(failures, 0, open.failures, 0, failures.length);
+                open.rows = rows;
+                dictionarySnapshot = names.toArray(String[]::new);
+            }
+
+            int tools = dictionarySnapshot.length;
+            long[] counts = new long[tools];
+            long[] errors = new long[tools];
+            double[] sums = new double[tools];
+            double[] mins = new double[tools];
+            double[] maxs = new double[tools];
+            Arrays.fill(mins, Double.POSITIVE_INFINITY);
+            Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+            int[][] histograms = new int[tools][];
+
+            Columns scratch = new Columns(CHUNK_ROWS);
+            for (Chunk chunk : chunks) {
+                if (chunk.maxTimestamp < since || chunk.minTimestamp >= until) {
+                    continue;
+                }
+                chunk.decodeInto(scratch);
+                scan(scratch, since, until, counts, errors, sums, mins, maxs, histograms);
+            }
+            scan(open, since, until, counts, errors, sums, mins, maxs, histograms);
+
+            List<ToolStats> result = new ArrayList<>();
+            for (int code = 0; code < tools; code++) {
+                if (counts[code] == 0) {
+                    continue;
+                }
+                int[] histogram = histograms[code];
+                long count = counts[code];
+                double min = mins[code];
+                double max = maxs[code];
+                result.add(new ToolStats(dictionarySnapshot[code], count, errors[code], sums[code], min, max,
+                        Histogram.percentile(histogram, count, 0.50, min, max),
+                        Histogram.percentile(histogram, count, 0.90, min, max),
+                        Histogram.percentile(histogram, count, 0.99, min, max)));
+            }
+            return result;
+        }
+
+        private static void scan(Columns columns, long since, long until, long[] counts, long[] errors,
+                double[] sums, double[] mins, double[] maxs, int[][] histograms) {
+            long[] ts = columns.timestamps;
+            int[] cs = columns.codes;
+            double[] ds = columns.durations;
+            long[] fs = columns.failures;
+            for (int i = 0; i < columns.rows; i++) {
+                long t = ts[i];
+                if (t < since || t >= until) {
+                    continue;
+                }
+                int code = cs[i];
+                double d = ds[i];
+                counts[code]++;
+                errors[code] += (fs[i >>> 6] >>> i) & 1L;
+                sums[code] += d;
+                mins[code] = Math.min(mins[code], d);
+                maxs[code] = Math.max(maxs[code], d);
+                if (histograms[code] == null) {
+                    histograms[code] = new int[Histogram.BUCKETS];
+                }
+                histograms[code][Histogram.bucket(d)]++;
+            }
+        }
+
+        List<RollupPoint> rollup(long resolution, long since, long until) {
+            Rollup source;
+            if (resolution == MINUTE) {
+                source = minutes;
+            } else if (resolution == HOUR) {
+                source = hours;
+            } else {
+                throw new IllegalArgumentException("Unsupported rollup resolution: " + resolution);
+            }
+            String[] dictionarySnapshot;
+            synchronized (this) {
+                dictionarySnapshot = names.toArray(String[]::new);
+            }
+            return source.points(since, until, dictionarySnapshot);
+        }
+
+        long compressedBytes() {
+            long total = 0;
+            for (Chunk chunk : sealed) {
+                total += chunk.sizeInBytes();
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Decoded column arrays for one chunk
+     */
+    private static final class Columns {
+        final long[] timestamps;
+        final int[] codes;
+        final double[] durations;
+        final long[] failures;
+        int rows;
+
+        Columns(int capacity) {
+            timestamps = new long[capacity];
+            codes = new int[capacity];
+            durations = new double[capacity];
+            failures = new long[(capacity + 63) / 64];
+        }
+    }
+
+    /**
+     * A sealed, immutable chunk of compressed columns
+     */
+    private static final class Chunk {
+        final long minTimestamp;
+        final long maxTimestamp;
+        final int rows;
+        final int codeWidth;
+        final long[] timestampBits;
+        final long[] codeBits;
+        final long[] durationBits;
+        final long[] failures;
+
+        private Chunk(long minTimestamp, long maxTimestamp, int rows, int codeWidth,
+                long[] timestampBits, long[] codeBits, long[] durationBits, long[] failures) {
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.rows = rows;
+            this.codeWidth = codeWidth;
+            this.timestampBits = timestampBits;
+            this.codeBits = codeBits;
+            this.durationBits = durationBits;
+            this.failures = failures;
+        }
+
+        static Chunk seal(long[] timestamps, int[] codes, double[] durations, long[] failures, int rows) {
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            int maxCode = 0;
+            for (int i = 0; i < rows; i++) {
+                min = Math.min(min, timestamps[i]);
+                max = Math.max(max, timestamps[i]);
+                maxCode = Math.max(maxCode, codes[i]);
+            }
+
+            BitWriter ts = new BitWriter();
+            long previous = 0;
+            long previousDelta = 0;
+            for (int i = 0; i < rows; i++) {
+                if (i == 0) {
+                    ts.write(timestamps[0], 64);
+                } else {
+                    long delta = timestamps[i] - previous;
+                    writeDeltaOfDelta(ts, delta - previousDelta);
+                    previousDelta = delta;
+                }
+                previous = timestamps[i];
+            }
+
+            int width = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxCode));
+            BitWriter cs = new BitWriter();
+            for (int i = 0; i < rows; i++) {
+                cs.write(codes[i], width);
+            }
+
+            BitWriter ds = new BitWriter();
+            writeGorilla(ds, durations, rows);
+
+            return new Chunk(min, max, rows, width, ts.toArray(), cs.toArray(), ds.toArray(),
+                    Arrays.copyOf(failures, (rows + 63) / 64));
+        }
+
+        void decodeInto(Columns out) {
+            BitReader ts = new BitReader(timestampBits);
+            long previous = 0;
+            long delta = 0;
+            for (int i = 0; i < rows; i++) {
+                if (i == 0) {
+                    previous = ts.read(64);
+                } else {
+                    delta += readDeltaOfDelta(ts);
+                    previous += delta;
+                }
+                out.timestamps[i] = previous;
+            }
+
+            BitReader cs = new BitReader(codeBits);
+            for (int i = 0; i < rows; i++) {
+                out.codes[i] = (int) cs.read(codeWidth);
+            }
+
+            readGorilla(new BitReader(durationBits), out.durations, rows);
+            Arrays.fill(out.failures, 0L);
+            System.arraycopy(failures, 0, out.failures, 0, failures.length);
+            out.rows = rows;
+        }
+
+        long sizeInBytes() {
+            return 8L * (timestampBits.length + codeBits.length + durationBits.length + failures.length) + 64;
+        }
+
+        private static void writeDeltaOfDelta(BitWriter out, long dod) {
+            if (dod == 0) {
+                out.write(0b0, 1);
+            } else if (dod >= -63 && dod <= 64) {
+                out.write(0b10, 2);
+                out.write(dod + 63, 7);
+            } else if (dod >= -255 && dod <= 256) {
+                out.write(0b110, 3);
+                out.write(dod + 255, 9);
+            } else if (dod >= -2047 && dod <= 2048) {
+                out.write(0b1110, 4);
+                out.write(dod + 2047, 12);
+            } else {
+                out.write(0b1111, 4);
+                out.write(dod, 64);
+            }
+        }
+
+        private static long readDeltaOfDelta(BitReader in) {
+            if (in.read(1) == 0) {
+                return 0;
+            }
+            if (in.read(1) == 0) {
+                return in.read(7) - 63;
+            }
+            if (in.read(1) == 0) {
+                return in.read(9) - 255;
+            }
+            if (in.read(1) == 0) {
+                return in.read(12) - 2047;
+            }
+            return in.read(64);
+        }
+
+        private static void writeGorilla(BitWriter out, double[] values, int rows) {
+            long previous = 0;
+            int previousLeading = Integer.MAX_VALUE;
+            int previousTrailing = 0;
+            for (int i = 0; i < rows; i++) {
+                long bits = Double.doubleToRawLongBits(values[i]);
+                if (i == 0) {
+                    out.write(bits, 64);
+                    previous = bits;
+                    continue;
+                }
+                long xor = bits ^ previous;
+                previous = bits;
+                if (xor == 0) {
+                    out.write(0b0, 1);
+                    continue;
+                }
+                int leading = Math.min(31, Long.numberOfLeadingZeros(xor));
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (leading >= previousLeading && trailing >= previousTrailing) {
+                    out.write(0b10, 2);
+                    out.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int meaningful = 64 - leading - trailing;
+                    out.write(0b11, 2);
+                    out.write(leading, 5);
+                    out.write(meaningful - 1, 6);
+                    out.write(xor >>> trailing, meaningful);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+        }
+
+        private static void readGorilla(BitReader in, double[] out, int rows) {
+            long previous = 0;
+            int leading = 0;
+            int trailing = 0;
+            for (int i = 0; i < rows; i++) {
+                if (i == 0) {
+                    previous = in.read(64);
+                } else if (in.read(1) != 0) {
+                    if (in.read(1) != 0) {
+                        leading = (int) in.read(5);
+                        int meaningful = (int) in.read(6) + 1;
+                        trailing = 64 - leading - meaningful;
+                    }
+                    previous ^= in.read(64 - leading - trailing) << trailing;
+                }
+                out[i] = Double.longBitsToDouble(previous);
+            }
+        }
+    }
+
+    /**
+     * Time-bucketed aggregates keyed by bucket start, one slot per tool code
+     */
+    private static final class Rollup {
+        private final long resolution;
+        private final long retention;
+        private final NavigableMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+
+        private static final class Bucket {
+            long[] counts = new long[8];
+            long[] errors = new long[8];
+            double[] sums = new double[8];
+            double[] maxs = new double[8];
+
+            synchronized void add(int code, double duration, boolean success) {
+                if (code >= counts.length) {
+                    int size = Math.max(code + 1, counts.length * 2);
+                    counts = Arrays.copyOf(counts, size);
+                    errors = Arrays.copyOf(errors, size);
+                    sums = Arrays.copyOf(sums, size);
+                    maxs = Arrays.copyOf(maxs, size);
+                }
+                counts[code]++;
+                if (!success) {
+                    errors[code]++;
+                }
+                sums[code] += duration;
+                maxs[code] = Math.max(maxs[code], duration);
+            }
+        }
+
+        Rollup(long resolution, long retention) {
+            this.resolution = resolution;
+            this.retention = retention;
+        }
+
+        void add(long timestamp, int code, double duration, boolean success) {
+            long start = Math.floorDiv(timestamp, resolution) * resolution;
+            Bucket bucket = buckets.get(start);
+            if (bucket == null) {
+                // Expire old buckets whenever a new one opens
+                bucket = buckets.computeIfAbsent(start, key -> new Bucket());
+                buckets.headMap(start - retention, false).clear();
+            }
+            bucket.add(code, duration, success);
+        }
+
+
+        List<RollupPoint> points(long since, long until, String[] names) {
+            List<RollupPoint> points = new ArrayList<>();
+            for (Map.Entry<Long, Bucket> entry : buckets.subMap(since, true, until, false).entrySet()) {
+                Bucket bucket = entry.getValue();
+                synchronized (bucket) {
+                    for (int code = 0; code < bucket.counts.length && code < names.length; code++) {
+                        if (bucket.counts[code] > 0) {
+                            points.add(new RollupPoint(entry.getKey(), names[code], bucket.counts[code],
+                                    bucket.errors[code], bucket.sums[code], bucket.maxs[code]));
+                        }
+                    }
+                }
+            }
+            return points;
+        }
+    }
+
+    /**
+     * Log-bucketed duration histogram. A bucket is the exponent and the top
+     * {@value #SUB_BITS} mantissa bits of the duration in milliseconds, which
+     * bounds the relative error by 1/32 over durations from about a
+     * microsecond to about a month.
+     */
+    private static final class Histogram {
+        private static final int SUB_BITS = 5;
+        private static final int SHIFT = 52 - SUB_BITS;
+        private static final long LOWEST = Double.doubleToRawLongBits(0x1p-10) >>> SHIFT;
+        private static final long HIGHEST = Double.doubleToRawLongBits(0x1p32) >>> SHIFT;
+        static final int BUCKETS = (int) (HIGHEST - LOWEST) + 1;
+
+        static int bucket(double millis) {
+            long key = Double.doubleToRawLongBits(Math.max(millis, 0x1p-10)) >>> SHIFT;
+            return (int) (Math.min(key, HIGHEST) - LOWEST);
+        }
+
+        /**
+         * Returns the upper bound of the bucket holding the given quantile,
+         * clamped to the exact minimum and maximum
+         */
+        static double percentile(int[] histogram, long count, double quantile, double min, double max) {
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank) {
+                    double upper = Double.longBitsToDouble((i + LOWEST + 1) << SHIFT);
+                    return Math.max(min, Math.min(max, upper));
+                }
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Appends values of up to 64 bits into a packed long array
+     */
+    private static final class BitWriter {
+        private long[] words = new long[64];
+        private long position;
+
+        void write(long value, int bits) {
+            if (bits == 0) {
+                return;
+            }
+            if (bits < 64) {
+                value &= (1L << bits) - 1;
+            }
+            int word = (int) (position >>> 6);
+            int offset = (int) (position & 63);
+            if (word + 1 >= words.length) {
+                words = Arrays.copyOf(words, words.length * 2);
+            }
+            int free = 64 - offset;
+            if (bits <= free) {
+                words[word] |= value << (free - bits);
+            } else {
+                words[word] |= value >>> (bits - free);
+                words[word + 1] |= value << (64 - (bits - free));
+            }
+            position += bits;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(words, (int) ((position + 63) >>> 6));
+        }
+    }
+
+    /**
+     * Reads values written by {@link BitWriter}
+     */
+    private static final class BitReader {
+        private final long[] words;
+        private long position;
+
+        BitReader(long[] words) {
+            this.words = words;
+        }
+
+        long read(int bits) {
+            if (bits == 0) {
+                return 0;
+            }
+            int word = (int) (position >>> 6);
+            int offset = (int) (position & 63);
+            int free = 64 - offset;
+            long value;
+            if (bits <= free) {
+                value = words[word] >>> (free - bits);
+            } else {
+                value = (words[word] << (bits - free)) | (words[word + 1] >>> (64 - (bits - free)));
+            }
+            position += bits;
+            return bits == 64 ? value : value & ((1L << bits) - 1);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package mcpTools;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Training workload for the class-data-sharing archive used by the launchers.
+ *
+ * Runs every tool registered in {@link ToolRunner} and {@link ToolRunnerOOP}
+ * with representative arguments, in an order where each read follows the
+ * write it depends on, so that every class a real invocation loads ends up in
+ * the archive written by {@code -XX:ArchiveClassesAtExit}.
+ *
+ * Usage:
+ * java -XX:ArchiveClassesAtExit=mcp-tools.jsa mcpTools.CdsTraining
+ */
+public class CdsTraining {
+
+    /**
+     * Calls in workflow order: each resource is created before it is read and
+     * deleted only after its reads, so every call takes its main code path
+     * rather than a usage or not-found branch
+     */
+    private static final List<String[]> TRAINING_CALLS = List.of(
+            new String[] { "kv_put", "training", "key", "{\"value\":1}", "60" },
+            new String[] { "kv_get", "training", "key" },
+            new String[] { "kv_list", "training", "k", "10" },
+            new String[] { "get_kvs" },
+            new String[] { "kv_compression_stats", "training" },
+            new String[] { "kv_delete", "training", "key" },
+
+            new String[] { "r2_create_bucket", "training" },
+            new String[] { "r2_put_object", "training", "key", "{\"value\":1}", "application/json" },
+            new String[] { "r2_get_object", "training", "key" },
+            new String[] { "r2_list_objects", "training", "", "/", "10" },
+            new String[] { "r2_list_buckets" },
+            new String[] { "r2_delete_object", "training", "key" },
+            new String[] { "r2_delete_bucket", "training" },
+
+            new String[] { "d1_create_database", "training" },
+            new String[] { "d1_list_databases" },
+            new String[] { "d1_query", "training", "SELECT 1", "[]" },
+            new String[] { "d1_delete_database", "training" },
+
+            new String[] { "worker_put", "training", "'hello ' + input", "[]" },
+            new String[] { "worker_get", "training" },
+            new String[] { "worker_list" },
+            new String[] { "worker_invoke", "training", "world" },
+            new String[] { "worker_delete", "training" },
+
+            new String[] { "memory_store", "key", "{\"value\":1}", "training", "60" },
+            new String[] { "memory_retrieve", "key", "training" },
+            new String[] { "memory_search", "value", "training", "10" },
+            new String[] { "memory_stats", "training" },
+
+            new String[] { "sequential_thinking", "training", "a;b:a;c:a;d:b,c", "context" },
+            new String[] { "context_manager", "create", "training" },
+            new String[] { "context_manager", "append", "training", "Training segment." },
+            new String[] { "context_manager", "get", "training" },
+            new String[] { "context_manager", "stats", "training" },
+            new String[] { "context_manager", "delete", "training" },
+
+            new String[] { "claude_completion", "Training prompt" },
+            new String[] { "claude_messages", "[{\"role\":\"user\",\"content\":\"Training\"}]" },
+            new String[] { "embeddings_create", "Training input" },
+            new String[] { "content_moderation", "Training input" },
+
+            // Last, so it reports the calls above
+            new String[] { "analytics_get", "local", "0", "2100-01-01T00:00:00Z" });
+
+    private static final String[] DEFAULT_ARGS = { "training", "key", "value" };
+
+    public static void main(String[] args) {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        int runs = 0;
+
+        System.setOut(discard);
+        System.setErr(discard);
+        try {
+            for (String[] call : calls(ToolRunner.toolNames())) {
+                ToolRunner.execute(call[0], Arrays.copyOfRange(call, 1, call.length));
+                runs++;
+            }
+            ToolRunnerOOP runner = new ToolRunnerOOP();
+            runner.listTools();
+            for (String[] call : calls(runner.getToolNames())) {
+                runner.executeTool(call[0], Arrays.copyOfRange(call, 1, call.length));
+                runs++;
+            }
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+
+        System.out.printf("Training run executed %d tool call(s)%n", runs);
+    }
+
+    /**
+     * Returns the scripted calls to registered tools, followed by one call to
+     * every registered tool the script does not cover yet
+     */
+    static List<String[]> calls(Set<String> registered) {
+        List<String[]> calls = new ArrayList<>();
+        Set<String> covered = new HashSet<>();
+        for (String[] call : TRAINING_CALLS) {
+            if (registered.contains(call[0])) {
+                calls.add(call);
+                covered.add(call[0]);
+            }
+        }
+        for (String tool : new TreeSet<>(registered)) {
+            if (!covered.contains(tool)) {
+                String[] call = new String[DEFAULT_ARGS.length + 1];
+                call[0] = tool;
+                System.arraycopy(DEFAULT_ARGS, 0, call, 1, DEFAULT_ARGS.length);
+                calls.add(call);
+            }
+        }
+        return calls;
+    }
+}
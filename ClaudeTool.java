@@ -0,0 +1,19 @@
+package mcpTools;
+
+import java.util.Map;
+
+/**
+ * Abstract base class for Claude AI tools
+ */
+public abstract class ClaudeTool extends AbstractMCPTool {
+    protected ClaudeTool(String name, String description) {
+        super(name, description);
+    }
+
+    /**
+     * Gets the model name from parameters
+     */
+    protected String getModel(Map<String, Object> params) {
+        return (String) params.getOrDefault("model", "claude-3-sonnet-20240229");
+    }
+}
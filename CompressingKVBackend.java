@@ -0,0 +1,72 @@
+package mcpTools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * KV backend that stores values through a {@link ValueCompressor}.
+ *
+ * The trained dictionaries are kept in the wrapped backend itself, under the
+ * reserved namespace {@value #DICTIONARY_NAMESPACE}, so they are as durable
+ * and as widely replicated as the values compressed with them.
+ */
+public class CompressingKVBackend implements KVBackend {
+
+    public static final String DICTIONARY_NAMESPACE = "__compression_dictionaries";
+
+    private final KVBackend delegate;
+    private final ValueCompressor compressor;
+
+    public CompressingKVBackend(KVBackend delegate) {
+        this.delegate = delegate;
+        this.compressor = new ValueCompressor(new ValueCompressor.DictionaryStore() {
+            @Override
+            public byte[] load(String namespace, int dictionaryId) throws IOException {
+                return delegate.get(DICTIONARY_NAMESPACE, namespace + "/" + dictionaryId);
+            }
+
+            @Override
+            public void save(String namespace, int dictionaryId, byte[] dictionary) throws IOException {
+                delegate.put(DICTIONARY_NAMESPACE, namespace + "/" + dictionaryId, dictionary, 0);
+                delegate.put(DICTIONARY_NAMESPACE, namespace + "/latest",
+                        Integer.toString(dictionaryId).getBytes(StandardCharsets.UTF_8), 0);
+            }
+
+            @Override
+            public int latest(String namespace) throws IOException {
+                byte[] latest = delegate.get(DICTIONARY_NAMESPACE, namespace + "/latest");
+                return latest == null ? 0 : Integer.parseInt(new String(latest, StandardCharsets.UTF_8));
+            }
+        }, ValueCompressor.enabledNamespaces());
+    }
+
+    public ValueCompressor getCompressor() {
+        return compressor;
+    }
+
+    @Override
+    public byte[] get(String namespaceId, String key) throws IOException {
+        return compressor.decode(namespaceId, delegate.get(namespaceId, key));
+    }
+
+    @Override
+    public void put(String namespaceId, String key, byte[] value, long expirationTtl) throws IOException {
+        delegate.put(namespaceId, key, compressor.encode(namespaceId, value), expirationTtl);
+    }
+
+    @Override
+    public void delete(String namespaceId, String key) throws IOException {
+        delegate.delete(namespaceId, key);
+    }
+
+    @Override
+    public List<String> list(String namespaceId, String prefix, int limit) throws IOException {
+        return delegate.list(namespaceId, prefix, limit);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,403 @@
+package mcpTools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Token-budgeted store backing the context_manager tool.
+ *
+ * Each context is an append-only list of segments whose token counts are
+ * computed once, when the segment is appended, and kept as running prefix
+ * sums. Appending is O(1), and fitting a context into N tokens is a binary
+ * search over the prefix sums that hands back the selected segments without
+ * re-tokenising or copying their text. Once a context grows past its
+ * compaction threshold, its oldest segments are folded into a summary on a
+ * background thread.
+ */
+public class ContextStore {
+
+    /**
+     * Counts tokens in a piece of text
+     */
+    public interface Tokenizer {
+        int count(CharSequence text);
+    }
+
+    /**
+     * Condenses a run of old segments into a summary of at most the given size
+     */
+    public interface Summarizer {
+        String summarize(List<Segment> segments, int maxTokens, Tokenizer tokenizer);
+    }
+
+    /**
+     * Local tokenizer approximating a BPE vocabulary: words are split into
+     * pieces of up to four characters, and every punctuation character is a
+     * token of its own. Whitespace is folded into the following token.
+     */
+    public static class LocalTokenizer implements Tokenizer {
+        private static final int MAX_PIECE = 4;
+
+        @Override
+        public int count(CharSequence text) {
+            int tokens = 0;
+            int run = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (Character.isLetterOrDigit(c)) {
+                    if (run == 0) {
+                        tokens++;
+                    }
+                    run = run + 1 == MAX_PIECE ? 0 : run + 1;
+                } else {
+                    run = 0;
+                    if (!Character.isWhitespace(c)) {
+                        tokens++;
+                    }
+                }
+            }
+            return tokens;
+        }
+    }
+
+    /**
+     * Carries the previous summary forward sentence by sentence and adds the
+     * leading sentence of each new segment. When the result exceeds the budget
+     * the oldest sentences are dropped first, so the summary always covers the
+     * most recent history that fits.
+     */
+    public static class ExtractiveSummarizer implements Summarizer {
+        @Override
+        public String summarize(List<Segment> segments, int maxTokens, Tokenizer tokenizer) {
+            List<String> sentences = new ArrayList<>();
+            for (Segment segment : segments) {
+                String text = segment.text();
+                if (segment.summary()) {
+                    int start = 0;
+                    for (int end = text.indexOf(". "); end >= 0; end = text.indexOf(". ", start)) {
+                        sentences.add(text.substring(start, end + 1));
+                        start = end + 2;
+                    }
+                    if (start < text.length()) {
+                        sentences.add(text.substring(start));
+                    }
+                } else {
+                    int end = text.indexOf(". ");
+                    sentences.add(end < 0 ? text : text.substring(0, end + 1));
+                }
+            }
+
+            int first = sentences.size();
+            int used = 0;
+            while (first > 0) {
+                int tokens = tokenizer.count(sentences.get(first - 1));
+                if (used + tokens > maxTokens) {
+                    break;
+                }
+                used += tokens;
+                first--;
+            }
+            return String.join(" ", sentences.subList(first, sentences.size()));
+        }
+    }
+
+    /**
+     * An immutable piece of context with its token count
+     */
+    public record Segment(String text, int tokens, boolean summary) {
+    }
+
+    /**
+     * A selection of segments that fits a token budget, oldest first
+     */
+    public record Window(List<Segment> segments, long tokens, boolean truncated) {
+
+        /**
+         * Writes the window into the given sink without intermediate copies
+         */
+        public void writeTo(Appendable out) {
+            try {
+                for (int i = 0; i < segments.size(); i++) {
+                    if (i > 0) {
+                        out.append('\n');
+                    }
+                    out.append(segments.get(i).text());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            int length = Math.max(0, segments.size() - 1);
+            for (Segment segment : segments) {
+                length += segment.text().length();
+            }
+            StringBuilder out = new StringBuilder(length);
+            writeTo(out);
+            return out.toString();
+        }
+    }
+
+    /**
+     * Point-in-time size information for a context
+     */
+    public record Stats(int liveSegments, int compactedSegments, long liveTokens, long summaryTokens) {
+    }
+
+    /**
+     * Per-context state. Only live segments are held; compaction folds the
+     * oldest ones into {@code summary} and shifts the rest down.
+     */
+    private static final class Context {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private Segment[] segments = new Segment[INITIAL_CAPACITY];
+        private long[] prefixTokens = new long[INITIAL_CAPACITY];
+        private int size;
+        private int compacted;
+        private Segment summary;
+        private boolean compacting;
+
+        private long tokensBetween(int from, int to) {
+            if (from >= to) {
+                return 0;
+            }
+            return prefixTokens[to - 1] - (from == 0 ? 0 : prefixTokens[from - 1]);
+        }
+
+        private void append(Segment segment) {
+            if (size == segments.length) {
+                segments = Arrays.copyOf(segments, size * 2);
+                prefixTokens = Arrays.copyOf(prefixTokens, size * 2);
+            }
+            segments[size] = segment;
+            prefixTokens[size] = (size == 0 ? 0 : prefixTokens[size - 1]) + segment.tokens();
+            size++;
+        }
+
+        /**
+         * Drops the oldest {@code count} segments, rebasing the prefix sums and
+         * shrinking the arrays when they are mostly empty
+         */
+        private void dropOldest(int count) {
+            int live = size - count;
+            long dropped = prefixTokens[count - 1];
+            int capacity = segments.length;
+            while (capacity > INITIAL_CAPACITY && live <= capacity / 4) {
+                capacity /= 2;
+            }
+            Segment[] keptSegments = capacity == segments.length ? segments : new Segment[capacity];
+            long[] keptPrefix = capacity == prefixTokens.length ? prefixTokens : new long[capacity];
+            System.arraycopy(segments, count, keptSegments, 0, live);
+            for (int i = 0; i < live; i++) {
+                keptPrefix[i] = prefixTokens[count + i] - dropped;
+            }
+            Arrays.fill(keptSegments, live, Math.max(live, Math.min(size, capacity)), null);
+            segments = keptSegments;
+            prefixTokens = keptPrefix;
+            size = live;
+            compacted += count;
+        }
+    }
+
+    private final Map<String, Context> contexts = new ConcurrentHashMap<>();
+    private final Tokenizer tokenizer;
+    private final Summarizer summarizer;
+    private final long compactionThreshold;
+    private final long retainTokens;
+    private final int summaryTokens;
+    private final ExecutorService compactor;
+
+    public ContextStore() {
+        this(new LocalTokenizer(), new ExtractiveSummarizer(), 32_000, 8_000, 1_024);
+    }
+
+    /**
+     * @param compactionThreshold live tokens after which old segments are compacted
+     * @param retainTokens        newest tokens left untouched by compaction
+     * @param summaryTokens       upper bound on the size of the running summary
+     */
+    public ContextStore(Tokenizer tokenizer, Summarizer summarizer,
+            long compactionThreshold, long retainTokens, int summaryTokens) {
+        this.tokenizer = tokenizer;
+        this.summarizer = summarizer;
+        this.compactionThreshold = compactionThreshold;
+        this.retainTokens = retainTokens;
+        this.summaryTokens = summaryTokens;
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "context-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates the context if it does not exist yet
+     */
+    public void create(String contextId) {
+        contexts.computeIfAbsent(contextId, id -> new Context());
+    }
+
+    /**
+     * Appends a segment, tokenising only the new text
+     *
+     * @return the number of tokens in the appended segment
+     */
+    public int append(String contextId, String text) {
+        Segment segment = new Segment(text, tokenizer.count(text), false);
+        Context context = contexts.computeIfAbsent(contextId, id -> new Context());
+        boolean scheduleCompaction;
+        synchronized (context) {
+            context.append(segment);
+            scheduleCompaction = !context.compacting
+                    && context.tokensBetween(0, context.size) > compactionThreshold;
+            if (scheduleCompaction) {
+                context.compacting = true;
+            }
+        }
+        if (scheduleCompaction) {
+            compactor.execute(() -> compact(context));
+        }
+        return segment.tokens();
+    }
+
+    /**
+     * Returns the newest segments that fit into {@code maxTokens}, preceded by
+     * the running summary when there is room for it
+     */
+    public Window fit(String contextId, long maxTokens) {
+        Context context = contexts.get(contextId);
+        if (context == null) {
+            return new Window(List.of(), 0, false);
+        }
+
+        Segment[] selected;
+        Segment summary;
+        long tokens;
+        boolean truncated;
+        synchronized (context) {
+            int from = firstFitting(context, maxTokens);
+            tokens = context.tokensBetween(from, context.size);
+            summary = context.summary;
+            if (summary != null && (from > 0 || tokens + summary.tokens() > maxTokens)) {
+                summary = null;
+            }
+            truncated = from > 0 || (context.summary != null && summary == null);
+            selected = Arrays.copyOfRange(context.segments, from, context.size);
+        }
+
+        List<Segment> segments = new ArrayList<>(selected.length + 1);
+        if (summary != null) {
+            segments.add(summary);
+            tokens += summary.tokens();
+        }
+        Collections.addAll(segments, selected);
+        return new Window(Collections.unmodifiableList(segments), tokens, truncated);
+    }
+
+    /**
+     * Returns the whole live context, including the running summary
+     */
+    public Window get(String contextId) {
+        return fit(contextId, Long.MAX_VALUE);
+    }
+
+    /**
+     * Compacts the context now instead of waiting for the threshold
+     */
+    public void compactNow(String contextId) {
+        Context context = contexts.get(contextId);
+        if (context == null) {
+            return;
+        }
+        synchronized (context) {
+            if (context.compacting) {
+                return;
+            }
+            context.compacting = true;
+        }
+        compact(context);
+    }
+
+    public boolean delete(String contextId) {
+        return contexts.remove(contextId) != null;
+    }
+
+    public Stats stats(String contextId) {
+        Context context = contexts.get(contextId);
+        if (context == null) {
+            return null;
+        }
+        synchronized (context) {
+            return new Stats(context.size, context.compacted,
+                    context.tokensBetween(0, context.size),
+                    context.summary == null ? 0 : context.summary.tokens());
+        }
+    }
+
+    public Tokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    /**
+     * Finds the first segment index from which the tail fits into maxTokens
+     */
+    private static int firstFitting(Context context, long maxTokens) {
+        int low = 0;
+        int high = context.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (context.tokensBetween(mid, context.size) <= maxTokens) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Folds everything except the newest {@code retainTokens} into the summary.
+     * The summariser runs outside the lock so appends are never blocked by it.
+     */
+    private void compact(Context context) {
+        try {
+            List<Segment> old = new ArrayList<>();
+            int to;
+            synchronized (context) {
+                to = firstFitting(context, retainTokens);
+                if (to == 0) {
+                    return;
+                }
+                if (context.summary != null) {
+                    old.add(context.summary);
+                }
+                old.addAll(Arrays.asList(context.segments).subList(0, to));
+            }
+
+            String text = summarizer.summarize(old, summaryTokens, tokenizer);
+            Segment summary = new Segment(text, tokenizer.count(text), true);
+
+            // Appends may have happened meanwhile, but they only add segments
+            // after index to, so the first to segments are still the ones summarised
+            synchronized (context) {
+                context.summary = summary;
+                context.dropOldest(to);
+            }
+        } finally {
+            synchronized (context) {
+                context.compacting = false;
+            }
+        }
+    }
+}
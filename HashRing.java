@@ -0,0 +1,60 @@
+package mcpTools;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring of nodes.
+ *
+ * Each node is placed on the ring at a number of virtual positions, so keys
+ * spread evenly and adding or removing a node only moves the keys adjacent to
+ * its positions. The replicas of a key are the first distinct nodes found
+ * walking clockwise from the key's hash.
+ */
+public class HashRing {
+
+    private final TreeMap<Long, String> positions = new TreeMap<>();
+    private final Set<String> nodes = new LinkedHashSet<>();
+
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        for (String node : nodes) {
+            this.nodes.add(node);
+            for (int i = 0; i < virtualNodes; i++) {
+                positions.put(LsmKVBackend.hash(node + '#' + i), node);
+            }
+        }
+    }
+
+    public Set<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns up to {@code count} distinct nodes responsible for the key,
+     * primary first
+     */
+    public List<String> nodesFor(String key, int count) {
+        int wanted = Math.min(count, nodes.size());
+        List<String> owners = new ArrayList<>(wanted);
+        if (wanted == 0) {
+            return owners;
+        }
+        long hash = LsmKVBackend.hash(key);
+        for (Map<Long, String> half : List.of(positions.tailMap(hash), positions.headMap(hash))) {
+            for (String node : half.values()) {
+                if (!owners.contains(node)) {
+                    owners.add(node);
+                    if (owners.size() == wanted) {
+                        return owners;
+                    }
+                }
+            }
+        }
+        return owners;
+    }
+}
@@ -0,0 +1,513 @@
+package mcpTools;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MCP server speaking the streamable HTTP transport, for clients on other machines.
+ *
+ * All traffic goes through one endpoint, {@code /mcp}:
+ * <ul>
+ * <li>POST carries a JSON-RPC request, notification or batch. It is answered
+ * with the JSON-RPC response as {@code application/json}, or as a single
+ * server-sent event when the client only accepts {@code text/event-stream}.
+ * A POST holding nothing that needs a response is answered with 202.</li>
+ * <li>GET opens a server-sent event stream, on which the server sends
+ * messages queued with {@link #send}. Idle streams carry a comment every 15
+ * seconds, so proxies keep them open and dead clients are noticed.</li>
+ * <li>DELETE ends the session.</li>
+ * </ul>
+ * An initialize request starts a session. The server returns its id in the
+ * {@code Mcp-Session-Id} header, and every later request must carry it.
+ * Tool calls run in their {@link McpSession}, so memories and contexts are
+ * private to the session and released with it. Sessions without an open
+ * stream that stay idle for {@code -Dmcptools.http.session.idle} seconds,
+ * 10 minutes by default, are ended. At most {@code --max-sessions} sessions,
+ * 100 by default, exist at once; further initialize requests are answered
+ * with 503 until a session ends. The memories of all sessions share the
+ * memory store's {@code -Dmcptools.memory.totalBudget}. Each memory namespace
+ * a session creates may use the budget the server was constructed with;
+ * {@link #main} gives it {@code -Dmcptools.memory.budget} if set and
+ * otherwise an equal share of the total per session.
+ *
+ * Connections are kept alive between requests and watched by the JDK HTTP
+ * server's selector, so an idle connection holds no thread. The JDK server
+ * closes keep-alive connections beyond {@code -Dsun.net.httpserver.maxIdleConnections}
+ * idle ones, 200 by default; it only reads that property from the command
+ * line, so a server expecting more clients is started with it. Each exchange
+ * runs on its own virtual thread; an open event stream parks that virtual
+ * thread on the session's queue, which costs a few kilobytes, so thousands of
+ * streams can stay open at once.
+ *
+ * Requests from browsers are only accepted from localhost or the origins
+ * listed in {@code -Dmcptools.http.origins}, which protects a local server
+ * against DNS rebinding. With {@code --token-file} every request must carry
+ * the token in the file as {@code Authorization: Bearer <token>}, and is
+ * answered with 401 otherwise. The server only listens on an address other
+ * than loopback when a token is set. A W3C {@code traceparent} header
+ * continues the caller's trace, as {@code params._meta.traceparent} does.
+ *
+ * Usage:
+ * java HttpMcpServer [--host <address>] [--port <port>] [--max-sessions <count>]
+ *                    [--token-file <file>] [--record <file>]
+ */
+public class HttpMcpServer {
+
+    public static final String ENDPOINT = "/mcp";
+    public static final String SESSION_HEADER = "Mcp-Session-Id";
+
+    private static final long HEARTBEAT_MILLIS = 15_000;
+    private static final long SWEEP_INTERVAL_MILLIS = 30_000;
+    private static final int MAX_BODY_BYTES = 16 << 20;
+    private static final String END_OF_STREAM = "";
+    // Implementation-defined JSON-RPC server error
+    private static final int TOO_MANY_SESSIONS = -32000;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Tracer tracer = Tracer.global();
+    private final JsonRpcServer rpc;
+    private final long sessionIdleNanos;
+    private final int maxSessions;
+    private final long memoryBudget;
+    private final byte[] authorization;
+    private final Set<String> allowedOrigins;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private HttpServer server;
+    private Thread sweeper;
+
+    /**
+     * A client session and the messages waiting for its event streams
+     */
+    private static final class Session {
+        final McpSession state;
+        final BlockingDeque<String> events = new LinkedBlockingDeque<>();
+        final AtomicInteger streams = new AtomicInteger();
+        volatile boolean closed;
+
+        Session(long memoryBudget) {
+            this.state = new McpSession(memoryBudget);
+        }
+    }
+
+    /**
+     * Creates a server whose sessions' memory namespaces get the memory store's default budget
+     */
+    public HttpMcpServer(JsonRpcServer rpc, Duration sessionIdle, int maxSessions, String token,
+            Set<String> allowedOrigins) {
+        this(rpc, sessionIdle, maxSessions, token, allowedOrigins, 0);
+    }
+
+    /**
+     * @param sessionIdle    how long a session without an open stream survives without requests
+     * @param maxSessions    how many sessions may exist at once
+     * @param token          bearer token every request must carry, or null to accept requests without one
+     * @param allowedOrigins browser origins allowed besides localhost
+     * @param memoryBudget   bytes each memory namespace of a session may use, or 0 for the
+     *                       memory store's default
+     */
+    public HttpMcpServer(JsonRpcServer rpc, Duration sessionIdle, int maxSessions, String token,
+            Set<String> allowedOrigins, long memoryBudget) {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("At least one session must be allowed");
+        }
+        if (token != null && token.isBlank()) {
+            throw new IllegalArgumentException("Token must not be blank");
+        }
+        this.rpc = rpc;
+        this.sessionIdleNanos = sessionIdle.toNanos();
+        this.maxSessions = maxSessions;
+        this.memoryBudget = memoryBudget;
+        this.authorization = token == null ? null : ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+        this.allowedOrigins = Set.copyOf(allowedOrigins);
+    }
+
+    /**
+     * Starts listening
+     *
+     * @return the bound address, whose port is chosen by the system if 0 was given
+     * @throws IllegalArgumentException if the address is not loopback and no token is set
+     */
+    public InetSocketAddress start(InetSocketAddress address) throws IOException {
+        InetAddress host = address.getAddress();
+        if (authorization == null && (host == null || !host.isLoopbackAddress())) {
+            throw new IllegalArgumentException("Listening on " + address
+                    + " would accept requests from other machines; set a token to do so");
+        }
+        server = HttpServer.create(address, 1024);
+        server.createContext(ENDPOINT, this::handle);
+        server.setExecutor(executor);
+        server.start();
+        sweeper = Thread.ofPlatform().daemon().name("mcp-session-sweeper").start(this::sweep);
+        return server.getAddress();
+    }
+
+    /**
+     * Ends every session and stops listening
+     */
+    public void stop() {
+        sweeper.interrupt();
+        for (String id : sessions.keySet()) {
+            Session session = sessions.remove(id);
+            if (session != null) {
+                close(session);
+            }
+        }
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Queues a message for the event streams of a session. It is delivered to
+     * one open stream, or kept until one is opened.
+     *
+     * @return false if there is no such session
+     */
+    public boolean send(String sessionId, JsonNode message) {
+        Session session = sessions.get(sessionId);
+        if (session == null || session.closed) {
+            return false;
+        }
+        try {
+            session.events.add(mapper.writeValueAsString(message));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return true;
+    }
+
+    private void handle(HttpExchange exchange) {
+        try (exchange) {
+            if (!exchange.getRequestURI().getPath().equals(ENDPOINT)) {
+                sendStatus(exchange, 404);
+                return;
+            }
+            if (!authorized(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                sendStatus(exchange, 401);
+                return;
+            }
+            if (!originAllowed(exchange.getRequestHeaders().getFirst("Origin"))) {
+                sendStatus(exchange, 403);
+                return;
+            }
+            switch (exchange.getRequestMethod()) {
+                case "POST" -> post(exchange);
+                case "GET" -> stream(exchange);
+                case "DELETE" -> delete(exchange);
+                default -> {
+                    exchange.getResponseHeaders().set("Allow", "GET, POST, DELETE");
+                    sendStatus(exchange, 405);
+                }
+            }
+        } catch (IOException e) {
+            // The client went away; there is nobody left to answer
+        }
+    }
+
+    private void post(HttpExchange exchange) throws IOException {
+        long receivedNanos = System.nanoTime();
+        byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        if (body.length > MAX_BODY_BYTES) {
+            sendStatus(exchange, 413);
+            return;
+        }
+
+        try (Tracer.Span root = tracer.startTrace("POST " + ENDPOINT, receivedNanos)) {
+            JsonNode parsed;
+            try {
+                parsed = mapper.readTree(body);
+            } catch (IOException e) {
+                parsed = null;
+            }
+            if (parsed == null || parsed.isMissingNode()) {
+                root.setError("Parse error");
+                sendJson(exchange, 400, rpc.error(NullNode.getInstance(), JsonRpcServer.PARSE_ERROR, "Parse error"));
+                return;
+            }
+            long parseEnd = System.nanoTime();
+            String traceparent = exchange.getRequestHeaders().getFirst("traceparent");
+            JsonNode first = parsed.isArray() ? parsed.path(0) : parsed;
+            root.continueTrace(traceparent != null
+                    ? traceparent
+                    : first.path("params").path("_meta").path("traceparent").asText(null));
+            tracer.recordSpan("parse", receivedNanos, parseEnd);
+
+            Session session;
+            if (parsed.isObject() && "initialize".equals(parsed.path("method").asText())) {
+                session = open();
+                if (session == null) {
+                    root.setError("Too many sessions");
+                    exchange.getResponseHeaders().set("Retry-After", Long.toString(SWEEP_INTERVAL_MILLIS / 1000));
+                    sendJson(exchange, 503, rpc.error(parsed.path("id"), TOO_MANY_SESSIONS,
+                            "Too many sessions, try again later"));
+                    return;
+                }
+                exchange.getResponseHeaders().set(SESSION_HEADER, session.state.getId());
+            } else {
+                session = session(exchange);
+                if (session == null) {
+                    return;
+                }
+            }
+            root.setAttribute("mcp.session", session.state.getId());
+
+            JsonNode rpcResponse;
+            try {
+                JsonNode request = parsed;
+                rpcResponse = session.state.call(() -> rpc.handleParsed(request, executor));
+            } catch (RuntimeException e) {
+                root.setError(e.getMessage());
+                rpcResponse = rpc.error(NullNode.getInstance(), JsonRpcServer.INTERNAL_ERROR,
+                        "Internal error: " + e.getMessage());
+            }
+            if (rpcResponse == null) {
+                sendStatus(exchange, 202);
+                return;
+            }
+
+            String accept = exchange.getRequestHeaders().getFirst("Accept");
+            if (accept != null && accept.contains("text/event-stream") && !accept.contains("application/json")) {
+                exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                byte[] event = ("event: message\ndata: " + mapper.writeValueAsString(rpcResponse) + "\n\n")
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, event.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(event);
+                }
+            } else {
+                sendJson(exchange, 200, rpcResponse);
+            }
+        }
+    }
+
+    /**
+     * Holds an event stream open, writing queued messages and heartbeats
+     * until the session ends or the client disconnects
+     */
+    private void stream(HttpExchange exchange) throws IOException {
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        if (accept == null || !accept.contains("text/event-stream")) {
+            sendStatus(exchange, 406);
+            return;
+        }
+        Session session = session(exchange);
+        if (session == null) {
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        session.streams.incrementAndGet();
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(": connected\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            while (!session.closed) {
+                String event = session.events.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                if (END_OF_STREAM.equals(event)) {
+                    break;
+                }
+                try {
+                    out.write((event == null ? ": ping\n\n" : "event: message\ndata: " + event + "\n\n")
+                            .getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                } catch (IOException e) {
+                    // Keep the message for the next stream the client opens
+                    if (event != null) {
+                        session.events.addFirst(event);
+                    }
+                    throw e;
+                }
+                session.state.touch();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            session.streams.decrementAndGet();
+            session.state.touch();
+        }
+    }
+
+    private void delete(HttpExchange exchange) throws IOException {
+        Session session = session(exchange);
+        if (session == null) {
+            return;
+        }
+        if (sessions.remove(session.state.getId(), session)) {
+            close(session);
+        }
+        sendStatus(exchange, 204);
+    }
+
+    /**
+     * Returns the session named by the request, answering the request with an
+     * error if there is none
+     */
+    private Session session(HttpExchange exchange) throws IOException {
+        String id = exchange.getRequestHeaders().getFirst(SESSION_HEADER);
+        if (id == null) {
+            sendJson(exchange, 400, rpc.error(NullNode.getInstance(), JsonRpcServer.INVALID_REQUEST,
+                    "Missing " + SESSION_HEADER + " header"));
+            return null;
+        }
+        Session session = sessions.get(id);
+        if (session == null) {
+            sendJson(exchange, 404, rpc.error(NullNode.getInstance(), JsonRpcServer.INVALID_REQUEST,
+                    "Unknown or expired session"));
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Starts a session, or returns null if there are already as many as allowed
+     */
+    private Session open() {
+        synchronized (sessions) {
+            if (sessions.size() >= maxSessions) {
+                return null;
+            }
+            Session session = new Session(memoryBudget);
+            sessions.put(session.state.getId(), session);
+            return session;
+        }
+    }
+
+    private void close(Session session) {
+        session.closed = true;
+        for (int i = session.streams.get(); i > 0; i--) {
+            session.events.add(END_OF_STREAM);
+        }
+        session.state.close();
+    }
+
+    /**
+     * Ends sessions that have been idle for too long, unless a stream is still open
+     */
+    private void sweep() {
+        while (true) {
+            try {
+                Thread.sleep(SWEEP_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            sessions.forEach((id, session) -> {
+                if (session.streams.get() == 0 && session.state.idleNanos() > sessionIdleNanos
+                        && sessions.remove(id, session)) {
+                    close(session);
+                }
+            });
+        }
+    }
+
+    private boolean authorized(String header) {
+        // Compared in constant time, so response times do not reveal how much of a guess matched
+        return authorization == null
+                || header != null && MessageDigest.isEqual(authorization, header.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean originAllowed(String origin) {
+        if (origin == null || allowedOrigins.contains(origin)) {
+            return true;
+        }
+        try {
+            String host = URI.create(origin).getHost();
+            return host != null && (host.equals("localhost") || host.equals("127.0.0.1") || host.equals("[::1]"));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private void sendJson(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendStatus(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = "127.0.0.1";
+        int port = 8080;
+        int maxSessions = Integer.getInteger("mcptools.http.maxSessions", 100);
+        String token = null;
+        Path recordTo = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--host") && i + 1 < args.length) {
+                host = args[++i];
+            } else if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--max-sessions") && i + 1 < args.length) {
+                maxSessions = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--token-file") && i + 1 < args.length) {
+                // Read from a file, so the token does not show up in the process list
+                token = Files.readString(Path.of(args[++i]), StandardCharsets.UTF_8).strip();
+            } else if (args[i].equals("--record") && i + 1 < args.length) {
+                recordTo = Path.of(args[++i]);
+            }
+        }
+
+        // Session memories share the memory store's total budget; give each an equal share of it
+        long total = Long.getLong("mcptools.memory.totalBudget", 256L << 20);
+        long memoryBudget = Long.getLong("mcptools.memory.budget", Math.max(1L << 20, total / maxSessions));
+
+        // Each POST is answered on its own, so the order of responses across requests means nothing here
+        JsonRpcServer rpc = new JsonRpcServer(new ToolDispatcher(), false);
+        if (recordTo != null) {
+            // Every line is flushed as it is recorded, so the recorder is never closed
+            rpc.setRecorder(new TrafficRecorder(recordTo));
+        }
+        String origins = System.getProperty("mcptools.http.origins", "");
+        Set<String> allowedOrigins = new HashSet<>(Arrays.asList(origins.split("\\s*,\\s*")));
+        allowedOrigins.remove("");
+        HttpMcpServer server = new HttpMcpServer(rpc,
+                Duration.ofSeconds(Long.getLong("mcptools.http.session.idle", 600)), maxSessions, token,
+                allowedOrigins, memoryBudget);
+        InetSocketAddress bound;
+        try {
+            bound = server.start(new InetSocketAddress(host, port));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + " (--token-file)");
+            System.exit(1);
+            return;
+        }
+        ToolDispatcher.originalOut().println(
+                "MCP server listening on http://" + host + ":" + bound.getPort() + ENDPOINT);
+    }
+}
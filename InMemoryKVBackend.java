@@ -0,0 +1,58 @@
+package mcpTools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Heap-resident KV backend, used when no data directory is configured
+ */
+public class InMemoryKVBackend implements KVBackend {
+
+    private record Value(byte[] data, long expiresAt) {
+    }
+
+    private final ConcurrentSkipListMap<String, Value> entries = new ConcurrentSkipListMap<>();
+
+    @Override
+    public byte[] get(String namespaceId, String key) {
+        Value value = entries.get(LsmKVBackend.internalKey(namespaceId, key));
+        if (value == null || LsmKVBackend.isExpired(value.expiresAt(), System.currentTimeMillis())) {
+            return null;
+        }
+        return value.data();
+    }
+
+    @Override
+    public void put(String namespaceId, String key, byte[] value, long expirationTtl) {
+        entries.put(LsmKVBackend.internalKey(namespaceId, key),
+                new Value(value, LsmKVBackend.expiresAt(expirationTtl)));
+    }
+
+    @Override
+    public void delete(String namespaceId, String key) {
+        entries.remove(LsmKVBackend.internalKey(namespaceId, key));
+    }
+
+    @Override
+    public List<String> list(String namespaceId, String prefix, int limit) {
+        String start = LsmKVBackend.internalKey(namespaceId, prefix);
+        int keyOffset = namespaceId.length() + 1;
+        long now = System.currentTimeMillis();
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, Value> entry : entries.tailMap(start).entrySet()) {
+            if (keys.size() >= limit || !entry.getKey().startsWith(start)) {
+                break;
+            }
+            if (!LsmKVBackend.isExpired(entry.getValue().expiresAt(), now)) {
+                keys.add(entry.getKey().substring(keyOffset));
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public void close() {
+    }
+}
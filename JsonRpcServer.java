@@ -0,0 +1,556 @@
+package mcpTools;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * MCP server speaking newline-delimited JSON-RPC 2.0 over stdio.
+ *
+ * Every request line is handled on its own virtual thread, so clients can
+ * pipeline many requests without waiting for earlier ones, and the elements
+ * of a batch array are fanned out concurrently. At most
+ * {@code mcptools.rpc.concurrency} lines (256 by default) are in flight at
+ * once, and as many batch elements; beyond that the server stops reading
+ * input until calls complete. Responses are written either as they complete
+ * or in request order, depending on {@code --ordered}.
+ * A single writer thread drains all responses that are ready and flushes
+ * them together, so a burst of small calls costs one write to stdout.
+ *
+ * With {@code --record <file>} every tools/call request is also written to
+ * the file, replacing what it held, in the format replayed by
+ * {@link LoadGenerator}.
+ *
+ * When {@link Tracer} is enabled each line becomes a trace, continuing the
+ * caller's trace if the request carries a W3C traceparent in
+ * {@code params._meta.traceparent}, with spans for the time spent queued,
+ * parsing, handling each request and serialising the response.
+ *
+ * Usage:
+ * java JsonRpcServer [--ordered] [--record <file>]
+ */
+public class JsonRpcServer {
+
+    public static final int PARSE_ERROR = -32700;
+    public static final int INVALID_REQUEST = -32600;
+    public static final int METHOD_NOT_FOUND = -32601;
+    public static final int INVALID_PARAMS = -32602;
+    public static final int INTERNAL_ERROR = -32603;
+
+    private static final String PROTOCOL_VERSION = "2025-03-26";
+    private static final int OUTPUT_BUFFER_BYTES = 64 * 1024;
+
+    // Written when handling a line fails so badly that no response could be built
+    private static final String FALLBACK_ERROR =
+            "{\"jsonrpc\":\"2.0\",\"id\":null,\"error\":{\"code\":" + INTERNAL_ERROR
+                    + ",\"message\":\"Internal error\"}}";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Tracer tracer = Tracer.global();
+    private final ToolDispatcher dispatcher;
+    private final boolean ordered;
+    private final int concurrency;
+    private final Semaphore batchPermits;
+    private volatile TrafficRecorder recorder;
+
+    public JsonRpcServer(ToolDispatcher dispatcher, boolean ordered) {
+        this(dispatcher, ordered, Integer.getInteger("mcptools.rpc.concurrency", 256));
+    }
+
+    /**
+     * @param concurrency upper bound on lines, and separately on batch
+     *                    elements, handled at the same time
+     */
+    public JsonRpcServer(ToolDispatcher dispatcher, boolean ordered, int concurrency) {
+        this.dispatcher = dispatcher;
+        this.ordered = ordered;
+        this.concurrency = concurrency;
+        this.batchPermits = new Semaphore(concurrency);
+    }
+
+    /**
+     * Records every tools/call request served from now on, or stops recording when null
+     */
+    public void setRecorder(TrafficRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Serves requests from the input until it is exhausted, then waits for
+     * outstanding calls and flushes their responses
+     */
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        ResponseWriter writer = new ResponseWriter(
+                new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), OUTPUT_BUFFER_BYTES),
+                ordered);
+        Thread writerThread = new Thread(writer, "jsonrpc-writer");
+        writerThread.start();
+
+        // Batch elements get their own executor: closing the line executor
+        // waits for every line, and a batch line still submits its elements.
+        Semaphore linePermits = new Semaphore(concurrency);
+        try (ExecutorService batchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+                ExecutorService lineExecutor = Executors.newVirtualThreadPerTaskExecutor();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            long sequence = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                long position = sequence++;
+                long receivedNanos = System.nanoTime();
+                String message = line;
+                linePermits.acquireUninterruptibly();
+                lineExecutor.execute(() -> {
+                    // Every position must be submitted, or ordered mode would
+                    // hold back all later responses forever
+                    String serialized = FALLBACK_ERROR;
+                    try (Tracer.Span root = tracer.startTrace("jsonrpc.message", receivedNanos)) {
+                        JsonNode response;
+                        try {
+                            response = handleMessage(message, batchExecutor, root, receivedNanos);
+                        } catch (RuntimeException e) {
+                            root.setError(e.getMessage());
+                            response = error(NullNode.getInstance(), INTERNAL_ERROR,
+                                    "Internal error: " + e.getMessage());
+                        }
+                        serialized = serialize(response);
+                    } finally {
+                        writer.submit(position, serialized);
+                        linePermits.release();
+                    }
+                });
+            }
+        } finally {
+            writer.close();
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Handles one line of input, which holds a single request or a batch
+     *
+     * @return the response to write, or null if nothing should be written
+     */
+    public JsonNode handleMessage(String message, ExecutorService executor) {
+        return handleMessage(message, executor, Tracer.NOOP, System.nanoTime());
+    }
+
+    /**
+     * Handles one line of input as part of the trace started by {@code root}
+     * when the line was received
+     */
+    private JsonNode handleMessage(String message, ExecutorService executor, Tracer.Span root, long receivedNanos) {
+        long parseStart = System.nanoTime();
+        JsonNode parsed;
+        try {
+            parsed = mapper.readTree(message);
+        } catch (JsonProcessingException e) {
+            root.setError("Parse error");
+            return error(NullNode.getInstance(), PARSE_ERROR, "Parse error: " + e.getOriginalMessage());
+        }
+        long parseEnd = System.nanoTime();
+
+        // The caller's trace context can only be known once the line is parsed,
+        // so the spans before that point are recorded afterwards
+        JsonNode first = parsed.isArray() ? parsed.path(0) : parsed;
+        root.continueTrace(first.path("params").path("_meta").path("traceparent").asText(null));
+        tracer.recordSpan("queue", receivedNanos, parseStart);
+        tracer.recordSpan("parse", parseStart, parseEnd);
+
+        return handleParsed(parsed, executor);
+    }
+
+    /**
+     * Handles a parsed message, which is a single request or a batch. Used by
+     * transports that parse the message themselves.
+     *
+     * @return the response to send, or null if nothing should be sent
+     */
+    JsonNode handleParsed(JsonNode parsed, ExecutorService executor) {
+        if (!parsed.isArray()) {
+            return handleRequest(parsed);
+        }
+        if (parsed.isEmpty()) {
+            return error(NullNode.getInstance(), INVALID_REQUEST, "Empty batch");
+        }
+        return handleBatch((ArrayNode) parsed, executor);
+    }
+
+    private JsonNode handleBatch(ArrayNode batch, ExecutorService executor) {
+        List<CompletableFuture<JsonNode>> calls = new ArrayList<>(batch.size());
+        ArrayNode completed = mapper.createArrayNode();
+        Tracer.Span batchSpan = tracer.current();
+        for (JsonNode request : batch) {
+            batchPermits.acquireUninterruptibly();
+            CompletableFuture<JsonNode> call;
+            try {
+                call = CompletableFuture.supplyAsync(() -> {
+                    Tracer.Span previous = tracer.attach(batchSpan);
+                    try {
+                        return handleRequest(request);
+                    } finally {
+                        tracer.attach(previous);
+                        batchPermits.release();
+                    }
+                }, executor).exceptionally(failure -> internalError(request, failure));
+            } catch (RuntimeException e) {
+                batchPermits.release();
+                throw e;
+            }
+            if (!ordered) {
+                // The array is filled by the future that is joined below, so
+                // every response is in it once the join returns
+                call = call.thenApply(response -> {
+                    if (response != null) {
+                        synchronized (completed) {
+                            completed.add(response);
+                        }
+                    }
+                    return response;
+                });
+            }
+            calls.add(call);
+        }
+        CompletableFuture.allOf(calls.toArray(CompletableFuture<?>[]::new)).join();
+
+        ArrayNode responses;
+        if (ordered) {
+            responses = mapper.createArrayNode();
+            for (CompletableFuture<JsonNode> call : calls) {
+                JsonNode response = call.join();
+                if (response != null) {
+                    responses.add(response);
+                }
+            }
+        } else {
+            responses = completed;
+        }
+        // A batch made only of notifications gets no response at all
+        return responses.isEmpty() ? null : responses;
+    }
+
+    /**
+     * Response for a batch element whose handling threw, or null if the
+     * element is a notification
+     */
+    private JsonNode internalError(JsonNode request, Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause()
+                : failure;
+        JsonNode id = request.path("id");
+        if (id.isMissingNode()) {
+            return null;
+        }
+        return error(id, INTERNAL_ERROR, "Internal error: " + cause.getMessage());
+    }
+
+    /**
+     * Handles a single request object
+     *
+     * @return the response, or null for notifications
+     */
+    public JsonNode handleRequest(JsonNode request) {
+        if (!request.isObject() || !"2.0".equals(request.path("jsonrpc").asText())
+                || !request.path("method").isTextual()) {
+            return error(request.path("id").isMissingNode() ? NullNode.getInstance() : request.get("id"),
+                    INVALID_REQUEST, "Invalid Request");
+        }
+
+        JsonNode id = request.get("id");
+        String method = request.get("method").asText();
+        JsonNode params = request.path("params");
+        try (Tracer.Span span = tracer.startSpan(method)) {
+            return handleRequest(id, method, params, request, span);
+        }
+    }
+
+    private JsonNode handleRequest(JsonNode id, String method, JsonNode params, JsonNode request, Tracer.Span span) {
+        ObjectNode result = mapper.createObjectNode();
+        switch (method) {
+            case "initialize":
+                result.put("protocolVersion", params.path("protocolVersion").asText(PROTOCOL_VERSION));
+                result.putObject("capabilities").putObject("tools");
+                result.putObject("serverInfo").put("name", "mcpTools").put("version", "1.0");
+                break;
+            case "ping":
+                break;
+            case "tools/list":
+                ArrayNode tools = result.putArray("tools");
+                dispatcher.listTools().forEach((name, usage) -> {
+                    ObjectNode tool = tools.addObject();
+                    tool.put("name", name);
+                    tool.put("description", usage);
+                    tool.set("inputSchema", inputSchema(usage));
+                });
+                break;
+            case "tools/call":
+                String toolName = params.path("name").asText(null);
+                if (toolName == null || !dispatcher.hasTool(toolName)) {
+                    span.setError("Unknown tool");
+                    return id == null ? null : error(id, INVALID_PARAMS, "Unknown tool: " + toolName);
+                }
+                span.setAttribute("mcp.tool", toolName);
+                String[] args;
+                try {
+                    args = toArgs(params.path("arguments"), dispatcher.listTools().get(toolName));
+                } catch (IllegalArgumentException e) {
+                    span.setError(e.getMessage());
+                    return id == null ? null : error(id, INVALID_PARAMS, e.getMessage());
+                }
+                TrafficRecorder currentRecorder = recorder;
+                if (currentRecorder != null) {
+                    currentRecorder.record(request);
+                }
+                ToolDispatcher.Result call = dispatcher.execute(toolName, args);
+                if (call.isError()) {
+                    span.setError(call.error());
+                }
+                result.putArray("content").addObject()
+                        .put("type", "text")
+                        .put("text", call.output() + call.error());
+                result.put("isError", call.isError());
+                break;
+            default:
+                if (id == null) {
+                    // Notifications such as notifications/initialized need no answer
+                    return null;
+                }
+                return error(id, METHOD_NOT_FOUND, "Method not found: " + method);
+        }
+
+        if (id == null) {
+            return null;
+        }
+        ObjectNode response = mapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", id);
+        response.set("result", result);
+        return response;
+    }
+
+    /**
+     * Describes a tool's arguments as the object {@link #toArgs} accepts: one
+     * string property per parameter of the usage string, the {@code <required>}
+     * ones listed as required
+     */
+    private ObjectNode inputSchema(String usage) {
+        List<String> parameters = ToolResultCache.parameterNames(usage);
+        ObjectNode schema = mapper.createObjectNode();
+        schema.put("type", "object");
+        ObjectNode properties = schema.putObject("properties");
+        for (String parameter : parameters) {
+            properties.putObject(parameter).put("type", "string");
+        }
+        ArrayNode required = schema.putArray("required");
+        for (String parameter : parameters.subList(0, ToolDispatcher.requiredArguments(usage))) {
+            required.add(parameter);
+        }
+        schema.put("additionalProperties", false);
+        return schema;
+    }
+
+    /**
+     * Converts tool arguments to the positional form the runners expect. An
+     * array is taken as is. An object is mapped by the parameter names of
+     * the tool's usage string; since the runners only know positions, an
+     * optional parameter can only be given along with the ones before it.
+     *
+     * @throws IllegalArgumentException if an object names an unknown
+     *                                  parameter, misses a required one or
+     *                                  skips an optional one
+     */
+    static String[] toArgs(JsonNode arguments, String usage) {
+        if (arguments.isArray()) {
+            List<String> args = new ArrayList<>(arguments.size());
+            for (JsonNode value : arguments) {
+                args.add(text(value));
+            }
+            return args.toArray(String[]::new);
+        }
+        if (!arguments.isObject()) {
+            return new String[0];
+        }
+
+        List<String> parameters = ToolResultCache.parameterNames(usage);
+        Iterator<String> names = arguments.fieldNames();
+        while (names.hasNext()) {
+            String name = names.next();
+            if (!parameters.contains(name)) {
+                throw new IllegalArgumentException("Unknown argument '" + name + "'; usage: " + usage);
+            }
+        }
+        int required = ToolDispatcher.requiredArguments(usage);
+        List<String> args = new ArrayList<>(parameters.size());
+        String skipped = null;
+        for (int i = 0; i < parameters.size(); i++) {
+            String parameter = parameters.get(i);
+            JsonNode value = arguments.get(parameter);
+            if (value == null || value.isNull()) {
+                if (i < required) {
+                    throw new IllegalArgumentException("Missing argument '" + parameter + "'; usage: " + usage);
+                }
+                if (skipped == null) {
+                    skipped = parameter;
+                }
+            } else if (skipped != null) {
+                throw new IllegalArgumentException(
+                        "Argument '" + parameter + "' needs '" + skipped + "' as well; usage: " + usage);
+            } else {
+                args.add(text(value));
+            }
+        }
+        return args.toArray(String[]::new);
+    }
+
+    private static String text(JsonNode value) {
+        return value.isValueNode() ? value.asText() : value.toString();
+    }
+
+    /**
+     * Serialises a response on the calling thread, so the single writer only copies text
+     */
+    private String serialize(JsonNode response) {
+        if (response == null) {
+            return null;
+        }
+        Tracer.Span span = tracer.startSpan("serialize");
+        try {
+            return mapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            span.close();
+        }
+    }
+
+    ObjectNode error(JsonNode id, int code, String message) {
+        ObjectNode response = mapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", id);
+        response.putObject("error").put("code", code).put("message", message);
+        return response;
+    }
+
+    /**
+     * Single consumer that writes serialised responses and flushes once per burst.
+     * In ordered mode responses are held back until all earlier ones are written.
+     */
+    private final class ResponseWriter implements Runnable {
+        private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+        private final Writer out;
+        private final boolean ordered;
+        private final Map<Long, String> held = new HashMap<>();
+        private long next;
+
+        private record Pending(long position, String response, boolean last) {
+        }
+
+        ResponseWriter(Writer out, boolean ordered) {
+            this.out = out;
+            this.ordered = ordered;
+        }
+
+        void submit(long position, String response) {
+            queue.add(new Pending(position, response, false));
+        }
+
+        void close() {
+            queue.add(new Pending(-1, null, true));
+        }
+
+        @Override
+        public void run() {
+            List<Pending> burst = new ArrayList<>();
+            try {
+                while (true) {
+                    burst.add(queue.take());
+                    queue.drainTo(burst);
+                    boolean last = false;
+                    for (Pending pending : burst) {
+                        if (pending.last()) {
+                            last = true;
+                        } else if (ordered) {
+                            held.put(pending.position(), pending.response());
+                            while (held.containsKey(next)) {
+                                write(held.remove(next++));
+                            }
+                        } else {
+                            write(pending.response());
+                        }
+                    }
+                    burst.clear();
+                    out.flush();
+                    if (last) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void write(String response) throws IOException {
+            if (response != null) {
+                out.write(response);
+                out.write('\n');
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean ordered = Boolean.getBoolean("mcptools.rpc.ordered");
+        Path recordTo = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--ordered")) {
+                ordered = true;
+            } else if (args[i].equals("--record") && i + 1 < args.length) {
+                recordTo = Path.of(args[++i]);
+            }
+        }
+
+        ToolDispatcher dispatcher = new ToolDispatcher();
+        JsonRpcServer server = new JsonRpcServer(dispatcher, ordered);
+        if (recordTo == null) {
+            server.serve(System.in, ToolDispatcher.originalOut());
+            return;
+        }
+        try (TrafficRecorder trafficRecorder = new TrafficRecorder(recordTo)) {
+            server.setRecorder(trafficRecorder);
+            server.serve(System.in, ToolDispatcher.originalOut());
+        }
+    }
+}
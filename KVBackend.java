@@ -0,0 +1,34 @@
+package mcpTools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Storage behind the KV namespace tools. Keys are scoped by namespace and
+ * values are opaque bytes.
+ */
+public interface KVBackend extends Closeable {
+
+    /**
+     * Returns the value stored under the key, or null if it is absent or expired
+     */
+    byte[] get(String namespaceId, String key) throws IOException;
+
+    /**
+     * Stores a value, replacing any previous one
+     *
+     * @param expirationTtl seconds until the value expires, or 0 to keep it forever
+     */
+    void put(String namespaceId, String key, byte[] value, long expirationTtl) throws IOException;
+
+    /**
+     * Removes the key if present
+     */
+    void delete(String namespaceId, String key) throws IOException;
+
+    /**
+     * Lists live keys of a namespace in ascending order
+     */
+    List<String> list(String namespaceId, String prefix, int limit) throws IOException;
+}
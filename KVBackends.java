@@ -0,0 +1,78 @@
+package mcpTools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Selects the KV backend shared by every KV tool in the process.
+ *
+ * When {@code -Dmcptools.kv.dir} names a directory the namespaces are kept in
+ * an {@link LsmKVBackend} there; otherwise they live in memory.
+ *
+ * When {@code -Dmcptools.kv.nodes=id=host:port,...} lists a cluster, the
+ * namespaces are sharded over it with a {@link ShardedKVBackend}. A process
+ * started with {@code -Dmcptools.kv.node=<id>} joins the cluster as that
+ * node and serves its share from the local backend described above; without
+ * it the process is a client of the cluster. {@code -Dmcptools.kv.replicas}
+ * sets the replication factor, three by default; reads and writes each wait
+ * for a majority of the replicas, so with three one of them may be down.
+ *
+ * Values are compressed on the way in by a {@link CompressingKVBackend}, in
+ * the namespaces selected by {@code -Dmcptools.compression}. Compression
+ * happens before sharding, so nodes store and replicate the compressed form.
+ */
+public final class KVBackends {
+
+    private static final int VIRTUAL_NODES = 64;
+
+    private static final class Holder {
+        static final KVBackend SHARED = new CompressingKVBackend(open());
+    }
+
+    private KVBackends() {
+    }
+
+    public static KVBackend shared() {
+        return Holder.SHARED;
+    }
+
+    private static KVBackend open() {
+        String directory = System.getProperty("mcptools.kv.dir");
+        String nodes = System.getProperty("mcptools.kv.nodes");
+        if (nodes == null) {
+            return openLocal(directory);
+        }
+
+        Map<String, InetSocketAddress> addresses = KVCluster.parseAddresses(nodes);
+        String nodeId = System.getProperty("mcptools.kv.node");
+        int replicas = Math.min(Integer.getInteger("mcptools.kv.replicas", 3), addresses.size());
+        KVReplica local = null;
+        if (nodeId != null) {
+            InetSocketAddress address = addresses.get(nodeId);
+            if (address == null) {
+                throw new IllegalArgumentException("KV node '" + nodeId + "' is not listed in mcptools.kv.nodes");
+            }
+            try {
+                local = new KVNode(nodeId, openLocal(directory), address).getReplica();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot listen on " + address, e);
+            }
+        }
+        int majority = replicas / 2 + 1;
+        return new ShardedKVBackend(nodeId, local, addresses, VIRTUAL_NODES, replicas, majority, majority);
+    }
+
+    static KVBackend openLocal(String directory) {
+        if (directory == null) {
+            return new InMemoryKVBackend();
+        }
+        try {
+            return new LsmKVBackend(Path.of(directory));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open KV store in " + directory, e);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package mcpTools;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Launches a KV cluster on the loopback interface, either as {@link KVNode}s
+ * inside this JVM or as one child JVM per node, and hands out backends
+ * attached to it. Used for tests and benchmarks of the sharded KV store.
+ *
+ * Usage:
+ * java -cp <classpath> mcpTools.KVCluster [nodes] [replicationFactor] [--processes]
+ */
+public class KVCluster implements Closeable {
+
+    private static final int VIRTUAL_NODES = 64;
+
+    private final Map<String, InetSocketAddress> addresses;
+    private final List<KVNode> nodes;
+    private final List<Process> processes;
+    private final int replicationFactor;
+    private final List<ShardedKVBackend> backends = new ArrayList<>();
+
+    private KVCluster(Map<String, InetSocketAddress> addresses, List<KVNode> nodes, List<Process> processes,
+            int replicationFactor) {
+        this.addresses = addresses;
+        this.nodes = nodes;
+        this.processes = processes;
+        this.replicationFactor = replicationFactor;
+    }
+
+    /**
+     * Starts in-memory nodes inside this JVM on free ports
+     */
+    public static KVCluster startInProcess(int nodeCount, int replicationFactor) throws IOException {
+        Map<String, InetSocketAddress> addresses = new LinkedHashMap<>();
+        List<KVNode> nodes = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            KVNode node = new KVNode("node-" + i, new InMemoryKVBackend(), 0);
+            nodes.add(node);
+            addresses.put(node.getNodeId(), node.getAddress());
+        }
+        return new KVCluster(addresses, nodes, List.of(), replicationFactor);
+    }
+
+    /**
+     * Starts one child JVM per node on consecutive ports from {@code basePort}
+     */
+    public static KVCluster startProcesses(int nodeCount, int basePort, int replicationFactor) throws IOException {
+        Map<String, InetSocketAddress> addresses = new LinkedHashMap<>();
+        List<Process> processes = new ArrayList<>();
+        try {
+            for (int i = 0; i < nodeCount; i++) {
+                String nodeId = "node-" + i;
+                Process process = new ProcessBuilder(
+                        ProcessHandle.current().info().command().orElse("java"),
+                        "-cp", System.getProperty("java.class.path"),
+                        KVNode.class.getName(), nodeId, String.valueOf(basePort + i))
+                        .redirectErrorStream(true)
+                        .start();
+                processes.add(process);
+                // The node prints one line once it is listening
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+                String line = reader.readLine();
+                if (line == null || !line.contains("listening")) {
+                    throw new IOException("KV node " + nodeId + " failed to start: " + line);
+                }
+                // Keep draining the node's output, so it never blocks on a full pipe
+                Thread.ofPlatform().daemon().name("kv-node-" + nodeId + "-output")
+                        .start(() -> forwardOutput(nodeId, reader));
+                addresses.put(nodeId, new InetSocketAddress(InetAddress.getLoopbackAddress(), basePort + i));
+            }
+        } catch (IOException e) {
+            processes.forEach(Process::destroy);
+            throw e;
+        }
+        return new KVCluster(addresses, List.of(), processes, replicationFactor);
+    }
+
+    public Map<String, InetSocketAddress> getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * Returns the in-process node with the given index
+     */
+    public KVNode getNode(int index) {
+        return nodes.get(index);
+    }
+
+    /**
+     * Returns a backend running on the in-process node with the given index,
+     * serving that node's keys locally
+     */
+    public synchronized ShardedKVBackend memberBackend(int index) {
+        KVNode node = nodes.get(index);
+        return track(new ShardedKVBackend(node.getNodeId(), node.getReplica(), addresses, VIRTUAL_NODES,
+                replicationFactor, majority(), majority()));
+    }
+
+    /**
+     * Returns a backend that forwards every request to the cluster
+     */
+    public synchronized ShardedKVBackend clientBackend() {
+        return track(new ShardedKVBackend(null, null, addresses, VIRTUAL_NODES, replicationFactor, majority(),
+                majority()));
+    }
+
+    /**
+     * Stops a node to simulate its failure
+     */
+    public void stopNode(int index) throws IOException {
+        if (!nodes.isEmpty()) {
+            nodes.get(index).close();
+        } else {
+            processes.get(index).destroy();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (ShardedKVBackend backend : backends) {
+            backend.close();
+        }
+        for (KVNode node : nodes) {
+            node.close();
+        }
+        for (Process process : processes) {
+            process.destroy();
+        }
+    }
+
+    private static void forwardOutput(String nodeId, BufferedReader reader) {
+        try (reader) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                System.err.println("[" + nodeId + "] " + line);
+            }
+        } catch (IOException e) {
+            // The node exited
+        }
+    }
+
+    /**
+     * Reads and writes both need a majority of the replicas, so they overlap
+     * and one replica of three may be down
+     */
+    private int majority() {
+        return replicationFactor / 2 + 1;
+    }
+
+    private ShardedKVBackend track(ShardedKVBackend backend) {
+        backends.add(backend);
+        return backend;
+    }
+
+    /**
+     * Parses a node list of the form {@code id=host:port,id=host:port}
+     */
+    static Map<String, InetSocketAddress> parseAddresses(String spec) {
+        Map<String, InetSocketAddress> addresses = new LinkedHashMap<>();
+        for (String node : spec.split(",")) {
+            String[] idAndAddress = node.trim().split("=", 2);
+            int colon = idAndAddress.length == 2 ? idAndAddress[1].lastIndexOf(':') : -1;
+            if (colon < 0) {
+                throw new IllegalArgumentException("Invalid KV node address: " + node);
+            }
+            addresses.put(idAndAddress[0], new InetSocketAddress(idAndAddress[1].substring(0, colon),
+                    Integer.parseInt(idAndAddress[1].substring(colon + 1))));
+        }
+        return addresses;
+    }
+
+    /**
+     * Smoke benchmark: pipelined writes and reads from many threads, then
+     * reads again after one node has been stopped
+     */
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int replicationFactor = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        boolean processes = args.length > 2 && args[2].equals("--processes");
+        int keys = 100_000;
+        int threads = 64;
+
+        try (KVCluster cluster = processes
+                ? startProcesses(nodeCount, 7400, replicationFactor)
+                : startInProcess(nodeCount, replicationFactor);
+                ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            ShardedKVBackend backend = cluster.clientBackend();
+
+            long start = System.nanoTime();
+            runParallel(executor, threads, keys, i -> backend.put("bench", "key-" + i,
+                    ("value-" + i).getBytes(StandardCharsets.UTF_8), 0));
+            report("put", keys, start);
+
+            start = System.nanoTime();
+            runParallel(executor, threads, keys, i -> {
+                byte[] value = backend.get("bench", "key-" + i);
+                if (value == null || !new String(value, StandardCharsets.UTF_8).equals("value-" + i)) {
+                    throw new IllegalStateException("Wrong value for key-" + i);
+                }
+            });
+            report("get", keys, start);
+
+            if (replicationFactor > 1) {
+                cluster.stopNode(0);
+                start = System.nanoTime();
+                runParallel(executor, threads, keys, i -> {
+                    if (backend.get("bench", "key-" + i) == null) {
+                        throw new IllegalStateException("Lost key-" + i + " with one node down");
+                    }
+                });
+                report("get with node-0 down", keys, start);
+            }
+        }
+    }
+
+    private interface KeyOperation {
+        void run(int key) throws IOException;
+    }
+
+    private static void runParallel(ExecutorService executor, int threads, int keys, KeyOperation operation)
+            throws Exception {
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            workers.add(executor.submit(() -> {
+                for (int i = first; i < keys; i += threads) {
+                    operation.run(i);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+    }
+
+    private static void report(String operation, int count, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-22s %8d ops %8.2f s %10.0f ops/s%n", operation, count, seconds, count / seconds);
+    }
+}
@@ -1,6 +1,40 @@
 package mcpTools;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
 /**
- * Implementation of the kv_get tool
+ * Implementation of the kv_get tool. Its results are cached under the same
+ * tag as those of the kv_get runner tool, so kv_put and kv_delete drop them.
  */
-public class KVGetTool extends KVStoreTool
\ No newline at end of file
+public class KVGetTool extends KVStoreTool {
+    public KVGetTool() {
+        super("kv_get", "Get a value from a KV namespace");
+    }
+
+    @Override
+    protected ToolResultCache.Policy cachePolicy() {
+        return ToolResultCache.Policy.reads(60, "kv:{namespaceId}:{key}");
+    }
+
+    @Override
+    public ToolResult execute(Map<String, Object> params) throws ToolExecutionException {
+        logExecution(params);
+
+        String namespaceId = getNamespaceId(params);
+        String key = getKey(params);
+
+        byte[] value;
+        try {
+            value = getBackend().get(namespaceId, key);
+        } catch (IOException e) {
+            throw new ToolExecutionException("Failed to read key '" + key + "'", e);
+        }
+        if (value == null) {
+            return new ToolResult(false, null, "Key '" + key + "' not found in namespace '" + namespaceId + "'");
+        }
+        return new ToolResult(true, new String(value, StandardCharsets.UTF_8),
+                "Retrieved key '" + key + "' from namespace '" + namespaceId + "'");
+    }
+}
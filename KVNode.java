@@ -0,0 +1,238 @@
+package mcpTools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves one node's share of the KV data set to its peers.
+ *
+ * Peers talk to the node over a compact binary protocol. Every frame is
+ * length-prefixed and carries a request id, so a client may send any number
+ * of requests without waiting for their responses. Every request runs on a
+ * virtual thread of its own, so a slow request does not hold up the ones
+ * pipelined behind it; writes need no arrival order because each carries a
+ * version and the node's {@link KVReplica} keeps the newest. A response is
+ * flushed by the last of the requests waiting to write theirs, so responses
+ * that complete together share one network write.
+ *
+ * Request frame: {@code int length, byte op, long id, payload}
+ * Response frame: {@code int length, long id, byte status, payload}
+ *
+ * A get answers {@code long version, long expiresAt, boolean live, value};
+ * a put carries {@code long version, long expiresAt, value} and a delete
+ * {@code long version}, and both answer whether the node applied them.
+ *
+ * Usage:
+ * java mcpTools.KVNode <nodeId> <port> [dataDirectory]
+ */
+public class KVNode implements Closeable {
+
+    static final byte OP_GET = 1;
+    static final byte OP_PUT = 2;
+    static final byte OP_DELETE = 3;
+    static final byte OP_LIST = 4;
+    static final byte OP_PING = 5;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_NOT_FOUND = 1;
+    static final byte STATUS_ERROR = 2;
+
+    private final String nodeId;
+    private final KVReplica replica;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+
+    /**
+     * Starts serving the backend on the given port of the loopback interface;
+     * port 0 picks a free one
+     */
+    public KVNode(String nodeId, KVBackend backend, int port) throws IOException {
+        this(nodeId, backend, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public KVNode(String nodeId, KVBackend backend, InetSocketAddress address) throws IOException {
+        this.nodeId = nodeId;
+        this.replica = new KVReplica(backend);
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+        this.acceptor = Thread.ofPlatform().daemon().name("kv-node-" + nodeId).start(this::acceptLoop);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Returns the replica this node serves, for cluster members that read and
+     * write their own share directly
+     */
+    public KVReplica getReplica() {
+        return replica;
+    }
+
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket connection : connections) {
+            connection.close();
+        }
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket connection = serverSocket.accept();
+                connection.setTcpNoDelay(true);
+                connections.add(connection);
+                Thread.ofVirtual().name("kv-node-" + nodeId + "-connection").start(() -> serve(connection));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("KV node " + nodeId + " failed to accept: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket connection) {
+        try (connection;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 64 * 1024));
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(connection.getOutputStream(), 64 * 1024))) {
+            AtomicInteger waitingWriters = new AtomicInteger();
+            while (true) {
+                byte[] frame = new byte[in.readInt()];
+                in.readFully(frame);
+                Thread.ofVirtual().name("kv-node-" + nodeId + "-request").start(() -> {
+                    ByteArrayOutputStream response = new ByteArrayOutputStream();
+                    try {
+                        handle(new DataInputStream(new ByteArrayInputStream(frame)), new DataOutputStream(response));
+                        waitingWriters.incrementAndGet();
+                        synchronized (out) {
+                            response.writeTo(out);
+                            // Only the last writer of a burst pays for the flush
+                            if (waitingWriters.decrementAndGet() == 0) {
+                                out.flush();
+                            }
+                        }
+                    } catch (IOException e) {
+                        // The connection broke; the reader loop notices and closes it
+                    }
+                });
+            }
+        } catch (EOFException | SocketException e) {
+            // Peer went away
+        } catch (IOException e) {
+            System.err.println("KV node " + nodeId + " connection failed: " + e.getMessage());
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    private void handle(DataInputStream request, DataOutputStream out) throws IOException {
+        byte op = request.readByte();
+        long id = request.readLong();
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream response = new DataOutputStream(payload);
+        byte status = STATUS_OK;
+        try {
+            switch (op) {
+                case OP_GET -> {
+                    KVReplica.Versioned record = replica.read(request.readUTF(), request.readUTF());
+                    if (record.version() == 0) {
+                        status = STATUS_NOT_FOUND;
+                    } else {
+                        response.writeLong(record.version());
+                        response.writeLong(record.expiresAt());
+                        response.writeBoolean(record.value() != null);
+                        if (record.value() != null) {
+                            writeBytes(response, record.value());
+                        }
+                    }
+                }
+                case OP_PUT -> {
+                    String namespaceId = request.readUTF();
+                    String key = request.readUTF();
+                    long version = request.readLong();
+                    long expiresAt = request.readLong();
+                    response.writeBoolean(replica.apply(namespaceId, key,
+                            new KVReplica.Versioned(version, expiresAt, readBytes(request))));
+                }
+                case OP_DELETE -> {
+                    String namespaceId = request.readUTF();
+                    String key = request.readUTF();
+                    response.writeBoolean(replica.apply(namespaceId, key,
+                            new KVReplica.Versioned(request.readLong(), 0, null)));
+                }
+                case OP_LIST -> {
+                    List<String> keys = replica.list(request.readUTF(), request.readUTF(), request.readInt());
+                    response.writeInt(keys.size());
+                    for (String key : keys) {
+                        response.writeUTF(key);
+                    }
+                }
+                case OP_PING -> {
+                }
+                default -> throw new IOException("Unknown operation " + op);
+            }
+        } catch (IOException | RuntimeException e) {
+            status = STATUS_ERROR;
+            payload.reset();
+            response.writeUTF(String.valueOf(e.getMessage()));
+        }
+
+        out.writeInt(9 + payload.size());
+        out.writeLong(id);
+        out.writeByte(status);
+        payload.writeTo(out);
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: KVNode <nodeId> <port> [dataDirectory]");
+            System.exit(1);
+        }
+        KVBackend backend = args.length > 2 ? new LsmKVBackend(Path.of(args[2])) : new InMemoryKVBackend();
+        KVNode node = new KVNode(args[0], backend, Integer.parseInt(args[1]));
+        System.out.printf("KV node '%s' listening on %s%n", node.getNodeId(), node.getAddress());
+        node.acceptor.join();
+    }
+}
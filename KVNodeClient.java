@@ -0,0 +1,249 @@
+package mcpTools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pipelining client for one {@link KVNode}.
+ *
+ * Any number of threads may issue requests concurrently over the single
+ * connection; each call returns as soon as its frame is written and the
+ * response completes the returned future. Writers that arrive while another
+ * one is writing leave the flush to the last of them, so concurrent requests
+ * share network writes. A broken connection fails all pending requests and is
+ * re-established by the next call.
+ */
+public class KVNodeClient implements Closeable {
+
+    /**
+     * A decoded response frame
+     */
+    record Response(byte status, byte[] payload) {
+
+        DataInputStream body() {
+            return new DataInputStream(new ByteArrayInputStream(payload));
+        }
+    }
+
+    private interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static final class Connection {
+        final Socket socket;
+        final DataOutputStream out;
+        final Map<Long, CompletableFuture<Response>> pending = new ConcurrentHashMap<>();
+        final AtomicInteger waitingWriters = new AtomicInteger();
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+        }
+    }
+
+    private final InetSocketAddress address;
+    private final AtomicLong nextId = new AtomicLong();
+    private volatile Connection connection;
+    private volatile boolean closed;
+
+    public KVNodeClient(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Reads the node's newest version of a key, {@link KVReplica.Versioned#MISSING}
+     * if it has none
+     */
+    public CompletableFuture<KVReplica.Versioned> get(String namespaceId, String key) {
+        return send(KVNode.OP_GET, out -> {
+            out.writeUTF(namespaceId);
+            out.writeUTF(key);
+        }).thenApply(response -> {
+            if (response.status() == KVNode.STATUS_NOT_FOUND) {
+                return KVReplica.Versioned.MISSING;
+            }
+            try {
+                DataInputStream in = response.body();
+                long version = in.readLong();
+                long expiresAt = in.readLong();
+                return new KVReplica.Versioned(version, expiresAt, in.readBoolean() ? KVNode.readBytes(in) : null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Writes a versioned value or tombstone; the future tells whether the node
+     * applied it or already had a newer version
+     */
+    public CompletableFuture<Boolean> apply(String namespaceId, String key, KVReplica.Versioned record) {
+        return send(record.value() == null ? KVNode.OP_DELETE : KVNode.OP_PUT, out -> {
+            out.writeUTF(namespaceId);
+            out.writeUTF(key);
+            out.writeLong(record.version());
+            if (record.value() != null) {
+                out.writeLong(record.expiresAt());
+                KVNode.writeBytes(out, record.value());
+            }
+        }).thenApply(response -> {
+            try {
+                return response.body().readBoolean();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    public CompletableFuture<List<String>> list(String namespaceId, String prefix, int limit) {
+        return send(KVNode.OP_LIST, out -> {
+            out.writeUTF(namespaceId);
+            out.writeUTF(prefix);
+            out.writeInt(limit);
+        }).thenApply(response -> {
+            try {
+                DataInputStream in = response.body();
+                int count = in.readInt();
+                List<String> keys = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    keys.add(in.readUTF());
+                }
+                return keys;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    public CompletableFuture<Void> ping() {
+        return send(KVNode.OP_PING, out -> {
+        }).thenApply(response -> null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Connection current = connection;
+        if (current != null) {
+            current.socket.close();
+        }
+    }
+
+    private CompletableFuture<Response> send(byte op, PayloadWriter payload) {
+        long id = nextId.incrementAndGet();
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        Connection current = null;
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream frame = new DataOutputStream(buffer);
+            frame.writeByte(op);
+            frame.writeLong(id);
+            payload.write(frame);
+
+            current = connect();
+            current.pending.put(id, future);
+            if (current.socket.isClosed()) {
+                throw new IOException("Connection to " + address + " closed");
+            }
+            current.waitingWriters.incrementAndGet();
+            synchronized (current.out) {
+                current.out.writeInt(buffer.size());
+                buffer.writeTo(current.out);
+                // Only the last writer of a burst pays for the flush
+                if (current.waitingWriters.decrementAndGet() == 0) {
+                    current.out.flush();
+                }
+            }
+        } catch (IOException e) {
+            fail(current, e);
+            future.completeExceptionally(e);
+        }
+        return future.thenApply(response -> {
+            if (response.status() == KVNode.STATUS_ERROR) {
+                throw new IllegalStateException("Node " + address + " failed: " + errorMessage(response));
+            }
+            return response;
+        });
+    }
+
+    private static String errorMessage(Response response) {
+        try {
+            return response.body().readUTF();
+        } catch (IOException e) {
+            return "unknown error";
+        }
+    }
+
+    private synchronized Connection connect() throws IOException {
+        if (closed) {
+            throw new IOException("Client is closed");
+        }
+        Connection current = connection;
+        if (current != null && !current.socket.isClosed()) {
+            return current;
+        }
+        Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(address, 2_000);
+        Connection opened = new Connection(socket);
+        connection = opened;
+        Thread.ofVirtual().name("kv-client-" + address.getPort()).start(() -> readLoop(opened));
+        return opened;
+    }
+
+    private void readLoop(Connection current) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(current.socket.getInputStream(), 64 * 1024))) {
+            while (true) {
+                int length = in.readInt();
+                long id = in.readLong();
+                byte status = in.readByte();
+                byte[] payload = new byte[length - 9];
+                in.readFully(payload);
+                CompletableFuture<Response> future = current.pending.remove(id);
+                if (future != null) {
+                    future.complete(new Response(status, payload));
+                }
+            }
+        } catch (IOException e) {
+            fail(current, e);
+        }
+    }
+
+    private void fail(Connection current, IOException cause) {
+        if (current == null) {
+            return;
+        }
+        try {
+            current.socket.close();
+        } catch (IOException e) {
+            // Already broken
+        }
+        for (Long id : current.pending.keySet()) {
+            CompletableFuture<Response> future = current.pending.remove(id);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
+    }
+}
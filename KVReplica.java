@@ -0,0 +1,154 @@
+package mcpTools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One node's replica of the sharded KV data set.
+ *
+ * Every value a replica holds carries the version its coordinator gave the
+ * write, and a write is only applied when it is newer than what the replica
+ * already has, so replicas that receive the same writes in different orders,
+ * or a read repair that races a newer write, still end up agreeing. A delete
+ * is a versioned tombstone, kept for {@link #TOMBSTONE_TTL_SECONDS} in a
+ * namespace of its own so it never shows up in listings, which stops an older
+ * copy of the value on a lagging replica from coming back.
+ *
+ * Versions are stored inline in front of the value in the node's backend:
+ * {@code long version, long expiresAt, value bytes}.
+ */
+public class KVReplica {
+
+    /** How long a replica remembers a delete */
+    static final long TOMBSTONE_TTL_SECONDS = 24 * 60 * 60;
+
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * A versioned value; a null value is a tombstone
+     *
+     * @param expiresAt epoch millis after which the value is gone, or 0 if it never expires
+     */
+    public record Versioned(long version, long expiresAt, byte[] value) {
+
+        /** What a replica answers for a key it has never seen */
+        public static final Versioned MISSING = new Versioned(0, 0, null);
+
+        public boolean isLive(long now) {
+            return value != null && (expiresAt == 0 || expiresAt > now);
+        }
+
+        /**
+         * Orders by version; equal versions written by different coordinators
+         * are ordered by content, tombstones last, so every replica picks the
+         * same winner
+         */
+        public boolean isNewerThan(Versioned other) {
+            if (version != other.version) {
+                return version > other.version;
+            }
+            if (value == null || other.value == null) {
+                return value == null && other.value != null;
+            }
+            return Arrays.compare(value, other.value) > 0;
+        }
+    }
+
+    private final KVBackend backend;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public KVReplica(KVBackend backend) {
+        this.backend = backend;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public KVBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Returns the newest version of the key this replica holds, a tombstone
+     * if it was deleted, or {@link Versioned#MISSING}
+     */
+    public Versioned read(String namespaceId, String key) throws IOException {
+        Versioned value = decode(backend.get(namespaceId, key), false);
+        Versioned tombstone = decode(backend.get(tombstones(namespaceId), key), true);
+        return tombstone.isNewerThan(value) ? tombstone : value;
+    }
+
+    /**
+     * Stores the record unless the replica already holds the same or a newer
+     * version of the key
+     *
+     * @return whether the record was applied
+     */
+    public boolean apply(String namespaceId, String key, Versioned record) throws IOException {
+        synchronized (locks[Math.floorMod(LsmKVBackend.internalKey(namespaceId, key).hashCode(), LOCK_STRIPES)]) {
+            Versioned current = read(namespaceId, key);
+            if (!record.isNewerThan(current)) {
+                return false;
+            }
+            if (record.value() == null) {
+                backend.delete(namespaceId, key);
+                backend.put(tombstones(namespaceId), key, encode(record), TOMBSTONE_TTL_SECONDS);
+                return true;
+            }
+            long expirationTtl = 0;
+            if (record.expiresAt() != 0) {
+                long remaining = record.expiresAt() - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                expirationTtl = (remaining + 999) / 1000;
+            }
+            backend.put(namespaceId, key, encode(record), expirationTtl);
+            if (current.version() != 0 && current.value() == null) {
+                backend.delete(tombstones(namespaceId), key);
+            }
+            return true;
+        }
+    }
+
+    public List<String> list(String namespaceId, String prefix, int limit) throws IOException {
+        return backend.list(namespaceId, prefix, limit);
+    }
+
+    /**
+     * Tombstones live in a namespace no caller can name, so listings of the
+     * real namespace skip them
+     */
+    private static String tombstones(String namespaceId) {
+        return '\u0001' + namespaceId;
+    }
+
+    private static byte[] encode(Versioned record) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(
+                16 + (record.value() == null ? 0 : record.value().length));
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeLong(record.version());
+        out.writeLong(record.expiresAt());
+        if (record.value() != null) {
+            out.write(record.value());
+        }
+        return buffer.toByteArray();
+    }
+
+    private static Versioned decode(byte[] stored, boolean tombstone) throws IOException {
+        if (stored == null) {
+            return Versioned.MISSING;
+        }
+        if (stored.length < 16) {
+            throw new IOException("Corrupt replica record of " + stored.length + " bytes");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(stored));
+        return new Versioned(in.readLong(), in.readLong(),
+                tombstone ? null : Arrays.copyOfRange(stored, 16, stored.length));
+    }
+}
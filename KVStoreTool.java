@@ -0,0 +1,33 @@
+package mcpTools;
+
+import java.util.Map;
+
+/**
+ * Abstract base class for KV store tools
+ */
+public abstract class KVStoreTool extends AbstractMCPTool {
+    protected KVStoreTool(String name, String description) {
+        super(name, description);
+    }
+
+    /**
+     * Gets a KV namespace ID from parameters
+     */
+    protected String getNamespaceId(Map<String, Object> params) {
+        return (String) params.get("namespaceId");
+    }
+
+    /**
+     * Gets a key from parameters
+     */
+    protected String getKey(Map<String, Object> params) {
+        return (String) params.get("key");
+    }
+
+    /**
+     * Returns the backend shared by all KV tools
+     */
+    protected KVBackend getBackend() {
+        return KVBackends.shared();
+    }
+}
@@ -0,0 +1,594 @@
+package mcpTools;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator that replays recorded MCP tool calls.
+ *
+ * The input is JSONL holding one JSON-RPC tools/call request per line, as
+ * written by {@code JsonRpcServer --record}; other lines are skipped. Calls
+ * are issued in one of three modes:
+ * <ul>
+ * <li>{@code --rate <calls/s>}: open loop at a fixed rate, independent of how
+ * fast the runner answers</li>
+ * <li>{@code --replay [--speed <x>]}: open loop following the recorded
+ * {@code ts} offsets, optionally sped up</li>
+ * <li>{@code --concurrency <n>}: closed loop, n callers each waiting for
+ * their previous call</li>
+ * </ul>
+ * Open-loop latencies are measured from the time a call was scheduled to be
+ * sent, not from when it actually left, so a stalled runner is charged for
+ * every call it delayed. Closed-loop callers cannot send while they wait, so
+ * their latencies are corrected afterwards by back-filling the calls that
+ * would have been sent at the expected interval, as HdrHistogram does. That
+ * interval is {@code --expected-interval-ms} if given, and otherwise the
+ * recorded inter-arrival time spread over the callers; a closed loop over a
+ * recording without timestamps needs the option. Either way the reported
+ * percentiles do not suffer from coordinated omission.
+ *
+ * A call that gets no answer within {@code --timeout} seconds, 30 by
+ * default, counts as an error.
+ *
+ * Calls go to an in-process {@link ToolDispatcher} unless {@code --exec} names
+ * a JSON-RPC server command to start and drive over its stdio.
+ *
+ * Usage:
+ * java mcpTools.LoadGenerator <calls.jsonl> [--rate <calls/s> | --replay [--speed <x>] | --concurrency <n>]
+ * [--duration <s>] [--requests <n>] [--warmup <s>] [--expected-interval-ms <ms>] [--timeout <s>]
+ * [--exec <command>...]
+ */
+public class LoadGenerator {
+
+    /**
+     * A recorded tool call and its offset from the start of the recording
+     */
+    record Call(long offsetMillis, String tool, JsonNode arguments) {
+    }
+
+    /**
+     * Where calls are sent. The future completes with true if the call succeeded.
+     */
+    interface Target extends Closeable {
+        CompletableFuture<Boolean> call(Call call);
+    }
+
+    /**
+     * Calls the tool runners inside this JVM
+     */
+    static final class InProcessTarget implements Target {
+        private final ToolDispatcher dispatcher = new ToolDispatcher();
+        private final Map<String, String> usages = dispatcher.listTools();
+        private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        @Override
+        public CompletableFuture<Boolean> call(Call call) {
+            return CompletableFuture.supplyAsync(() -> {
+                String usage = usages.get(call.tool());
+                if (usage == null) {
+                    return false;
+                }
+                try {
+                    return !dispatcher.execute(call.tool(), JsonRpcServer.toArgs(call.arguments(), usage)).isError();
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+            }, executor);
+        }
+
+        @Override
+        public void close() {
+            executor.close();
+        }
+    }
+
+    /**
+     * Starts a JSON-RPC server process and pipelines calls over its stdio
+     */
+    static final class ProcessTarget implements Target {
+        private final ObjectMapper mapper = new ObjectMapper();
+        private final Process process;
+        private final BufferedWriter in;
+        private final Map<Long, CompletableFuture<Boolean>> pending = new ConcurrentHashMap<>();
+        private final AtomicLong nextId = new AtomicLong();
+        private final AtomicLong skippedLines = new AtomicLong();
+        private final Thread reader;
+
+        ProcessTarget(List<String> command) throws IOException {
+            this.process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+
+            this.in = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            this.reader = Thread.ofPlatform().daemon().name("load-generator-reader").start(this::readResponses);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> call(Call call) {
+            long id = nextId.incrementAndGet();
+            CompletableFuture<Boolean> future = new CompletableFuture<>();
+            pending.put(id, future);
+            // A call the caller gave up on no longer waits for its response
+            future.whenComplete((ok, failure) -> pending.remove(id));
+            ObjectNode request = mapper.createObjectNode();
+            request.put("jsonrpc", "2.0");
+            request.put("id", id);
+            request.put("method", "tools/call");
+            request.putObject("params").put("name", call.tool()).set("arguments", call.arguments());
+            try {
+                String line = mapper.writeValueAsString(request);
+                synchronized (in) {
+                    in.write(line);
+                    in.newLine();
+                    in.flush();
+                }
+            } catch (IOException e) {
+                pending.remove(id);
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+
+        private void readResponses() {
+            IOException failure = new IOException("Server closed its output");
+            try (BufferedReader out = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = out.readLine()) != null) {
+                    JsonNode response;
+                    try {
+                        response = mapper.readTree(line);
+                    } catch (JsonProcessingException e) {
+                        // Servers may log to stdout; only JSON-RPC responses matter
+                        skippedLines.incrementAndGet();
+                        continue;
+                    }
+                    CompletableFuture<Boolean> future = pending.remove(response.path("id").asLong());
+                    if (future != null) {
+                        future.complete(!response.has("error") && !response.path("result").path("isError").asBoolean());
+                    }
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+            for (CompletableFuture<Boolean> future : List.copyOf(pending.values())) {
+                future.completeExceptionally(failure);
+            }
+        }
+
+        /**
+         * Returns how many lines of the server's output were not JSON
+         */
+        long skippedLines() {
+            return skippedLines.get();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+            try {
+                reader.join(TimeUnit.SECONDS.toMillis(30));
+                if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                    process.destroy();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * Log-linear latency histogram: values below 128 ns are exact, larger ones
+     * fall into buckets 1/64 of their power of two wide
+     */
+    static final class Histogram {
+        private static final int SUB_BUCKETS = 64;
+        private final long[] counts = new long[128 + 57 * SUB_BUCKETS];
+        private long total;
+        private long max;
+
+        synchronized void record(long value, long count) {
+            long clamped = Math.max(0, value);
+            counts[index(clamped)] += count;
+            total += count;
+            max = Math.max(max, clamped);
+        }
+
+        synchronized long count() {
+            return total;
+        }
+
+        synchronized long max() {
+            return max;
+        }
+
+        /**
+         * Returns the value below which the given percentage of samples fall
+         */
+        synchronized long percentile(double percent) {
+            long wanted = Math.max(1, (long) Math.ceil(percent / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= wanted) {
+                    return Math.min(max, valueAt(i));
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Returns a copy with the samples a caller blocked by slow responses
+         * failed to send at {@code expectedInterval} added back in
+         */
+        synchronized Histogram correctedFor(long expectedInterval) {
+            Histogram corrected = new Histogram();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    continue;
+                }
+                long value = Math.min(max, valueAt(i));
+                corrected.record(value, counts[i]);
+                if (expectedInterval > 0) {
+                    for (long missing = value - expectedInterval; missing >= expectedInterval;
+                            missing -= expectedInterval) {
+                        corrected.record(missing, counts[i]);
+                    }
+                }
+            }
+            return corrected;
+        }
+
+        /**
+         * Adds this histogram's samples to another one
+         */
+        synchronized void copyInto(Histogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    other.record(Math.min(max, valueAt(i)), counts[i]);
+                }
+            }
+        }
+
+        private static int index(long value) {
+            if (value < 128) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+            return 128 + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+        }
+
+        // Midpoint of the bucket
+        private static long valueAt(int index) {
+            if (index < 128) {
+                return index;
+            }
+            int shift = (index - 128) / SUB_BUCKETS + 1;
+            long top = (index - 128) % SUB_BUCKETS + SUB_BUCKETS;
+            return (top << shift) + (1L << (shift - 1));
+        }
+    }
+
+    private static final class ToolStats {
+        final Histogram latency = new Histogram();
+        final AtomicLong errors = new AtomicLong();
+    }
+
+    private final List<Call> calls;
+    private final Target target;
+    private final long callTimeoutNanos;
+    private final Map<String, ToolStats> stats = new ConcurrentHashMap<>();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private long measureFrom;
+
+    /**
+     * @param callTimeoutNanos how long a call may go unanswered before it counts as an error
+     */
+    LoadGenerator(List<Call> calls, Target target, long callTimeoutNanos) {
+        this.calls = calls;
+        this.target = target;
+        this.callTimeoutNanos = callTimeoutNanos;
+    }
+
+    long completed() {
+        return completed.get();
+    }
+
+    long errors() {
+        return errors.get();
+    }
+
+    private CompletableFuture<Boolean> send(Call call) {
+        return target.call(call).orTimeout(callTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reads the tools/call requests from a JSONL file
+     *
+     * @return the calls, in file order; lines of any other kind are counted in {@code skipped[0]}
+     */
+    static List<Call> load(Path file, long[] skipped) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        List<Call> calls = new ArrayList<>();
+        long first = -1;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            JsonNode request;
+            try {
+                request = mapper.readTree(line);
+            } catch (IOException e) {
+                skipped[0]++;
+                continue;
+            }
+            String tool = request.path("params").path("name").asText(null);
+            if (!"tools/call".equals(request.path("method").asText()) || tool == null) {
+                skipped[0]++;
+                continue;
+            }
+            long ts = request.path("ts").asLong(0);
+            first = first < 0 ? ts : first;
+            calls.add(new Call(ts - first, tool, request.path("params").path("arguments")));
+        }
+        return calls;
+    }
+
+    /**
+     * Open loop: call i is due at {@code schedule[i]} nanoseconds after the start
+     */
+    void runOpenLoop(long[] schedule, long warmupNanos) {
+        List<CompletableFuture<?>> inFlight = new ArrayList<>(schedule.length);
+        long start = System.nanoTime();
+        measureFrom = start + warmupNanos;
+        for (int i = 0; i < schedule.length; i++) {
+            long intended = start + schedule[i];
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Call call = calls.get(i % calls.size());
+            inFlight.add(send(call).handle((ok, failure) -> {
+                record(call.tool(), intended, System.nanoTime() - intended, ok != null && ok);
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(inFlight.toArray(CompletableFuture<?>[]::new)).join();
+    }
+
+    /**
+     * Closed loop: each caller sends its next call as soon as the previous one returned
+     */
+    void runClosedLoop(int concurrency, long requests, long durationNanos, long warmupNanos) {
+        AtomicLong next = new AtomicLong();
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        measureFrom = start + warmupNanos;
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < concurrency; c++) {
+                callers.execute(() -> {
+                    long i;
+                    while ((i = next.getAndIncrement()) < requests && System.nanoTime() < end) {
+                        Call call = calls.get((int) (i % calls.size()));
+                        long sent = System.nanoTime();
+                        boolean ok;
+                        try {
+                            ok = send(call).join();
+                        } catch (RuntimeException e) {
+                            ok = false;
+                        }
+                        record(call.tool(), sent, System.nanoTime() - sent, ok);
+                    }
+                });
+            }
+        }
+    }
+
+    private void record(String tool, long sentAt, long latency, boolean ok) {
+        completed.incrementAndGet();
+        if (!ok) {
+            errors.incrementAndGet();
+        }
+        if (sentAt - measureFrom < 0) {
+            return;
+        }
+        ToolStats toolStats = stats.computeIfAbsent(tool, name -> new ToolStats());
+        toolStats.latency.record(latency, 1);
+        if (!ok) {
+            toolStats.errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Prints throughput and latency percentiles per tool and overall. The
+     * first line counts every call; the table only those sent after the
+     * warmup, so its rates are over the time after the warmup.
+     *
+     * @param expectedInterval closed-loop correction interval in nanoseconds,
+     *                         or 0 to report latencies as measured
+     */
+    void report(long elapsedNanos, long warmupNanos, long expectedInterval) {
+        double total = elapsedNanos / 1e9;
+        System.out.printf("%d call(s) in %.2f s, %.1f calls/s%n", completed.get(), total, completed.get() / total);
+        double seconds = Math.max(elapsedNanos - warmupNanos, 1) / 1e9;
+        System.out.printf("%-22s %8s %7s %9s %9s %9s %9s %9s %9s%n",
+                "tool", "calls", "errors", "calls/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+
+        Histogram all = new Histogram();
+        long errors = 0;
+        for (Map.Entry<String, ToolStats> entry : new TreeMap<>(stats).entrySet()) {
+            Histogram latency = corrected(entry.getValue().latency, expectedInterval);
+            latency.copyInto(all);
+            errors += entry.getValue().errors.get();
+            printRow(entry.getKey(), entry.getValue().latency.count(), entry.getValue().errors.get(), seconds, latency);
+        }
+        long measured = stats.values().stream().mapToLong(tool -> tool.latency.count()).sum();
+        printRow("all", measured, errors, seconds, all);
+    }
+
+    private static Histogram corrected(Histogram latency, long expectedInterval) {
+        return expectedInterval > 0 ? latency.correctedFor(expectedInterval) : latency;
+    }
+
+    /**
+     * Returns the interval at which each of {@code concurrency} callers would
+     * have sent the recorded calls, in nanoseconds, or 0 if the recording
+     * carries no timing
+     */
+    static long recordedInterval(List<Call> calls, int concurrency) {
+        long span = calls.get(calls.size() - 1).offsetMillis() - calls.get(0).offsetMillis();
+        if (calls.size() < 2 || span <= 0) {
+            return 0;
+        }
+        return TimeUnit.MILLISECONDS.toNanos(span) * concurrency / (calls.size() - 1);
+    }
+
+    private static void printRow(String tool, long calls, long errors, double seconds, Histogram latency) {
+        System.out.printf("%-22s %8d %7d %9.1f %9.3f %9.3f %9.3f %9.3f %9.3f%n", tool, calls, errors, calls / seconds,
+                latency.percentile(50) / 1e6, latency.percentile(90) / 1e6, latency.percentile(99) / 1e6,
+                latency.percentile(99.9) / 1e6, latency.max() / 1e6);
+    }
+
+    /**
+     * Due times for a fixed rate
+     */
+    static long[] rateSchedule(double rate, long count) {
+        long[] schedule = new long[(int) count];
+        double interval = 1e9 / rate;
+        for (int i = 0; i < schedule.length; i++) {
+            schedule[i] = (long) (i * interval);
+        }
+        return schedule;
+    }
+
+    /**
+     * Due times following the recorded offsets, wrapping around the recording
+     * as often as needed to fill the duration
+     */
+    static long[] replaySchedule(List<Call> calls, double speed, long count, long durationNanos) {
+        long span = calls.get(calls.size() - 1).offsetMillis();
+        // Leave one average gap between the end of one pass and the start of the next
+        long wrap = span + Math.max(1, span / Math.max(1, calls.size() - 1));
+        long[] schedule = new long[Math.min(calls.size(), (int) Math.min(count, Integer.MAX_VALUE - 8))];
+        int size = 0;
+        for (long i = 0; i < count; i++) {
+            long offset = (i / calls.size()) * wrap + calls.get((int) (i % calls.size())).offsetMillis();
+            long due = (long) (TimeUnit.MILLISECONDS.toNanos(offset) / speed);
+            if (due >= durationNanos) {
+                break;
+            }
+            if (size == schedule.length) {
+                schedule = Arrays.copyOf(schedule, size * 2);
+            }
+            schedule[size++] = due;
+        }
+        return Arrays.copyOf(schedule, size);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: LoadGenerator <calls.jsonl> [--rate <calls/s> | --replay [--speed <x>] "
+                    + "| --concurrency <n>] [--duration <s>] [--requests <n>] [--warmup <s>] "
+                    + "[--expected-interval-ms <ms>] [--timeout <s>] [--exec <command>...]");
+            System.exit(1);
+        }
+
+        double rate = 100;
+        boolean replay = false;
+        double speed = 1;
+        int concurrency = 0;
+        double duration = 10;
+        long requests = Long.MAX_VALUE;
+        double warmup = 0;
+        long expectedInterval = 0;
+        double timeout = 30;
+        List<String> command = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--rate" -> rate = Double.parseDouble(args[++i]);
+                case "--replay" -> replay = true;
+                case "--speed" -> speed = Double.parseDouble(args[++i]);
+                case "--concurrency" -> concurrency = Integer.parseInt(args[++i]);
+                case "--duration" -> duration = Double.parseDouble(args[++i]);
+                case "--requests" -> requests = Long.parseLong(args[++i]);
+                case "--warmup" -> warmup = Double.parseDouble(args[++i]);
+                case "--expected-interval-ms" -> expectedInterval = (long) (Double.parseDouble(args[++i]) * 1e6);
+                case "--timeout" -> timeout = Double.parseDouble(args[++i]);
+                case "--exec" -> {
+                    command = List.of(Arrays.copyOfRange(args, i + 1, args.length));
+                    i = args.length;
+                }
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(1);
+                }
+            }
+        }
+
+        long[] skipped = new long[1];
+        List<Call> calls = load(Path.of(args[0]), skipped);
+        if (skipped[0] > 0) {
+            System.out.printf("Skipped %d line(s) that are not tools/call requests%n", skipped[0]);
+        }
+        if (calls.isEmpty()) {
+            System.err.println("No tools/call requests found in " + args[0]);
+            System.exit(1);
+        }
+
+        if (concurrency > 0 && expectedInterval == 0) {
+            expectedInterval = recordedInterval(calls, concurrency);
+            if (expectedInterval == 0) {
+                System.err.println("The recording has no timing; closed-loop runs need --expected-interval-ms");
+                System.exit(1);
+            }
+        }
+
+        long durationNanos = (long) (duration * 1e9);
+        long warmupNanos = (long) (warmup * 1e9);
+        try (Target target = command != null ? new ProcessTarget(command) : new InProcessTarget()) {
+            LoadGenerator generator = new LoadGenerator(calls, target, (long) (timeout * 1e9));
+            long start = System.nanoTime();
+            if (concurrency > 0) {
+                System.out.printf("Closed loop with %d caller(s) over %d recorded call(s), expected interval %.3f ms%n",
+                        concurrency, calls.size(), expectedInterval / 1e6);
+                generator.runClosedLoop(concurrency, requests, durationNanos, warmupNanos);
+            } else {
+                long[] schedule = replay
+                        ? replaySchedule(calls, speed, requests, durationNanos)
+                        : rateSchedule(rate, Math.min(requests, (long) Math.ceil(rate * duration)));
+                System.out.printf("Open loop, %s, %d call(s) scheduled%n",
+                        replay ? "replaying recorded timing at " + speed + "x" : rate + " calls/s", schedule.length);
+                generator.runOpenLoop(schedule, warmupNanos);
+                // Open-loop latencies are already measured from the intended send time
+                expectedInterval = 0;
+            }
+            generator.report(System.nanoTime() - start, warmupNanos, expectedInterval);
+            if (target instanceof ProcessTarget process && process.skippedLines() > 0) {
+                System.out.printf("Skipped %d line(s) of server output that are not JSON%n", process.skippedLines());
+            }
+        }
+    }
+}
@@ -0,0 +1,1450 @@
+package mcpTools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SyncFailedException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Log-structured merge tree backend for KV namespaces larger than memory.
+ *
+ * Writes are appended to a write-ahead log and inserted into a concurrent
+ * sorted memtable. Full memtables are frozen and flushed by a background
+ * thread into immutable sorted segment files, so the disk only ever sees
+ * sequential writes. Each segment carries a bloom filter and a sparse index
+ * that are loaded once when the segment is memory-mapped; a lookup for a key
+ * that is not in a segment is answered by the filter without touching the
+ * segment's data pages.
+ *
+ * Segments are organised in levels. Level 0 holds freshly flushed, possibly
+ * overlapping segments. Every deeper level holds non-overlapping segments and
+ * may grow to a fixed multiple of the level above before a compaction on the
+ * dedicated compaction pool merges part of it one level down. Tombstones and
+ * expired values are dropped once they reach the deepest populated level.
+ *
+ * The set of live segments per level is recorded in a MANIFEST file that is
+ * replaced atomically on every change; write-ahead logs that have not been
+ * flushed yet are replayed on open.
+ *
+ * Writes are group-committed: each writer appends its record to the log
+ * buffer, and one of the writers waiting for their records to reach the log
+ * file flushes, and with {@code syncWrites} syncs, everything appended so far
+ * on behalf of all of them. A write returns once its record is in the log.
+ *
+ * A flush that fails is retried with backoff while its log stays on disk.
+ * Writers keep going until the frozen memtables awaiting a flush reach their
+ * limit; from then on writes fail with the flush error instead of stalling,
+ * until a retry succeeds.
+ *
+ * An open backend holds an exclusive lock on a LOCK file in its directory
+ * until it is closed, so a second process, or a second backend in this one,
+ * cannot replay and delete the logs the first is still writing.
+ */
+public class LsmKVBackend implements KVBackend {
+
+    private static final char NAMESPACE_SEPARATOR = '\u0000';
+    private static final int SEGMENT_MAGIC = 0x4c534d31;
+    private static final int FOOTER_BYTES = 28;
+    private static final int INDEX_INTERVAL = 16;
+    private static final int BLOOM_BITS_PER_KEY = 10;
+    private static final int BLOOM_HASHES = 7;
+    private static final int MAX_IMMUTABLE_MEMTABLES = 4;
+    private static final long MAX_FLUSH_BACKOFF_MILLIS = 1000;
+    private static final String MANIFEST = "MANIFEST";
+    private static final String LOCK = "LOCK";
+
+    /**
+     * Tuning knobs. Level {@code n >= 1} may hold
+     * {@code level1Bytes * levelMultiplier^(n-1)} bytes before it is compacted.
+     */
+    public record Options(long memtableBytes, int level0Segments, long level1Bytes, int levelMultiplier,
+            long segmentBytes, int compactionThreads, boolean syncWrites) {
+
+        public static Options defaults() {
+            return new Options(4L << 20, 4, 32L << 20, 10, 8L << 20, 2, false);
+        }
+    }
+
+    /**
+     * Size of one level
+     */
+    public record LevelStats(int level, int segments, long bytes) {
+    }
+
+    /**
+     * Point-in-time engine statistics. {@code bloomSkips} counts segment
+     * lookups answered by a bloom filter, {@code segmentReads} those that had
+     * to read segment data. {@code logCommits} counts the log flushes that
+     * made writes durable, several writes at a time under concurrency.
+     */
+    public record Stats(long memtableBytes, int immutableMemtables, List<LevelStats> levels,
+            long bloomSkips, long segmentReads, long flushes, long flushFailures, long compactions,
+            long logCommits) {
+    }
+
+    /**
+     * A key version. A null value is a tombstone.
+     */
+    record Entry(String key, byte[] value, long expiresAt) {
+
+        boolean isTombstone() {
+            return value == null;
+        }
+
+        long estimatedBytes() {
+            return 2L * key.length() + (value == null ? 0 : value.length) + 48;
+        }
+    }
+
+    private static final class Memtable {
+        final long id;
+        final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+        final AtomicLong bytes = new AtomicLong();
+        FileOutputStream walFile;
+        DataOutputStream wal;
+
+        Memtable(long id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * Immutable view of the segments in every level
+     */
+    private record Version(List<List<Segment>> levels) {
+
+        Version withLevel(int level, List<Segment> segments) {
+            List<List<Segment>> copy = new ArrayList<>(levels);
+            while (copy.size() <= level) {
+                copy.add(List.of());
+            }
+            copy.set(level, List.copyOf(segments));
+            return new Version(List.copyOf(copy));
+        }
+
+        List<Segment> level(int level) {
+            return level < levels.size() ? levels.get(level) : List.of();
+        }
+
+        boolean populatedBelow(int level) {
+            for (int i = level + 1; i < levels.size(); i++) {
+                if (!levels.get(i).isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private record CompactionJob(int level, List<Segment> inputs, List<Segment> overlapping) {
+    }
+
+    private final Path directory;
+    private final Options options;
+    private final FileChannel lockChannel;
+    private final Object writeLock = new Object();
+    private final AtomicLong nextFileId = new AtomicLong();
+    private final ExecutorService flusher;
+    private final ExecutorService compactor;
+    private final Set<Integer> busyLevels = new HashSet<>();
+    private final List<String> compactionPointers = new ArrayList<>();
+    private final LongAdder bloomSkips = new LongAdder();
+    private final LongAdder segmentReads = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private final LongAdder logCommits = new LongAdder();
+
+    // Group commit: sequence numbers of records appended to and flushed to the log
+    private final Object commitLock = new Object();
+    private long appendedSequence;
+    private long durableSequence;
+    private boolean committing;
+
+    // Lookups in progress; segments are only unmapped once none are left
+    private final AtomicInteger activeReaders = new AtomicInteger();
+    private volatile IOException flushFailure;
+
+    // Read in this order by lookups: memtable, immutables, version
+    private volatile Memtable memtable;
+    private volatile List<Memtable> immutables = List.of();
+    private volatile Version version = new Version(List.of());
+    private long flushedWalId;
+    private volatile boolean closed;
+
+    public LsmKVBackend(Path directory) throws IOException {
+        this(directory, Options.defaults());
+    }
+
+    public LsmKVBackend(Path directory, Options options) throws IOException {
+        this.directory = directory;
+        this.options = options;
+        Files.createDirectories(directory);
+        this.lockChannel = lock(directory);
+        this.flusher = Executors.newSingleThreadExecutor(daemon("lsm-flush"));
+        this.compactor = Executors.newFixedThreadPool(options.compactionThreads(), daemon("lsm-compaction"));
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            flusher.shutdownNow();
+            compactor.shutdownNow();
+            lockChannel.close();
+            throw e;
+        }
+        scheduleCompactions();
+    }
+
+    /**
+     * Takes the directory's lock, which is released when the returned channel is closed
+     */
+    private static FileChannel lock(Path directory) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(LOCK), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by another backend in this JVM
+            lock = null;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException("KV directory " + directory + " is already open in another backend");
+        }
+        return channel;
+    }
+
+    // Key helpers shared with InMemoryKVBackend
+
+    static String internalKey(String namespaceId, String key) {
+        return namespaceId + NAMESPACE_SEPARATOR + key;
+    }
+
+    static long expiresAt(long expirationTtl) {
+        return expirationTtl > 0 ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(expirationTtl) : 0;
+    }
+
+    static boolean isExpired(long expiresAt, long now) {
+        return expiresAt != 0 && expiresAt <= now;
+    }
+
+    @Override
+    public byte[] get(String namespaceId, String key) throws IOException {
+        try (Tracer.Span span = Tracer.global().startSpan("kv.lsm.get")) {
+            span.setAttribute("kv.namespace", namespaceId);
+            enterRead();
+            try {
+                Entry entry = find(internalKey(namespaceId, key));
+                if (entry == null || entry.isTombstone()
+                        || isExpired(entry.expiresAt(), System.currentTimeMillis())) {
+                    return null;
+                }
+                return entry.value();
+            } finally {
+                activeReaders.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void put(String namespaceId, String key, byte[] value, long expirationTtl) throws IOException {
+        try (Tracer.Span span = Tracer.global().startSpan("kv.lsm.put")) {
+            span.setAttribute("kv.namespace", namespaceId);
+            write(new Entry(internalKey(namespaceId, key), value, expiresAt(expirationTtl)));
+        }
+    }
+
+    @Override
+    public void delete(String namespaceId, String key) throws IOException {
+        try (Tracer.Span span = Tracer.global().startSpan("kv.lsm.delete")) {
+            span.setAttribute("kv.namespace", namespaceId);
+            write(new Entry(internalKey(namespaceId, key), null, 0));
+        }
+    }
+
+    @Override
+    public List<String> list(String namespaceId, String prefix, int limit) throws IOException {
+        try (Tracer.Span span = Tracer.global().startSpan("kv.lsm.list")) {
+            span.setAttribute("kv.namespace", namespaceId);
+            enterRead();
+            try {
+                String start = internalKey(namespaceId, prefix);
+                int keyOffset = namespaceId.length() + 1;
+                long now = System.currentTimeMillis();
+                List<String> keys = new ArrayList<>();
+                Iterator<Entry> merged = new MergingIterator(sources(start));
+                while (keys.size() < limit && merged.hasNext()) {
+                    Entry entry = merged.next();
+                    if (!entry.key().startsWith(start)) {
+                        break;
+                    }
+                    if (!entry.isTombstone() && !isExpired(entry.expiresAt(), now)) {
+                        keys.add(entry.key().substring(keyOffset));
+                    }
+                }
+                return keys;
+            } finally {
+                activeReaders.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Registers a lookup, which then has to decrement {@code activeReaders}
+     * when done. Checking {@code closed} after registering pairs with
+     * {@link #close} setting it before waiting for readers, so a lookup either
+     * fails or is waited for.
+     */
+    private void enterRead() throws IOException {
+        activeReaders.incrementAndGet();
+        if (closed) {
+            activeReaders.decrementAndGet();
+            throw new IOException("KV backend is closed");
+        }
+    }
+
+    public Stats stats() {
+        Version current = version;
+        List<LevelStats> levels = new ArrayList<>();
+        for (int level = 0; level < current.levels().size(); level++) {
+            List<Segment> segments = current.level(level);
+            levels.add(new LevelStats(level, segments.size(), totalBytes(segments)));
+        }
+        return new Stats(memtable.bytes.get(), immutables.size(), levels,
+                bloomSkips.sum(), segmentReads.sum(), flushes.sum(), flushFailures.sum(), compactions.sum(),
+                logCommits.sum());
+    }
+
+    /**
+     * Flushes every memtable to a segment and waits until the flush is done
+     *
+     * @throws IOException if flushes are failing; they keep being retried
+     */
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            if (!memtable.entries.isEmpty()) {
+                rotate();
+            }
+        }
+        Future<?> flushed;
+        try {
+            flushed = flusher.submit(() -> {
+            });
+        } catch (RejectedExecutionException e) {
+            throw new IOException("KV backend is closed", e);
+        }
+        while (true) {
+            try {
+                flushed.get(100, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                IOException failure = flushFailure;
+                if (failure != null) {
+                    throw new IOException("Flush failed: " + failure.getMessage(), failure);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a flush", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Flush failed", e);
+            }
+        }
+    }
+
+    /**
+     * Closes the log, waits for pending flushes and compactions and for
+     * lookups in progress, then unmaps the segments and releases the
+     * directory lock. Lookups and writes made afterwards fail.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            memtable.wal.close();
+            writeLock.notifyAll();
+        }
+        flusher.shutdown();
+        compactor.shutdown();
+        boolean stopped = false;
+        try {
+            stopped = flusher.awaitTermination(1, TimeUnit.MINUTES)
+                    && compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        while (activeReaders.get() > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        if (stopped) {
+            // Segments only an older version still refers to are unmapped when collected
+            for (List<Segment> level : version.levels()) {
+                for (Segment segment : level) {
+                    segment.unmap();
+                }
+            }
+        }
+        lockChannel.close();
+    }
+
+    // Write path
+
+    private void write(Entry entry) throws IOException {
+        long sequence;
+        synchronized (writeLock) {
+            while (true) {
+                if (closed) {
+                    throw new IOException("KV backend is closed");
+                }
+                if (immutables.size() < MAX_IMMUTABLE_MEMTABLES) {
+                    break;
+                }
+                // Flushing has fallen behind; stall writers rather than grow without bound,
+                // unless flushes are failing and waiting could take forever
+                IOException failure = flushFailure;
+                if (failure != null) {
+                    throw new IOException("KV memtable flushes are failing: " + failure.getMessage(), failure);
+                }
+                try {
+                    writeLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for a memtable flush", e);
+                }
+            }
+            Memtable current = memtable;
+            writeRecord(current.wal, entry);
+            sequence = ++appendedSequence;
+            Entry previous = current.entries.put(entry.key(), entry);
+            long delta = entry.estimatedBytes() - (previous == null ? 0 : previous.estimatedBytes());
+            if (current.bytes.addAndGet(delta) >= options.memtableBytes()) {
+                rotate();
+            }
+        }
+        commit(sequence);
+    }
+
+    /**
+     * Waits until the log record with the given sequence number is in the
+     * log file. The first writer to find no commit in progress flushes every
+     * record appended so far, and writers whose records it covered return
+     * without flushing themselves.
+     */
+    private void commit(long sequence) throws IOException {
+        synchronized (commitLock) {
+            while (committing && durableSequence < sequence) {
+                try {
+                    commitLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while committing a KV write", e);
+                }
+            }
+            if (durableSequence >= sequence) {
+                return;
+            }
+            committing = true;
+        }
+
+        long covered = sequence;
+        boolean committed = false;
+        try {
+            Memtable table;
+            synchronized (writeLock) {
+                table = memtable;
+                covered = appendedSequence;
+                table.wal.flush();
+            }
+            if (options.syncWrites()) {
+                try {
+                    table.walFile.getFD().sync();
+                } catch (SyncFailedException e) {
+                    // A rotation closed the log meanwhile, after syncing it
+                    if (table == memtable) {
+                        throw e;
+                    }
+                }
+            }
+            logCommits.increment();
+            committed = true;
+        } finally {
+            synchronized (commitLock) {
+                committing = false;
+                if (committed) {
+                    durableSequence = Math.max(durableSequence, covered);
+                }
+                commitLock.notifyAll();
+            }
+        }
+    }
+
+    private Memtable newMemtable() throws IOException {
+        Memtable table = new Memtable(nextFileId.getAndIncrement());
+        table.walFile = new FileOutputStream(walPath(table.id).toFile(), true);
+        table.wal = new DataOutputStream(new BufferedOutputStream(table.walFile, 64 * 1024));
+        return table;
+    }
+
+    /**
+     * Freezes the current memtable and hands it to the flush thread.
+     * Called with the write lock held.
+     */
+    private void rotate() throws IOException {
+        Memtable frozen = memtable;
+        frozen.wal.flush();
+        if (options.syncWrites()) {
+            frozen.walFile.getFD().sync();
+        }
+        frozen.wal.close();
+        List<Memtable> withFrozen = new ArrayList<>(immutables.size() + 1);
+        withFrozen.add(frozen);
+        withFrozen.addAll(immutables);
+        // Publish the frozen table before replacing it so that readers never miss it
+        immutables = List.copyOf(withFrozen);
+        memtable = newMemtable();
+        flusher.execute(() -> flush(frozen));
+    }
+
+    /**
+     * Writes a frozen memtable to level 0, retrying with backoff until it
+     * succeeds or the backend is closed. Until then the memtable stays
+     * readable, and its log stays on disk to be replayed on the next open.
+     */
+    private void flush(Memtable frozen) {
+        long backoffMillis = 10;
+        while (true) {
+            try {
+                flushOnce(frozen);
+                break;
+            } catch (IOException | UncheckedIOException e) {
+                flushFailures.increment();
+                synchronized (writeLock) {
+                    flushFailure = e instanceof UncheckedIOException unchecked
+                            ? unchecked.getCause()
+                            : (IOException) e;
+                    writeLock.notifyAll();
+                }
+                System.err.println("KV memtable flush failed: " + e.getMessage());
+                if (closed) {
+                    return;
+                }
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoffMillis = Math.min(backoffMillis * 2, MAX_FLUSH_BACKOFF_MILLIS);
+            }
+        }
+        synchronized (writeLock) {
+            List<Memtable> remaining = new ArrayList<>(immutables);
+            remaining.remove(frozen);
+            immutables = List.copyOf(remaining);
+            flushFailure = null;
+            writeLock.notifyAll();
+        }
+        flushes.increment();
+        try {
+            Files.deleteIfExists(walPath(frozen.id));
+        } catch (IOException e) {
+            // Only the next open can remove it, once the manifest shows it flushed
+            System.err.println("Could not delete flushed KV log: " + e.getMessage());
+        }
+        scheduleCompactions();
+    }
+
+    private void flushOnce(Memtable frozen) throws IOException {
+        List<Segment> written = writeSegments(frozen.entries.values().iterator(), -1);
+        synchronized (this) {
+            List<Segment> level0 = new ArrayList<>(written);
+            level0.addAll(version.level(0));
+            Version next = version.withLevel(0, level0);
+            try {
+                writeManifest(next, frozen.id);
+            } catch (IOException e) {
+                discard(written);
+                throw e;
+            }
+            version = next;
+            flushedWalId = frozen.id;
+        }
+    }
+
+    // Read path
+
+    private Entry find(String key) {
+        Entry entry = memtable.entries.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        for (Memtable table : immutables) {
+            entry = table.entries.get(key);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        Version current = version;
+        for (Segment segment : current.level(0)) {
+            entry = segment.get(key);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        for (int level = 1; level < current.levels().size(); level++) {
+            Segment segment = covering(current.level(level), key);
+            if (segment != null) {
+                entry = segment.get(key);
+                if (entry != null) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the segment of a non-overlapping level whose key range contains the key
+     */
+    private static Segment covering(List<Segment> segments, String key) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Segment segment = segments.get(mid);
+            if (segment.maxKey.compareTo(key) < 0) {
+                low = mid + 1;
+            } else if (segment.minKey.compareTo(key) > 0) {
+                high = mid - 1;
+            } else {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * All sources positioned at the start key, newest first
+     */
+    private List<Iterator<Entry>> sources(String start) {
+        List<Iterator<Entry>> sources = new ArrayList<>();
+        sources.add(memtable.entries.tailMap(start).values().iterator());
+        for (Memtable table : immutables) {
+            sources.add(table.entries.tailMap(start).values().iterator());
+        }
+        Version current = version;
+        for (Segment segment : current.level(0)) {
+            sources.add(segment.iterator(start));
+        }
+        for (int level = 1; level < current.levels().size(); level++) {
+            sources.add(levelIterator(current.level(level), start));
+        }
+        return sources;
+    }
+
+    /**
+     * Iterates a non-overlapping level as one sorted source
+     */
+    private static Iterator<Entry> levelIterator(List<Segment> segments, String start) {
+        Iterator<Segment> remaining = segments.iterator();
+        return new Iterator<>() {
+            private Iterator<Entry> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && remaining.hasNext()) {
+                    Segment segment = remaining.next();
+                    if (segment.maxKey.compareTo(start) >= 0) {
+                        current = segment.iterator(start);
+                    }
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * Merges sorted sources, keeping only the version from the source listed
+     * first when a key appears in several
+     */
+    static final class MergingIterator implements Iterator<Entry> {
+        private record Head(Entry entry, int source, Iterator<Entry> rest) {
+        }
+
+        private final PriorityQueue<Head> heads = new PriorityQueue<>(
+                Comparator.comparing((Head head) -> head.entry().key()).thenComparingInt(Head::source));
+
+        MergingIterator(List<Iterator<Entry>> sources) {
+            for (int i = 0; i < sources.size(); i++) {
+                advance(i, sources.get(i));
+            }
+        }
+
+        private void advance(int source, Iterator<Entry> iterator) {
+            if (iterator.hasNext()) {
+                heads.add(new Head(iterator.next(), source, iterator));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Entry next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            advance(head.source(), head.rest());
+            while (!heads.isEmpty() && heads.peek().entry().key().equals(head.entry().key())) {
+                Head shadowed = heads.poll();
+                advance(shadowed.source(), shadowed.rest());
+            }
+            return head.entry();
+        }
+    }
+
+    // Compaction
+
+    private void scheduleCompactions() {
+        List<CompactionJob> jobs = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            CompactionJob job;
+            while ((job = pickCompaction()) != null) {
+                busyLevels.add(job.level());
+                busyLevels.add(job.level() + 1);
+                jobs.add(job);
+            }
+        }
+        for (CompactionJob job : jobs) {
+            try {
+                compactor.execute(() -> compact(job));
+            } catch (RejectedExecutionException e) {
+                // Closed meanwhile; the levels stay as they are until the next open
+                synchronized (this) {
+                    busyLevels.remove(job.level());
+                    busyLevels.remove(job.level() + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the next compaction whose levels are idle. Called with the
+     * monitor held.
+     */
+    private CompactionJob pickCompaction() {
+        Version current = version;
+        List<Segment> level0 = current.level(0);
+        if (level0.size() >= options.level0Segments() && idle(0)) {
+            return new CompactionJob(0, level0, overlapping(current.level(1), level0));
+        }
+
+        long limit = options.level1Bytes();
+        for (int level = 1; level < current.levels().size(); level++, limit *= options.levelMultiplier()) {
+            List<Segment> segments = current.level(level);
+            if (totalBytes(segments) <= limit || !idle(level)) {
+                continue;
+            }
+            // Rotate through the key space so that every segment is eventually pushed down
+            while (compactionPointers.size() <= level) {
+                compactionPointers.add("");
+            }
+            String pointer = compactionPointers.get(level);
+            Segment input = segments.stream()
+                    .filter(segment -> segment.minKey.compareTo(pointer) > 0)
+                    .findFirst()
+                    .orElse(segments.get(0));
+            compactionPointers.set(level, input.maxKey);
+            return new CompactionJob(level, List.of(input), overlapping(current.level(level + 1), List.of(input)));
+        }
+        return null;
+    }
+
+    private boolean idle(int level) {
+        return !busyLevels.contains(level) && !busyLevels.contains(level + 1);
+    }
+
+    private static List<Segment> overlapping(List<Segment> level, List<Segment> inputs) {
+        String min = null;
+        String max = null;
+        for (Segment input : inputs) {
+            min = min == null || input.minKey.compareTo(min) < 0 ? input.minKey : min;
+            max = max == null || input.maxKey.compareTo(max) > 0 ? input.maxKey : max;
+        }
+        List<Segment> result = new ArrayList<>();
+        for (Segment segment : level) {
+            if (segment.maxKey.compareTo(min) >= 0 && segment.minKey.compareTo(max) <= 0) {
+                result.add(segment);
+            }
+        }
+        return result;
+    }
+
+    private void compact(CompactionJob job) {
+        int target = job.level() + 1;
+        try {
+            List<Segment> written;
+            if (job.level() > 0 && job.overlapping().isEmpty()) {
+                // Nothing to merge with: move the segment down without rewriting it
+                written = job.inputs();
+            } else {
+                boolean bottom;
+                synchronized (this) {
+                    bottom = !version.populatedBelow(target);
+                }
+                List<Iterator<Entry>> sources = new ArrayList<>();
+                for (Segment input : job.inputs()) {
+                    sources.add(input.iterator(""));
+                }
+                sources.add(levelIterator(job.overlapping(), ""));
+                written = writeSegments(new MergingIterator(sources), bottom ? System.currentTimeMillis() : -1);
+            }
+
+            List<Segment> obsolete = new ArrayList<>(job.inputs());
+            obsolete.addAll(job.overlapping());
+            obsolete.removeAll(written);
+            synchronized (this) {
+                List<Segment> source = new ArrayList<>(version.level(job.level()));
+                source.removeAll(job.inputs());
+                List<Segment> destination = new ArrayList<>(version.level(target));
+                destination.removeAll(job.overlapping());
+                destination.addAll(written);
+                destination.sort(Comparator.comparing(segment -> segment.minKey));
+                Version next = version.withLevel(job.level(), source).withLevel(target, destination);
+                try {
+                    writeManifest(next, flushedWalId);
+                } catch (IOException e) {
+                    if (written != job.inputs()) {
+                        discard(written);
+                    }
+                    throw e;
+                }
+                version = next;
+            }
+            for (Segment segment : obsolete) {
+                // Readers holding an older version keep their mapping after the file is unlinked
+                Files.deleteIfExists(segment.path);
+            }
+            compactions.increment();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("KV compaction of level " + job.level() + " failed: " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                busyLevels.remove(job.level());
+                busyLevels.remove(target);
+            }
+        }
+        scheduleCompactions();
+    }
+
+    /**
+     * Writes sorted entries into segments of at most {@code segmentBytes}.
+     *
+     * @param dropBefore when non-negative, tombstones and values expired at
+     *                   this time are discarded instead of written
+     */
+    private List<Segment> writeSegments(Iterator<Entry> entries, long dropBefore) throws IOException {
+        List<Segment> written = new ArrayList<>();
+        SegmentWriter writer = null;
+        try {
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                if (dropBefore >= 0 && (entry.isTombstone() || isExpired(entry.expiresAt(), dropBefore))) {
+                    continue;
+                }
+                if (writer == null) {
+                    writer = new SegmentWriter(segmentPath(nextFileId.getAndIncrement()));
+                }
+                writer.add(entry);
+                if (writer.dataBytes() >= options.segmentBytes()) {
+                    SegmentWriter finished = writer;
+                    writer = null;
+                    written.add(Segment.open(finished.finish(), this));
+                }
+            }
+            if (writer != null) {
+                SegmentWriter finished = writer;
+                writer = null;
+                written.add(Segment.open(finished.finish(), this));
+            }
+            return written;
+        } catch (IOException | UncheckedIOException e) {
+            if (writer != null) {
+                writer.abort();
+            }
+            discard(written);
+            throw e;
+        }
+    }
+
+    /**
+     * Unmaps and deletes segments that were never published in a version
+     */
+    private static void discard(List<Segment> segments) {
+        for (Segment segment : segments) {
+            segment.unmap();
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                // Deleted on the next open, as the manifest does not list it
+            }
+        }
+    }
+
+    // Segment files
+
+    /**
+     * Writes a segment file:
+     * entries, sparse index, last key, bloom filter, then a fixed-size footer
+     */
+    private static final class SegmentWriter {
+        private final Path path;
+        private final FileOutputStream file;
+        private final DataOutputStream out;
+        private final List<String> indexKeys = new ArrayList<>();
+        private final List<Long> indexOffsets = new ArrayList<>();
+        private long[] hashes = new long[1024];
+        private long offset;
+        private int count;
+        private String lastKey;
+
+        SegmentWriter(Path path) throws IOException {
+            this.path = path;
+            this.file = new FileOutputStream(path.toFile());
+            this.out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+        }
+
+        /**
+         * Closes and deletes an unfinished segment
+         */
+        void abort() {
+            try {
+                file.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // Deleted on the next open, as the manifest does not list it
+            }
+        }
+
+        void add(Entry entry) throws IOException {
+            if (count % INDEX_INTERVAL == 0) {
+                indexKeys.add(entry.key());
+                indexOffsets.add(offset);
+            }
+            if (count == hashes.length) {
+                hashes = Arrays.copyOf(hashes, count * 2);
+            }
+            hashes[count++] = hash(entry.key());
+            lastKey = entry.key();
+            offset += writeRecord(out, entry);
+        }
+
+        long dataBytes() {
+            return offset;
+        }
+
+        Path finish() throws IOException {
+            long indexOffset = offset;
+            out.writeInt(indexKeys.size());
+            for (int i = 0; i < indexKeys.size(); i++) {
+                writeString(out, indexKeys.get(i));
+                out.writeLong(indexOffsets.get(i));
+            }
+            writeString(out, lastKey);
+
+            long bloomOffset = out.size();
+            long[] bloom = BloomFilter.build(Arrays.copyOf(hashes, count));
+            out.writeInt(bloom.length);
+            for (long word : bloom) {
+                out.writeLong(word);
+            }
+            out.writeLong(indexOffset);
+            out.writeLong(bloomOffset);
+            out.writeLong(count);
+            out.writeInt(SEGMENT_MAGIC);
+            out.flush();
+            file.getFD().sync();
+            out.close();
+            return path;
+        }
+    }
+
+    /**
+     * Read-only, memory-mapped segment. The sparse index and bloom filter are
+     * copied to the heap on open; entry data is read from the mapping on demand.
+     */
+    static final class Segment {
+        final Path path;
+        final long bytes;
+        final String minKey;
+        final String maxKey;
+        private final MappedByteBuffer data;
+        private final int dataEnd;
+        private final String[] indexKeys;
+        private final int[] indexOffsets;
+        private final long[] bloom;
+        private final LsmKVBackend owner;
+
+        private Segment(LsmKVBackend owner, Path path, MappedByteBuffer data, int dataEnd, String[] indexKeys, int[] indexOffsets,
+                String maxKey, long[] bloom) {
+            this.owner = owner;
+            this.path = path;
+            this.bytes = data.capacity();
+            this.data = data;
+            this.dataEnd = dataEnd;
+            this.indexKeys = indexKeys;
+            this.indexOffsets = indexOffsets;
+            this.minKey = indexKeys[0];
+            this.maxKey = maxKey;
+            this.bloom = bloom;
+        }
+
+        static Segment open(Path path, LsmKVBackend owner) throws IOException {
+            MappedByteBuffer data;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            int footer = data.capacity() - FOOTER_BYTES;
+            if (footer < 0 || data.getInt(footer + 24) != SEGMENT_MAGIC) {
+                throw new IOException("Corrupt KV segment " + path);
+            }
+            int indexOffset = (int) data.getLong(footer);
+            int bloomOffset = (int) data.getLong(footer + 8);
+
+            int position = indexOffset;
+            int indexCount = data.getInt(position);
+            position += 4;
+            String[] indexKeys = new String[indexCount];
+            int[] indexOffsets = new int[indexCount];
+            for (int i = 0; i < indexCount; i++) {
+                int length = data.getInt(position);
+                indexKeys[i] = readString(data, position + 4, length);
+                position += 4 + length;
+                indexOffsets[i] = (int) data.getLong(position);
+                position += 8;
+            }
+            String maxKey = readString(data, position + 4, data.getInt(position));
+
+            long[] bloom = new long[data.getInt(bloomOffset)];
+            for (int i = 0; i < bloom.length; i++) {
+                bloom[i] = data.getLong(bloomOffset + 4 + 8 * i);
+            }
+            return new Segment(owner, path, data, indexOffset, indexKeys, indexOffsets, maxKey, bloom);
+        }
+
+        long id() {
+            String name = path.getFileName().toString();
+            return Long.parseLong(name.substring(4, name.length() - 4));
+        }
+
+        /**
+         * Releases the mapping now instead of when the buffer is collected.
+         * Reading the segment afterwards would crash the JVM, so this is only
+         * called once nothing can read it any more.
+         */
+        void unmap() {
+            if (INVOKE_CLEANER == null) {
+                return;
+            }
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, data);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Left to the garbage collector
+            }
+        }
+
+        Entry get(String key) {
+            if (key.compareTo(minKey) < 0 || key.compareTo(maxKey) > 0) {
+                return null;
+            }
+            if (!BloomFilter.mightContain(bloom, hash(key))) {
+                owner.bloomSkips.increment();
+                return null;
+            }
+            owner.segmentReads.increment();
+            int position = indexOffsets[floorIndex(key)];
+            while (position < dataEnd) {
+                int keyLength = data.getInt(position);
+                String candidate = readString(data, position + 4, keyLength);
+                int comparison = candidate.compareTo(key);
+                if (comparison > 0) {
+                    return null;
+                }
+                if (comparison == 0) {
+                    return readEntry(position).entry;
+                }
+                position = skipEntry(position, keyLength);
+            }
+            return null;
+        }
+
+        Iterator<Entry> iterator(String start) {
+            int from = start.compareTo(minKey) <= 0 ? 0 : indexOffsets[floorIndex(start)];
+            return new Iterator<>() {
+                private int position = from;
+                private Entry next = advance();
+
+                private Entry advance() {
+                    while (position < dataEnd) {
+                        Positioned read = readEntry(position);
+                        position = read.next;
+                        if (read.entry.key().compareTo(start) >= 0) {
+                            return read.entry;
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Entry next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Entry current = next;
+                    next = advance();
+                    return current;
+                }
+            };
+        }
+
+        private int floorIndex(String key) {
+            int index = Arrays.binarySearch(indexKeys, key);
+            return index >= 0 ? index : Math.max(0, -index - 2);
+        }
+
+        private record Positioned(Entry entry, int next) {
+        }
+
+        private Positioned readEntry(int position) {
+            int keyLength = data.getInt(position);
+            String key = readString(data, position + 4, keyLength);
+            position += 4 + keyLength;
+            long expiresAt = data.getLong(position);
+            int valueLength = data.getInt(position + 8);
+            position += 12;
+            byte[] value = null;
+            if (valueLength >= 0) {
+                value = new byte[valueLength];
+                data.get(position, value);
+                position += valueLength;
+            }
+            return new Positioned(new Entry(key, value, expiresAt), position);
+        }
+
+        private int skipEntry(int position, int keyLength) {
+            int valueAt = position + 4 + keyLength + 8;
+            int valueLength = data.getInt(valueAt);
+            return valueAt + 4 + Math.max(0, valueLength);
+        }
+    }
+
+    // sun.misc.Unsafe.invokeCleaner, the only way to unmap a buffer before it is
+    // collected; looked up reflectively as the class is not part of the Java API
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Mappings are released by the garbage collector
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    /**
+     * Bloom filter over 64-bit key hashes using double hashing
+     */
+    static final class BloomFilter {
+
+        static long[] build(long[] hashes) {
+            long bits = Math.max(64, (long) hashes.length * BLOOM_BITS_PER_KEY);
+            long[] words = new long[(int) ((bits + 63) / 64)];
+            for (long hash : hashes) {
+                int h1 = (int) hash;
+                int h2 = (int) (hash >>> 32);
+                for (int i = 0; i < BLOOM_HASHES; i++) {
+                    long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % (words.length * 64L);
+                    words[(int) (bit >>> 6)] |= 1L << bit;
+                }
+            }
+            return words;
+        }
+
+        static boolean mightContain(long[] words, long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % (words.length * 64L);
+                if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units, finished with a murmur mix
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    // Record encoding shared by write-ahead logs and segments
+
+    private static int writeRecord(DataOutputStream out, Entry entry) throws IOException {
+        int keyBytes = writeString(out, entry.key());
+        out.writeLong(entry.expiresAt());
+        if (entry.value() == null) {
+            out.writeInt(-1);
+            return keyBytes + 12;
+        }
+        out.writeInt(entry.value().length);
+        out.write(entry.value());
+        return keyBytes + 12 + entry.value().length;
+    }
+
+    private static Entry readRecord(DataInputStream in) throws IOException {
+        byte[] key = new byte[in.readInt()];
+        in.readFully(key);
+        long expiresAt = in.readLong();
+        int valueLength = in.readInt();
+        byte[] value = null;
+        if (valueLength >= 0) {
+            value = new byte[valueLength];
+            in.readFully(value);
+        }
+        return new Entry(new String(key, StandardCharsets.UTF_8), value, expiresAt);
+    }
+
+    private static int writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        return 4 + bytes.length;
+    }
+
+    private static String readString(MappedByteBuffer data, int position, int length) {
+        byte[] bytes = new byte[length];
+        data.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Manifest and recovery
+
+    private Path walPath(long id) {
+        return directory.resolve(String.format("wal-%019d.log", id));
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("seg-%019d.sst", id));
+    }
+
+    /**
+     * Atomically replaces the manifest with one recording the given version.
+     * Called with the monitor held, before the version is published.
+     */
+    private void writeManifest(Version current, long flushedWalId) throws IOException {
+        StringBuilder manifest = new StringBuilder();
+        manifest.append("flushed ").append(flushedWalId).append('\n');
+        for (int level = 0; level < current.levels().size(); level++) {
+            for (Segment segment : current.level(level)) {
+                manifest.append(level).append(' ').append(segment.path.getFileName()).append('\n');
+            }
+        }
+        Path temporary = directory.resolve(MANIFEST + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(StandardCharsets.UTF_8.encode(manifest.toString()));
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void recover() throws IOException {
+        flushedWalId = -1;
+        List<List<Segment>> levels = new ArrayList<>();
+        Set<Path> live = new HashSet<>();
+        long maxId = -1;
+
+        Path manifest = directory.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                String[] parts = line.split(" ");
+                if (parts[0].equals("flushed")) {
+                    flushedWalId = Long.parseLong(parts[1]);
+                    continue;
+                }
+                int level = Integer.parseInt(parts[0]);
+                while (levels.size() <= level) {
+                    levels.add(new ArrayList<>());
+                }
+                Segment segment = Segment.open(directory.resolve(parts[1]), this);
+                levels.get(level).add(segment);
+                live.add(segment.path);
+                maxId = Math.max(maxId, segment.id());
+            }
+        }
+        for (int level = 0; level < levels.size(); level++) {
+            levels.get(level).sort(level == 0
+                    ? Comparator.comparingLong(Segment::id).reversed()
+                    : Comparator.comparing(segment -> segment.minKey));
+        }
+        List<List<Segment>> frozen = new ArrayList<>();
+        for (List<Segment> level : levels) {
+            frozen.add(List.copyOf(level));
+        }
+        version = new Version(List.copyOf(frozen));
+
+        List<Path> wals = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith("seg-") && !live.contains(file)) {
+                    // Output of a flush or compaction that never made it into the manifest
+                    Files.delete(file);
+                } else if (name.startsWith("wal-")) {
+                    long id = Long.parseLong(name.substring(4, name.length() - 4));
+                    maxId = Math.max(maxId, id);
+                    if (id <= flushedWalId) {
+                        Files.delete(file);
+                    } else {
+                        wals.add(file);
+                    }
+                }
+            }
+        }
+        nextFileId.set(Math.max(maxId, flushedWalId) + 1);
+
+        Collections.sort(wals);
+        memtable = newMemtable();
+        for (Path wal : wals) {
+            replay(wal);
+        }
+        if (!wals.isEmpty()) {
+            // The replayed data now lives in the new log's memtable; flush it so the old logs can go
+            synchronized (writeLock) {
+                for (Entry entry : memtable.entries.values()) {
+                    writeRecord(memtable.wal, entry);
+                }
+                memtable.wal.flush();
+                memtable.walFile.getFD().sync();
+            }
+            for (Path wal : wals) {
+                Files.delete(wal);
+            }
+        }
+    }
+
+    private void replay(Path wal) throws IOException {
+        try (InputStream file = Files.newInputStream(wal);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(file, 64 * 1024))) {
+            while (true) {
+                Entry entry = readRecord(in);
+                Entry previous = memtable.entries.put(entry.key(), entry);
+                memtable.bytes.addAndGet(entry.estimatedBytes() - (previous == null ? 0 : previous.estimatedBytes()));
+            }
+        } catch (EOFException e) {
+            // A torn record at the end of the log was never acknowledged
+        }
+    }
+
+    private static long totalBytes(List<Segment> segments) {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.bytes;
+        }
+        return total;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,5 +1,8 @@
 package mcpTools;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * Represents a parameter definition from the MCP schema
  */
@@ -68,12 +71,3 @@ public class MCPParameter {
 
     // Getters
 }
-
-/**
- * Exception thrown when parameter validation fails
- */
-public class ParameterValidationException extends Exception {
-    public ParameterValidationException(String message) {
-        super(message);
-    }
-}
\ No newline at end of file
@@ -1,5 +1,7 @@
 package mcpTools;
 
+import java.util.Map;
+
 /**
  * Interface representing a tool defined in the MCP schema
  */
@@ -22,33 +24,3 @@ public interface MCPTool {
      */
     ToolResult execute(Map<String, Object> params) throws ToolExecutionException;
 }
-
-/**
- * Represents the result of a tool execution
- */
-public class ToolResult {
-    private final boolean success;
-    private final Object data;
-    private final String message;
-
-    public ToolResult(boolean success, Object data, String message) {
-        this.success = success;
-        this.data = data;
-        this.message = message;
-    }
-
-    // Getters and utility methods
-}
-
-/**
- * Exception thrown when tool execution fails
- */
-public class ToolExecutionException extends Exception {
-    public ToolExecutionException(String message) {
-        super(message);
-    }
-
-    public ToolExecutionException(String message, Throwable cause) {
-        super(message, cause);
-    }
-}
\ No newline at end of file
@@ -0,0 +1,143 @@
+package mcpTools;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * State of one client session of a networked transport such as {@link HttpMcpServer}.
+ *
+ * Tools that keep state between calls, such as memory_* and context_manager,
+ * name it through {@link #scope}. Inside a session the name is prefixed with
+ * the session id, so clients sharing the server cannot see or clobber each
+ * other's memories and contexts, and the state is released when the session
+ * ends. Outside a session, as with the stdio transports and the CLI runners,
+ * names are used as given.
+ *
+ * The current session is inherited by threads started while it is current,
+ * so the elements of a batch request run in the session of the batch.
+ */
+public final class McpSession {
+
+    private static final InheritableThreadLocal<McpSession> CURRENT = new InheritableThreadLocal<>();
+
+    private final String id = UUID.randomUUID().toString();
+    private final long memoryBudget;
+    private final Map<String, Runnable> releases = new LinkedHashMap<>();
+    private volatile long lastActiveNanos = System.nanoTime();
+    private boolean closed;
+
+    public McpSession() {
+        this(0);
+    }
+
+    /**
+     * @param memoryBudget bytes each memory namespace of the session may use,
+     *                     or 0 for the memory store's default
+     */
+    public McpSession(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Returns the session of the calling thread, or null outside a session
+     */
+    public static McpSession current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs a call with this session current
+     */
+    public <T> T call(Supplier<T> call) {
+        McpSession previous = CURRENT.get();
+        CURRENT.set(this);
+        touch();
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Returns the name under which the current session keeps a piece of state
+     *
+     * @param release run with the scoped name when the session ends, or null
+     *                if this call does not create state
+     */
+    public static String scope(String name, Consumer<String> release) {
+        McpSession session = CURRENT.get();
+        if (session == null) {
+            return name;
+        }
+        String scoped = session.id + "/" + name;
+        if (release != null) {
+            synchronized (session) {
+                if (!session.closed) {
+                    session.releases.putIfAbsent(scoped, () -> release.accept(scoped));
+                }
+            }
+        }
+        return scoped;
+    }
+
+    /**
+     * Returns the name a scoped name was given in the current session, or null
+     * if it belongs to another session. Outside a session names are returned as is.
+     */
+    public static String unscope(String scoped) {
+        McpSession session = CURRENT.get();
+        if (session == null) {
+            return scoped;
+        }
+        String prefix = session.id + "/";
+        return scoped.startsWith(prefix) ? scoped.substring(prefix.length()) : null;
+    }
+
+    public void touch() {
+        lastActiveNanos = System.nanoTime();
+    }
+
+    public long idleNanos() {
+        return System.nanoTime() - lastActiveNanos;
+    }
+
+    /**
+     * Ends the session and releases its state. Closing twice has no effect.
+     */
+    public void close() {
+        List<Runnable> pending;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending = new ArrayList<>(releases.values());
+            releases.clear();
+        }
+        for (Runnable release : pending) {
+            try {
+                release.run();
+            } catch (RuntimeException e) {
+                System.err.println("Failed to release state of session " + id + ": " + e.getMessage());
+            }
+        }
+    }
+}
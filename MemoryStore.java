@@ -0,0 +1,628 @@
+package mcpTools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded store backing the memory_* tools.
+ *
+ * Every namespace has its own byte budget, and all namespaces together share
+ * a process-wide one. Entries are weighed by their
+ * approximate heap footprint, may carry a TTL, and are evicted with W-TinyLFU:
+ * new entries enter a small LRU window, and an entry leaving the window is
+ * only admitted to the main segmented LRU if it has been used more often than
+ * the entries it would displace. Usage is tracked by a count-min sketch that
+ * is halved periodically, so the store favours entries that are popular now
+ * rather than ever. A large entry must beat every victim it pushes out, so a
+ * one-off big value cannot flush many small, frequently used ones.
+ *
+ * When the namespaces together exceed the process-wide budget, the store
+ * evicts the next victim of whichever namespace's victim has been used least,
+ * the fuller namespace on a tie, so a busy namespace is not emptied to make
+ * room for one that is written once and never read.
+ *
+ * Values are held in the form produced by a {@link ValueCompressor} and
+ * weighed by that size, so namespaces of similar documents fit many more
+ * entries into their budget. Compression and decompression run outside the
+ * namespace lock.
+ */
+public class MemoryStore {
+
+    public static final String DEFAULT_NAMESPACE = "default";
+
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.8;
+
+    /**
+     * Counters and sizes of one namespace
+     */
+    public record Stats(long hits, long misses, long puts, long evictions, long evictedBytes, long expirations,
+            long rejections, int entries, long bytes, long budgetBytes) {
+
+        public double hitRatio() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+
+    private enum Queue {
+        WINDOW, PROBATION, PROTECTED
+    }
+
+    private static final class Node {
+        final String key;
+        byte[] value;
+        long weight;
+        long expiresAt;
+        Queue queue;
+        Node previous;
+        Node next;
+
+        Node(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Intrusive doubly-linked LRU list, least recently used at the head
+     */
+    private static final class AccessOrder {
+        private final Node sentinel = new Node(null);
+        long bytes;
+
+        AccessOrder() {
+            sentinel.previous = sentinel;
+            sentinel.next = sentinel;
+        }
+
+        Node head() {
+            return sentinel.next == sentinel ? null : sentinel.next;
+        }
+
+        Node after(Node node) {
+            return node.next == sentinel ? null : node.next;
+        }
+
+        void addLast(Node node) {
+            node.previous = sentinel.previous;
+            node.next = sentinel;
+            sentinel.previous.next = node;
+            sentinel.previous = node;
+            bytes += node.weight;
+        }
+
+        void remove(Node node) {
+            node.previous.next = node.next;
+            node.next.previous = node.previous;
+            node.previous = null;
+            node.next = null;
+            bytes -= node.weight;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, four per key, halved every
+     * {@code 10 * width} increments
+     */
+    private static final class FrequencySketch {
+        private long[] table = new long[16];
+        private int increments;
+
+        /**
+         * Widens the table for a larger number of entries. The counts of the
+         * resident keys are carried over, so entries that are popular keep
+         * winning admission; counts of keys not resident are dropped.
+         */
+        void ensureCapacity(int entries, Iterable<String> resident) {
+            int width = Integer.highestOneBit(Math.max(16, entries) * 2 - 1);
+            if (width <= table.length) {
+                return;
+            }
+            List<String> keys = new ArrayList<>(entries);
+            List<Integer> frequencies = new ArrayList<>(entries);
+            for (String key : resident) {
+                int frequency = frequency(key);
+                if (frequency > 0) {
+                    keys.add(key);
+                    frequencies.add(frequency);
+                }
+            }
+            table = new long[width];
+            for (int i = 0; i < keys.size(); i++) {
+                raise(keys.get(i), frequencies.get(i));
+            }
+        }
+
+        private void raise(String key, int frequency) {
+            int hash = spread(key.hashCode());
+            for (int i = 0; i < 4; i++) {
+                int index = index(hash, i);
+                int shift = shift(hash, i);
+                long count = (table[index] >>> shift) & 0xf;
+                if (count < frequency) {
+                    table[index] += (frequency - count) << shift;
+                }
+            }
+        }
+
+        int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                frequency = Math.min(frequency, (int) ((table[index(hash, i)] >>> shift(hash, i)) & 0xf));
+            }
+            return frequency;
+        }
+
+        void increment(String key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = index(hash, i);
+                int shift = shift(hash, i);
+                if (((table[index] >>> shift) & 0xf) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++increments >= 10 * table.length) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+                }
+                increments /= 2;
+            }
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * (0x9e3779b9 + 2 * row) + row;
+            return (h ^ (h >>> 16)) & (table.length - 1);
+        }
+
+        // Each row uses its own four of the sixteen counters in a word
+        private static int shift(int hash, int row) {
+            return (((hash >>> (row * 8)) & 3) + row * 4) << 2;
+        }
+
+        private static int spread(int hash) {
+            hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+            return (hash >>> 16) ^ hash;
+        }
+    }
+
+    private record Expiry(long expiresAt, Node node) {
+    }
+
+    /**
+     * One namespace's cache. All access is synchronized on the instance,
+     * since every read reorders the access lists.
+     */
+    private final class Namespace {
+        final Map<String, Node> data = new HashMap<>();
+        final AccessOrder window = new AccessOrder();
+        final AccessOrder probation = new AccessOrder();
+        final AccessOrder protectedOrder = new AccessOrder();
+        final FrequencySketch sketch = new FrequencySketch();
+        final PriorityQueue<Expiry> expiries = new PriorityQueue<>((a, b) -> Long.compare(a.expiresAt, b.expiresAt));
+        long budget;
+        long hits;
+        long misses;
+        long puts;
+        long evictions;
+        long evictedBytes;
+        long expirations;
+        long rejections;
+        boolean cleared;
+
+        Namespace(long budget) {
+            this.budget = budget;
+        }
+
+        long bytes() {
+            return window.bytes + probation.bytes + protectedOrder.bytes;
+        }
+
+        AccessOrder order(Queue queue) {
+            return switch (queue) {
+                case WINDOW -> window;
+                case PROBATION -> probation;
+                case PROTECTED -> protectedOrder;
+            };
+        }
+
+        byte[] get(String key, long now) {
+            expire(now);
+            Node node = data.get(key);
+            sketch.increment(key);
+            if (node == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            onAccess(node);
+            return node.value;
+        }
+
+        void put(String key, byte[] value, long expiresAt, long now) {
+            expire(now);
+            puts++;
+            long weight = weigh(key, value);
+            Node node = data.get(key);
+            if (weight > Math.min(budget, totalBudget)) {
+                // Could never fit; drop the old value too rather than serve a stale one
+                rejections++;
+                if (node != null) {
+                    remove(node);
+                }
+                return;
+            }
+            sketch.increment(key);
+            if (node != null) {
+                AccessOrder order = order(node.queue);
+                order.remove(node);
+                totalBytes.addAndGet(weight - node.weight);
+                node.value = value;
+                node.weight = weight;
+                order.addLast(node);
+                onAccess(node);
+            } else {
+                node = new Node(key);
+                node.value = value;
+                node.weight = weight;
+                node.queue = Queue.WINDOW;
+                data.put(key, node);
+                window.addLast(node);
+                totalBytes.addAndGet(weight);
+                sketch.ensureCapacity(data.size(), data.keySet());
+            }
+            node.expiresAt = expiresAt;
+            if (expiresAt != 0) {
+                expiries.add(new Expiry(expiresAt, node));
+            }
+            evict();
+        }
+
+        boolean delete(String key) {
+            Node node = data.get(key);
+            if (node == null) {
+                return false;
+            }
+            remove(node);
+            return true;
+        }
+
+        private void onAccess(Node node) {
+            switch (node.queue) {
+                case WINDOW, PROTECTED -> {
+                    AccessOrder order = order(node.queue);
+                    order.remove(node);
+                    order.addLast(node);
+                }
+                case PROBATION -> {
+                    probation.remove(node);
+                    node.queue = Queue.PROTECTED;
+                    protectedOrder.addLast(node);
+                    long protectedMax = (long) ((budget - windowMax()) * PROTECTED_SHARE);
+                    Node demoted;
+                    while (protectedOrder.bytes > protectedMax && (demoted = protectedOrder.head()) != node) {
+                        protectedOrder.remove(demoted);
+                        demoted.queue = Queue.PROBATION;
+                        probation.addLast(demoted);
+                    }
+                }
+            }
+        }
+
+        private long windowMax() {
+            return Math.max(1, (long) (budget * WINDOW_SHARE));
+        }
+
+        /**
+         * Moves the overflow of the window into probation, then evicts until the
+         * namespace fits its budget, letting each window entry compete with the
+         * least recently used probation entry
+         */
+        private void evict() {
+            Node candidate = null;
+            long windowMax = windowMax();
+            Node overflow;
+            while (window.bytes > windowMax && (overflow = window.head()) != null) {
+                window.remove(overflow);
+                overflow.queue = Queue.PROBATION;
+                probation.addLast(overflow);
+                if (candidate == null) {
+                    candidate = overflow;
+                }
+            }
+
+            while (bytes() > budget) {
+                Node victim = victim();
+                if (candidate == null || victim == candidate || candidate.queue != Queue.PROBATION) {
+                    evict(victim);
+                    continue;
+                }
+                if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                    evict(victim);
+                } else {
+                    Node next = probation.after(candidate);
+                    evict(candidate);
+                    candidate = next;
+                }
+            }
+        }
+
+        /**
+         * Returns the entry the namespace gives up first: the least recently
+         * used one on probation, then in the protected segment, then in the window
+         */
+        Node victim() {
+            Node victim = probation.head();
+            if (victim == null) {
+                victim = protectedOrder.head() != null ? protectedOrder.head() : window.head();
+            }
+            return victim;
+        }
+
+        void evict(Node node) {
+            evictions++;
+            evictedBytes += node.weight;
+            remove(node);
+        }
+
+        private void remove(Node node) {
+            order(node.queue).remove(node);
+            data.remove(node.key);
+            totalBytes.addAndGet(-node.weight);
+        }
+
+        /**
+         * Drops entries whose TTL has passed. The heap may hold stale records
+         * for overwritten entries; they are skipped here and compacted away
+         * once they outnumber the live entries.
+         */
+        private void expire(long now) {
+            Expiry head;
+            while ((head = expiries.peek()) != null && head.expiresAt() - now <= 0) {
+                expiries.poll();
+                Node node = head.node();
+                if (node.expiresAt == head.expiresAt() && data.get(node.key) == node) {
+                    expirations++;
+                    remove(node);
+                }
+            }
+            if (expiries.size() > 2 * data.size() + 64) {
+                expiries.removeIf(expiry -> expiry.node().expiresAt != expiry.expiresAt()
+                        || data.get(expiry.node().key) != expiry.node());
+            }
+        }
+
+        Stats stats() {
+            return new Stats(hits, misses, puts, evictions, evictedBytes, expirations, rejections,
+                    data.size(), bytes(), budget);
+        }
+    }
+
+    private final Map<String, Namespace> namespaces = new ConcurrentHashMap<>();
+    private final Map<String, Long> budgets = new ConcurrentHashMap<>();
+    private final long defaultBudget;
+    private final long totalBudget;
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final Object totalEviction = new Object();
+    private final LongSupplier nanoClock;
+    private final ValueCompressor compressor = new ValueCompressor(null, ValueCompressor.enabledNamespaces());
+
+    /**
+     * @param defaultBudget byte budget of namespaces without one of their own
+     */
+    public MemoryStore(long defaultBudget) {
+        this(defaultBudget, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param defaultBudget byte budget of namespaces without one of their own
+     * @param totalBudget   byte budget of all namespaces together
+     */
+    public MemoryStore(long defaultBudget, long totalBudget) {
+        this(defaultBudget, totalBudget, System::nanoTime);
+    }
+
+    MemoryStore(long defaultBudget, long totalBudget, LongSupplier nanoClock) {
+        this.defaultBudget = defaultBudget;
+        this.totalBudget = totalBudget;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Returns the bytes held by all namespaces together
+     */
+    public long totalBytes() {
+        return totalBytes.get();
+    }
+
+    public long totalBudget() {
+        return totalBudget;
+    }
+
+    /**
+     * Sets the byte budget of a namespace, evicting at once if it shrank
+     */
+    public void setBudget(String namespace, long budgetBytes) {
+        budgets.put(namespace, budgetBytes);
+        Namespace existing = namespaces.get(namespace);
+        if (existing != null) {
+            synchronized (existing) {
+                existing.budget = budgetBytes;
+                existing.evict();
+            }
+        }
+    }
+
+    /**
+     * Stores a value
+     *
+     * @param ttlSeconds seconds until the value expires, or 0 to keep it until evicted
+     */
+    public void put(String namespace, String key, String value, long ttlSeconds) {
+        put(namespace, key, value, ttlSeconds, 0);
+    }
+
+    /**
+     * Stores a value. A namespace this creates gets {@code namespaceBudget}
+     * bytes, unless {@link #setBudget} gave it a budget of its own.
+     *
+     * @param namespaceBudget budget of a new namespace, or 0 for the default budget
+     */
+    public void put(String namespace, String key, String value, long ttlSeconds, long namespaceBudget) {
+        long now = nanoClock.getAsLong();
+        long expiresAt = ttlSeconds > 0 ? (now + TimeUnit.SECONDS.toNanos(ttlSeconds)) | 1 : 0;
+        byte[] stored = compressor.encode(namespace, value.getBytes(StandardCharsets.UTF_8));
+        while (true) {
+            Namespace target = namespace(namespace, namespaceBudget);
+            synchronized (target) {
+                // A namespace cleared meanwhile is recreated rather than written to
+                if (!target.cleared) {
+                    target.put(key, stored, expiresAt, now);
+                    break;
+                }
+            }
+        }
+        enforceTotalBudget();
+    }
+
+    /**
+     * Evicts across namespaces until they fit the process-wide budget. Only
+     * one namespace lock is held at a time, and one thread evicts at a time.
+     */
+    private void enforceTotalBudget() {
+        if (totalBytes.get() <= totalBudget) {
+            return;
+        }
+        synchronized (totalEviction) {
+            while (totalBytes.get() > totalBudget) {
+                Namespace coldest = null;
+                int coldestFrequency = Integer.MAX_VALUE;
+                long coldestBytes = 0;
+                for (Namespace candidate : namespaces.values()) {
+                    synchronized (candidate) {
+                        Node victim = candidate.victim();
+                        if (victim == null) {
+                            continue;
+                        }
+                        int frequency = candidate.sketch.frequency(victim.key);
+                        long bytes = candidate.bytes();
+                        if (frequency < coldestFrequency || frequency == coldestFrequency && bytes > coldestBytes) {
+                            coldest = candidate;
+                            coldestFrequency = frequency;
+                            coldestBytes = bytes;
+                        }
+                    }
+                }
+                if (coldest == null) {
+                    return;
+                }
+                synchronized (coldest) {
+                    Node victim = coldest.victim();
+                    if (victim != null) {
+                        coldest.evict(victim);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the value, or null if it is absent, expired or was evicted.
+     * Reading a namespace nothing was stored in does not create it.
+     */
+    public String get(String namespace, String key) {
+        Namespace target = namespaces.get(namespace);
+        if (target == null) {
+            return null;
+        }
+        byte[] stored;
+        synchronized (target) {
+            stored = target.get(key, nanoClock.getAsLong());
+        }
+        if (stored == null) {
+            return null;
+        }
+        try {
+            return new String(compressor.decode(namespace, stored), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // Dictionaries are held in memory with the values, so this cannot happen
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public boolean delete(String namespace, String key) {
+        Namespace target = namespaces.get(namespace);
+        if (target == null) {
+            return false;
+        }
+        synchronized (target) {
+            return target.delete(key);
+        }
+    }
+
+    public Stats stats(String namespace) {
+        Namespace target = namespaces.get(namespace);
+        if (target == null) {
+            return null;
+        }
+        synchronized (target) {
+            target.expire(nanoClock.getAsLong());
+            return target.stats();
+        }
+    }
+
+    /**
+     * Drops a namespace with all its entries and counters
+     */
+    public void clear(String namespace) {
+        Namespace removed = namespaces.remove(namespace);
+        if (removed != null) {
+            synchronized (removed) {
+                removed.cleared = true;
+                totalBytes.addAndGet(-removed.bytes());
+            }
+        }
+        compressor.remove(namespace);
+    }
+
+    /**
+     * Returns the compression counters of a namespace, or null if nothing was stored in it
+     */
+    public ValueCompressor.Stats compressionStats(String namespace) {
+        return compressor.stats(namespace);
+    }
+
+    /**
+     * Returns the statistics of every namespace, sorted by name
+     */
+    public Map<String, Stats> stats() {
+        Map<String, Stats> all = new TreeMap<>();
+        for (String namespace : namespaces.keySet()) {
+            all.put(namespace, stats(namespace));
+        }
+        return all;
+    }
+
+    private Namespace namespace(String namespace, long budget) {
+        return namespaces.computeIfAbsent(namespace,
+                name -> new Namespace(budgets.getOrDefault(name, budget > 0 ? budget : defaultBudget)));
+    }
+
+    private static long weigh(String key, byte[] value) {
+        return ENTRY_OVERHEAD_BYTES + 2L * key.length() + value.length;
+    }
+}
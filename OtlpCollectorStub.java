@@ -0,0 +1,95 @@
+package mcpTools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Minimal local stand-in for an OpenTelemetry collector.
+ *
+ * Accepts OTLP/HTTP JSON exports on {@code POST /v1/traces}, as sent by
+ * {@link Tracer} with {@code -Dmcptools.trace.export=http://localhost:4318/v1/traces},
+ * and appends each export as one line to a file or to standard output.
+ * Only loopback connections are accepted.
+ *
+ * Usage:
+ * java OtlpCollectorStub [port] [file]
+ */
+public class OtlpCollectorStub {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Writer out;
+    private long exports;
+    private long spans;
+
+    public OtlpCollectorStub(Writer out) {
+        this.out = out;
+    }
+
+    public HttpServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/v1/traces", this::handle);
+        server.start();
+        return server;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            JsonNode document;
+            try {
+                document = mapper.readTree(body);
+            } catch (IOException e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            int received = 0;
+            for (JsonNode resourceSpans : document.path("resourceSpans")) {
+                for (JsonNode scopeSpans : resourceSpans.path("scopeSpans")) {
+                    received += scopeSpans.path("spans").size();
+                }
+            }
+            synchronized (this) {
+                out.write(mapper.writeValueAsString(document));
+                out.write('\n');
+                out.flush();
+                exports++;
+                spans += received;
+                System.err.printf("Received %d spans (%d exports, %d spans in total)%n", received, exports, spans);
+            }
+
+            byte[] response = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(response);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 4318;
+        Writer out = args.length > 1
+                ? Files.newBufferedWriter(Path.of(args[1]), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        new OtlpCollectorStub(out).start(port);
+        System.err.println("OTLP collector stub listening on http://localhost:" + port + "/v1/traces");
+    }
+}
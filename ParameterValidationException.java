@@ -0,0 +1,12 @@
+package mcpTools;
+
+/**
+ * Exception thrown when parameter validation fails
+ */
+public class ParameterValidationException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public ParameterValidationException(String message) {
+        super(message);
+    }
+}
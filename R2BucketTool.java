@@ -0,0 +1,19 @@
+package mcpTools;
+
+import java.util.Map;
+
+/**
+ * Abstract base class for R2 bucket tools
+ */
+public abstract class R2BucketTool extends AbstractMCPTool {
+    protected R2BucketTool(String name, String description) {
+        super(name, description);
+    }
+
+    /**
+     * Gets a bucket name from parameters
+     */
+    protected String getBucketName(Map<String, Object> params) {
+        return (String) params.get("bucket");
+    }
+}
@@ -0,0 +1,364 @@
+package mcpTools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Step-graph executor behind the sequential_thinking tool.
+ *
+ * Each step declares the steps it depends on. Steps whose dependencies have
+ * completed run concurrently on virtual threads, so the wall-clock time of a
+ * run tracks the critical path of the graph instead of the sum of all steps.
+ * Step outputs are memoised by a hash of the step id, its action key, the
+ * input and the hashes of its dependencies, so a re-run skips every step that
+ * already completed while a step whose action changed runs again.
+ *
+ * The engine only schedules work; what a step does is its {@link StepAction}.
+ * The steps built by {@link #parseSteps} for the CLI tool do no work of their
+ * own and merely record the outline of the reasoning, so concurrency only
+ * pays off for callers that supply actions doing real work, such as model or
+ * backend calls.
+ */
+public class SequentialThinkingEngine {
+
+    /**
+     * Work performed by a single step
+     */
+    @FunctionalInterface
+    public interface StepAction {
+        String apply(String input, Map<String, String> dependencyOutputs) throws Exception;
+    }
+
+    /**
+     * A step in the reasoning graph
+     *
+     * @param actionKey names what the action computes, and must change when
+     *                  it does; outputs are only reused by steps with the same key
+     */
+    public record Step(String id, List<String> dependsOn, StepAction action, String actionKey) {
+        public Step {
+            dependsOn = List.copyOf(dependsOn);
+        }
+
+        /**
+         * Creates a step keyed by the class of its action. Steps created this
+         * way only share outputs when their actions are of the same class, and
+         * a lambda's class may be named differently in the next process, so
+         * actions that should reuse persisted outputs need a key of their own.
+         */
+        public Step(String id, List<String> dependsOn, StepAction action) {
+            this(id, dependsOn, action, action.getClass().getName());
+        }
+    }
+
+    /**
+     * Outcome of a single step
+     */
+    public record StepResult(String id, String hash, String output, boolean cached, long elapsedNanos) {
+    }
+
+    /**
+     * Outcome of a whole graph run, with step results in topological order
+     */
+    public record RunResult(Map<String, StepResult> steps, long wallNanos, long criticalPathNanos, long totalStepNanos) {
+
+        public long cachedCount() {
+            return steps.values().stream().filter(StepResult::cached).count();
+        }
+    }
+
+    private final Map<String, String> memo = new ConcurrentHashMap<>();
+    private final Path memoDirectory;
+
+    public SequentialThinkingEngine() {
+        this(null);
+    }
+
+    /**
+     * Creates an engine that also persists memoised step outputs under the
+     * given directory, so completed work survives across runner processes
+     */
+    public SequentialThinkingEngine(Path memoDirectory) {
+        this.memoDirectory = memoDirectory;
+    }
+
+    /**
+     * Parses a step specification into a graph of default steps.
+     *
+     * A plain number {@code n} yields a linear chain {@code step1 -> ... -> stepn}.
+     * Otherwise the spec is a list of {@code id[:dep,dep...]} entries separated
+     * by {@code ;}, for example {@code frame;facts:frame;risks:frame;answer:facts,risks}.
+     */
+    public static List<Step> parseSteps(String spec) {
+        List<Step> steps = new ArrayList<>();
+        String trimmed = spec.trim();
+
+        if (trimmed.chars().allMatch(Character::isDigit) && !trimmed.isEmpty()) {
+            int count = Integer.parseInt(trimmed);
+            if (count < 1) {
+                throw new IllegalArgumentException("Step count must be at least 1");
+            }
+            for (int i = 1; i <= count; i++) {
+                List<String> deps = i == 1 ? List.of() : List.of("step" + (i - 1));
+                steps.add(new Step("step" + i, deps, defaultAction("step" + i), DEFAULT_ACTION_KEY));
+            }
+            return steps;
+        }
+
+        for (String entry : trimmed.split(";")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.split(":", 2);
+            String id = parts[0].trim();
+            List<String> deps = new ArrayList<>();
+            if (parts.length > 1) {
+                for (String dep : parts[1].split(",")) {
+                    if (!dep.isBlank()) {
+                        deps.add(dep.trim());
+                    }
+                }
+            }
+            steps.add(new Step(id, deps, defaultAction(id), DEFAULT_ACTION_KEY));
+        }
+        return steps;
+    }
+
+    // Key of the outline action; bump it whenever the outline changes, so persisted outputs are redone
+    private static final String DEFAULT_ACTION_KEY = "outline/1";
+
+    /**
+     * Outline step used by the CLI tool: names the step, its input and the
+     * steps it builds on
+     */
+    private static StepAction defaultAction(String id) {
+        return (input, dependencyOutputs) -> {
+            StringBuilder thought = new StringBuilder();
+            thought.append('[').append(id).append("] ").append(input);
+            if (!dependencyOutputs.isEmpty()) {
+                thought.append(" | after: ").append(String.join(", ", dependencyOutputs.keySet()));
+            }
+            return thought.toString();
+        };
+    }
+
+    /**
+     * Runs the graph for the given input, reusing memoised outputs where possible
+     */
+    public RunResult run(String input, List<Step> steps) throws InterruptedException, ExecutionException {
+        List<Step> ordered = topologicalOrder(steps);
+        Map<String, String> hashes = new LinkedHashMap<>();
+        for (Step step : ordered) {
+            hashes.put(step.id(), hash(step, input, hashes));
+        }
+
+        Map<String, CompletableFuture<StepResult>> futures = new LinkedHashMap<>();
+        long start = System.nanoTime();
+
+        // The executor is scoped to this run: closing it waits for every
+        // submitted step, and a failing step shuts the remaining ones down.
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Step step : ordered) {
+                String stepHash = hashes.get(step.id());
+                String memoised = lookup(stepHash);
+                if (memoised != null) {
+                    futures.put(step.id(), CompletableFuture.completedFuture(
+                            new StepResult(step.id(), stepHash, memoised, true, 0L)));
+                    continue;
+                }
+
+                Map<String, CompletableFuture<StepResult>> deps = new LinkedHashMap<>();
+                for (String dep : step.dependsOn()) {
+                    deps.put(dep, futures.get(dep));
+                }
+
+                CompletableFuture<StepResult> future = CompletableFuture
+                        .allOf(deps.values().toArray(CompletableFuture<?>[]::new))
+                        .thenApplyAsync(ignored -> runStep(step, stepHash, input, deps), executor);
+                future.whenComplete((result, error) -> {
+                    if (error != null) {
+                        executor.shutdownNow();
+                    }
+                });
+                futures.put(step.id(), future);
+            }
+
+            CompletableFuture.allOf(futures.values().toArray(CompletableFuture<?>[]::new)).get();
+        }
+
+        long wallNanos = System.nanoTime() - start;
+        Map<String, StepResult> results = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<StepResult>> entry : futures.entrySet()) {
+            results.put(entry.getKey(), entry.getValue().join());
+        }
+        return new RunResult(Collections.unmodifiableMap(results), wallNanos,
+                criticalPath(ordered, results), results.values().stream().mapToLong(StepResult::elapsedNanos).sum());
+    }
+
+    /**
+     * Drops every memoised step output held in memory
+     */
+    public void clearMemo() {
+        memo.clear();
+    }
+
+    private StepResult runStep(Step step, String stepHash, String input,
+            Map<String, CompletableFuture<StepResult>> deps) {
+        Map<String, String> dependencyOutputs = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<StepResult>> dep : deps.entrySet()) {
+            dependencyOutputs.put(dep.getKey(), dep.getValue().join().output());
+        }
+
+        long start = System.nanoTime();
+        String output;
+        try {
+            output = step.action().apply(input, dependencyOutputs);
+        } catch (Exception e) {
+            throw new CompletionException("Step '" + step.id() + "' failed: " + e.getMessage(), e);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        store(stepHash, output);
+        return new StepResult(step.id(), stepHash, output, false, elapsed);
+    }
+
+    private String lookup(String stepHash) {
+        String output = memo.get(stepHash);
+        if (output != null || memoDirectory == null) {
+            return output;
+        }
+        Path file = memoDirectory.resolve(stepHash);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            output = Files.readString(file, StandardCharsets.UTF_8);
+            memo.put(stepHash, output);
+            return output;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void store(String stepHash, String output) {
+        memo.put(stepHash, output);
+        if (memoDirectory == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(memoDirectory);
+            Files.writeString(memoDirectory.resolve(stepHash), output, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.printf("Could not persist step result %s: %s%n", stepHash, e.getMessage());
+        }
+    }
+
+    /**
+     * Orders steps so every step follows its dependencies, rejecting unknown
+     * dependencies, duplicate ids and cycles
+     */
+    private static List<Step> topologicalOrder(List<Step> steps) {
+        Map<String, Step> byId = new LinkedHashMap<>();
+        for (Step step : steps) {
+            if (byId.put(step.id(), step) != null) {
+                throw new IllegalArgumentException("Duplicate step id: " + step.id());
+            }
+        }
+        for (Step step : steps) {
+            for (String dep : step.dependsOn()) {
+                if (!byId.containsKey(dep)) {
+                    throw new IllegalArgumentException(
+                            "Step '" + step.id() + "' depends on unknown step '" + dep + "'");
+                }
+            }
+        }
+
+        // Depth-first search with an explicit stack, so long chains cannot
+        // overflow the thread stack. A step is marked 1 while its dependencies
+        // are being visited and 2 once it has been added to the order.
+        List<Step> ordered = new ArrayList<>(steps.size());
+        Map<String, Integer> state = new HashMap<>();
+        ArrayDeque<Step> path = new ArrayDeque<>();
+        ArrayDeque<Integer> nextDependency = new ArrayDeque<>();
+        for (Step root : steps) {
+            if (state.containsKey(root.id())) {
+                continue;
+            }
+            state.put(root.id(), 1);
+            path.push(root);
+            nextDependency.push(0);
+            while (!path.isEmpty()) {
+                Step step = path.peek();
+                int next = nextDependency.pop();
+                if (next == step.dependsOn().size()) {
+                    path.pop();
+                    state.put(step.id(), 2);
+                    ordered.add(step);
+                    continue;
+                }
+                nextDependency.push(next + 1);
+                Step dep = byId.get(step.dependsOn().get(next));
+                Integer mark = state.get(dep.id());
+                if (mark == null) {
+                    state.put(dep.id(), 1);
+                    path.push(dep);
+                    nextDependency.push(0);
+                } else if (mark == 1) {
+                    throw new IllegalArgumentException("Cycle detected at step '" + dep.id() + "'");
+                }
+            }
+        }
+        return ordered;
+    }
+
+    private static long criticalPath(List<Step> ordered, Map<String, StepResult> results) {
+        Map<String, Long> finish = new LinkedHashMap<>();
+        long longest = 0;
+        for (Step step : ordered) {
+            long ready = 0;
+            for (String dep : step.dependsOn()) {
+                ready = Math.max(ready, finish.get(dep));
+            }
+            long done = ready + results.get(step.id()).elapsedNanos();
+            finish.put(step.id(), done);
+            longest = Math.max(longest, done);
+        }
+        return longest;
+    }
+
+    private static String hash(Step step, String input, Map<String, String> hashes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(step.id().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(step.actionKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(input.getBytes(StandardCharsets.UTF_8));
+            for (String dep : step.dependsOn()) {
+                digest.update((byte) 0);
+                digest.update(hashes.get(dep).getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
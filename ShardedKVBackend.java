@@ -0,0 +1,322 @@
+package mcpTools;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * KV backend that partitions namespaces over a cluster of {@link KVNode}s.
+ *
+ * Every key is owned by the first {@code replicationFactor} nodes on a
+ * consistent-hash ring. Each write is stamped with a version from this
+ * backend's clock and sent to all owners at once, and succeeds once
+ * {@code writeQuorum} of them acknowledged; a delete is written the same way,
+ * as a versioned tombstone. Reads also ask all owners and answer with the
+ * newest version among the first {@code readQuorum} replies. The two quorums
+ * must overlap ({@code readQuorum + writeQuorum > replicationFactor}), so
+ * every read hears from at least one replica that took the last acknowledged
+ * write. Listing a namespace asks every node for its share and merges the
+ * results.
+ *
+ * Replicas that answer a read with an older version are sent the newest one
+ * in the background (read repair). There is no hinted handoff: a replica
+ * that was down while keys were written catches up on each key the next time
+ * it is read, and a replica that misses a delete for longer than
+ * {@link KVReplica#TOMBSTONE_TTL_SECONDS} may bring the key back. Concurrent
+ * writes of one key through different backends are ordered by their clocks,
+ * and the last writer wins; a backend never stamps a write older than a
+ * version it has read.
+ *
+ * The backend can run on a cluster member, in which case the member's own
+ * replica is read and written directly without a round trip, or as a pure
+ * client that forwards everything.
+ */
+public class ShardedKVBackend implements KVBackend {
+
+    private static final long REQUEST_TIMEOUT_MILLIS = 5_000;
+
+    private final String localNodeId;
+    private final KVReplica local;
+    private final HashRing ring;
+    private final Map<String, InetSocketAddress> addresses;
+    private final Map<String, KVNodeClient> clients = new ConcurrentHashMap<>();
+    private final int replicationFactor;
+    private final int writeQuorum;
+    private final int readQuorum;
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong readRepairs = new AtomicLong();
+
+    /**
+     * @param localNodeId id of the node this backend runs on, or null for a pure client
+     * @param local       the local node's own replica, or null for a pure client
+     * @param addresses   every node of the cluster, including the local one
+     */
+    public ShardedKVBackend(String localNodeId, KVReplica local, Map<String, InetSocketAddress> addresses,
+            int virtualNodes, int replicationFactor, int writeQuorum, int readQuorum) {
+        if (writeQuorum < 1 || writeQuorum > replicationFactor) {
+            throw new IllegalArgumentException("Write quorum must be between 1 and the replication factor");
+        }
+        if (readQuorum < 1 || readQuorum > replicationFactor) {
+            throw new IllegalArgumentException("Read quorum must be between 1 and the replication factor");
+        }
+        if (readQuorum + writeQuorum <= replicationFactor) {
+            throw new IllegalArgumentException("Read and write quorums must overlap: " + readQuorum + " + "
+                    + writeQuorum + " replicas do not exceed the replication factor " + replicationFactor);
+        }
+        this.localNodeId = localNodeId;
+        this.local = local;
+        this.ring = new HashRing(addresses.keySet(), virtualNodes);
+        this.addresses = Map.copyOf(addresses);
+        this.replicationFactor = replicationFactor;
+        this.writeQuorum = writeQuorum;
+        this.readQuorum = readQuorum;
+    }
+
+    public HashRing getRing() {
+        return ring;
+    }
+
+    /**
+     * Returns how many stale replicas reads have sent a newer version to
+     */
+    public long readRepairs() {
+        return readRepairs.get();
+    }
+
+    /**
+     * Returns the nodes holding a key, primary first
+     */
+    public List<String> ownersOf(String namespaceId, String key) {
+        return ring.nodesFor(LsmKVBackend.internalKey(namespaceId, key), replicationFactor);
+    }
+
+    @Override
+    public byte[] get(String namespaceId, String key) throws IOException {
+        try (Tracer.Span span = Tracer.global().startSpan("kv.quorum.get")) {
+            List<String> owners = ownersOf(namespaceId, key);
+            span.setAttribute("kv.nodes", String.join(",", owners));
+            List<CompletableFuture<KVReplica.Versioned>> replies = new ArrayList<>(owners.size());
+            for (String owner : owners) {
+                replies.add(owner.equals(localNodeId)
+                        ? call(() -> local.read(namespaceId, key))
+                        : client(owner).get(namespaceId, key));
+            }
+
+            KVReplica.Versioned newest = KVReplica.Versioned.MISSING;
+            try {
+                for (KVReplica.Versioned reply : quorum(replies, readQuorum, "Read of '" + key + "'")) {
+                    if (reply.isNewerThan(newest)) {
+                        newest = reply;
+                    }
+                }
+            } catch (IOException e) {
+                span.setError(e.getMessage());
+                throw e;
+            }
+            clock.accumulateAndGet(newest.version(), Math::max);
+
+            long now = System.currentTimeMillis();
+            boolean repairable = newest.value() == null ? newest.version() != 0 : newest.isLive(now);
+            if (repairable) {
+                // Late replies are repaired as well once they arrive
+                for (int i = 0; i < owners.size(); i++) {
+                    repair(owners.get(i), namespaceId, key, replies.get(i), newest);
+                }
+            }
+            return newest.isLive(now) ? newest.value() : null;
+        }
+    }
+
+    @Override
+    public void put(String namespaceId, String key, byte[] value, long expirationTtl) throws IOException {
+        long expiresAt = expirationTtl > 0 ? System.currentTimeMillis() + expirationTtl * 1000 : 0;
+        replicate(namespaceId, key, new KVReplica.Versioned(nextVersion(), expiresAt, value));
+    }
+
+    @Override
+    public void delete(String namespaceId, String key) throws IOException {
+        replicate(namespaceId, key, new KVReplica.Versioned(nextVersion(), 0, null));
+    }
+
+    @Override
+    public List<String> list(String namespaceId, String prefix, int limit) throws IOException {
+        try (Tracer.Span span = Tracer.global().startSpan("kv.scatter.list")) {
+            span.setAttribute("kv.nodes", ring.getNodes().size());
+            return scatterList(namespaceId, prefix, limit);
+        }
+    }
+
+    private List<String> scatterList(String namespaceId, String prefix, int limit) throws IOException {
+        List<CompletableFuture<List<String>>> shares = new ArrayList<>();
+        for (String node : ring.getNodes()) {
+            if (node.equals(localNodeId)) {
+                shares.add(call(() -> local.list(namespaceId, prefix, limit)));
+            } else {
+                shares.add(client(node).list(namespaceId, prefix, limit));
+            }
+        }
+
+        // Replicas return the same keys; every node already sorted and limited its share
+        TreeSet<String> keys = new TreeSet<>();
+        int answered = 0;
+        IOException failure = null;
+        for (CompletableFuture<List<String>> share : shares) {
+            try {
+                keys.addAll(await(share));
+                answered++;
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (answered <= ring.getNodes().size() - replicationFactor && failure != null) {
+            // Too many nodes are down for every key to have a reachable replica
+            throw new IOException("Namespace '" + namespaceId + "' is not fully reachable", failure);
+        }
+        List<String> result = new ArrayList<>(Math.min(limit, keys.size()));
+        for (String key : keys) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(key);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (KVNodeClient client : clients.values()) {
+            client.close();
+        }
+    }
+
+    private interface LocalCall<T> {
+        T run() throws IOException;
+    }
+
+    private static <T> CompletableFuture<T> call(LocalCall<T> call) {
+        try {
+            return CompletableFuture.completedFuture(call.run());
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Returns a version newer than every version this backend has stamped or read
+     */
+    private long nextVersion() {
+        long now = System.currentTimeMillis() << 20;
+        return clock.updateAndGet(last -> Math.max(last + 1, now));
+    }
+
+    private CompletableFuture<Boolean> send(String owner, String namespaceId, String key,
+            KVReplica.Versioned record) {
+        return owner.equals(localNodeId)
+                ? call(() -> local.apply(namespaceId, key, record))
+                : client(owner).apply(namespaceId, key, record);
+    }
+
+    /**
+     * Sends a write to every owner in parallel and waits for the quorum
+     */
+    private void replicate(String namespaceId, String key, KVReplica.Versioned record) throws IOException {
+        try (Tracer.Span span = Tracer.global().startSpan("kv.replicate")) {
+            List<String> owners = ownersOf(namespaceId, key);
+            span.setAttribute("kv.nodes", String.join(",", owners));
+            List<CompletableFuture<Boolean>> acks = new ArrayList<>(owners.size());
+            for (String owner : owners) {
+                acks.add(send(owner, namespaceId, key, record));
+            }
+            try {
+                quorum(acks, writeQuorum, "Write of '" + key + "'");
+            } catch (IOException e) {
+                span.setError(e.getMessage());
+                throw e;
+            }
+        }
+    }
+
+    private void repair(String owner, String namespaceId, String key, CompletableFuture<KVReplica.Versioned> reply,
+            KVReplica.Versioned newest) {
+        reply.thenAccept(answer -> {
+            if (newest.isNewerThan(answer)) {
+                readRepairs.incrementAndGet();
+                // A failed repair is retried by the next read of the key
+                send(owner, namespaceId, key, newest);
+            }
+        });
+    }
+
+    /**
+     * Waits until {@code required} of the requests succeeded, or so many
+     * failed that they no longer can, and returns the answers received so far
+     */
+    private static <T> List<T> quorum(List<CompletableFuture<T>> requests, int required, String operation)
+            throws IOException {
+        int needed = Math.min(required, requests.size());
+        List<T> answers = new ArrayList<>(requests.size());
+        List<Throwable> failures = new ArrayList<>();
+        CompletableFuture<Void> reached = new CompletableFuture<>();
+        if (needed == 0) {
+            reached.complete(null);
+        }
+        for (CompletableFuture<T> request : requests) {
+            request.whenComplete((answer, error) -> {
+                synchronized (answers) {
+                    if (error == null) {
+                        answers.add(answer);
+                        if (answers.size() == needed) {
+                            reached.complete(null);
+                        }
+                    } else {
+                        failures.add(error);
+                        if (failures.size() == requests.size() - needed + 1) {
+                            reached.completeExceptionally(error);
+                        }
+                    }
+                }
+            });
+        }
+        try {
+            await(reached);
+        } catch (IOException e) {
+            synchronized (answers) {
+                throw new IOException(operation + " reached " + answers.size() + " of " + needed
+                        + " required replicas", e);
+            }
+        }
+        synchronized (answers) {
+            return new ArrayList<>(answers);
+        }
+    }
+
+    private KVNodeClient client(String node) {
+        return clients.computeIfAbsent(node, id -> new KVNodeClient(addresses.get(id)));
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get(REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a KV node", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException completion && completion.getCause() != null
+                    ? completion.getCause()
+                    : e.getCause();
+            throw cause instanceof IOException io ? io : new IOException(cause);
+        } catch (TimeoutException e) {
+            throw new IOException("KV node did not answer in time", e);
+        }
+    }
+}
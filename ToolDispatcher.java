@@ -0,0 +1,242 @@
+package mcpTools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Dispatches tool calls for in-process transports such as {@link JsonRpcServer}.
+ *
+ * Tools report their results by printing, so the dispatcher routes standard
+ * output and standard error per call: while a call runs, everything its
+ * thread prints, and everything printed by threads started during the call,
+ * is captured into the call's result. This lets many calls run concurrently
+ * without interleaving their output. Output printed outside any call reaches
+ * the original streams, except that once {@link #originalOut} has handed
+ * standard output to a protocol, stray standard output goes to standard
+ * error so it cannot corrupt the protocol stream.
+ *
+ * A call is an error when its arguments miss a required parameter of the
+ * tool's usage string, or when the tool throws. What a tool prints to
+ * standard error is returned with the result but does not by itself make the
+ * call an error, as tools also use it for warnings and progress.
+ *
+ * Calls are routed to {@link ToolRunnerOOP} first and fall back to the
+ * function registry in {@link ToolRunner}.
+ */
+public class ToolDispatcher {
+
+    /**
+     * Output of a single tool call
+     */
+    public record Result(String output, String error, boolean failed) {
+
+        public boolean isError() {
+            return failed;
+        }
+    }
+
+    /**
+     * Capture buffers of one call. Threads started during the call inherit
+     * it; once the call returns it is closed, and whatever those threads
+     * print afterwards goes to the fallback streams.
+     */
+    private static final class Capture {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        volatile boolean open = true;
+    }
+
+    private static final InheritableThreadLocal<Capture> capture = new InheritableThreadLocal<>();
+
+    private static PrintStream originalOut;
+    private static PrintStream originalErr;
+    private static RoutingStream routedOut;
+
+    private final ToolRunnerOOP runner = new ToolRunnerOOP();
+
+    public ToolDispatcher() {
+        installCapture();
+    }
+
+    /**
+     * Returns the process's real standard output, bypassing capture. From
+     * then on the caller owns standard output, and output printed outside a
+     * call is sent to standard error instead.
+     */
+    public static synchronized PrintStream originalOut() {
+        installCapture();
+        routedOut.fallback = originalErr;
+        return originalOut;
+    }
+
+    /**
+     * Returns every tool known to either runner with its usage string
+     */
+    public Map<String, String> listTools() {
+        Map<String, String> tools = new LinkedHashMap<>();
+        tools.putAll(ToolRunner.toolUsages());
+        tools.putAll(runner.getToolUsages());
+        return tools;
+    }
+
+    public boolean hasTool(String toolName) {
+        return runner.hasTool(toolName) || ToolRunner.toolNames().contains(toolName);
+    }
+
+    /**
+     * Executes a tool on the calling thread and returns what it printed
+     *
+     * @throws IllegalArgumentException if no runner knows the tool
+     */
+    public Result execute(String toolName, String[] args) {
+        if (!hasTool(toolName)) {
+            throw new IllegalArgumentException("Tool '" + toolName + "' not recognized.");
+        }
+
+        try (Tracer.Span span = Tracer.global().startSpan("ToolDispatcher.execute")) {
+            span.setAttribute("mcp.tool", toolName);
+            String usage = listTools().get(toolName);
+            try (Tracer.Span validate = Tracer.global().startSpan("validate")) {
+                if (args.length < requiredArguments(usage)) {
+                    validate.setError("Missing arguments");
+                    span.setError("Missing arguments");
+                    return new Result("", "Usage: " + usage, true);
+                }
+            }
+            Result result = capture(() -> {
+                if (runner.hasTool(toolName)) {
+                    runner.executeTool(toolName, args);
+                } else {
+                    ToolRunner.execute(toolName, args);
+                }
+            });
+            if (result.isError()) {
+                span.setError(result.error());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Runs a call on the calling thread and returns what it and the threads
+     * it started printed while it ran
+     */
+    static Result capture(Runnable call) {
+        installCapture();
+        Capture current = new Capture();
+        Capture previous = capture.get();
+        capture.set(current);
+        boolean failed = false;
+        try {
+            call.run();
+        } catch (RuntimeException e) {
+            failed = true;
+            current.err.writeBytes(String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+        } finally {
+            current.open = false;
+            if (previous == null) {
+                capture.remove();
+            } else {
+                capture.set(previous);
+            }
+        }
+        return new Result(current.out.toString(StandardCharsets.UTF_8),
+                current.err.toString(StandardCharsets.UTF_8), failed);
+    }
+
+    /**
+     * Runs a call like {@link #capture}, then passes what it printed on to
+     * the calling thread's streams and rethrows what it threw
+     */
+    static Result tee(Runnable call) {
+        RuntimeException[] thrown = new RuntimeException[1];
+        Result result = capture(() -> {
+            try {
+                call.run();
+            } catch (RuntimeException e) {
+                thrown[0] = e;
+            }
+        });
+        System.out.print(result.output());
+        System.err.print(result.error());
+        if (thrown[0] != null) {
+            throw thrown[0];
+        }
+        return result;
+    }
+
+    /**
+     * Counts the {@code <required>} parameters of a usage string
+     */
+    static int requiredArguments(String usage) {
+        int required = 0;
+        for (int i = usage.indexOf('<'); i >= 0; i = usage.indexOf('<', i + 1)) {
+            required++;
+        }
+        return required;
+    }
+
+    private static synchronized void installCapture() {
+        if (originalOut != null) {
+            return;
+        }
+        originalOut = System.out;
+        originalErr = System.err;
+        routedOut = new RoutingStream(true, originalOut);
+        System.setOut(new PrintStream(routedOut, true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(new RoutingStream(false, originalErr), true, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes to the capture buffer of the call the calling thread belongs to,
+     * while that call runs, and to the fallback stream otherwise
+     */
+    private static final class RoutingStream extends OutputStream {
+        private final boolean standardOut;
+        private volatile PrintStream fallback;
+
+        RoutingStream(boolean standardOut, PrintStream fallback) {
+            this.standardOut = standardOut;
+            this.fallback = fallback;
+        }
+
+        private ByteArrayOutputStream buffer() {
+            Capture current = capture.get();
+            if (current == null || !current.open) {
+                return null;
+            }
+            return standardOut ? current.out : current.err;
+        }
+
+        @Override
+        public void write(int b) {
+            ByteArrayOutputStream buffer = buffer();
+            if (buffer != null) {
+                buffer.write(b);
+            } else {
+                fallback.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            ByteArrayOutputStream buffer = buffer();
+            if (buffer != null) {
+                buffer.write(bytes, offset, length);
+            } else {
+                fallback.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (buffer() == null) {
+                fallback.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package mcpTools;
+
+/**
+ * Exception thrown when tool execution fails
+ */
+public class ToolExecutionException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public ToolExecutionException(String message) {
+        super(message);
+    }
+
+    public ToolExecutionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,5 +1,10 @@
 package mcpTools;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Tool registry for managing and executing tools from a central location.
  * This implementation uses an object-oriented approach with interfaces and
@@ -25,6 +30,106 @@ public class ToolRegistry {
          * Returns the name of the tool
          */
         String getName();
+
+        /**
+         * Returns how the tool's results are cached, or null if they are not
+         */
+        default ToolResultCache.Policy getCachePolicy() {
+            return null;
+        }
+    }
+
+    /**
+     * What a runner knows about a tool before creating it. The tools of this
+     * registry are described by {@link Definition}; another catalogue, such
+     * as those {@link ToolStartupBenchmark} generates, can describe its tools
+     * the same way and register them as {@link LazyTool}s.
+     */
+    public interface ToolDefinition {
+        String toolName();
+
+        String usage();
+
+        /**
+         * Returns how the tool's results are cached, or null if they are not
+         */
+        ToolResultCache.Policy cachePolicy();
+
+        /**
+         * Creates the tool, loading its class
+         */
+        Tool create();
+    }
+
+    /**
+     * Every tool of this registry with its name and usage. This is the only
+     * place either is written: runners index the definitions, and each tool
+     * takes its name and usage from its definition.
+     */
+    public enum Definition implements ToolDefinition {
+        KV_GET("kv_get", "kv_get <namespaceId> <key>",
+                ToolResultCache.Policy.reads(60, "kv:{namespaceId}:{key}")),
+        KV_PUT("kv_put", "kv_put <namespaceId> <key> <value> [expirationTtl]",
+                ToolResultCache.Policy.writesExpiring("expirationTtl",
+                        "kv:{namespaceId}:{key}", "kv-keys:{namespaceId}")),
+        KV_LIST("kv_list", "kv_list <namespaceId> [prefix] [limit]",
+                ToolResultCache.Policy.reads(60, "kv-keys:{namespaceId}")),
+        KV_DELETE("kv_delete", "kv_delete <namespaceId> <key>",
+                ToolResultCache.Policy.writes("kv:{namespaceId}:{key}", "kv-keys:{namespaceId}")),
+        R2_LIST_BUCKETS("r2_list_buckets", "r2_list_buckets", null),
+        R2_GET_OBJECT("r2_get_object", "r2_get_object <bucket> <key>",
+                ToolResultCache.Policy.reads(60, "r2:{bucket}:{key}", "r2-bucket:{bucket}")),
+        CLAUDE_COMPLETION("claude_completion",
+                "claude_completion <prompt> [model] [max_tokens] [temperature] [system]", null);
+
+        private static final Map<String, Definition> BY_NAME = new HashMap<>();
+
+        static {
+            for (Definition definition : values()) {
+                BY_NAME.put(definition.toolName, definition);
+            }
+        }
+
+        private final String toolName;
+        private final String usage;
+        private final ToolResultCache.Policy cachePolicy;
+
+        Definition(String toolName, String usage, ToolResultCache.Policy cachePolicy) {
+            this.toolName = toolName;
+            this.usage = usage;
+            this.cachePolicy = cachePolicy;
+        }
+
+        @Override
+        public String toolName() {
+            return toolName;
+        }
+
+        @Override
+        public String usage() {
+            return usage;
+        }
+
+        /**
+         * Returns how the tool's results are cached, in step with the same
+         * tool of {@link ToolRunner}, or null if they are not
+         */
+        @Override
+        public ToolResultCache.Policy cachePolicy() {
+            return cachePolicy;
+        }
+
+        @Override
+        public Tool create() {
+            return ToolRegistry.create(this);
+        }
+
+        /**
+         * Returns the definition of the tool with the given name, or null
+         */
+        public static Definition forName(String name) {
+            return BY_NAME.get(name);
+        }
     }
 
     /**
@@ -33,10 +138,20 @@ public class ToolRegistry {
     public static abstract class AbstractTool implements Tool {
         private final String name;
         private final String usage;
+        private final ToolResultCache.Policy cachePolicy;
 
         protected AbstractTool(String name, String usage) {
+            this(name, usage, null);
+        }
+
+        protected AbstractTool(ToolDefinition definition) {
+            this(definition.toolName(), definition.usage(), definition.cachePolicy());
+        }
+
+        private AbstractTool(String name, String usage, ToolResultCache.Policy cachePolicy) {
             this.name = name;
             this.usage = usage;
+            this.cachePolicy = cachePolicy;
         }
 
         @Override
@@ -49,6 +164,11 @@ public class ToolRegistry {
             return usage;
         }
 
+        @Override
+        public ToolResultCache.Policy getCachePolicy() {
+            return cachePolicy;
+        }
+
         /**
          * Validates that the arguments meet the minimum required length
          */
@@ -61,12 +181,90 @@ public class ToolRegistry {
         }
     }
 
+    /**
+     * Stand-in registered for a tool that only knows its name and usage. The
+     * real tool, and with it the tool's class, is created on first execution.
+     */
+    public static class LazyTool implements Tool {
+        private final ToolDefinition definition;
+        private volatile Tool delegate;
+
+        public LazyTool(ToolDefinition definition) {
+            this.definition = definition;
+        }
+
+        @Override
+        public String getName() {
+            return definition.toolName();
+        }
+
+        @Override
+        public String getUsage() {
+            return definition.usage();
+        }
+
+        @Override
+        public ToolResultCache.Policy getCachePolicy() {
+            return definition.cachePolicy();
+        }
+
+        @Override
+        public void execute(String[] args) {
+            resolve().execute(args);
+        }
+
+        private Tool resolve() {
+            Tool tool = delegate;
+            if (tool == null) {
+                synchronized (this) {
+                    tool = delegate;
+                    if (tool == null) {
+                        tool = definition.create();
+                        delegate = tool;
+                    }
+                }
+            }
+            return tool;
+        }
+    }
+
+    /**
+     * Creates the tool with the given name, or returns null if there is none
+     */
+    public static Tool create(String name) {
+        Definition definition = Definition.forName(name);
+        return definition == null ? null : create(definition);
+    }
+
+    /**
+     * Creates the tool for a definition. Only the class of the requested tool
+     * is loaded.
+     */
+    public static Tool create(Definition definition) {
+        return switch (definition) {
+            case KV_GET -> new KVGetTool();
+            case KV_PUT -> new KVPutTool();
+            case KV_LIST -> new KVListTool();
+            case KV_DELETE -> new KVDeleteTool();
+            case R2_LIST_BUCKETS -> new R2ListBucketsTool();
+            case R2_GET_OBJECT -> new R2GetObjectTool();
+            case CLAUDE_COMPLETION -> new ClaudeCompletionTool();
+        };
+    }
+
     /**
      * Abstract base class for Key-Value Store operations
      */
     public static abstract class KVTool extends AbstractTool {
-        protected KVTool(String name, String usage) {
-            super(name, usage);
+        protected KVTool(Definition definition) {
+            super(definition);
+        }
+
+        /**
+         * Returns the backend shared by all KV tools
+         */
+        protected KVBackend getBackend() {
+            return KVBackends.shared();
         }
     }
 
@@ -75,7 +273,7 @@ public class ToolRegistry {
      */
     public static class KVGetTool extends KVTool {
         public KVGetTool() {
-            super("kv_get", "kv_get <namespaceId> <key>");
+            super(Definition.KV_GET);
         }
 
         @Override
@@ -87,7 +285,16 @@ public class ToolRegistry {
             String key = args[1];
 
             System.out.printf("Getting value for key '%s' from namespace '%s'%n", key, namespaceId);
-            // TODO: Implement logic to retrieve the key's value.
+            try {
+                byte[] value = getBackend().get(namespaceId, key);
+                if (value == null) {
+                    System.err.printf("Key '%s' not found%n", key);
+                    return;
+                }
+                System.out.println(new String(value, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                System.err.println("KV read failed: " + e.getMessage());
+            }
         }
     }
 
@@ -96,7 +303,7 @@ public class ToolRegistry {
      */
     public static class KVPutTool extends KVTool {
         public KVPutTool() {
-            super("kv_put", "kv_put <namespaceId> <key> <value> [expirationTtl]");
+            super(Definition.KV_PUT);
         }
 
         @Override
@@ -112,7 +319,14 @@ public class ToolRegistry {
             System.out.printf("Storing key '%s' with value '%s' into namespace '%s'%s%n",
                     key, value, namespaceId,
                     expirationTtl != null ? " with expiration " + expirationTtl : "");
-            // TODO: Implement logic to store the value.
+            try {
+                getBackend().put(namespaceId, key, value.getBytes(StandardCharsets.UTF_8),
+                        expirationTtl != null ? Long.parseLong(expirationTtl) : 0);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid expirationTtl: " + expirationTtl);
+            } catch (IOException e) {
+                System.err.println("KV write failed: " + e.getMessage());
+            }
         }
     }
 
@@ -121,7 +335,7 @@ public class ToolRegistry {
      */
     public static class KVListTool extends KVTool {
         public KVListTool() {
-            super("kv_list", "kv_list <namespaceId> [prefix] [limit]");
+            super(Definition.KV_LIST);
         }
 
         @Override
@@ -136,7 +350,16 @@ public class ToolRegistry {
             System.out.printf("Listing keys in namespace '%s' with prefix '%s'%s%n",
                     namespaceId, prefix,
                     limit != null ? " and limit " + limit : "");
-            // TODO: Implement logic to list keys in the namespace.
+            try {
+                for (String key : getBackend().list(namespaceId, prefix,
+                        limit != null ? Integer.parseInt(limit) : 1000)) {
+                    System.out.println("  " + key);
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid limit: " + limit);
+            } catch (IOException e) {
+                System.err.println("KV read failed: " + e.getMessage());
+            }
         }
     }
 
@@ -145,7 +368,7 @@ public class ToolRegistry {
      */
     public static class KVDeleteTool extends KVTool {
         public KVDeleteTool() {
-            super("kv_delete", "kv_delete <namespaceId> <key>");
+            super(Definition.KV_DELETE);
         }
 
         @Override
@@ -157,7 +380,11 @@ public class ToolRegistry {
             String key = args[1];
 
             System.out.printf("Deleting key '%s' from namespace '%s'%n", key, namespaceId);
-            // TODO: Implement logic to delete the key.
+            try {
+                getBackend().delete(namespaceId, key);
+            } catch (IOException e) {
+                System.err.println("KV write failed: " + e.getMessage());
+            }
         }
     }
 
@@ -165,8 +392,8 @@ public class ToolRegistry {
      * Abstract base class for R2 bucket operations
      */
     public static abstract class R2Tool extends AbstractTool {
-        protected R2Tool(String name, String usage) {
-            super(name, usage);
+        protected R2Tool(Definition definition) {
+            super(definition);
         }
     }
 
@@ -175,7 +402,7 @@ public class ToolRegistry {
      */
     public static class R2ListBucketsTool extends R2Tool {
         public R2ListBucketsTool() {
-            super("r2_list_buckets", "r2_list_buckets");
+            super(Definition.R2_LIST_BUCKETS);
         }
 
         @Override
@@ -190,7 +417,7 @@ public class ToolRegistry {
      */
     public static class R2GetObjectTool extends R2Tool {
         public R2GetObjectTool() {
-            super("r2_get_object", "r2_get_object <bucket> <key>");
+            super(Definition.R2_GET_OBJECT);
         }
 
         @Override
@@ -210,8 +437,8 @@ public class ToolRegistry {
      * Abstract base class for Claude AI operations
      */
     public static abstract class ClaudeTool extends AbstractTool {
-        protected ClaudeTool(String name, String usage) {
-            super(name, usage);
+        protected ClaudeTool(Definition definition) {
+            super(definition);
         }
     }
 
@@ -220,7 +447,7 @@ public class ToolRegistry {
      */
     public static class ClaudeCompletionTool extends ClaudeTool {
         public ClaudeCompletionTool() {
-            super("claude_completion", "claude_completion <prompt> [model] [max_tokens] [temperature] [system]");
+            super(Definition.CLAUDE_COMPLETION);
         }
 
         @Override
@@ -0,0 +1,28 @@
+package mcpTools;
+
+/**
+ * Represents the result of a tool execution
+ */
+public class ToolResult {
+    private final boolean success;
+    private final Object data;
+    private final String message;
+
+    public ToolResult(boolean success, Object data, String message) {
+        this.success = success;
+        this.data = data;
+        this.message = message;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public Object getData() {
+        return data;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
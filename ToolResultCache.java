@@ -0,0 +1,447 @@
+package mcpTools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Result cache for read-only tools, shared by {@link ToolRunner} and
+ * {@link ToolRunnerOOP}.
+ *
+ * A tool opts in with the {@link Policy} it is registered with. The output of
+ * a successful read is cached under the tool name and its arguments and is
+ * printed again for later calls with the same arguments. A call is successful
+ * when it neither throws nor prints to standard error, so "not found" answers
+ * are never cached. The cache holds at most a fixed number of entries,
+ * evicting the least recently used, and entries expire after the tool's TTL.
+ *
+ * Tags name the data a read comes from and a write changes. A write drops
+ * exactly the entries carrying one of its tags once it returns, whether or
+ * not it succeeded, since it may have been applied partially. Writes that set
+ * an expiry also bring forward the expiry of later entries with their tags,
+ * so a cached value never outlives the key it was read from.
+ *
+ * Every tag maps to one of a fixed set of version counters. A read records
+ * the versions of its tags before calling the tool and only caches the result
+ * if none of them moved meanwhile, so a write that races with a read can never
+ * leave the read's stale result behind.
+ *
+ * Tools that hand their results back rather than print them, such as the
+ * {@link AbstractMCPTool} implementations, cache them with
+ * {@link #compute(String, Map, Policy, Supplier, Predicate)} under the same
+ * tags, so a write through a runner also drops their entries.
+ *
+ * Writes are only seen when they go through the runners of this process. A
+ * value changed by another process sharing the KV cluster, or evicted from the
+ * memory store, may be served until its entry expires.
+ */
+public class ToolResultCache {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{(\\w+)(?::([^}]*))?}");
+    private static final Pattern PARAMETER = Pattern.compile("[<\\[](\\w+)[>\\]]");
+    private static final int VERSION_STRIPES = 1024;
+
+    // Outputs longer than this are passed on without being cached
+    static final int MAX_OUTPUT_CHARS = 64 * 1024;
+
+    /**
+     * How a tool takes part in caching: a read is cached for {@code ttlSeconds}
+     * under its {@code reads} tags, a write invalidates its {@code writes} tags.
+     *
+     * A tag may refer to the tool's parameters, as named in its usage string,
+     * with {@code {param}} or {@code {param:default}} placeholders, so
+     * {@code "kv:{namespaceId}:{key}"} ties a kv_get result to exactly one
+     * key. Tags and entries of a session-scoped policy are kept apart per
+     * {@link McpSession}, like the state of the tool they describe.
+     *
+     * @param ttlParameter parameter holding the expiry in seconds of the data
+     *                     a write stores, or null if it cannot set one
+     */
+    public record Policy(long ttlSeconds, List<String> reads, List<String> writes, String ttlParameter,
+            boolean sessionScoped) {
+
+        public static Policy reads(long ttlSeconds, String... tags) {
+            return new Policy(ttlSeconds, List.of(tags), List.of(), null, false);
+        }
+
+        public static Policy writes(String... tags) {
+            return new Policy(0, List.of(), List.of(tags), null, false);
+        }
+
+        public static Policy writesExpiring(String ttlParameter, String... tags) {
+            return new Policy(0, List.of(), List.of(tags), ttlParameter, false);
+        }
+
+        public Policy inSession() {
+            return new Policy(ttlSeconds, reads, writes, ttlParameter, true);
+        }
+    }
+
+    /**
+     * Cache counters
+     */
+    public record Stats(long hits, long misses, long evictions, long expirations, long invalidations, int size) {
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long expiresAt;
+        final String[] tags;
+
+        Entry(Object value, long expiresAt, String[] tags) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.tags = tags;
+        }
+    }
+
+    private static final class Holder {
+        static final ToolResultCache SHARED = new ToolResultCache(Integer.getInteger("mcptools.cache.entries", 4096));
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<String>> keysByTag = new HashMap<>();
+    private final Map<String, Long> expiryByTag = new HashMap<>();
+    private final long[] tagVersions = new long[VERSION_STRIPES];
+    private final int maxEntries;
+    private final LongSupplier nanoClock;
+    private int expirySweepAt = 64;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+
+    public ToolResultCache(int maxEntries) {
+        this(maxEntries, System::nanoTime);
+    }
+
+    ToolResultCache(int maxEntries, LongSupplier nanoClock) {
+        this.maxEntries = maxEntries;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Returns the cache shared by the runners of this process. It holds up to
+     * -Dmcptools.cache.entries results, 4096 by default; 0 turns caching off
+     * while writes are still tracked.
+     */
+    public static ToolResultCache shared() {
+        return Holder.SHARED;
+    }
+
+    /**
+     * Runs a tool call through the cache as declared by the tool's policy.
+     * What the call prints reaches standard output and standard error as
+     * usual; a cached read prints the output recorded for it instead.
+     *
+     * @param usage  the tool's usage string, naming the parameters its tags refer to
+     * @param policy the tool's policy, or null if the tool takes no part in caching
+     */
+    public void run(String tool, String usage, Policy policy, String[] args, Runnable call) {
+        if (policy == null) {
+            call.run();
+            return;
+        }
+        try (Tracer.Span span = Tracer.global().startSpan("ToolResultCache.run")) {
+            span.setAttribute("mcp.tool", tool);
+            List<String> parameters = parameterNames(usage);
+            if (policy.ttlSeconds() <= 0) {
+                String[] tags = resolveTags(policy.writes(), parameters, args, policy.sessionScoped());
+                try {
+                    call.run();
+                } finally {
+                    invalidate(tags, expiryOf(policy, parameters, args));
+                }
+                return;
+            }
+            read(tool, policy, parameters, args, call, span);
+        }
+    }
+
+    private void read(String tool, Policy policy, List<String> parameters, String[] args, Runnable call,
+            Tracer.Span span) {
+        String key = keyOf(tool + canonicalize(args), policy);
+        String[] tags = resolveTags(policy.reads(), parameters, args, policy.sessionScoped());
+        Lookup lookup = lookup(key, tags);
+        span.setAttribute("cache", lookup.hit() ? "hit" : "miss");
+        if (lookup.hit()) {
+            System.out.print((String) lookup.value());
+            return;
+        }
+
+        ToolDispatcher.Result result = ToolDispatcher.tee(call);
+        if (!result.isError() && result.error().isEmpty() && result.output().length() <= MAX_OUTPUT_CHARS) {
+            storeIfUnchanged(key, result.output(), policy, tags, lookup.versions());
+        }
+    }
+
+    /**
+     * Runs a call that returns its result through the cache as declared by
+     * the policy. Tags refer to the call's parameters by name. Results
+     * {@code cacheable} rejects, such as failures, are returned without being
+     * cached; a cached result is returned as is, so it must be immutable.
+     *
+     * @param policy the tool's policy, or null if the tool takes no part in caching
+     */
+    public <T> T compute(String tool, Map<String, ?> params, Policy policy, Supplier<T> call,
+            Predicate<? super T> cacheable) {
+        if (policy == null) {
+            return call.get();
+        }
+        try (Tracer.Span span = Tracer.global().startSpan("ToolResultCache.compute")) {
+            span.setAttribute("mcp.tool", tool);
+            Map<String, ?> sorted = new TreeMap<>(params);
+            List<String> parameters = new ArrayList<>(sorted.keySet());
+            String[] args = sorted.values().stream().map(String::valueOf).toArray(String[]::new);
+            if (policy.ttlSeconds() <= 0) {
+                String[] tags = resolveTags(policy.writes(), parameters, args, policy.sessionScoped());
+                try {
+                    return call.get();
+                } finally {
+                    invalidate(tags, expiryOf(policy, parameters, args));
+                }
+            }
+
+            String key = keyOf(tool + canonicalize(parameters.toArray(String[]::new)) + canonicalize(args), policy);
+            String[] tags = resolveTags(policy.reads(), parameters, args, policy.sessionScoped());
+            Lookup lookup = lookup(key, tags);
+            span.setAttribute("cache", lookup.hit() ? "hit" : "miss");
+            if (lookup.hit()) {
+                @SuppressWarnings("unchecked")
+                T cached = (T) lookup.value();
+                return cached;
+            }
+            T result = call.get();
+            if (cacheable.test(result)) {
+                storeIfUnchanged(key, result, policy, tags, lookup.versions());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Outcome of looking a key up: the cached value on a hit, the versions of
+     * the read's tags on a miss
+     */
+    private record Lookup(Object value, long[] versions) {
+        boolean hit() {
+            return versions == null;
+        }
+    }
+
+    private String keyOf(String key, Policy policy) {
+        return policy.sessionScoped() ? McpSession.scope(key, null) : key;
+    }
+
+    private synchronized Lookup lookup(String key, String[] tags) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt - nanoClock.getAsLong() > 0) {
+            hits++;
+            return new Lookup(entry.value, null);
+        }
+        if (entry != null) {
+            remove(key);
+            expirations++;
+        }
+        misses++;
+        return new Lookup(null, versionsOf(tags));
+    }
+
+    /**
+     * Caches a value read under the given tags, unless a write to one of them
+     * moved its version since the read looked the key up
+     */
+    private synchronized void storeIfUnchanged(String key, Object value, Policy policy, String[] tags,
+            long[] versions) {
+        if (maxEntries <= 0 || !Arrays.equals(versions, versionsOf(tags))) {
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        long expiresAt = now + TimeUnit.SECONDS.toNanos(policy.ttlSeconds());
+        for (String tag : tags) {
+            Long tagExpiry = expiryByTag.get(tag);
+            if (tagExpiry != null && tagExpiry - now > 0 && tagExpiry - expiresAt < 0) {
+                expiresAt = tagExpiry;
+            }
+        }
+        store(key, new Entry(value, expiresAt, tags));
+    }
+
+    /**
+     * Drops every cached result carrying one of the given tags
+     */
+    public void invalidate(String... tags) {
+        invalidate(tags, 0);
+    }
+
+    /**
+     * Drops every cached result carrying one of the given tags and, when
+     * {@code expiresAt} is not 0, caps the expiry of results later cached
+     * under them at that {@link System#nanoTime()} instant. Caps are only
+     * ever brought forward until they pass, as a tag such as a namespace may
+     * cover data with several expiries.
+     */
+    private synchronized void invalidate(String[] tags, long expiresAt) {
+        long now = nanoClock.getAsLong();
+        for (String tag : tags) {
+            tagVersions[stripe(tag)]++;
+            if (expiresAt != 0) {
+                Long current = expiryByTag.get(tag);
+                if (current == null || current - now <= 0 || expiresAt - current < 0) {
+                    expiryByTag.put(tag, expiresAt);
+                }
+            }
+            Set<String> keys = keysByTag.remove(tag);
+            if (keys == null) {
+                continue;
+            }
+            for (String key : keys.toArray(String[]::new)) {
+                if (remove(key)) {
+                    invalidations++;
+                }
+            }
+        }
+        if (expiryByTag.size() >= expirySweepAt) {
+            expiryByTag.values().removeIf(expiry -> expiry - now <= 0);
+            expirySweepAt = Math.max(64, expiryByTag.size() * 2);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        keysByTag.clear();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, expirations, invalidations, entries.size());
+    }
+
+    private long expiryOf(Policy policy, List<String> parameters, String[] args) {
+        int index = policy.ttlParameter() == null ? -1 : parameters.indexOf(policy.ttlParameter());
+        if (index < 0 || index >= args.length) {
+            return 0;
+        }
+        try {
+            long seconds = Long.parseLong(args[index]);
+            return seconds > 0 ? (nanoClock.getAsLong() + TimeUnit.SECONDS.toNanos(seconds)) | 1 : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void store(String key, Entry entry) {
+        remove(key);
+        entries.put(key, entry);
+        for (String tag : entry.tags) {
+            keysByTag.computeIfAbsent(tag, t -> new HashSet<>()).add(key);
+        }
+
+        long now = nanoClock.getAsLong();
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            Map.Entry<String, Entry> candidate = eldest.next();
+            if (candidate.getValue().expiresAt - now > 0) {
+                evictions++;
+            } else {
+                expirations++;
+            }
+            eldest.remove();
+            untag(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    private boolean remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        untag(key, entry);
+        return true;
+    }
+
+    private void untag(String key, Entry entry) {
+        for (String tag : entry.tags) {
+            Set<String> keys = keysByTag.get(tag);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                keysByTag.remove(tag);
+            }
+        }
+    }
+
+    private long[] versionsOf(String[] tags) {
+        long[] versions = new long[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            versions[i] = tagVersions[stripe(tags[i])];
+        }
+        return versions;
+    }
+
+    private static int stripe(String tag) {
+        return (tag.hashCode() & 0x7fffffff) % VERSION_STRIPES;
+    }
+
+    /**
+     * Returns the parameter names of a usage string, required and optional, in order
+     */
+    static List<String> parameterNames(String usage) {
+        List<String> names = new ArrayList<>();
+        Matcher matcher = PARAMETER.matcher(usage);
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+        }
+        return names;
+    }
+
+    /**
+     * Replaces the placeholders in tag templates with argument values. An
+     * argument that was not given resolves to the placeholder's default, or
+     * to the empty string.
+     */
+    static String[] resolveTags(List<String> templates, List<String> parameters, String[] args,
+            boolean sessionScoped) {
+        String[] tags = new String[templates.size()];
+        for (int i = 0; i < tags.length; i++) {
+            Matcher matcher = PLACEHOLDER.matcher(templates.get(i));
+            StringBuilder tag = new StringBuilder();
+            while (matcher.find()) {
+                int index = parameters.indexOf(matcher.group(1));
+                String value = index >= 0 && index < args.length ? args[index]
+                        : matcher.group(2) != null ? matcher.group(2) : "";
+                matcher.appendReplacement(tag, Matcher.quoteReplacement(value));
+            }
+            matcher.appendTail(tag);
+            tags[i] = sessionScoped ? McpSession.scope(tag.toString(), null) : tag.toString();
+        }
+        return tags;
+    }
+
+    /**
+     * Renders arguments unambiguously: each is quoted, so arguments
+     * containing separators cannot run into each other
+     */
+    static String canonicalize(String[] args) {
+        StringBuilder out = new StringBuilder("(");
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append('"').append(args[i].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return out.append(')').toString();
+    }
+}
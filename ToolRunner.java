@@ -1,10 +1,25 @@
 package mcpTools;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
 
+import javax.script.ScriptException;
+
 /**
  * A Java implementation of the tool runner CLI.
  * 
@@ -18,7 +33,7 @@ import java.util.function.Function;
  * Example:
  * java ToolRunner kv_get myNamespace myKey
  */
-public class MCPTool {
+public class ToolRunner {
 
     /**
      * Functional interface for tool implementations.
@@ -28,383 +43,948 @@ public class MCPTool {
         void execute(String[] args);
     }
 
-    // Registry of all available tools
-    private static final Map<String, ToolFunction> toolRegistry = new HashMap<>();
-
-    static {
-        // KV Namespace Tools
-        toolRegistry.put("get_kvs", args -> {
-            System.out.println("Listing KV namespaces...");
-            // TODO: Implement logic to list all KV namespaces.
-        });
-
-        toolRegistry.put("kv_get", args -> {
-            if (args.length < 2) {
-                System.err.println("Usage: kv_get <namespaceId> <key>");
-                return;
-            }
-            String namespaceId = args[0];
-            String key = args[1];
-            System.out.printf("Getting value for key '%s' from namespace '%s'%n", key, namespaceId);
-            // TODO: Implement logic to retrieve the key's value.
-        });
-
-        toolRegistry.put("kv_put", args -> {
-            if (args.length < 3) {
-                System.err.println("Usage: kv_put <namespaceId> <key> <value> [expirationTtl]");
-                return;
-            }
-            String namespaceId = args[0];
-            String key = args[1];
-            String value = args[2];
-            String expirationTtl = args.length > 3 ? args[3] : null;
-
-            System.out.printf("Storing key '%s' with value '%s' into namespace '%s'%s%n",
-                    key, value, namespaceId,
-                    expirationTtl != null ? " with expiration " + expirationTtl : "");
-            // TODO: Implement logic to store the value.
-        });
-
-        toolRegistry.put("kv_list", args -> {
-            if (args.length < 1) {
-                System.err.println("Usage: kv_list <namespaceId> [prefix] [limit]");
-                return;
-            }
-            String namespaceId = args[0];
-            String prefix = args.length > 1 ? args[1] : "";
-            String limit = args.length > 2 ? args[2] : null;
-
-            System.out.printf("Listing keys in namespace '%s' with prefix '%s'%s%n",
-                    namespaceId, prefix,
-                    limit != null ? " and limit " + limit : "");
-            // TODO: Implement logic to list keys in the namespace.
-        });
-
-        toolRegistry.put("kv_delete", args -> {
-            if (args.length < 2) {
-                System.err.println("Usage: kv_delete <namespaceId> <key>");
-                return;
-            }
-            String namespaceId = args[0];
-            String key = args[1];
-
-            System.out.printf("Deleting key '%s' from namespace '%s'%n", key, namespaceId);
-            // TODO: Implement logic to delete the key.
-        });
-
-        // R2 Tools
-        toolRegistry.put("r2_list_buckets", args -> {
-            System.out.println("Listing R2 buckets...");
-            // TODO: Implement logic to list all R2 buckets.
-        });
-
-        toolRegistry.put("r2_create_bucket", args -> {
-            if (args.length < 1) {
-                System.err.println("Usage: r2_create_bucket <name>");
-                return;
-            }
-            String name = args[0];
-
-            System.out.printf("Creating R2 bucket: '%s'%n", name);
-            // TODO: Implement logic to create a new R2 bucket.
-        });
-
-        toolRegistry.put("r2_delete_bucket", args -> {
-            if (args.length < 1) {
-                System.err.println("Usage: r2_delete_bucket <name>");
-                return;
-            }
-            String name = args[0];
-
-            System.out.printf("Deleting R2 bucket: '%s'%n", name);
-            // TODO: Implement logic to delete an R2 bucket.
-        });
+    /**
+     * Tool families. Each family is a nested class whose lambdas and backends
+     * are only loaded and initialised when one of its tools is first called.
+     */
+    private enum Family {
+        KV, R2, D1, WORKER, ANALYTICS, CLAUDE, MODEL, MEMORY, REASONING
+    }
 
-        toolRegistry.put("r2_list_objects", args -> {
-            if (args.length < 1) {
-                System.err.println("Usage: r2_list_objects <bucket> [prefix] [delimiter] [limit]");
-                return;
-            }
-            String bucket = args[0];
-            String prefix = args.length > 1 ? args[1] : "";
-            String delimiter = args.length > 2 ? args[2] : "";
-            String limit = args.length > 3 ? args[3] : null;
-
-            System.out.printf("Listing objects in bucket '%s' with prefix '%s', delimiter '%s'%s%n",
-                    bucket, prefix, delimiter,
-                    limit != null ? " and limit " + limit : "");
-            // TODO: Implement logic to list objects in the R2 bucket.
-        });
-
-        toolRegistry.put("r2_get_object", args -> {
-            if (args.length < 2) {
-                System.err.println("Usage: r2_get_object <bucket> <key>");
-                return;
-            }
-            String bucket = args[0];
-            String key = args[1];
+    /**
+     * Index entry for a tool: its usage string, the family implementing it and
+     * how its results are cached, if at all
+     */
+    private record ToolEntry(String usage, Family family, ToolResultCache.Policy cache) {
+    }
 
-            System.out.printf("Retrieving object '%s' from bucket '%s'%n", key, bucket);
-            // TODO: Implement logic to get an object from an R2 bucket.
-        });
+    // Cache tag of one memory; memories are kept per session, like the memory store's namespaces
+    private static final String MEMORY_TAG = "memory:{namespace:" + MemoryStore.DEFAULT_NAMESPACE + "}:{key}";
 
-        toolRegistry.put("r2_put_object", args -> {
-            if (args.length < 3) {
-                System.err.println("Usage: r2_put_object <bucket> <key> <content> [contentType]");
-                return;
-            }
-            String bucket = args[0];
-            String key = args[1];
-            String content = args[2];
-            String contentType = args.length > 3 ? args[3] : "default";
-
-            System.out.printf("Putting object '%s' into bucket '%s'. Content type: %s%n",
-                    key, bucket, contentType);
-            // TODO: Implement logic to store an object in an R2 bucket.
-        });
-
-        toolRegistry.put("r2_delete_object", args -> {
-            if (args.length < 2) {
-                System.err.println("Usage: r2_delete_object <bucket> <key>");
-                return;
-            }
-            String bucket = args[0];
-            String key = args[1];
-
-            System.out.printf("Deleting object '%s' from bucket '%s'%n", key, bucket);
-            // TODO: Implement logic to delete an object from an R2 bucket.
-        });
-
-        // D1 Tools
-        toolRegistry.put("d1_list_databases", args -> {
-            System.out.println("Listing D1 databases...");
-            // TODO: Implement logic to list all D1 databases.
-        });
-
-        toolRegistry.put("d1_create_database", args -> {
-            if (args.length < 1) {
-                System.err.println("Usage: d1_create_database <name>");
-                return;
-            }
-            String name = args[0];
+    // Index of all available tools; holds names, usage strings and cache policies only
+    private static final Map<String, ToolEntry> toolIndex = new LinkedHashMap<>();
 
-            System.out.printf("Creating D1 database: '%s'%n", name);
-            // TODO: Implement logic to create a new D1 database.
-        });
+    static {
+        index("get_kvs", "get_kvs", Family.KV);
+        index("kv_get", "kv_get <namespaceId> <key>", Family.KV,
+                ToolResultCache.Policy.reads(60, "kv:{namespaceId}:{key}"));
+        index("kv_put", "kv_put <namespaceId> <key> <value> [expirationTtl]", Family.KV,
+                ToolResultCache.Policy.writesExpiring("expirationTtl",
+                        "kv:{namespaceId}:{key}", "kv-keys:{namespaceId}"));
+        index("kv_list", "kv_list <namespaceId> [prefix] [limit]", Family.KV,
+                ToolResultCache.Policy.reads(60, "kv-keys:{namespaceId}"));
+        index("kv_delete", "kv_delete <namespaceId> <key>", Family.KV,
+                ToolResultCache.Policy.writes("kv:{namespaceId}:{key}", "kv-keys:{namespaceId}"));
+        index("kv_compression_stats", "kv_compression_stats [namespaceId]", Family.KV);
+
+        index("r2_list_buckets", "r2_list_buckets", Family.R2);
+        index("r2_create_bucket", "r2_create_bucket <name>", Family.R2);
+        index("r2_delete_bucket", "r2_delete_bucket <name>", Family.R2,
+                ToolResultCache.Policy.writes("r2-bucket:{name}"));
+        index("r2_list_objects", "r2_list_objects <bucket> [prefix] [delimiter] [limit]", Family.R2);
+        index("r2_get_object", "r2_get_object <bucket> <key>", Family.R2,
+                ToolResultCache.Policy.reads(60, "r2:{bucket}:{key}", "r2-bucket:{bucket}"));
+        index("r2_put_object", "r2_put_object <bucket> <key> <content> [contentType]", Family.R2,
+                ToolResultCache.Policy.writes("r2:{bucket}:{key}"));
+        index("r2_delete_object", "r2_delete_object <bucket> <key>", Family.R2,
+                ToolResultCache.Policy.writes("r2:{bucket}:{key}"));
+
+        index("d1_list_databases", "d1_list_databases", Family.D1,
+                ToolResultCache.Policy.reads(60, "d1-databases"));
+        index("d1_create_database", "d1_create_database <name>", Family.D1,
+                ToolResultCache.Policy.writes("d1-databases"));
+        index("d1_delete_database", "d1_delete_database <databaseId>", Family.D1,
+                ToolResultCache.Policy.writes("d1-databases"));
+        index("d1_query", "d1_query <databaseId> <query> [params]", Family.D1);
+
+        index("worker_list", "worker_list", Family.WORKER);
+        index("worker_get", "worker_get <name>", Family.WORKER,
+                ToolResultCache.Policy.reads(60, "worker:{name}"));
+        index("worker_put",
+                "worker_put <name> <script> [bindings] [compatibility_date] [compatibility_flags]",
+                Family.WORKER, ToolResultCache.Policy.writes("worker:{name}"));
+        index("worker_invoke", "worker_invoke <name> [input]", Family.WORKER);
+        index("worker_delete", "worker_delete <name>", Family.WORKER,
+                ToolResultCache.Policy.writes("worker:{name}"));
+
+        index("analytics_get", "analytics_get <zoneId> <since> <until>", Family.ANALYTICS);
+
+        index("claude_completion",
+                "claude_completion <prompt> [model] [max_tokens] [temperature] [system]",
+                Family.CLAUDE);
+        index("claude_messages",
+                "claude_messages <messages> [model] [max_tokens] [temperature] [system]",
+                Family.CLAUDE);
+
+        index("embeddings_create", "embeddings_create <input> [model]", Family.MODEL);
+        index("content_moderation", "content_moderation <input> [categories]", Family.MODEL);
+
+        index("memory_store", "memory_store <key> <value> [namespace] [ttl]", Family.MEMORY,
+                ToolResultCache.Policy.writesExpiring("ttl", MEMORY_TAG).inSession());
+        index("memory_retrieve", "memory_retrieve <key> [namespace]", Family.MEMORY,
+                ToolResultCache.Policy.reads(30, MEMORY_TAG).inSession());
+        index("memory_search", "memory_search <query> [namespace] [limit]", Family.MEMORY);
+        index("memory_stats", "memory_stats [namespace]", Family.MEMORY);
+
+        index("sequential_thinking", "sequential_thinking <input> [steps] [context]", Family.REASONING);
+        index("context_manager", "context_manager <action> <context_id> [content]", Family.REASONING);
+    }
 
-        toolRegistry.put("d1_delete_database", args -> {
-            if (args.length < 1) {
-                System.err.println("Usage: d1_delete_database <databaseId>");
-                return;
-            }
-            String databaseId = args[0];
+    private static void index(String name, String usage, Family family) {
+        index(name, usage, family, null);
+    }
 
-            System.out.printf("Deleting D1 database with ID: '%s'%n", databaseId);
-            // TODO: Implement logic to delete a D1 database.
-        });
+    private static void index(String name, String usage, Family family, ToolResultCache.Policy cache) {
+        toolIndex.put(name, new ToolEntry(usage, family, cache));
+    }
 
-        toolRegistry.put("d1_query", args -> {
-            if (args.length < 2) {
-                System.err.println("Usage: d1_query <databaseId> <query> [params]");
-                return;
-            }
-            String databaseId = args[0];
-            String query = args[1];
-            String params = args.length > 2 ? args[2] : "[]";
-
-            System.out.printf("Executing SQL query on database '%s': %s with parameters: %s%n",
-                    databaseId, query, params);
-            // TODO: Implement logic to execute a SQL query.
-        });
-
-        // Worker Tools
-        toolRegistry.put("worker_list", args -> {
-            System.out.println("Listing Workers...");
-            // TODO: Implement logic to list all Workers.
-        });
-
-        toolRegistry.put("worker_get", args -> {
-            if (args.length < 1) {
-                System.err.println("Usage: worker_get <name>");
-                return;
-            }
-            String name = args[0];
+    /**
+     * Returns the tools of a family, loading the family on first use
+     */
+    private static Map<String, ToolFunction> tools(Family family) {
+        return switch (family) {
+            case KV -> KVTools.TOOLS;
+            case R2 -> R2Tools.TOOLS;
+            case D1 -> D1Tools.TOOLS;
+            case WORKER -> WorkerTools.TOOLS;
+            case ANALYTICS -> AnalyticsTools.TOOLS;
+            case CLAUDE -> ClaudeTools.TOOLS;
+            case MODEL -> ModelTools.TOOLS;
+            case MEMORY -> MemoryTools.TOOLS;
+            case REASONING -> ReasoningTools.TOOLS;
+        };
+    }
 
-            System.out.printf("Getting Worker script for '%s'%n", name);
-            // TODO: Implement logic to get a Worker's script.
-        });
+    /**
+     * Key-Value namespace tools
+     */
+    private static final class KVTools {
+        static final Map<String, ToolFunction> TOOLS = new HashMap<>();
+
+        // In memory, or an LSM tree on disk when -Dmcptools.kv.dir is set
+        private static final KVBackend kvBackend = KVBackends.shared();
+
+        static {
+            TOOLS.put("get_kvs", args -> {
+                System.out.println("Listing KV namespaces...");
+                // TODO: Implement logic to list all KV namespaces.
+            });
+
+            TOOLS.put("kv_get", args -> {
+                if (args.length < 2) {
+                    System.err.println("Usage: kv_get <namespaceId> <key>");
+                    return;
+                }
+                String namespaceId = args[0];
+                String key = args[1];
+                System.out.printf("Getting value for key '%s' from namespace '%s'%n", key, namespaceId);
+                try {
+                    byte[] value = kvBackend.get(namespaceId, key);
+                    if (value == null) {
+                        System.err.printf("Key '%s' not found%n", key);
+                        return;
+                    }
+                    System.out.println(new String(value, StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    System.err.println("KV read failed: " + e.getMessage());
+                }
+            });
+
+            TOOLS.put("kv_put", args -> {
+                if (args.length < 3) {
+                    System.err.println("Usage: kv_put <namespaceId> <key> <value> [expirationTtl]");
+                    return;
+                }
+                String namespaceId = args[0];
+                String key = args[1];
+                String value = args[2];
+                String expirationTtl = args.length > 3 ? args[3] : null;
+
+                System.out.printf("Storing key '%s' with value '%s' into namespace '%s'%s%n",
+                        key, value, namespaceId,
+                        expirationTtl != null ? " with expiration " + expirationTtl : "");
+                try {
+                    kvBackend.put(namespaceId, key, value.getBytes(StandardCharsets.UTF_8),
+                            expirationTtl != null ? Long.parseLong(expirationTtl) : 0);
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid expirationTtl: " + expirationTtl);
+                } catch (IOException e) {
+                    System.err.println("KV write failed: " + e.getMessage());
+                }
+            });
+
+            TOOLS.put("kv_list", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: kv_list <namespaceId> [prefix] [limit]");
+                    return;
+                }
+                String namespaceId = args[0];
+                String prefix = args.length > 1 ? args[1] : "";
+                String limit = args.length > 2 ? args[2] : null;
+
+                System.out.printf("Listing keys in namespace '%s' with prefix '%s'%s%n",
+                        namespaceId, prefix,
+                        limit != null ? " and limit " + limit : "");
+                try {
+                    for (String key : kvBackend.list(namespaceId, prefix,
+                            limit != null ? Integer.parseInt(limit) : 1000)) {
+                        System.out.println("  " + key);
+                    }
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid limit: " + limit);
+                } catch (IOException e) {
+                    System.err.println("KV read failed: " + e.getMessage());
+                }
+            });
+
+            TOOLS.put("kv_delete", args -> {
+                if (args.length < 2) {
+                    System.err.println("Usage: kv_delete <namespaceId> <key>");
+                    return;
+                }
+                String namespaceId = args[0];
+                String key = args[1];
+
+                System.out.printf("Deleting key '%s' from namespace '%s'%n", key, namespaceId);
+                try {
+                    kvBackend.delete(namespaceId, key);
+                } catch (IOException e) {
+                    System.err.println("KV write failed: " + e.getMessage());
+                }
+            });
+
+            TOOLS.put("kv_compression_stats", args -> {
+                if (!(kvBackend instanceof CompressingKVBackend compressing)) {
+                    System.err.println("KV values are not compressed");
+                    return;
+                }
+                // Counters cover the values written and read by this process
+                Map<String, ValueCompressor.Stats> stats = args.length > 0
+                        ? Collections.singletonMap(args[0], compressing.getCompressor().stats(args[0]))
+                        : compressing.getCompressor().stats();
+                if (stats.values().stream().allMatch(Objects::isNull)) {
+                    System.out.println("No KV values compressed or decompressed yet");
+                    return;
+                }
+                stats.forEach(ToolRunner::printCompressionStats);
+            });
+        }
+    }
 
-        toolRegistry.put("worker_put", args -> {
-            if (args.length < 2) {
-                System.err.println(
-                        "Usage: worker_put <name> <script> [bindings] [compatibility_date] [compatibility_flags]");
-                return;
-            }
-            String name = args[0];
-            String script = args[1];
+    /**
+     * R2 bucket tools
+     */
+    private static final class R2Tools {
+        static final Map<String, ToolFunction> TOOLS = new HashMap<>();
+
+        static {
+            TOOLS.put("r2_list_buckets", args -> {
+                System.out.println("Listing R2 buckets...");
+                // TODO: Implement logic to list all R2 buckets.
+            });
+
+            TOOLS.put("r2_create_bucket", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: r2_create_bucket <name>");
+                    return;
+                }
+                String name = args[0];
+
+                System.out.printf("Creating R2 bucket: '%s'%n", name);
+                // TODO: Implement logic to create a new R2 bucket.
+            });
+
+            TOOLS.put("r2_delete_bucket", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: r2_delete_bucket <name>");
+                    return;
+                }
+                String name = args[0];
+
+                System.out.printf("Deleting R2 bucket: '%s'%n", name);
+                // TODO: Implement logic to delete an R2 bucket.
+            });
+
+            TOOLS.put("r2_list_objects", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: r2_list_objects <bucket> [prefix] [delimiter] [limit]");
+                    return;
+                }
+                String bucket = args[0];
+                String prefix = args.length > 1 ? args[1] : "";
+                String delimiter = args.length > 2 ? args[2] : "";
+                String limit = args.length > 3 ? args[3] : null;
+
+                System.out.printf("Listing objects in bucket '%s' with prefix '%s', delimiter '%s'%s%n",
+                        bucket, prefix, delimiter,
+                        limit != null ? " and limit " + limit : "");
+                // TODO: Implement logic to list objects in the R2 bucket.
+            });
+
+            TOOLS.put("r2_get_object", args -> {
+                if (args.length < 2) {
+                    System.err.println("Usage: r2_get_object <bucket> <key>");
+                    return;
+                }
+                String bucket = args[0];
+                String key = args[1];
+
+                System.out.printf("Retrieving object '%s' from bucket '%s'%n", key, bucket);
+                // TODO: Implement logic to get an object from an R2 bucket.
+            });
+
+            TOOLS.put("r2_put_object", args -> {
+                if (args.length < 3) {
+                    System.err.println("Usage: r2_put_object <bucket> <key> <content> [contentType]");
+                    return;
+                }
+                String bucket = args[0];
+                String key = args[1];
+                String content = args[2];
+                String contentType = args.length > 3 ? args[3] : "default";
+
+                System.out.printf("Putting object '%s' into bucket '%s'. Content type: %s%n",
+                        key, bucket, contentType);
+                // TODO: Implement logic to store an object in an R2 bucket.
+            });
+
+            TOOLS.put("r2_delete_object", args -> {
+                if (args.length < 2) {
+                    System.err.println("Usage: r2_delete_object <bucket> <key>");
+                    return;
+                }
+                String bucket = args[0];
+                String key = args[1];
+
+                System.out.printf("Deleting object '%s' from bucket '%s'%n", key, bucket);
+                // TODO: Implement logic to delete an object from an R2 bucket.
+            });
+        }
+    }
 
-            System.out.printf("Creating/updating Worker '%s'%n", name);
-            // TODO: Implement logic to create or update a Worker script.
-        });
+    /**
+     * D1 database tools
+     */
+    private static final class D1Tools {
+        static final Map<String, ToolFunction> TOOLS = new HashMap<>();
+
+        static {
+            TOOLS.put("d1_list_databases", args -> {
+                System.out.println("Listing D1 databases...");
+                // TODO: Implement logic to list all D1 databases.
+            });
+
+            TOOLS.put("d1_create_database", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: d1_create_database <name>");
+                    return;
+                }
+                String name = args[0];
+
+                System.out.printf("Creating D1 database: '%s'%n", name);
+                // TODO: Implement logic to create a new D1 database.
+            });
+
+            TOOLS.put("d1_delete_database", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: d1_delete_database <databaseId>");
+                    return;
+                }
+                String databaseId = args[0];
+
+                System.out.printf("Deleting D1 database with ID: '%s'%n", databaseId);
+                // TODO: Implement logic to delete a D1 database.
+            });
+
+            TOOLS.put("d1_query", args -> {
+                if (args.length < 2) {
+                    System.err.println("Usage: d1_query <databaseId> <query> [params]");
+                    return;
+                }
+                String databaseId = args[0];
+                String query = args[1];
+                String params = args.length > 2 ? args[2] : "[]";
+
+                System.out.printf("Executing SQL query on database '%s': %s with parameters: %s%n",
+                        databaseId, query, params);
+                // TODO: Implement logic to execute a SQL query.
+            });
+        }
+    }
 
-        toolRegistry.put("worker_delete", args -> {
-            if (args.length < 1) {
-                System.err.println("Usage: worker_delete <name>");
-                return;
-            }
-            String name = args[0];
+    /**
+     * Worker script tools
+     */
+    private static final class WorkerTools {
+        static final Map<String, ToolFunction> TOOLS = new HashMap<>();
+
+        // Content-addressed worker scripts with a warm engine pool, kept on
+        // disk when -Dmcptools.worker.dir is set so that they outlive the process
+        private static final WorkerStore workerStore = WorkerStore.open(System.getProperty("mcptools.worker.dir"));
+
+        static {
+            TOOLS.put("worker_list", args -> {
+                System.out.println("Listing Workers...");
+                for (WorkerStore.Worker worker : workerStore.list()) {
+                    System.out.printf("  %s (%s, modified %s)%n",
+                            worker.name(), worker.hash().substring(0, 12), worker.modifiedOn());
+                }
+            });
+
+            TOOLS.put("worker_get", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: worker_get <name>");
+                    return;
+                }
+                String name = args[0];
+
+                System.out.printf("Getting Worker script for '%s'%n", name);
+                String script = workerStore.getScript(name);
+                if (script == null) {
+                    System.err.printf("Worker '%s' not found%n", name);
+                    return;
+                }
+                System.out.println(script);
+            });
+
+            TOOLS.put("worker_put", args -> {
+                if (args.length < 2) {
+                    System.err.println(
+                            "Usage: worker_put <name> <script> [bindings] [compatibility_date] [compatibility_flags]");
+                    return;
+                }
+                String name = args[0];
+                String script = args[1];
+                String bindings = args.length > 2 ? args[2] : "[]";
+                String compatibilityDate = args.length > 3 ? args[3] : null;
+                String compatibilityFlags = args.length > 4 ? args[4] : null;
+
+                System.out.printf("Creating/updating Worker '%s'%n", name);
+                WorkerStore.Worker worker = workerStore.put(name, script, bindings,
+                        compatibilityDate, compatibilityFlags);
+                System.out.printf("Stored script %s%n", worker.hash());
+            });
+
+            TOOLS.put("worker_invoke", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: worker_invoke <name> [input]");
+                    return;
+                }
+                String name = args[0];
+                String input = args.length > 1 ? args[1] : "";
+
+                System.out.printf("Invoking Worker '%s'%n", name);
+                try {
+                    System.out.println(workerStore.invoke(name, input));
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    System.err.println(e.getMessage());
+                } catch (ScriptException e) {
+                    System.err.printf("Worker '%s' failed: %s%n", name, e.getMessage());
+                }
+            });
+
+            TOOLS.put("worker_delete", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: worker_delete <name>");
+                    return;
+                }
+                String name = args[0];
+
+                System.out.printf("Deleting Worker script for '%s'%n", name);
+                if (!workerStore.delete(name)) {
+                    System.err.printf("Worker '%s' not found%n", name);
+                }
+            });
+        }
+    }
 
-            System.out.printf("Deleting Worker script for '%s'%n", name);
-            // TODO: Implement logic to delete a Worker.
-        });
+    /**
+     * Analytics tools
+     */
+    private static final class AnalyticsTools {
+        static final Map<String, ToolFunction> TOOLS = new HashMap<>();
+
+        static {
+            TOOLS.put("analytics_get", args -> {
+                if (args.length < 3) {
+                    System.err.println("Usage: analytics_get <zoneId> <since> <until>");
+                    return;
+                }
+                String zoneId = args[0];
+                String since = args[1];
+                String until = args[2];
+
+                System.out.printf("Fetching analytics for zone '%s' from '%s' to '%s'%n",
+                        zoneId, since, until);
+
+                long sinceMillis;
+                long untilMillis;
+                try {
+                    sinceMillis = parseTimestamp(since);
+                    untilMillis = parseTimestamp(until);
+                } catch (DateTimeParseException e) {
+                    System.err.println("Timestamps must be epoch milliseconds or ISO-8601 instants");
+                    return;
+                }
+
+                AnalyticsStore store = CallLog.store;
+                try {
+                    for (AnalyticsStore.ToolStats stats : store.groupByTool(zoneId, sinceMillis, untilMillis)) {
+                        System.out.printf("  %s: %d call(s), %d error(s), mean %.3f ms, "
+                                + "p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                                stats.tool(), stats.count(), stats.errors(), stats.meanMillis(),
+                                stats.p50(), stats.p90(), stats.p99(), stats.maxMillis());
+                    }
+                    for (AnalyticsStore.RollupPoint point : store.rollup(zoneId, AnalyticsStore.HOUR,
+                            Math.floorDiv(sinceMillis, AnalyticsStore.HOUR) * AnalyticsStore.HOUR, untilMillis)) {
+                        System.out.printf("  %s %s: %d call(s), %d error(s), max %.3f ms%n",
+                                Instant.ofEpochMilli(point.bucketStart()), point.tool(),
+                                point.count(), point.errors(), point.maxMillis());
+                    }
+                } catch (UncheckedIOException e) {
+                    System.err.println(e.getMessage() + ": " + e.getCause().getMessage());
+                }
+            });
+        }
+    }
 
-        // Analytics Tool
-        toolRegistry.put("analytics_get", args -> {
-            if (args.length < 3) {
-                System.err.println("Usage: analytics_get <zoneId> <since> <until>");
-                return;
-            }
-            String zoneId = args[0];
-            String since = args[1];
-            String until = args[2];
-
-            System.out.printf("Fetching analytics for zone '%s' from '%s' to '%s'%n",
-                    zoneId, since, until);
-            // TODO: Implement logic to retrieve analytics data.
-        });
-
-        // Claude Tools
-        toolRegistry.put("claude_completion", args -> {
-            if (args.length < 1) {
-                System.err.println("Usage: claude_completion <prompt> [model] [max_tokens] [temperature] [system]");
-                return;
+    /**
+     * Tool-call events recorded by {@link #execute}. Kept apart from the
+     * analytics tools so recording a call does not load that family.
+     *
+     * Every call is recorded under the zone named by mcptools.zone. When the
+     * mcptools.analytics.log property names a file, calls are appended to its
+     * segments instead of kept in memory, and analytics_get loads them back,
+     * so run from the CLI it sees the calls made by previous processes.
+     * Recording a call does not read the log.
+     *
+     * Without a log, calls are first only queued in {@link #pendingCalls}, so
+     * a one-off call from the CLI never loads the store. The store takes them
+     * over when analytics_get first needs it, or once enough calls have
+     * queued up that the process is evidently a long-running server.
+     */
+    private static final class CallLog {
+        static final String zone = System.getProperty("mcptools.zone", "local");
+        static final AnalyticsStore store = open();
+
+        static {
+            synchronized (pendingCalls) {
+                for (PendingCall call : pendingCalls) {
+                    store.record(zone, call.tool(), call.timestamp(), call.millis(), call.success());
+                }
+                pendingCalls.clear();
+                callLogLoaded = true;
             }
-            String prompt = args[0];
-
-            System.out.printf("Claude completion with prompt: %s%n", prompt);
-            // TODO: Implement logic for Claude text completion.
-        });
+        }
 
-        toolRegistry.put("claude_messages", args -> {
-            if (args.length < 1) {
-                System.err.println("Usage: claude_messages <messages> [model] [max_tokens] [temperature] [system]");
-                return;
+        private static AnalyticsStore open() {
+            String log = System.getProperty("mcptools.analytics.log");
+            if (log == null) {
+                return new AnalyticsStore();
             }
-            String messages = args[0];
-
-            System.out.printf("Claude messages: %s%n", messages);
-            // TODO: Implement logic for message-based Claude responses.
-        });
-
-        // Additional tool registrations would follow the same pattern...
-        // For brevity, I've included a subset of the tools
-
-        // Embeddings & Content Moderation
-        toolRegistry.put("embeddings_create", args -> {
-            if (args.length < 1) {
-                System.err.println("Usage: embeddings_create <input> [model]");
-                return;
+            try {
+                return new AnalyticsStore(Path.of(log), AnalyticsStore.Retention.DEFAULT);
+            } catch (IOException e) {
+                System.err.println("Could not open analytics log " + log + ": " + e.getMessage());
+                return new AnalyticsStore();
             }
-            String input = args[0];
-            String model = args.length > 1 ? args[1] : null;
+        }
+    }
 
-            System.out.printf("Generating embeddings for input: %s using model: %s%n",
-                    input, model != null ? model : "default");
-            // TODO: Implement logic to generate vector embeddings.
-        });
+    private static final int MAX_PENDING_CALLS = 1024;
 
-        toolRegistry.put("content_moderation", args -> {
-            if (args.length < 1) {
-                System.err.println("Usage: content_moderation <input> [categories]");
-                return;
-            }
-            String input = args[0];
-            String categories = args.length > 1 ? args[1] : "[]";
-
-            System.out.printf("Running content moderation on input: %s for categories: %s%n",
-                    input, categories);
-            // TODO: Implement logic for content moderation.
-        });
-
-        // Memory Tools
-        toolRegistry.put("memory_store", args -> {
-            if (args.length < 2) {
-                System.err.println("Usage: memory_store <key> <value> [namespace] [ttl]");
-                return;
-            }
-            String key = args[0];
-            String value = args[1];
-
-            System.out.printf("Storing memory with key '%s'%n", key);
-            // TODO: Implement logic to store memory.
-        });
+    /**
+     * A call made before {@link CallLog} was loaded
+     */
+    private record PendingCall(String tool, long timestamp, double millis, boolean success) {
+    }
 
-        toolRegistry.put("memory_retrieve", args -> {
-            if (args.length < 1) {
-                System.err.println("Usage: memory_retrieve <key> [namespace]");
-                return;
-            }
-            String key = args[0];
+    private static final boolean callLogConfigured = System.getProperty("mcptools.analytics.log") != null;
 
-            System.out.printf("Retrieving memory with key '%s'%n", key);
-            // TODO: Implement logic to retrieve memory.
-        });
+    // Guarded by pendingCalls
+    private static final List<PendingCall> pendingCalls = new ArrayList<>();
+    private static boolean callLogLoaded;
 
-        toolRegistry.put("memory_search", args -> {
-            if (args.length < 1) {
-                System.err.println("Usage: memory_search <query> [namespace] [limit]");
+    /**
+     * Records a call in the {@link CallLog}, or queues it while loading the
+     * log can still be avoided
+     */
+    private static void recordCall(String tool, long timestamp, double millis, boolean success) {
+        synchronized (pendingCalls) {
+            if (!callLogLoaded && !callLogConfigured && pendingCalls.size() < MAX_PENDING_CALLS) {
+                pendingCalls.add(new PendingCall(tool, timestamp, millis, success));
                 return;
             }
-            String query = args[0];
+        }
+        CallLog.store.record(CallLog.zone, tool, timestamp, millis, success);
+    }
 
-            System.out.printf("Searching memories with query '%s'%n", query);
-            // TODO: Implement logic to search memories.
-        });
+    /**
+     * Claude tools
+     */
+    private static final class ClaudeTools {
+        static final Map<String, ToolFunction> TOOLS = new HashMap<>();
+
+        static {
+            TOOLS.put("claude_completion", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: claude_completion <prompt> [model] [max_tokens] [temperature] [system]");
+                    return;
+                }
+                String prompt = args[0];
+
+                System.out.printf("Claude completion with prompt: %s%n", prompt);
+                // TODO: Implement logic for Claude text completion.
+            });
+
+            TOOLS.put("claude_messages", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: claude_messages <messages> [model] [max_tokens] [temperature] [system]");
+                    return;
+                }
+                String messages = args[0];
+
+                System.out.printf("Claude messages: %s%n", messages);
+                // TODO: Implement logic for message-based Claude responses.
+            });
+        }
+    }
 
-        // Sequential & Context Reasoning Tools
-        toolRegistry.put("sequential_thinking", args -> {
-            if (args.length < 1) {
-                System.err.println("Usage: sequential_thinking <input> [steps] [context]");
-                return;
-            }
-            String input = args[0];
-            String steps = args.length > 1 ? args[1] : "1";
+    /**
+     * Embeddings and content moderation tools
+     */
+    private static final class ModelTools {
+        static final Map<String, ToolFunction> TOOLS = new HashMap<>();
+
+        static {
+            TOOLS.put("embeddings_create", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: embeddings_create <input> [model]");
+                    return;
+                }
+                String input = args[0];
+                String model = args.length > 1 ? args[1] : null;
+
+                System.out.printf("Generating embeddings for input: %s using model: %s%n",
+                        input, model != null ? model : "default");
+                // TODO: Implement logic to generate vector embeddings.
+            });
+
+            TOOLS.put("content_moderation", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: content_moderation <input> [categories]");
+                    return;
+                }
+                String input = args[0];
+                String categories = args.length > 1 ? args[1] : "[]";
+
+                System.out.printf("Running content moderation on input: %s for categories: %s%n",
+                        input, categories);
+                // TODO: Implement logic for content moderation.
+            });
+        }
+    }
 
-            System.out.printf("Performing sequential thinking on '%s' with %s step(s)%n",
-                    input, steps);
-            // TODO: Implement sequential reasoning logic.
-        });
+    /**
+     * Memory tools
+     */
+    private static final class MemoryTools {
+        static final Map<String, ToolFunction> TOOLS = new HashMap<>();
+
+        // W-TinyLFU store; every namespace gets -Dmcptools.memory.budget bytes, 64 MB by default,
+        // or the budget of the session creating it, and all of them together
+        // -Dmcptools.memory.totalBudget bytes, 256 MB by default
+        private static final MemoryStore memoryStore = new MemoryStore(
+                Long.getLong("mcptools.memory.budget", 64L << 20),
+                Long.getLong("mcptools.memory.totalBudget", 256L << 20));
+
+        static {
+            TOOLS.put("memory_store", args -> {
+                if (args.length < 2) {
+                    System.err.println("Usage: memory_store <key> <value> [namespace] [ttl]");
+                    return;
+                }
+                String key = args[0];
+                String value = args[1];
+                String namespace = args.length > 2 ? args[2] : MemoryStore.DEFAULT_NAMESPACE;
+                String ttl = args.length > 3 ? args[3] : null;
+
+                System.out.printf("Storing memory with key '%s' in namespace '%s'%s%n", key, namespace,
+                        ttl != null ? " with ttl " + ttl : "");
+                McpSession session = McpSession.current();
+                try {
+                    memoryStore.put(McpSession.scope(namespace, memoryStore::clear), key, value,
+                            ttl != null ? Long.parseLong(ttl) : 0, session != null ? session.getMemoryBudget() : 0);
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid ttl: " + ttl);
+                }
+            });
+
+            TOOLS.put("memory_retrieve", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: memory_retrieve <key> [namespace]");
+                    return;
+                }
+                String key = args[0];
+                String namespace = args.length > 1 ? args[1] : MemoryStore.DEFAULT_NAMESPACE;
+
+                System.out.printf("Retrieving memory with key '%s' from namespace '%s'%n", key, namespace);
+                String value = memoryStore.get(McpSession.scope(namespace, null), key);
+                if (value == null) {
+                    System.err.printf("Memory '%s' not found%n", key);
+                    return;
+                }
+                System.out.println(value);
+            });
+
+            TOOLS.put("memory_search", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: memory_search <query> [namespace] [limit]");
+                    return;
+                }
+                String query = args[0];
+
+                System.out.printf("Searching memories with query '%s'%n", query);
+                // TODO: Implement logic to search memories.
+            });
+
+            TOOLS.put("memory_stats", args -> {
+                // Within a session only the session's own namespaces are visible
+                String requested = args.length > 0 ? McpSession.scope(args[0], null) : null;
+                Map<String, MemoryStore.Stats> stats = requested != null
+                        ? Collections.singletonMap(requested, memoryStore.stats(requested))
+                        : memoryStore.stats();
+                for (Map.Entry<String, MemoryStore.Stats> entry : stats.entrySet()) {
+                    String name = McpSession.unscope(entry.getKey());
+                    if (name == null) {
+                        continue;
+                    }
+                    MemoryStore.Stats namespace = entry.getValue();
+                    if (namespace == null) {
+                        System.err.printf("Memory namespace '%s' not found%n", name);
+                        continue;
+                    }
+                    System.out.printf("%s: %d entries, %d of %d bytes, hit ratio %.3f (%d hits, %d misses), "
+                            + "%d evictions (%d bytes), %d expirations, %d rejected%n",
+                            name, namespace.entries(), namespace.bytes(), namespace.budgetBytes(),
+                            namespace.hitRatio(), namespace.hits(), namespace.misses(), namespace.evictions(),
+                            namespace.evictedBytes(), namespace.expirations(), namespace.rejections());
+                    printCompressionStats(name, memoryStore.compressionStats(entry.getKey()));
+                }
+                // The process-wide total is not shown to sessions, since it includes other sessions
+                if (requested == null && McpSession.current() == null) {
+                    System.out.printf("all namespaces: %d of %d bytes%n", memoryStore.totalBytes(),
+                            memoryStore.totalBudget());
+                }
+            });
+        }
+    }
 
-        toolRegistry.put("context_manager", args -> {
-            if (args.length < 2) {
-                System.err.println("Usage: context_manager <action> <context_id> [content]");
-                return;
-            }
-            String action = args[0];
-            String contextId = args[1];
-            String content = args.length > 2 ? args[2] : "{}";
-
-            System.out.printf("Context manager action '%s' for context '%s'%n",
-                    action, contextId);
-            // TODO: Implement context management logic.
-        });
+    /**
+     * Sequential and context reasoning tools
+     */
+    private static final class ReasoningTools {
+        static final Map<String, ToolFunction> TOOLS = new HashMap<>();
+
+        // Step-graph executor for sequential_thinking; memoised steps are kept under
+        // the directory named by the mcptools.thinking.cache property, if set
+        private static final SequentialThinkingEngine thinkingEngine = new SequentialThinkingEngine(
+                System.getProperty("mcptools.thinking.cache") != null
+                        ? Path.of(System.getProperty("mcptools.thinking.cache"))
+                        : null);
+
+        // Token-budgeted segment store for context_manager
+        private static final ContextStore contextStore = new ContextStore();
+
+        static {
+            TOOLS.put("sequential_thinking", args -> {
+                if (args.length < 1) {
+                    System.err.println("Usage: sequential_thinking <input> [steps] [context]");
+                    return;
+                }
+                String input = args[0];
+                String steps = args.length > 1 ? args[1] : "1";
+                String context = args.length > 2 ? args[2] : "";
+                String stepInput = context.isEmpty() ? input : input + " | context: " + context;
+
+                try {
+                    SequentialThinkingEngine.RunResult result = thinkingEngine.run(stepInput,
+                            SequentialThinkingEngine.parseSteps(steps));
+
+                    System.out.printf("Performing sequential thinking on '%s' with %d step(s)%n",
+                            input, result.steps().size());
+                    result.steps().values().forEach(step -> System.out.printf("  %s%s: %s%n",
+                            step.id(), step.cached() ? " (cached)" : "", step.output()));
+                    System.out.printf("Completed in %.3f ms "
+                            + "(critical path %.3f ms, total step time %.3f ms, %d cached)%n",
+                            result.wallNanos() / 1e6, result.criticalPathNanos() / 1e6,
+                            result.totalStepNanos() / 1e6, result.cachedCount());
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid steps: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    System.err.println("Sequential thinking interrupted");
+                } catch (ExecutionException e) {
+                    System.err.println("Sequential thinking failed: " + e.getCause().getMessage());
+                }
+            });
+
+            TOOLS.put("context_manager", args -> {
+                if (args.length < 2) {
+                    System.err.println("Usage: context_manager <action> <context_id> [content]");
+                    return;
+                }
+                String action = args[0];
+                String contextId = args[1];
+                String content = args.length > 2 ? args[2] : "{}";
+
+                System.out.printf("Context manager action '%s' for context '%s'%n",
+                        action, contextId);
+                // Within a session, contexts are private to it and deleted when it ends
+                String id = McpSession.scope(contextId, scoped -> contextStore.delete(scoped));
+
+                switch (action) {
+                    case "create":
+                        contextStore.create(id);
+                        break;
+                    case "append":
+                        int tokens = contextStore.append(id, content);
+                        System.out.printf("Appended %d token(s)%n", tokens);
+                        break;
+                    case "get":
+                    case "fit":
+                        long budget;
+                        try {
+                            budget = args.length > 2 ? Long.parseLong(content) : Long.MAX_VALUE;
+                        } catch (NumberFormatException e) {
+                            System.err.println("Usage: context_manager " + action + " <context_id> [max_tokens]");
+                            return;
+                        }
+                        ContextStore.Window window = contextStore.fit(id, budget);
+                        System.out.printf("%d token(s) in %d segment(s)%s%n", window.tokens(),
+                                window.segments().size(), window.truncated() ? " (truncated)" : "");
+                        window.writeTo(System.out);
+                        System.out.println();
+                        break;
+                    case "compact":
+                        contextStore.compactNow(id);
+                        break;
+                    case "stats":
+                        ContextStore.Stats stats = contextStore.stats(id);
+                        if (stats == null) {
+                            System.err.printf("Context '%s' not found%n", contextId);
+                            return;
+                        }
+                        System.out.printf("Live segments: %d (%d tokens), compacted segments: %d (summary %d tokens)%n",
+                                stats.liveSegments(), stats.liveTokens(),
+                                stats.compactedSegments(), stats.summaryTokens());
+                        break;
+                    case "delete":
+                        if (!contextStore.delete(id)) {
+                            System.err.printf("Context '%s' not found%n", contextId);
+                        }
+                        break;
+                    default:
+                        System.err.println(
+                                "Unknown action. Expected one of: create, append, get, fit, compact, stats, delete");
+                }
+            });
+        }
     }
 
     public static void main(String[] args) {
         if (args.length < 1) {
             System.err.println("Usage: java ToolRunner <tool_name> [parameters...]");
+            System.err.println("       java ToolRunner --list  (to list available tools)");
             System.exit(1);
         }
 
+        if (args[0].equals("--list")) {
+            System.out.println("Available tools:");
+            toolIndex.forEach((name, entry) -> System.out.printf("  %s - %s%n", name, entry.usage()));
+            return;
+        }
+
         String toolName = args[0];
 
-        if (!toolRegistry.containsKey(toolName)) {
+        if (!toolIndex.containsKey(toolName)) {
             System.err.printf("Tool '%s' not recognized.%n", toolName);
             System.exit(1);
         }
 
         // The remaining arguments are passed to the chosen tool function
         String[] toolArgs = Arrays.copyOfRange(args, 1, args.length);
-        toolRegistry.get(toolName).execute(toolArgs);
+        execute(toolName, toolArgs);
+    }
+
+    /**
+     * Returns the names of all registered tools
+     */
+    static Set<String> toolNames() {
+        return Collections.unmodifiableSet(toolIndex.keySet());
+    }
+
+    /**
+     * Returns the usage string of every registered tool, keyed by tool name
+     */
+    static Map<String, String> toolUsages() {
+        Map<String, String> usages = new LinkedHashMap<>();
+        toolIndex.forEach((name, entry) -> usages.put(name, entry.usage()));
+        return usages;
+    }
+
+    /**
+     * Executes a registered tool through the result cache and records the
+     * call for analytics_get. Like the tool families, the result cache is
+     * only loaded by a tool that takes part in caching and the analytics
+     * store only once {@link #recordCall} needs it.
+     */
+    static void execute(String toolName, String[] toolArgs) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try (Tracer.Span span = Tracer.global().startSpan("ToolRunner.execute")) {
+            span.setAttribute("mcp.tool", toolName);
+            ToolEntry entry = toolIndex.get(toolName);
+            ToolFunction function = tools(entry.family()).get(toolName);
+            if (entry.cache() == null) {
+                function.execute(toolArgs);
+            } else {
+                ToolResultCache.shared().run(toolName, entry.usage(), entry.cache(), toolArgs,
+                        () -> function.execute(toolArgs));
+            }
+            success = true;
+        } finally {
+            try {
+                recordCall(toolName, System.currentTimeMillis(), (System.nanoTime() - start) / 1e6, success);
+            } catch (UncheckedIOException e) {
+                System.err.println(e.getMessage() + ": " + e.getCause().getMessage());
+            }
+        }
+    }
+
+    /**
+     * Prints the compression counters of one namespace, if it has any
+     */
+    private static void printCompressionStats(String namespace, ValueCompressor.Stats stats) {
+        if (stats == null) {
+            return;
+        }
+        System.out.printf("%s: compression %s, %d of %d values compressed, %d bytes stored as %d (ratio %.2f), "
+                + "%.1f ns per byte compressing, %d decompressions averaging %.1f us, dictionary %d (%d bytes)%n",
+                namespace, stats.enabled() ? "on" : "off", stats.compressedValues(), stats.values(),
+                stats.rawBytes(), stats.storedBytes(), stats.ratio(), stats.compressNanosPerByte(),
+                stats.decompressions(),
+                stats.decompressions() == 0 ? 0 : stats.decompressNanos() / 1e3 / stats.decompressions(),
+                stats.dictionaryId(), stats.dictionaryBytes());
+    }
+
+    /**
+     * Parses a timestamp given as epoch milliseconds or an ISO-8601 instant
+     */
+    private static long parseTimestamp(String value) {
+        if (!value.isEmpty() && value.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(value);
+        }
+        return Instant.parse(value).toEpochMilli();
     }
 }
\ No newline at end of file
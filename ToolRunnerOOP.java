@@ -1,8 +1,11 @@
 package mcpTools;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Object-oriented implementation of the Tool Runner CLI.
@@ -22,34 +25,26 @@ public class ToolRunnerOOP {
     private final Map<String, ToolRegistry.Tool> toolMap = new HashMap<>();
 
     /**
-     * Initializes the tool runner with a set of registered tools
+     * Initializes the tool runner with every tool defined in
+     * {@link ToolRegistry.Definition}. Only the definitions are registered
+     * here; each tool is created on first use.
      */
     public ToolRunnerOOP() {
-        // Register KV tools
-        registerTool(new ToolRegistry.KVGetTool());
-        registerTool(new ToolRegistry.KVPutTool());
-        registerTool(new ToolRegistry.KVListTool());
-        registerTool(new ToolRegistry.KVDeleteTool());
-
-        // Register R2 tools
-        registerTool(new ToolRegistry.R2ListBucketsTool());
-        registerTool(new ToolRegistry.R2GetObjectTool());
-
-        // Register Claude tools
-        registerTool(new ToolRegistry.ClaudeCompletionTool());
-
-        // Additional tools would be registered here
+        for (ToolRegistry.Definition definition : ToolRegistry.Definition.values()) {
+            registerTool(definition);
+        }
     }
 
     /**
-     * Registers a tool in the tool map
+     * Registers a tool in the tool map without creating it
      */
-    private void registerTool(ToolRegistry.Tool tool) {
-        toolMap.put(tool.getName(), tool);
+    private void registerTool(ToolRegistry.Definition definition) {
+        toolMap.put(definition.toolName(), new ToolRegistry.LazyTool(definition));
     }
 
     /**
-     * Executes a tool by name with the provided arguments
+     * Executes a tool by name with the provided arguments, through the
+     * result cache shared with {@link ToolRunner}
      */
     public void executeTool(String toolName, String[] args) {
         if (!toolMap.containsKey(toolName)) {
@@ -57,7 +52,35 @@ public class ToolRunnerOOP {
             System.exit(1);
         }
 
-        toolMap.get(toolName).execute(args);
+        try (Tracer.Span span = Tracer.global().startSpan("ToolRunnerOOP.executeTool")) {
+            span.setAttribute("mcp.tool", toolName);
+            ToolRegistry.Tool tool = toolMap.get(toolName);
+            ToolResultCache.shared().run(toolName, tool.getUsage(), tool.getCachePolicy(), args,
+                    () -> tool.execute(args));
+        }
+    }
+
+    /**
+     * Returns the names of all registered tools
+     */
+    public Set<String> getToolNames() {
+        return Collections.unmodifiableSet(toolMap.keySet());
+    }
+
+    /**
+     * Returns the usage string of every registered tool, keyed by tool name
+     */
+    public Map<String, String> getToolUsages() {
+        Map<String, String> usages = new TreeMap<>();
+        toolMap.forEach((name, tool) -> usages.put(name, tool.getUsage()));
+        return usages;
+    }
+
+    /**
+     * Returns whether a tool with the given name is registered
+     */
+    public boolean hasTool(String toolName) {
+        return toolMap.containsKey(toolName);
     }
 
     /**
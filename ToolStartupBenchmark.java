@@ -0,0 +1,246 @@
+package mcpTools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Startup benchmark for the lazy tool registries.
+ *
+ * Launches a fresh JVM per tool, for both runners, and reports how many
+ * classes were loaded and how long the JVM had been up once that single call
+ * returned. With lazy registration both numbers depend on the family of the
+ * tool being called, not on the size of the catalogue.
+ *
+ * To show how startup scales with the catalogue, it then generates and
+ * compiles catalogues of N tools, each a class of its own described by a
+ * generated {@link ToolRegistry.ToolDefinition} enum as {@link ToolRegistry}
+ * describes its tools, and registered wrapped in a
+ * {@link ToolRegistry.LazyTool} the way {@link ToolRunnerOOP} registers them.
+ * It measures the wall time from launching a fresh JVM until its first call
+ * to the last tool returns.
+ *
+ * Usage:
+ * java -cp <classpath> mcpTools.ToolStartupBenchmark
+ */
+public class ToolStartupBenchmark {
+
+    private static final String PROBE = "--probe";
+    private static final int MAX_CATALOGUE = 1_000;
+    private static final int CATALOGUE_RUNS = 5;
+    private static final String CATALOGUE = "Catalogue";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length >= 2 && args[0].equals(PROBE)) {
+            probe(args[1], args.length > 2 ? args[2] : null);
+            return;
+        }
+
+        Map<String, List<String>> runners = new HashMap<>();
+        runners.put("ToolRunner", new ArrayList<>(new TreeSet<>(ToolRunner.toolNames())));
+        runners.put("ToolRunnerOOP", new ArrayList<>(new TreeSet<>(new ToolRunnerOOP().getToolNames())));
+
+        for (Map.Entry<String, List<String>> runner : runners.entrySet()) {
+            String[] idle = launch(runner.getKey(), null);
+            System.out.printf("%s: %d tool(s) indexed, %s classes and %s ms at startup without a call%n",
+                    runner.getKey(), runner.getValue().size(), idle[0], idle[1]);
+
+            long minClasses = Long.MAX_VALUE;
+            long maxClasses = 0;
+            for (String tool : runner.getValue()) {
+                String[] result = launch(runner.getKey(), tool);
+                long classes = Long.parseLong(result[0]);
+                minClasses = Math.min(minClasses, classes);
+                maxClasses = Math.max(maxClasses, classes);
+                System.out.printf("  %-22s %6s classes %8s ms%n", tool, result[0], result[1]);
+            }
+            System.out.printf("  classes loaded per call: %d to %d%n", minClasses, maxClasses);
+        }
+
+        System.out.println("Startup to first call by catalogue size:");
+        for (int size = 10; size <= MAX_CATALOGUE; size *= 10) {
+            Path directory = generateCatalogue(size);
+            String classpath = directory + File.pathSeparator + System.getProperty("java.class.path");
+            String tool = "tool_" + (size - 1);
+            // The first launch warms the OS page cache and is discarded
+            launchCatalogue(classpath, tool);
+            long[] wall = new long[CATALOGUE_RUNS];
+            String[] last = null;
+            for (int run = 0; run < CATALOGUE_RUNS; run++) {
+                long start = System.nanoTime();
+                last = launchCatalogue(classpath, tool);
+                wall[run] = System.nanoTime() - start;
+            }
+            Arrays.sort(wall);
+            System.out.printf("  %6d tools: %8.1f ms to first call, %s classes loaded%n",
+                    size, wall[CATALOGUE_RUNS / 2] / 1e6, last[0]);
+        }
+    }
+
+    /**
+     * Writes and compiles a catalogue of {@code size} tool classes with an
+     * index class declaring a definition per tool, whose main method
+     * registers a lazy tool for each definition and calls one
+     */
+    private static Path generateCatalogue(int size) throws IOException {
+        Path directory = Files.createTempDirectory("tool-catalogue-" + size);
+        List<Path> sources = new ArrayList<>();
+
+        StringBuilder catalogue = new StringBuilder();
+        StringBuilder create = new StringBuilder();
+        catalogue.append("import java.lang.management.ManagementFactory;\n")
+                .append("import java.util.HashMap;\n")
+                .append("import java.util.Map;\n")
+                .append("import mcpTools.ToolRegistry;\n")
+                .append("import mcpTools.ToolResultCache;\n\n")
+                .append("public class ").append(CATALOGUE).append(" {\n")
+                .append("    public enum Definition implements ToolRegistry.ToolDefinition {\n");
+        for (int i = 0; i < size; i++) {
+            catalogue.append("        TOOL_").append(i).append("(\"tool_").append(i).append("\", \"tool_").append(i)
+                    .append(" <arg>\")").append(i < size - 1 ? ",\n" : ";\n\n");
+            create.append("                case TOOL_").append(i).append(" -> new Tool").append(i).append("();\n");
+            Path source = directory.resolve("Tool" + i + ".java");
+            Files.writeString(source, "public class Tool" + i + " extends mcpTools.ToolRegistry.AbstractTool {\n"
+                    + "    public Tool" + i + "() { super(" + CATALOGUE + ".Definition.TOOL_" + i + "); }\n"
+                    + "    @Override public void execute(String[] args) { System.out.println(getName()); }\n"
+                    + "}\n");
+            sources.add(source);
+        }
+        catalogue.append("        private final String toolName;\n")
+                .append("        private final String usage;\n\n")
+                .append("        Definition(String toolName, String usage) {\n")
+                .append("            this.toolName = toolName;\n")
+                .append("            this.usage = usage;\n")
+                .append("        }\n\n")
+                .append("        @Override public String toolName() { return toolName; }\n")
+                .append("        @Override public String usage() { return usage; }\n")
+                .append("        @Override public ToolResultCache.Policy cachePolicy() { return null; }\n\n")
+                .append("        @Override public ToolRegistry.Tool create() {\n")
+                .append("            return switch (this) {\n")
+                .append(create)
+                .append("            };\n")
+                .append("        }\n")
+                .append("    }\n\n")
+                .append("    public static void main(String[] args) {\n")
+                .append("        Map<String, ToolRegistry.Tool> tools = new HashMap<>();\n")
+                .append("        for (Definition definition : Definition.values()) {\n")
+                .append("            tools.put(definition.toolName(), new ToolRegistry.LazyTool(definition));\n")
+                .append("        }\n")
+                .append("        tools.get(args[0]).execute(new String[0]);\n")
+                .append("        System.out.printf(\"%d %d%n\", ")
+                .append("ManagementFactory.getClassLoadingMXBean().getLoadedClassCount(), ")
+                .append("ManagementFactory.getRuntimeMXBean().getUptime());\n")
+                .append("    }\n")
+                .append("}\n");
+        Path index = directory.resolve(CATALOGUE + ".java");
+        Files.writeString(index, catalogue);
+        sources.add(index);
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("Generating catalogues needs a JDK with javac");
+        }
+        List<String> options = List.of("-d", directory.toString(),
+                "-cp", System.getProperty("java.class.path"), "-proc:none");
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            boolean compiled = compiler.getTask(null, files, null, options, null,
+                    files.getJavaFileObjectsFromPaths(sources)).call();
+            if (!compiled) {
+                throw new IllegalStateException("Could not compile the generated catalogue of " + size);
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * Starts a fresh JVM on a generated catalogue and calls one tool
+     */
+    private static String[] launchCatalogue(String classpath, String tool) throws IOException, InterruptedException {
+        List<String> command = List.of(ProcessHandle.current().info().command().orElse("java"),
+                "-cp", classpath, CATALOGUE, tool);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String line = null;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            // The tool prints its name first, then the catalogue its counters
+            for (String next = reader.readLine(); next != null; next = reader.readLine()) {
+                line = next;
+            }
+        }
+        if (process.waitFor() != 0 || line == null) {
+            throw new IllegalStateException("Catalogue run failed for " + tool);
+        }
+        return line.split(" ");
+    }
+
+    /**
+     * Starts a fresh JVM that constructs the runner and calls one tool
+     */
+    private static String[] launch(String runner, String tool) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of(
+                ProcessHandle.current().info().command().orElse("java"),
+                "-cp", System.getProperty("java.class.path"),
+                ToolStartupBenchmark.class.getName(), PROBE, runner));
+        if (tool != null) {
+            command.add(tool);
+        }
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String line;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            line = reader.readLine();
+        }
+        if (process.waitFor() != 0 || line == null) {
+            throw new IllegalStateException("Probe failed for " + runner + " " + tool);
+        }
+        return line.split(" ");
+    }
+
+    /**
+     * Runs inside the child JVM: executes the call and prints
+     * "{@code <loaded classes> <uptime ms>}"
+     */
+    private static void probe(String runner, String tool) {
+        PrintStream out = System.out;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        String[] args = { "bench", "key", "value" };
+
+        System.setOut(discard);
+        System.setErr(discard);
+        try {
+            if (runner.equals("ToolRunnerOOP")) {
+                ToolRunnerOOP oop = new ToolRunnerOOP();
+                if (tool != null) {
+                    oop.executeTool(tool, args);
+                }
+            } else if (tool != null) {
+                ToolRunner.execute(tool, args);
+            } else {
+                ToolRunner.toolNames();
+            }
+        } finally {
+            System.setOut(out);
+        }
+
+        out.printf("%d %d%n", ManagementFactory.getClassLoadingMXBean().getLoadedClassCount(),
+                ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+}
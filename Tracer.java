@@ -0,0 +1,499 @@
+package mcpTools;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sampled span recorder for the stages of a tool call.
+ *
+ * Finished spans are copied into a ring buffer of pre-allocated slots, so
+ * recording a finished span costs a few array stores and the memory held by
+ * tracing is fixed; when the exporter falls behind, the oldest spans are
+ * overwritten and counted as dropped. An open span is one small object,
+ * whose attribute array is only allocated once an attribute is set; spans
+ * passed to {@link #recordSpan} allocate nothing. Sampling is decided once per trace:
+ * a trace continued from a W3C {@code traceparent} follows the caller's
+ * decision, a new one is sampled with the configured probability, and spans
+ * of unsampled traces are never created.
+ *
+ * The current span is tracked per thread. Work handed to another thread can
+ * carry it along with {@link #current()} and {@link #attach(Span)}.
+ *
+ * Configuration:
+ * <ul>
+ * <li>{@code -Dmcptools.trace.sample=<0..1>} probability of sampling a new
+ * trace, 0.01 by default when an export target is set</li>
+ * <li>{@code -Dmcptools.trace.export=<file or http url>} where OTLP JSON is
+ * written once a second and at exit: each flush is appended to a file as one
+ * line, or POSTed to a collector such as {@link OtlpCollectorStub}</li>
+ * <li>{@code -Dmcptools.trace.buffer=<spans>} ring buffer capacity, 4096 by default</li>
+ * </ul>
+ * Tracing is off unless a sample rate or an export target is set.
+ */
+public final class Tracer {
+
+    private static final String SERVICE_NAME = "mcp-tools";
+    private static final int MAX_ATTRIBUTES = 8;
+    private static final long FLUSH_INTERVAL_MILLIS = 1_000;
+
+    /**
+     * Holds the tracer configured by the system properties, created on first use
+     */
+    private static final class Holder {
+        static final Tracer GLOBAL = fromSystemProperties();
+    }
+
+    /**
+     * Holds the mapper exports are written with, so a tracer that never
+     * exports does not load Jackson
+     */
+    private static final class Json {
+        static final ObjectMapper MAPPER = new ObjectMapper();
+    }
+
+    /**
+     * An open span. Closing it records it and makes its parent current again.
+     * Spans of unsampled traces are the shared {@link #NOOP} instance.
+     */
+    public static final class Span implements AutoCloseable {
+        private final Tracer tracer;
+        private final Span parent;
+        private final String name;
+        private final boolean server;
+        private long traceIdHigh;
+        private long traceIdLow;
+        private long parentSpanId;
+        private final long spanId;
+        private final long startNanos;
+        private boolean sampled;
+        private String[] attributes;
+        private int attributeCount;
+        private String error;
+
+        private Span(Tracer tracer, Span parent, String name, boolean server, long traceIdHigh, long traceIdLow,
+                long parentSpanId, long startNanos, boolean sampled) {
+            this.tracer = tracer;
+            this.parent = parent;
+            this.name = name;
+            this.server = server;
+            this.traceIdHigh = traceIdHigh;
+            this.traceIdLow = traceIdLow;
+            this.parentSpanId = parentSpanId;
+            this.spanId = randomId();
+            this.startNanos = startNanos;
+            this.sampled = sampled;
+        }
+
+        /**
+         * Joins the trace described by a W3C traceparent header. Only valid on
+         * a root span before any child has been started; an invalid header is
+         * ignored.
+         */
+        public Span continueTrace(String traceparent) {
+            if (tracer == null || traceparent == null || parent != null) {
+                return this;
+            }
+            String[] parts = traceparent.trim().split("-");
+            if (parts.length < 4 || parts[1].length() != 32 || parts[2].length() != 16 || parts[3].length() != 2) {
+                return this;
+            }
+            try {
+                traceIdHigh = Long.parseUnsignedLong(parts[1].substring(0, 16), 16);
+                traceIdLow = Long.parseUnsignedLong(parts[1].substring(16), 16);
+                parentSpanId = Long.parseUnsignedLong(parts[2], 16);
+                sampled = (Integer.parseInt(parts[3], 16) & 1) != 0;
+            } catch (NumberFormatException e) {
+                // Keep the locally generated trace
+            }
+            return this;
+        }
+
+        public Span setAttribute(String key, Object value) {
+            if (sampled && attributeCount < MAX_ATTRIBUTES) {
+                if (attributes == null) {
+                    attributes = new String[2 * MAX_ATTRIBUTES];
+                }
+                attributes[2 * attributeCount] = key;
+                attributes[2 * attributeCount + 1] = String.valueOf(value);
+                attributeCount++;
+            }
+            return this;
+        }
+
+        public Span setError(String message) {
+            if (sampled) {
+                error = message == null ? "error" : message;
+            }
+            return this;
+        }
+
+        public boolean isSampled() {
+            return sampled;
+        }
+
+        /**
+         * Returns the W3C traceparent identifying this span
+         */
+        public String traceparent() {
+            return String.format("00-%016x%016x-%016x-%02d", traceIdHigh, traceIdLow, spanId, sampled ? 1 : 0);
+        }
+
+        @Override
+        public void close() {
+            if (tracer == null) {
+                return;
+            }
+            if (tracer.current.get() == this) {
+                tracer.current.set(parent);
+            }
+            if (sampled) {
+                tracer.buffer.record(traceIdHigh, traceIdLow, spanId, parentSpanId, startNanos, System.nanoTime(),
+                        server, name, error, attributes, attributeCount);
+            }
+        }
+    }
+
+    /**
+     * Shared do-nothing span
+     */
+    public static final Span NOOP = new Span(null, null, null, false, 0, 0, 0, 0, false);
+
+    /**
+     * Fixed-capacity ring of span slots. A writer claims a sequence number,
+     * marks the slot as being written, fills it and publishes the sequence;
+     * a reader accepts a slot only if the same sequence is published before
+     * and after copying it.
+     */
+    static final class RingBuffer {
+        private final int mask;
+        private final AtomicLongArray published;
+        private final long[] traceIdHigh;
+        private final long[] traceIdLow;
+        private final long[] spanId;
+        private final long[] parentSpanId;
+        private final long[] start;
+        private final long[] end;
+        private final boolean[] server;
+        private final String[] name;
+        private final String[] error;
+        private final String[][] attributes;
+        private final AtomicLong claimed = new AtomicLong();
+        private long exported;
+        private long dropped;
+
+        RingBuffer(int capacity) {
+            int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+            mask = size - 1;
+            published = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                published.set(i, -1);
+            }
+            traceIdHigh = new long[size];
+            traceIdLow = new long[size];
+            spanId = new long[size];
+            parentSpanId = new long[size];
+            start = new long[size];
+            end = new long[size];
+            server = new boolean[size];
+            name = new String[size];
+            error = new String[size];
+            attributes = new String[size][2 * MAX_ATTRIBUTES];
+        }
+
+        void record(long traceIdHigh, long traceIdLow, long spanId, long parentSpanId, long startNanos,
+                long endNanos, boolean server, String name, String error, String[] attributes, int attributeCount) {
+            write(claim(), traceIdHigh, traceIdLow, spanId, parentSpanId, startNanos, endNanos, server, name, error,
+                    attributes, attributeCount);
+        }
+
+        /**
+         * Reserves the next slot; until {@link #write} publishes it, drains
+         * stop in front of it
+         */
+        long claim() {
+            long sequence = claimed.getAndIncrement();
+            published.set((int) (sequence & mask), -1);
+            return sequence;
+        }
+
+        void write(long sequence, long traceIdHigh, long traceIdLow, long spanId, long parentSpanId,
+                long startNanos, long endNanos, boolean server, String name, String error, String[] attributes,
+                int attributeCount) {
+            int slot = (int) (sequence & mask);
+            this.traceIdHigh[slot] = traceIdHigh;
+            this.traceIdLow[slot] = traceIdLow;
+            this.spanId[slot] = spanId;
+            this.parentSpanId[slot] = parentSpanId;
+            start[slot] = startNanos;
+            end[slot] = endNanos;
+            this.server[slot] = server;
+            this.name[slot] = name;
+            this.error[slot] = error;
+            String[] slotAttributes = this.attributes[slot];
+            if (attributeCount > 0) {
+                System.arraycopy(attributes, 0, slotAttributes, 0, 2 * attributeCount);
+            }
+            if (attributeCount < MAX_ATTRIBUTES) {
+                slotAttributes[2 * attributeCount] = null;
+            }
+            published.set(slot, sequence);
+        }
+
+        /**
+         * Returns the number of spans overwritten or abandoned before they were exported
+         */
+        synchronized long dropped() {
+            return dropped;
+        }
+
+        /**
+         * Appends every span published since the last drain to the OTLP span array
+         *
+         * @return the number of spans appended
+         */
+        synchronized int drainTo(ArrayNode spans, long epochOffsetNanos) {
+            long limit = claimed.get();
+            int drained = 0;
+            if (limit - exported > mask + 1) {
+                dropped += limit - exported - (mask + 1);
+                exported = limit - (mask + 1);
+            }
+            while (exported < limit) {
+                int slot = (int) (exported & mask);
+                long before = published.get(slot);
+                if (before < exported) {
+                    // Claimed but not yet published, either still marked -1
+                    // or holding the previous lap; pick it up on the next drain
+                    break;
+                }
+                if (before == exported) {
+                    ObjectNode span = spans.addObject();
+                    span.put("traceId", String.format("%016x%016x", traceIdHigh[slot], traceIdLow[slot]));
+                    span.put("spanId", String.format("%016x", spanId[slot]));
+                    if (parentSpanId[slot] != 0) {
+                        span.put("parentSpanId", String.format("%016x", parentSpanId[slot]));
+                    }
+                    span.put("name", name[slot]);
+                    span.put("kind", server[slot] ? 2 : 1);
+                    span.put("startTimeUnixNano", Long.toString(start[slot] + epochOffsetNanos));
+                    span.put("endTimeUnixNano", Long.toString(end[slot] + epochOffsetNanos));
+                    ArrayNode spanAttributes = span.putArray("attributes");
+                    String[] slotAttributes = attributes[slot];
+                    for (int i = 0; i < MAX_ATTRIBUTES && slotAttributes[2 * i] != null; i++) {
+                        spanAttributes.addObject().put("key", slotAttributes[2 * i])
+                                .putObject("value").put("stringValue", slotAttributes[2 * i + 1]);
+                    }
+                    ObjectNode status = span.putObject("status");
+                    if (error[slot] != null) {
+                        status.put("code", 2).put("message", error[slot]);
+                    }
+                    if (published.get(slot) == exported) {
+                        drained++;
+                    } else {
+                        // Overwritten while being copied
+                        spans.remove(spans.size() - 1);
+                        dropped++;
+                    }
+                } else {
+                    // Already overwritten by a later lap
+                    dropped++;
+                }
+                exported++;
+            }
+            return drained;
+        }
+    }
+
+    private final ThreadLocal<Span> current = new ThreadLocal<>();
+    private final boolean enabled;
+    private final double sampleRate;
+    private final RingBuffer buffer;
+    private final long epochOffsetNanos;
+
+    /**
+     * @param sampleRate probability of sampling a new trace; a disabled tracer ignores it
+     */
+    public Tracer(boolean enabled, double sampleRate, int bufferCapacity) {
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+        this.buffer = new RingBuffer(enabled ? bufferCapacity : 2);
+        this.epochOffsetNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+    }
+
+    public static Tracer global() {
+        return Holder.GLOBAL;
+    }
+
+    /**
+     * Starts a span as a child of the current one. Without a current span it
+     * starts a new trace, subject to sampling.
+     */
+    public Span startSpan(String name) {
+        if (!enabled) {
+            return NOOP;
+        }
+        Span parent = current.get();
+        if (parent == null) {
+            return startTrace(name, System.nanoTime());
+        }
+        if (!parent.sampled) {
+            return NOOP;
+        }
+        Span span = new Span(this, parent, name, false, parent.traceIdHigh, parent.traceIdLow, parent.spanId,
+                System.nanoTime(), true);
+        current.set(span);
+        return span;
+    }
+
+    /**
+     * Starts the root span of a request received at {@code startNanos}
+     * ({@link System#nanoTime()}). Call {@link Span#continueTrace} on it
+     * before starting children to join the caller's trace.
+     */
+    public Span startTrace(String name, long startNanos) {
+        if (!enabled) {
+            return NOOP;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Span span = new Span(this, null, name, true, randomId(), randomId(), 0, startNanos,
+                random.nextDouble() < sampleRate);
+        current.set(span);
+        return span;
+    }
+
+    /**
+     * Records an already finished child of the current span
+     */
+    public void recordSpan(String name, long startNanos, long endNanos) {
+        Span parent = enabled ? current.get() : null;
+        if (parent == null || !parent.sampled) {
+            return;
+        }
+        buffer.record(parent.traceIdHigh, parent.traceIdLow, randomId(), parent.spanId, startNanos, endNanos, false,
+                name, null, null, 0);
+    }
+
+    /**
+     * Returns the current span, to be attached on another thread
+     */
+    public Span current() {
+        return enabled ? current.get() : null;
+    }
+
+    /**
+     * Makes a span current on this thread
+     *
+     * @return the span that was current before, to be restored with another call
+     */
+    public Span attach(Span span) {
+        if (!enabled) {
+            return null;
+        }
+        Span previous = current.get();
+        current.set(span);
+        return previous;
+    }
+
+    /**
+     * Writes every span recorded since the last export as one OTLP JSON document
+     *
+     * @return the number of spans written
+     */
+    public int export(Writer out) throws IOException {
+        ObjectNode document = Json.MAPPER.createObjectNode();
+        ObjectNode resourceSpans = document.putArray("resourceSpans").addObject();
+        resourceSpans.putObject("resource").putArray("attributes").addObject().put("key", "service.name")
+                .putObject("value").put("stringValue", SERVICE_NAME);
+        ObjectNode scopeSpans = resourceSpans.putArray("scopeSpans").addObject();
+        scopeSpans.putObject("scope").put("name", "mcpTools");
+        int count = buffer.drainTo(scopeSpans.putArray("spans"), epochOffsetNanos);
+        if (count > 0) {
+            out.write(Json.MAPPER.writeValueAsString(document));
+            out.write('\n');
+        }
+        return count;
+    }
+
+    /**
+     * Returns how many spans were overwritten before they could be exported
+     */
+    public long droppedSpans() {
+        return buffer.dropped();
+    }
+
+    private static long randomId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    private static Tracer fromSystemProperties() {
+        String target = System.getProperty("mcptools.trace.export");
+        String rate = System.getProperty("mcptools.trace.sample");
+        double sampleRate = rate != null ? Double.parseDouble(rate) : target != null ? 0.01 : 0;
+        Tracer tracer = new Tracer(target != null || sampleRate > 0, sampleRate,
+                Integer.getInteger("mcptools.trace.buffer", 4096));
+        if (target != null) {
+            Runnable flush = () -> tracer.flushTo(target);
+            Thread exporter = Thread.ofPlatform().daemon().name("trace-exporter").unstarted(() -> {
+                while (true) {
+                    try {
+                        Thread.sleep(FLUSH_INTERVAL_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    flush.run();
+                }
+            });
+            exporter.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(flush, "trace-exporter-shutdown"));
+        }
+        return tracer;
+    }
+
+    private synchronized void flushTo(String target) {
+        try {
+            StringWriter document = new StringWriter();
+            if (export(document) == 0) {
+                return;
+            }
+            byte[] body = document.toString().getBytes(StandardCharsets.UTF_8);
+            if (target.startsWith("http://") || target.startsWith("https://")) {
+                HttpURLConnection connection = (HttpURLConnection) URI.create(target).toURL().openConnection();
+                connection.setRequestMethod("POST");
+                connection.setRequestProperty("Content-Type", "application/json");
+                connection.setDoOutput(true);
+                connection.setConnectTimeout(1_000);
+                connection.setReadTimeout(1_000);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body);
+                }
+                connection.getResponseCode();
+                connection.disconnect();
+            } else {
+                Files.write(Path.of(target.startsWith("file:") ? target.substring(5) : target), body,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Tracing must never break the tools; the spans of this flush are lost
+            System.err.println("Trace export to " + target + " failed: " + e.getMessage());
+        }
+    }
+}
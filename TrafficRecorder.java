@@ -0,0 +1,61 @@
+package mcpTools;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes served tools/call requests to a JSONL file that
+ * {@link LoadGenerator} can replay.
+ *
+ * Each line is the JSON-RPC request as received, with a leading {@code ts}
+ * field holding the milliseconds since recording started, so a replay can
+ * reproduce the original arrival pattern. As those offsets restart with every
+ * recording, an existing file is truncated rather than appended to.
+ */
+public class TrafficRecorder implements Closeable {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final BufferedWriter out;
+    private final long startNanos = System.nanoTime();
+
+    public TrafficRecorder(Path file) throws IOException {
+        this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    public void record(JsonNode request) {
+        ObjectNode line = mapper.createObjectNode();
+        line.put("ts", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        line.setAll((ObjectNode) request);
+        try {
+            String text = mapper.writeValueAsString(line);
+            synchronized (out) {
+                out.write(text);
+                out.newLine();
+                out.flush();
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (out) {
+            out.close();
+        }
+    }
+}
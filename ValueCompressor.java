@@ -0,0 +1,543 @@
+package mcpTools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Transparent compression of stored values with per-namespace dictionaries.
+ *
+ * Values in one namespace tend to be small documents with the same shape,
+ * which compress poorly on their own. Each namespace therefore samples the
+ * values written to it and, once it has enough, trains a dictionary of the
+ * byte sequences shared by most samples; values are then deflated at the
+ * fastest level with that dictionary preset, so even a short value can refer
+ * back to field names and boilerplate. The dictionary is retrained
+ * periodically from a reservoir sampling the values written since the
+ * previous training, so it follows the namespace as its documents change.
+ * Training runs on a background thread; writes keep using the current
+ * dictionary until the new one is installed. Older dictionaries stay
+ * readable, as every compressed value names the dictionary it was written with.
+ *
+ * A value is only stored compressed if that makes it smaller; otherwise it
+ * is stored as is. Stored values start with a 0xFF marker byte, which never
+ * occurs at the start of UTF-8 text, when they are compressed or when a raw
+ * value happens to start with it, so raw text is stored without any overhead.
+ * Values written before compression was enabled are read back unchanged as
+ * long as they do not start with 0xFF, which holds for all text the tools
+ * store. A binary value that does start with it was written without the
+ * escape and is misread as a stored form, so a persistent store holding such
+ * values must be rewritten through this class before it is read with it.
+ *
+ * Compression ratio and the CPU time spent compressing and decompressing are
+ * counted per namespace, so compression can be limited to the namespaces
+ * where it pays off.
+ */
+public class ValueCompressor {
+
+    private static final int MARKER = 0xFF;
+    private static final int FORMAT_RAW = 0;
+    private static final int FORMAT_DEFLATE = 1;
+
+    private static final int MIN_COMPRESSIBLE_BYTES = 16;
+    private static final int DICTIONARY_BYTES = 16 * 1024;
+    private static final int TRAINING_SAMPLES = 64;
+    private static final int RESERVOIR_SAMPLES = 512;
+    private static final int MAX_SAMPLE_BYTES = 4096;
+    private static final long RETRAIN_INTERVAL = 50_000;
+
+    // One thread, so training never takes more than one core from the tools
+    private static final Executor TRAINER = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().daemon().name("compression-trainer").factory());
+
+    /**
+     * Persists trained dictionaries so values stay readable across restarts
+     */
+    public interface DictionaryStore {
+
+        byte[] load(String namespace, int dictionaryId) throws IOException;
+
+        void save(String namespace, int dictionaryId, byte[] dictionary) throws IOException;
+
+        /**
+         * Returns the id of the dictionary last saved for a namespace, or 0 if there is none
+         */
+        int latest(String namespace) throws IOException;
+    }
+
+    /**
+     * Compression counters of one namespace
+     */
+    public record Stats(long values, long compressedValues, long rawBytes, long storedBytes, long compressNanos,
+            long decompressions, long decompressNanos, int dictionaryId, int dictionaryBytes, boolean enabled) {
+
+        /**
+         * Returns raw bytes per stored byte, 1 when nothing was saved
+         */
+        public double ratio() {
+            return storedBytes == 0 ? 1 : (double) rawBytes / storedBytes;
+        }
+
+        public double compressNanosPerByte() {
+            return rawBytes == 0 ? 0 : (double) compressNanos / rawBytes;
+        }
+    }
+
+    private record Dictionary(int id, byte[] bytes) {
+    }
+
+    private final class Namespace {
+        final String name;
+        final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+        final AtomicBoolean training = new AtomicBoolean();
+        final List<byte[]> samples = new ArrayList<>();
+        volatile Dictionary current;
+        long sampled;
+        long sampledSinceTraining;
+        long valuesAtTraining;
+        final LongAdder values = new LongAdder();
+        final LongAdder compressedValues = new LongAdder();
+        final LongAdder rawBytes = new LongAdder();
+        final LongAdder storedBytes = new LongAdder();
+        final LongAdder compressNanos = new LongAdder();
+        final LongAdder decompressions = new LongAdder();
+        final LongAdder decompressNanos = new LongAdder();
+
+        Namespace(String name) {
+            this.name = name;
+            if (store != null) {
+                try {
+                    int latest = store.latest(name);
+                    byte[] bytes = latest == 0 ? null : store.load(name, latest);
+                    if (bytes != null) {
+                        dictionaries.put(latest, bytes);
+                        current = new Dictionary(latest, bytes);
+                    }
+                } catch (IOException e) {
+                    // Start over with a new dictionary; older values are loaded when read
+                }
+            }
+        }
+
+        /**
+         * Keeps a reservoir sample of the values written since the last
+         * training and hands it to the trainer when a new dictionary is due
+         */
+        void sample(byte[] raw) {
+            List<byte[]> trainingSet = null;
+            synchronized (samples) {
+                sampled++;
+                sampledSinceTraining++;
+                byte[] sample = raw.length > MAX_SAMPLE_BYTES ? Arrays.copyOf(raw, MAX_SAMPLE_BYTES) : raw;
+                if (samples.size() < RESERVOIR_SAMPLES) {
+                    samples.add(sample);
+                } else {
+                    long slot = ThreadLocalRandom.current().nextLong(sampledSinceTraining);
+                    if (slot < RESERVOIR_SAMPLES) {
+                        samples.set((int) slot, sample);
+                    }
+                }
+                boolean due = current == null
+                        ? samples.size() >= TRAINING_SAMPLES
+                        : sampled - valuesAtTraining >= retrainInterval;
+                if (due && training.compareAndSet(false, true)) {
+                    valuesAtTraining = sampled;
+                    trainingSet = new ArrayList<>(samples);
+                    samples.clear();
+                    sampledSinceTraining = 0;
+                }
+            }
+            if (trainingSet != null) {
+                List<byte[]> set = trainingSet;
+                trainer.execute(() -> {
+                    try {
+                        install(train(set, DICTIONARY_BYTES));
+                    } finally {
+                        training.set(false);
+                    }
+                });
+            }
+        }
+
+        List<byte[]> samples() {
+            synchronized (samples) {
+                return new ArrayList<>(samples);
+            }
+        }
+
+        private void install(byte[] bytes) {
+            if (bytes.length == 0) {
+                return;
+            }
+            int id;
+            do {
+                id = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+            } while (dictionaries.containsKey(id));
+            if (store != null) {
+                try {
+                    store.save(name, id, bytes);
+                } catch (IOException e) {
+                    // Values compressed with an unsaved dictionary could not be read back
+                    System.err.println("Cannot save compression dictionary for '" + name + "': " + e.getMessage());
+                    return;
+                }
+            }
+            dictionaries.put(id, bytes);
+            current = new Dictionary(id, bytes);
+        }
+
+        byte[] dictionary(int id) throws IOException {
+            byte[] bytes = dictionaries.get(id);
+            if (bytes == null && store != null) {
+                bytes = store.load(name, id);
+                if (bytes != null) {
+                    dictionaries.put(id, bytes);
+                }
+            }
+            if (bytes == null) {
+                throw new IOException("Compression dictionary " + id + " of '" + name + "' is missing");
+            }
+            return bytes;
+        }
+
+        Stats stats() {
+            Dictionary dictionary = current;
+            return new Stats(values.sum(), compressedValues.sum(), rawBytes.sum(), storedBytes.sum(),
+                    compressNanos.sum(), decompressions.sum(), decompressNanos.sum(),
+                    dictionary == null ? 0 : dictionary.id(), dictionary == null ? 0 : dictionary.bytes().length,
+                    enabled.test(name));
+        }
+    }
+
+    private final Map<String, Namespace> namespaces = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+    private final DictionaryStore store;
+    private final Predicate<String> enabled;
+    private final Executor trainer;
+    private final long retrainInterval;
+
+    /**
+     * @param store   where dictionaries are kept, or null to keep them in memory only
+     * @param enabled which namespaces to compress; values of the others are stored raw
+     */
+    public ValueCompressor(DictionaryStore store, Predicate<String> enabled) {
+        this(store, enabled, TRAINER, RETRAIN_INTERVAL);
+    }
+
+    /**
+     * @param trainer         runs dictionary training
+     * @param retrainInterval values written between two trainings of a namespace
+     */
+    ValueCompressor(DictionaryStore store, Predicate<String> enabled, Executor trainer, long retrainInterval) {
+        this.store = store;
+        this.enabled = enabled;
+        this.trainer = trainer;
+        this.retrainInterval = retrainInterval;
+    }
+
+    /**
+     * Returns the namespaces selected by {@code -Dmcptools.compression}: all of
+     * them by default or with {@code *}, none with {@code none}, or a comma
+     * separated list
+     */
+    public static Predicate<String> enabledNamespaces() {
+        String setting = System.getProperty("mcptools.compression", "*").trim();
+        if (setting.equals("*")) {
+            return namespace -> true;
+        }
+        if (setting.equals("none")) {
+            return namespace -> false;
+        }
+        Set<String> selected = new HashSet<>(Arrays.asList(setting.split("\\s*,\\s*")));
+        return selected::contains;
+    }
+
+    /**
+     * Returns the stored form of a value
+     */
+    public byte[] encode(String namespace, byte[] raw) {
+        if (!enabled.test(namespace)) {
+            return raw.length > 0 && (raw[0] & 0xFF) == MARKER ? escape(raw) : raw;
+        }
+        Namespace target = namespace(namespace);
+        long start = System.nanoTime();
+        byte[] stored = null;
+        if (raw.length >= MIN_COMPRESSIBLE_BYTES) {
+            target.sample(raw);
+            stored = compress(raw, target.current);
+        }
+        if (stored == null) {
+            stored = raw.length > 0 && (raw[0] & 0xFF) == MARKER ? escape(raw) : raw;
+        } else {
+            target.compressedValues.increment();
+        }
+        target.compressNanos.add(System.nanoTime() - start);
+        target.values.increment();
+        target.rawBytes.add(raw.length);
+        target.storedBytes.add(stored.length);
+        return stored;
+    }
+
+    /**
+     * Returns the value a stored form was encoded from
+     *
+     * @throws IOException if the value is corrupt or its dictionary is lost
+     */
+    public byte[] decode(String namespace, byte[] stored) throws IOException {
+        if (stored == null || stored.length == 0 || (stored[0] & 0xFF) != MARKER) {
+            return stored;
+        }
+        if (stored.length < 2) {
+            throw new IOException("Truncated compressed value");
+        }
+        if (stored[1] == FORMAT_RAW) {
+            return Arrays.copyOfRange(stored, 2, stored.length);
+        }
+        if (stored[1] != FORMAT_DEFLATE) {
+            throw new IOException("Unknown value format " + stored[1]);
+        }
+        Namespace target = namespace(namespace);
+        long start = System.nanoTime();
+        int[] position = {2};
+        int dictionaryId = readVarInt(stored, position);
+        int rawLength = readVarInt(stored, position);
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            if (dictionaryId != 0) {
+                inflater.setDictionary(target.dictionary(dictionaryId));
+            }
+            inflater.setInput(stored, position[0], stored.length - position[0]);
+            int length = 0;
+            while (length < rawLength) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawLength) {
+                throw new IOException("Compressed value is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed value is corrupt", e);
+        } finally {
+            inflater.reset();
+            inflaters.add(inflater);
+        }
+        target.decompressions.increment();
+        target.decompressNanos.add(System.nanoTime() - start);
+        return raw;
+    }
+
+    public Stats stats(String namespace) {
+        Namespace target = namespaces.get(namespace);
+        return target == null ? null : target.stats();
+    }
+
+    /**
+     * Returns the statistics of every namespace written or read so far, sorted by name
+     */
+    public Map<String, Stats> stats() {
+        Map<String, Stats> all = new TreeMap<>();
+        namespaces.forEach((name, namespace) -> all.put(name, namespace.stats()));
+        return all;
+    }
+
+    /**
+     * Returns the samples a namespace has collected towards its next dictionary
+     */
+    List<byte[]> samples(String namespace) {
+        Namespace target = namespaces.get(namespace);
+        return target == null ? List.of() : target.samples();
+    }
+
+    /**
+     * Forgets the dictionaries and counters of a namespace whose values are all gone
+     */
+    public void remove(String namespace) {
+        namespaces.remove(namespace);
+    }
+
+    private Namespace namespace(String namespace) {
+        return namespaces.computeIfAbsent(namespace, Namespace::new);
+    }
+
+    /**
+     * Deflates a value, returning null unless the result is smaller than the value
+     */
+    private byte[] compress(byte[] raw, Dictionary dictionary) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED, true);
+        }
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary.bytes());
+            }
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] header = new byte[12];
+            int headerLength = 0;
+            header[headerLength++] = (byte) MARKER;
+            header[headerLength++] = FORMAT_DEFLATE;
+            headerLength = writeVarInt(header, headerLength, dictionary == null ? 0 : dictionary.id());
+            headerLength = writeVarInt(header, headerLength, raw.length);
+
+            // Anything that is not smaller than the raw value is of no use
+            byte[] out = new byte[raw.length - 1];
+            System.arraycopy(header, 0, out, 0, headerLength);
+            int length = headerLength;
+            while (!deflater.finished() && length < out.length) {
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            return deflater.finished() ? Arrays.copyOf(out, length) : null;
+        } finally {
+            deflater.reset();
+            deflaters.add(deflater);
+        }
+    }
+
+    private static byte[] escape(byte[] raw) {
+        byte[] stored = new byte[raw.length + 2];
+        stored[0] = (byte) MARKER;
+        stored[1] = FORMAT_RAW;
+        System.arraycopy(raw, 0, stored, 2, raw.length);
+        return stored;
+    }
+
+    private static int writeVarInt(byte[] out, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static int readVarInt(byte[] in, int[] position) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (position[0] >= in.length) {
+                throw new IOException("Truncated compressed value");
+            }
+            int b = in[position[0]++] & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed compressed value");
+    }
+
+    // Dictionary training
+
+    private static final int DMER_BYTES = 8;
+    private static final int SEGMENT_BYTES = 64;
+    private static final int SEGMENT_STEP = 8;
+
+    /**
+     * Builds a dictionary from sample values, after the COVER algorithm: every
+     * 8-byte sequence is scored by the number of samples containing it, and
+     * the segments covering the most valuable sequences not yet covered are
+     * picked greedily. The best segments go last, where deflate reaches them
+     * with the shortest distances.
+     */
+    static byte[] train(List<byte[]> samples, int capacity) {
+        Map<Long, Integer> frequencies = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i + DMER_BYTES <= sample.length; i++) {
+                if (seen.add(dmer(sample, i))) {
+                    frequencies.merge(dmer(sample, i), 1, Integer::sum);
+                }
+            }
+        }
+
+        record Segment(byte[] sample, int offset, int length, long score) {
+        }
+        List<Segment> candidates = new ArrayList<>();
+        for (byte[] sample : samples) {
+            for (int offset = 0; offset + DMER_BYTES <= sample.length; offset += SEGMENT_STEP) {
+                int length = Math.min(SEGMENT_BYTES, sample.length - offset);
+                long score = 0;
+                for (int i = offset; i + DMER_BYTES <= offset + length; i++) {
+                    int frequency = frequencies.get(dmer(sample, i));
+                    if (frequency > 1) {
+                        score += frequency;
+                    }
+                }
+                if (score > 0) {
+                    candidates.add(new Segment(sample, offset, length, score));
+                }
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(b.score(), a.score()));
+
+        Set<Long> covered = new HashSet<>();
+        List<Segment> chosen = new ArrayList<>();
+        int size = 0;
+        for (Segment candidate : candidates) {
+            if (size >= capacity) {
+                break;
+            }
+            // Rescore against what is covered already; overlapping segments add little
+            long score = 0;
+            for (int i = candidate.offset(); i + DMER_BYTES <= candidate.offset() + candidate.length(); i++) {
+                long dmer = dmer(candidate.sample(), i);
+                if (!covered.contains(dmer) && frequencies.get(dmer) > 1) {
+                    score += frequencies.get(dmer);
+                }
+            }
+            if (score * 2 < candidate.score()) {
+                continue;
+            }
+            for (int i = candidate.offset(); i + DMER_BYTES <= candidate.offset() + candidate.length(); i++) {
+                covered.add(dmer(candidate.sample(), i));
+            }
+            chosen.add(candidate);
+            size += candidate.length();
+        }
+
+        byte[] dictionary = new byte[Math.min(size, capacity)];
+        int end = dictionary.length;
+        for (Segment segment : chosen) {
+            int length = Math.min(segment.length(), end);
+            end -= length;
+            System.arraycopy(segment.sample(), segment.offset(), dictionary, end, length);
+            if (end == 0) {
+                break;
+            }
+        }
+        return dictionary;
+    }
+
+    private static long dmer(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < DMER_BYTES; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
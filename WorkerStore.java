@@ -0,0 +1,595 @@
+package mcpTools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+/**
+ * Local registry behind the worker_* tools.
+ *
+ * Script bodies are stored once per SHA-256 content hash, deflate-compressed
+ * and reference-counted, so workers deployed with byte-identical scripts
+ * share a single blob. Scripts that differ in any byte are stored separately.
+ * Invocations borrow a pre-warmed JSR-223 engine with the script already
+ * compiled for that hash, so only the first call pays for parsing and
+ * compilation. The build puts Nashorn on the runtime classpath, as the JDK no
+ * longer ships a JavaScript engine.
+ *
+ * Warm engines are kept within the configured memory budget: pools are
+ * evicted least-recently-used, and the pool being returned to is trimmed
+ * last. An engine's footprint is the heap its thread allocated while creating
+ * the engine and compiling the script, where the JVM can measure that, and an
+ * estimate from the script size otherwise.
+ *
+ * Workers live in memory unless the store is opened on a directory, as the
+ * worker tools are when {@code -Dmcptools.worker.dir} is set. Each worker's
+ * metadata is then kept in {@code workers/<sha256 of name>.json} and each
+ * blob, in its stored form, in {@code blobs/<hash>} or {@code blobs/<hash>.z}
+ * when compressed. Files are replaced atomically, so processes sharing the
+ * directory never see a partial one, and every process loads the workers
+ * deployed so far when it opens the store. A blob is only deleted once no
+ * worker file refers to it.
+ */
+public class WorkerStore {
+
+    /**
+     * Per-engine overhead and per-script-byte cost assumed when allocation
+     * cannot be measured
+     */
+    private static final long ENGINE_OVERHEAD_BYTES = 512 * 1024;
+    private static final long BYTES_PER_SCRIPT_BYTE = 64;
+    private static final int MAX_IDLE_ENGINES_PER_SCRIPT = 4;
+
+    /**
+     * Metadata for a deployed worker
+     */
+    public record Worker(String name, String hash, String bindings, String compatibilityDate,
+            String compatibilityFlags, Instant modifiedOn) {
+    }
+
+    /**
+     * Storage and pool statistics
+     */
+    public record Stats(int workers, int blobs, long rawBytes, long storedBytes,
+            int warmScripts, long warmBytes, long compilations, long warmHits, long evictions) {
+    }
+
+    /**
+     * A stored script body; bodies that do not shrink under deflate are kept raw
+     */
+    private static final class Blob {
+        final byte[] stored;
+        final boolean compressed;
+        final int rawLength;
+        int references;
+
+        Blob(byte[] raw) {
+            byte[] deflated = compress(raw);
+            this.compressed = deflated.length < raw.length;
+            this.stored = compressed ? deflated : raw;
+            this.rawLength = raw.length;
+        }
+
+        Blob(byte[] stored, boolean compressed, int rawLength) {
+            this.stored = stored;
+            this.compressed = compressed;
+            this.rawLength = rawLength;
+        }
+
+        byte[] raw() {
+            return compressed ? decompress(stored, rawLength) : stored;
+        }
+    }
+
+    private static final class Warm {
+        final ScriptEngine engine;
+        final CompiledScript compiled;
+        final long bytes;
+
+        Warm(ScriptEngine engine, CompiledScript compiled, long bytes) {
+            this.engine = engine;
+            this.compiled = compiled;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class Pool {
+        final Deque<Warm> idle = new ArrayDeque<>();
+        long bytes;
+    }
+
+    /**
+     * Creates script engines; returns null when none is available
+     */
+    @FunctionalInterface
+    public interface EngineFactory {
+        ScriptEngine create();
+    }
+
+    private final Map<String, Worker> workers = new TreeMap<>();
+    private final Map<String, Blob> blobs = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Pool> pools = new LinkedHashMap<>(16, 0.75f, true);
+    private final EngineFactory engineFactory;
+    private final String engineName;
+    private final long warmBudgetBytes;
+    private final Path directory;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private boolean engineMissing;
+
+    private long warmBytes;
+    private long compilations;
+    private long warmHits;
+    private long evictions;
+
+    public WorkerStore() {
+        this("javascript", 64L * 1024 * 1024);
+    }
+
+    /**
+     * @param engineName      JSR-223 engine used to run scripts
+     * @param warmBudgetBytes upper bound on the estimated size of warm engines
+     */
+    public WorkerStore(String engineName, long warmBudgetBytes) {
+        this(engineName, discover(engineName), warmBudgetBytes, null);
+    }
+
+    /**
+     * @param engineName      name reported when the factory has no engine
+     * @param engineFactory   creates the engines scripts are compiled on
+     * @param warmBudgetBytes upper bound on the estimated size of warm engines
+     */
+    public WorkerStore(String engineName, EngineFactory engineFactory, long warmBudgetBytes) {
+        this(engineName, engineFactory, warmBudgetBytes, null);
+    }
+
+    /**
+     * @param directory where workers are kept, or null to keep them in memory
+     * @throws UncheckedIOException if the workers stored there cannot be loaded
+     */
+    WorkerStore(String engineName, EngineFactory engineFactory, long warmBudgetBytes, Path directory) {
+        this.engineName = engineName;
+        this.engineFactory = engineFactory;
+        this.warmBudgetBytes = warmBudgetBytes;
+        this.directory = directory;
+        if (directory != null) {
+            try {
+                load();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot load workers from " + directory + ": " + e, e);
+            }
+        }
+    }
+
+    /**
+     * Opens the store of the worker tools: on the given directory, or in
+     * memory when it is null
+     */
+    static WorkerStore open(String directory) {
+        return new WorkerStore("javascript", discover("javascript"), 64L * 1024 * 1024,
+                directory == null ? null : Path.of(directory));
+    }
+
+    private static EngineFactory discover(String engineName) {
+        // Engine discovery scans the classpath, so it waits for the first invocation
+        return new EngineFactory() {
+            private ScriptEngineManager manager;
+
+            @Override
+            public synchronized ScriptEngine create() {
+                if (manager == null) {
+                    manager = new ScriptEngineManager();
+                }
+                return manager.getEngineByName(engineName);
+            }
+        };
+    }
+
+    /**
+     * Creates or updates a worker, storing its script once per content hash
+     *
+     * @throws UncheckedIOException if the worker cannot be written to the store's directory
+     */
+    public synchronized Worker put(String name, String script, String bindings,
+            String compatibilityDate, String compatibilityFlags) {
+        byte[] raw = script.getBytes(StandardCharsets.UTF_8);
+        String hash = sha256(raw);
+
+        Blob blob = blobs.get(hash);
+        if (blob == null) {
+            blob = new Blob(raw);
+        }
+        Worker worker = new Worker(name, hash, bindings, compatibilityDate, compatibilityFlags, Instant.now());
+        if (directory != null) {
+            try {
+                writeBlob(hash, blob);
+                writeWorker(worker, raw.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot store worker '" + name + "': " + e, e);
+            }
+        }
+        blobs.putIfAbsent(hash, blob);
+        blob.references++;
+
+        Worker previous = workers.put(name, worker);
+        if (previous != null) {
+            release(previous.hash());
+        }
+        return worker;
+    }
+
+    /**
+     * Returns the script body of a worker, or null if it does not exist
+     */
+    public synchronized String getScript(String name) {
+        Worker worker = workers.get(name);
+        if (worker == null) {
+            return null;
+        }
+        Blob blob = blobs.get(worker.hash());
+        return new String(blob.raw(), StandardCharsets.UTF_8);
+    }
+
+    public synchronized Worker get(String name) {
+        return workers.get(name);
+    }
+
+    public synchronized List<Worker> list() {
+        return new ArrayList<>(workers.values());
+    }
+
+    /**
+     * @throws UncheckedIOException if the worker cannot be removed from the store's directory
+     */
+    public synchronized boolean delete(String name) {
+        Worker worker = workers.get(name);
+        if (worker == null) {
+            return false;
+        }
+        if (directory != null) {
+            try {
+                Files.deleteIfExists(workerFile(name));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot delete worker '" + name + "': " + e, e);
+            }
+        }
+        workers.remove(name);
+        release(worker.hash());
+        return true;
+    }
+
+    /**
+     * Runs a worker with the given input bound as {@code input}, reusing a
+     * warm engine for the script hash when one is idle
+     */
+    public Object invoke(String name, String input) throws ScriptException {
+        try (Tracer.Span span = Tracer.global().startSpan("worker.invoke")) {
+            span.setAttribute("worker", name);
+            return invokeWarm(name, input);
+        }
+    }
+
+    private Object invokeWarm(String name, String input) throws ScriptException {
+        String hash;
+        String script;
+        Warm warm;
+        synchronized (this) {
+            Worker worker = workers.get(name);
+            if (worker == null) {
+                throw new IllegalArgumentException("Worker '" + name + "' not found");
+            }
+            hash = worker.hash();
+            warm = borrow(hash);
+            script = warm == null ? getScript(name) : null;
+        }
+
+        if (warm == null) {
+            warm = compile(script);
+        }
+
+        try {
+            Bindings bindings = warm.engine.createBindings();
+            bindings.put("input", input);
+            return warm.compiled != null ? warm.compiled.eval(bindings) : warm.engine.eval(script, bindings);
+        } finally {
+            giveBack(hash, warm);
+        }
+    }
+
+    public synchronized Stats stats() {
+        long raw = 0;
+        long stored = 0;
+        for (Blob blob : blobs.values()) {
+            raw += blob.rawLength;
+            stored += blob.stored.length;
+        }
+        return new Stats(workers.size(), blobs.size(), raw, stored, pools.size(), warmBytes,
+                compilations, warmHits, evictions);
+    }
+
+    private Warm borrow(String hash) {
+        Pool pool = pools.get(hash);
+        if (pool == null || pool.idle.isEmpty()) {
+            return null;
+        }
+        Warm warm = pool.idle.pop();
+        pool.bytes -= warm.bytes;
+        warmBytes -= warm.bytes;
+        warmHits++;
+        return warm;
+    }
+
+    private synchronized void giveBack(String hash, Warm warm) {
+        if (!blobs.containsKey(hash) || warm.compiled == null || warm.bytes > warmBudgetBytes) {
+            // The script was deleted meanwhile, the engine cannot precompile,
+            // or a single engine does not fit the budget
+            return;
+        }
+        Pool pool = pools.computeIfAbsent(hash, h -> new Pool());
+        if (pool.idle.size() >= MAX_IDLE_ENGINES_PER_SCRIPT) {
+            return;
+        }
+        pool.idle.push(warm);
+        pool.bytes += warm.bytes;
+        warmBytes += warm.bytes;
+        evictColdPools(hash);
+    }
+
+    /**
+     * Drops whole pools, least recently used first, until the budget is met.
+     * The pool just returned to goes last, and only as far as needed.
+     */
+    private void evictColdPools(String keep) {
+        Iterator<Map.Entry<String, Pool>> it = pools.entrySet().iterator();
+        while (warmBytes > warmBudgetBytes && it.hasNext()) {
+            Map.Entry<String, Pool> entry = it.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            warmBytes -= entry.getValue().bytes;
+            evictions++;
+            it.remove();
+        }
+        Pool kept = pools.get(keep);
+        while (warmBytes > warmBudgetBytes && kept != null && !kept.idle.isEmpty()) {
+            Warm oldest = kept.idle.removeLast();
+            kept.bytes -= oldest.bytes;
+            warmBytes -= oldest.bytes;
+            evictions++;
+        }
+    }
+
+    private Warm compile(String script) throws ScriptException {
+        synchronized (this) {
+            if (engineMissing) {
+                throw missingEngine();
+            }
+            compilations++;
+        }
+        long allocatedBefore = allocatedBytes();
+        ScriptEngine engine = engineFactory.create();
+        if (engine == null) {
+            synchronized (this) {
+                engineMissing = true;
+                compilations--;
+            }
+            throw missingEngine();
+        }
+        CompiledScript compiled = engine instanceof Compilable compilable ? compilable.compile(script) : null;
+        long allocatedAfter = allocatedBytes();
+        long bytes = allocatedBefore < 0 || allocatedAfter < 0
+                ? ENGINE_OVERHEAD_BYTES + BYTES_PER_SCRIPT_BYTE * script.length()
+                : allocatedAfter - allocatedBefore;
+        return new Warm(engine, compiled, bytes);
+    }
+
+    private IllegalStateException missingEngine() {
+        return new IllegalStateException("No '" + engineName + "' script engine on the classpath");
+    }
+
+    /**
+     * Heap allocated by the calling thread so far, or -1 where the JVM cannot
+     * tell, as for virtual threads
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    private void release(String hash) {
+        Blob blob = blobs.get(hash);
+        if (--blob.references > 0) {
+            return;
+        }
+        blobs.remove(hash);
+        Pool pool = pools.remove(hash);
+        if (pool != null) {
+            warmBytes -= pool.bytes;
+        }
+        if (directory != null) {
+            try {
+                // Another process may have deployed a worker with the same script meanwhile
+                if (!storedHashes().contains(hash)) {
+                    Files.deleteIfExists(blobFile(hash, blob.compressed));
+                }
+            } catch (IOException e) {
+                // The worker itself is gone; an orphaned blob only costs disk space
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        Files.createDirectories(directory.resolve("workers"));
+        Files.createDirectories(directory.resolve("blobs"));
+        for (Path file : workerFiles()) {
+            JsonNode node;
+            Blob blob;
+            try {
+                node = mapper.readTree(Files.readAllBytes(file));
+                blob = blobs.get(node.path("hash").asText());
+                if (blob == null) {
+                    blob = readBlob(node.path("hash").asText(), node.path("size").asInt());
+                }
+            } catch (NoSuchFileException e) {
+                // Deleted by another process while listing
+                continue;
+            }
+            String hash = node.path("hash").asText();
+            blobs.putIfAbsent(hash, blob);
+            blob.references++;
+            Worker worker = new Worker(node.path("name").asText(), hash, text(node, "bindings"),
+                    text(node, "compatibilityDate"), text(node, "compatibilityFlags"),
+                    Instant.parse(node.path("modifiedOn").asText()));
+            workers.put(worker.name(), worker);
+        }
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.path(field);
+        return value.isTextual() ? value.asText() : null;
+    }
+
+    private List<Path> workerFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.resolve("workers"), "*.json")) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+
+    private List<String> storedHashes() throws IOException {
+        List<String> hashes = new ArrayList<>();
+        for (Path file : workerFiles()) {
+            try {
+                hashes.add(mapper.readTree(Files.readAllBytes(file)).path("hash").asText());
+            } catch (NoSuchFileException e) {
+                // Deleted by another process while listing
+            }
+        }
+        return hashes;
+    }
+
+    private Path workerFile(String name) {
+        return directory.resolve("workers").resolve(sha256(name.getBytes(StandardCharsets.UTF_8)) + ".json");
+    }
+
+    private Path blobFile(String hash, boolean compressed) {
+        return directory.resolve("blobs").resolve(compressed ? hash + ".z" : hash);
+    }
+
+    private Blob readBlob(String hash, int rawLength) throws IOException {
+        Path compressed = blobFile(hash, true);
+        if (Files.exists(compressed)) {
+            return new Blob(Files.readAllBytes(compressed), true, rawLength);
+        }
+        byte[] raw = Files.readAllBytes(blobFile(hash, false));
+        return new Blob(raw, false, raw.length);
+    }
+
+    private void writeBlob(String hash, Blob blob) throws IOException {
+        Path file = blobFile(hash, blob.compressed);
+        if (!Files.exists(file)) {
+            replace(file, blob.stored);
+        }
+    }
+
+    private void writeWorker(Worker worker, int rawLength) throws IOException {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("name", worker.name());
+        node.put("hash", worker.hash());
+        node.put("size", rawLength);
+        node.put("bindings", worker.bindings());
+        node.put("compatibilityDate", worker.compatibilityDate());
+        node.put("compatibilityFlags", worker.compatibilityFlags());
+        node.put("modifiedOn", worker.modifiedOn().toString());
+        replace(workerFile(worker.name()), mapper.writeValueAsBytes(node));
+    }
+
+    /**
+     * Writes a file through a temporary one, so readers see either the old or the new content
+     */
+    private static void replace(Path file, byte[] content) throws IOException {
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, content);
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static byte[] compress(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 2));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] compressed, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int read = 0;
+            while (read < rawLength && !inflater.finished()) {
+                read += inflater.inflate(raw, read, rawLength - read);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt worker script blob", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static String sha256(byte[] raw) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(raw));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
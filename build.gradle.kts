@@ -0,0 +1,201 @@
+/*
+ * Build for the tool runners that live at the repository root.
+ *
+ * Besides compiling the runners, this build produces a dynamic class-data-sharing
+ * archive from a training run over every registered tool, launcher scripts that
+ * start the runners from that archive, and a startup benchmark comparing both.
+ */
+
+plugins {
+    java
+}
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    implementation(libs.jackson.databind)
+    // JavaScript engine for worker_invoke; the JDK stopped shipping one in 15
+    runtimeOnly(libs.nashorn.core)
+
+    testImplementation(libs.junit.jupiter)
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(21)
+    }
+}
+
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf(projectDir))
+            include("*.java")
+            // The MCP tool registry is still an unfinished draft and not part of the build.
+            exclude("MCPToolRegistry.java")
+        }
+        resources {
+            setSrcDirs(emptyList<File>())
+        }
+    }
+}
+
+tasks.named<Test>("test") {
+    useJUnitPlatform()
+}
+
+val runnerLauncher = javaToolchains.launcherFor(java.toolchain)
+val cdsArchiveFile = layout.buildDirectory.file("cds/mcp-tools.jsa")
+
+// CDS only archives classes loaded from jar files, so the runners are always
+// started from the jar and the same classpath at training time and at run time.
+val runnerClasspath = files(tasks.jar, configurations.runtimeClasspath)
+
+// State directories the runners are started with by the training run and the startup
+// benchmark alike, so the archive holds the classes of the on-disk stores that the
+// benchmarked launches load, and calls see the state left by earlier launches.
+fun stateProperties(stateDir: File) = listOf(
+    "-Dmcptools.kv.dir=" + stateDir.resolve("kv").absolutePath,
+    "-Dmcptools.worker.dir=" + stateDir.resolve("workers").absolutePath,
+)
+
+val runners = mapOf(
+    "toolrunner" to "mcpTools.ToolRunner",
+    "toolrunner-oop" to "mcpTools.ToolRunnerOOP",
+)
+
+// Calls timed by the startup benchmark, one fresh JVM each. They span several
+// tool families, and every read follows the write it depends on.
+val benchmarkCalls = mapOf(
+    "mcpTools.ToolRunner" to listOf(
+        listOf("kv_put", "bench", "key", "value"),
+        listOf("kv_get", "bench", "key"),
+        listOf("r2_put_object", "bench", "key", "value"),
+        listOf("r2_get_object", "bench", "key"),
+        listOf("memory_store", "key", "value", "bench"),
+        listOf("sequential_thinking", "bench", "a;b:a;c:a;d:b,c"),
+        listOf("context_manager", "append", "bench", "Benchmark segment."),
+    ),
+    "mcpTools.ToolRunnerOOP" to listOf(
+        listOf("kv_put", "bench", "key", "value"),
+        listOf("kv_get", "bench", "key"),
+        listOf("r2_list_buckets"),
+        listOf("r2_get_object", "bench", "key"),
+    ),
+)
+
+val cdsArchive = tasks.register<JavaExec>("cdsArchive") {
+    group = "distribution"
+    description = "Runs every registered tool once and dumps the loaded classes into a CDS archive."
+
+    classpath = runnerClasspath
+    mainClass = "mcpTools.CdsTraining"
+    javaLauncher = runnerLauncher
+    outputs.file(cdsArchiveFile)
+    val stateDir = temporaryDir.resolve("state")
+    jvmArgumentProviders.add(CommandLineArgumentProvider {
+        listOf("-XX:ArchiveClassesAtExit=" + cdsArchiveFile.get().asFile.absolutePath) + stateProperties(stateDir)
+    })
+    doFirst {
+        cdsArchiveFile.get().asFile.parentFile.mkdirs()
+        stateDir.deleteRecursively()
+    }
+}
+
+tasks.register("launcherScripts") {
+    group = "distribution"
+    description = "Writes launcher scripts that start the runners from the CDS archive."
+
+    dependsOn(cdsArchive)
+    val outputDir = layout.buildDirectory.dir("launcher")
+    outputs.dir(outputDir)
+
+    doLast {
+        val javaExecutable = runnerLauncher.get().executablePath.asFile.absolutePath
+        val archive = cdsArchiveFile.get().asFile.absolutePath
+        val classpath = runnerClasspath.joinToString(File.pathSeparator) { it.absolutePath }
+
+        for ((name, mainClass) in runners) {
+            val script = outputDir.get().file(name).asFile
+            script.writeText(
+                """
+                #!/bin/sh
+                # Generated by the launcherScripts task; starts $mainClass from the CDS archive.
+                exec "$javaExecutable" -XX:SharedArchiveFile="$archive" -Xshare:auto -cp "$classpath" $mainClass "$@"
+                """.trimIndent() + "\n"
+            )
+            script.setExecutable(true)
+        }
+    }
+}
+
+tasks.register("startupBenchmark") {
+    group = "verification"
+    description = "Measures runner startup with the default JDK archive and with the tool CDS archive."
+
+    dependsOn(cdsArchive)
+    val report = layout.buildDirectory.file("reports/startup-benchmark.txt")
+    outputs.file(report)
+    outputs.upToDateWhen { false }
+
+    doLast {
+        val iterations = (findProperty("startupIterations") as String?)?.toInt() ?: 10
+        val javaExecutable = runnerLauncher.get().executablePath.asFile.absolutePath
+        val classpath = runnerClasspath.asPath
+        // State persists between the launches, so kv_get reads what kv_put wrote
+        val stateDir = temporaryDir.resolve("state")
+        val modes = mapOf(
+            "default" to listOf("-Xshare:auto"),
+            "cds" to listOf("-XX:SharedArchiveFile=" + cdsArchiveFile.get().asFile.absolutePath, "-Xshare:auto"),
+        )
+
+        fun launchMillis(jvmArgs: List<String>, mainClass: String, call: List<String>): Double {
+            val command = listOf(javaExecutable) + jvmArgs + stateProperties(stateDir) +
+                listOf("-cp", classpath, mainClass) + call
+            val start = System.nanoTime()
+            val process = ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start()
+            check(process.waitFor() == 0) { "Benchmark run failed: $command" }
+            return (System.nanoTime() - start) / 1e6
+        }
+
+        // Each sample is the mean launch time over one pass through the calls
+        val lines = mutableListOf<String>()
+        for (mainClass in runners.values) {
+            val calls = benchmarkCalls.getValue(mainClass)
+            val medians = mutableMapOf<String, Double>()
+            for ((mode, jvmArgs) in modes) {
+                stateDir.deleteRecursively()
+                // The first pass warms the OS page cache and is discarded
+                calls.forEach { launchMillis(jvmArgs, mainClass, it) }
+                val samples = (1..iterations).map {
+                    calls.sumOf { call -> launchMillis(jvmArgs, mainClass, call) } / calls.size
+                }.sorted()
+                medians[mode] = samples[samples.size / 2]
+                lines += "%-24s %-8s median %8.1f ms  min %8.1f ms  max %8.1f ms  per call over %d calls".format(
+                    mainClass, mode, samples[samples.size / 2], samples.first(), samples.last(), calls.size)
+            }
+            lines += "%-24s speedup  %.2fx".format(mainClass, medians.getValue("default") / medians.getValue("cds"))
+        }
+
+        report.get().asFile.apply {
+            parentFile.mkdirs()
+            writeText(lines.joinToString("\n", postfix = "\n"))
+        }
+        lines.forEach { println(it) }
+    }
+}
+
+tasks.register<JavaExec>("toolStartupBenchmark") {
+    group = "verification"
+    description = "Launches each tool in a fresh JVM and reports classes loaded and uptime per call."
+
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass = "mcpTools.ToolStartupBenchmark"
+    javaLauncher = runnerLauncher
+}
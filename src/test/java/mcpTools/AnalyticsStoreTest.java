@@ -0,0 +1,131 @@
+package mcpTools;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalyticsStoreTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Test void groupsCallsByToolAcrossSealedChunks() {
+        AnalyticsStore store = new AnalyticsStore();
+        for (int i = 0; i < 10_000; i++) {
+            store.record("z", i % 2 == 0 ? "kv_get" : "kv_put", T0 + i, 1 + i % 100, i % 10 != 0);
+        }
+
+        List<AnalyticsStore.ToolStats> stats = store.groupByTool("z", T0, T0 + 10_000);
+        assertEquals(2, stats.size());
+        AnalyticsStore.ToolStats get = stats.get(0);
+        assertEquals("kv_get", get.tool());
+        assertEquals(5_000, get.count());
+        assertEquals(1_000, get.errors());
+        assertEquals(1, get.minMillis());
+        assertEquals(99, get.maxMillis());
+        assertTrue(store.compressedBytes("z") > 0);
+
+        assertEquals(100, store.groupByTool("z", T0 + 200, T0 + 300).stream()
+                .mapToLong(AnalyticsStore.ToolStats::count).sum());
+        assertTrue(store.groupByTool("other", T0, T0 + 10_000).isEmpty());
+    }
+
+    @Test void percentilesStayWithinTheHistogramError() {
+        AnalyticsStore store = new AnalyticsStore();
+        for (int i = 1; i <= 1_000; i++) {
+            store.record("z", "t", T0 + i, i, true);
+        }
+        AnalyticsStore.ToolStats stats = store.groupByTool("z", T0, T0 + 2_000).get(0);
+        assertEquals(500, stats.p50(), 500 / 32.0);
+        assertEquals(900, stats.p90(), 900 / 32.0);
+        assertEquals(990, stats.p99(), 990 / 32.0);
+        assertTrue(stats.p99() <= stats.maxMillis());
+    }
+
+    @Test void rollupsExpireOutsideTheirRetention() {
+        AnalyticsStore store = new AnalyticsStore(
+                new AnalyticsStore.Retention(AnalyticsStore.DAY, 10 * AnalyticsStore.MINUTE, AnalyticsStore.DAY));
+        for (int minute = 0; minute < 60; minute++) {
+            store.record("z", "t", T0 + minute * AnalyticsStore.MINUTE, 1, minute % 2 == 0);
+        }
+
+        List<AnalyticsStore.RollupPoint> minutes = store.rollup("z", AnalyticsStore.MINUTE, 0, Long.MAX_VALUE);
+        assertEquals(11, minutes.size());
+        assertEquals(60, store.rollup("z", AnalyticsStore.HOUR, 0, Long.MAX_VALUE).stream()
+                .mapToLong(AnalyticsStore.RollupPoint::count).sum());
+        assertThrows(IllegalArgumentException.class, () -> store.rollup("z", 1_000, 0, Long.MAX_VALUE));
+    }
+
+    @Test void rawChunksExpireOutsideTheirRetention() {
+        AnalyticsStore store = new AnalyticsStore(new AnalyticsStore.Retention(
+                AnalyticsStore.HOUR, AnalyticsStore.DAY, AnalyticsStore.DAY));
+        for (int i = 0; i < 4096; i++) {
+            store.record("z", "old", T0 + i, 1, true);
+        }
+        for (int i = 0; i < 4096; i++) {
+            store.record("z", "new", T0 + 2 * AnalyticsStore.HOUR + i, 1, true);
+        }
+        List<AnalyticsStore.ToolStats> stats = store.groupByTool("z", 0, Long.MAX_VALUE);
+        assertEquals(List.of("new"), stats.stream().map(AnalyticsStore.ToolStats::tool).toList());
+    }
+
+    private static List<Path> segments(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("calls.log.")).sorted().toList();
+        }
+    }
+
+    @Test void eventLogIsLoadedByLaterStores(@TempDir Path dir) throws Exception {
+        Path log = dir.resolve("calls.log");
+        AnalyticsStore.Retention retention = new AnalyticsStore.Retention(
+                AnalyticsStore.HOUR, AnalyticsStore.DAY, AnalyticsStore.DAY);
+        try (AnalyticsStore first = new AnalyticsStore(log, retention)) {
+            first.record("z", "kv_get", T0, 2.5, true);
+            first.record("z", "kv_get", T0 + 1, 3.5, false);
+        }
+        List<Path> written = segments(dir);
+        assertEquals(1, written.size());
+        Files.writeString(written.get(0), "not an event\n", StandardOpenOption.APPEND);
+
+        try (AnalyticsStore second = new AnalyticsStore(log, retention)) {
+            AnalyticsStore.ToolStats stats = second.groupByTool("z", T0, T0 + 10).get(0);
+            assertEquals(2, stats.count());
+            assertEquals(1, stats.errors());
+            assertEquals(6.0, stats.sumMillis());
+            second.record("z", "kv_put", T0 + 3 * AnalyticsStore.HOUR, 1, true);
+        }
+
+        try (AnalyticsStore third = new AnalyticsStore(log, retention)) {
+            assertEquals(List.of("kv_put"), third.groupByTool("z", 0, Long.MAX_VALUE).stream()
+                    .map(AnalyticsStore.ToolStats::tool).toList());
+        }
+        // The expired segment is deleted as a whole; the live one was only appended to
+        assertEquals(1, segments(dir).size());
+        assertEquals(1, Files.readAllLines(segments(dir).get(0)).size());
+    }
+
+    @Test void storesSharingALogSeeEachOthersCalls(@TempDir Path dir) throws Exception {
+        Path log = dir.resolve("calls.log");
+        try (AnalyticsStore a = new AnalyticsStore(log, AnalyticsStore.Retention.DEFAULT);
+                AnalyticsStore b = new AnalyticsStore(log, AnalyticsStore.Retention.DEFAULT)) {
+            for (int i = 0; i < 100; i++) {
+                a.record("z", "kv_get", T0 + i, 1, true);
+                b.record("z", "kv_put", T0 + i, 1, true);
+            }
+            assertEquals(2, a.groupByTool("z", 0, Long.MAX_VALUE).size());
+            for (int i = 100; i < 200; i++) {
+                b.record("z", "kv_put", T0 + i, 1, true);
+            }
+            // Each event is loaded once, however often the log is read
+            List<AnalyticsStore.ToolStats> stats = a.groupByTool("z", 0, Long.MAX_VALUE);
+            assertEquals(100, stats.stream().filter(s -> s.tool().equals("kv_get")).findFirst().orElseThrow().count());
+            assertEquals(200, stats.stream().filter(s -> s.tool().equals("kv_put")).findFirst().orElseThrow().count());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package mcpTools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CdsTrainingTest {
+
+    private static List<String> order(Set<String> registered) {
+        List<String> tools = new ArrayList<>();
+        for (String[] call : CdsTraining.calls(registered)) {
+            tools.add(call[0]);
+        }
+        return tools;
+    }
+
+    @Test void everyRegisteredToolIsTrained() {
+        assertEquals(new TreeSet<>(ToolRunner.toolNames()), new TreeSet<>(order(ToolRunner.toolNames())));
+        Set<String> oop = new ToolRunnerOOP().getToolNames();
+        assertEquals(new TreeSet<>(oop), new TreeSet<>(order(oop)));
+    }
+
+    @Test void readsFollowTheirWrites() {
+        List<String> tools = order(ToolRunner.toolNames());
+        String[][] pairs = {
+                { "kv_put", "kv_get" }, { "kv_get", "kv_delete" },
+                { "r2_create_bucket", "r2_put_object" }, { "r2_put_object", "r2_get_object" },
+                { "r2_get_object", "r2_delete_object" }, { "r2_delete_object", "r2_delete_bucket" },
+                { "d1_create_database", "d1_query" }, { "d1_query", "d1_delete_database" },
+                { "worker_put", "worker_invoke" }, { "worker_invoke", "worker_delete" },
+                { "memory_store", "memory_retrieve" },
+        };
+        for (String[] pair : pairs) {
+            assertTrue(tools.indexOf(pair[0]) < tools.indexOf(pair[1]), pair[0] + " must run before " + pair[1]);
+        }
+        assertEquals("analytics_get", tools.get(tools.size() - 1));
+    }
+
+    @Test void unscriptedToolsGetDefaultArguments() {
+        List<String[]> calls = CdsTraining.calls(Set.of("kv_get", "new_tool"));
+        assertEquals(2, calls.size());
+        assertArrayEquals(new String[] { "kv_get", "training", "key" }, calls.get(0));
+        assertArrayEquals(new String[] { "new_tool", "training", "key", "value" }, calls.get(1));
+    }
+}
@@ -0,0 +1,94 @@
+package mcpTools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextStoreTest {
+
+    /** Counts one token per word, which keeps the arithmetic in the tests obvious */
+    private static final ContextStore.Tokenizer WORDS = text -> {
+        String trimmed = text.toString().trim();
+        return trimmed.isEmpty() ? 0 : trimmed.split("\\s+").length;
+    };
+
+    @Test void fitReturnsTheNewestSegmentsWithinBudget() {
+        ContextStore store = new ContextStore(WORDS, new ContextStore.ExtractiveSummarizer(), 1_000, 100, 100);
+        store.append("c", "one two");
+        store.append("c", "three four five");
+        store.append("c", "six");
+
+        ContextStore.Window window = store.fit("c", 4);
+        assertEquals("three four five\nsix", window.toString());
+        assertEquals(4, window.tokens());
+        assertTrue(window.truncated());
+
+        ContextStore.Window whole = store.get("c");
+        assertEquals(6, whole.tokens());
+        assertFalse(whole.truncated());
+    }
+
+    @Test void compactionCarriesEarlierSummariesForward() {
+        ContextStore store = new ContextStore(WORDS, new ContextStore.ExtractiveSummarizer(), 1_000, 2, 100);
+        store.append("c", "Alpha came first. Detail a.");
+        store.append("c", "Beta came next. Detail b.");
+        store.append("c", "x y");
+        store.compactNow("c");
+
+        store.append("c", "Gamma came last. Detail c.");
+        store.append("c", "z w");
+        store.compactNow("c");
+
+        String summary = store.get("c").segments().get(0).text();
+        assertEquals("Alpha came first. Beta came next. x y Gamma came last.", summary);
+    }
+
+    @Test void summaryKeepsTheMostRecentSentencesThatFit() {
+        ContextStore.ExtractiveSummarizer summarizer = new ContextStore.ExtractiveSummarizer();
+        List<ContextStore.Segment> old = List.of(
+                new ContextStore.Segment("Old one. Old two.", 4, true),
+                new ContextStore.Segment("New three. Ignored.", 3, false));
+        assertEquals("Old two. New three.", summarizer.summarize(old, 4, WORDS));
+    }
+
+    @Test void compactionReleasesSegmentSlots() {
+        ContextStore store = new ContextStore(WORDS, new ContextStore.ExtractiveSummarizer(), 1_000_000, 10, 20);
+        for (int i = 0; i < 10_000; i++) {
+            store.append("c", "segment " + i);
+        }
+        store.compactNow("c");
+
+        ContextStore.Stats stats = store.stats("c");
+        assertEquals(5, stats.liveSegments());
+        assertEquals(9_995, stats.compactedSegments());
+        assertEquals(10, stats.liveTokens());
+
+        store.append("c", "after compaction");
+        ContextStore.Window window = store.fit("c", 4);
+        assertEquals("segment 9999\nafter compaction", window.toString());
+        assertEquals(List.of("segment 9995", "segment 9996", "segment 9997", "segment 9998", "segment 9999",
+                "after compaction"), store.fit("c", 12).segments().stream().map(ContextStore.Segment::text).toList());
+    }
+
+    @Test void backgroundCompactionRunsPastTheThreshold() throws InterruptedException {
+        ContextStore store = new ContextStore(WORDS, new ContextStore.ExtractiveSummarizer(), 20, 5, 50);
+        for (int i = 0; i < 30; i++) {
+            store.append("c", "word");
+        }
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (store.stats("c").compactedSegments() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(store.stats("c").compactedSegments() > 0);
+        assertTrue(store.stats("c").summaryTokens() > 0);
+    }
+
+    @Test void localTokenizerSplitsLongWordsAndPunctuation() {
+        ContextStore.LocalTokenizer tokenizer = new ContextStore.LocalTokenizer();
+        assertEquals(0, tokenizer.count("   "));
+        assertEquals(2, tokenizer.count("hi!"));
+        assertEquals(3, tokenizer.count("abcdefghij"));
+    }
+}
@@ -0,0 +1,188 @@
+package mcpTools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpMcpServerTest {
+
+    private static final String INITIALIZE = "{\"jsonrpc\":\"2.0\",\"id\":0,\"method\":\"initialize\",\"params\":{}}";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    /**
+     * Dispatcher whose "whoami" tool answers with the id of the session it
+     * runs in, and whose "boom" tool throws
+     */
+    private static final class SessionDispatcher extends ToolDispatcher {
+        @Override
+        public Map<String, String> listTools() {
+            return Map.of("whoami", "whoami", "boom", "boom");
+        }
+
+        @Override
+        public boolean hasTool(String toolName) {
+            return listTools().containsKey(toolName);
+        }
+
+        @Override
+        public Result execute(String toolName, String[] args) {
+            if (toolName.equals("boom")) {
+                throw new IllegalStateException("boom");
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Result(McpSession.current().getId(), "", false);
+        }
+    }
+
+    private static String call(Object id, String tool) {
+        String idField = id == null ? "" : "\"id\":" + id + ",";
+        return "{\"jsonrpc\":\"2.0\"," + idField + "\"method\":\"tools/call\",\"params\":{\"name\":\"" + tool + "\"}}";
+    }
+
+    private static HttpMcpServer server(int maxSessions, String token) {
+        return new HttpMcpServer(new JsonRpcServer(new SessionDispatcher(), false), Duration.ofMinutes(1),
+                maxSessions, token, Set.of());
+    }
+
+    private static InetSocketAddress loopback() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    private HttpResponse<String> post(InetSocketAddress address, String sessionId, String token, String body)
+            throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(
+                URI.create("http://127.0.0.1:" + address.getPort() + HttpMcpServer.ENDPOINT))
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json, text/event-stream")
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (sessionId != null) {
+            request.header(HttpMcpServer.SESSION_HEADER, sessionId);
+        }
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String initialize(InetSocketAddress address, String token) throws Exception {
+        HttpResponse<String> response = post(address, null, token, INITIALIZE);
+        assertEquals(200, response.statusCode(), response.body());
+        return response.headers().firstValue(HttpMcpServer.SESSION_HEADER).orElseThrow();
+    }
+
+    @Test void batchesAreAnsweredCompletelyInTheirSession() throws Exception {
+        HttpMcpServer server = server(10, null);
+        InetSocketAddress address = server.start(loopback());
+        try {
+            String session = initialize(address, null);
+            String other = initialize(address, null);
+            assertNotEquals(session, other);
+
+            StringBuilder batch = new StringBuilder("[");
+            for (int id = 1; id <= 50; id++) {
+                batch.append(call(id, "whoami")).append(',');
+            }
+            batch.append(call(null, "whoami")).append(',').append(call(51, "boom")).append(']');
+            HttpResponse<String> response = post(address, session, null, batch.toString());
+            assertEquals(200, response.statusCode(), response.body());
+
+            JsonNode responses = mapper.readTree(response.body());
+            assertEquals(51, responses.size());
+            Set<Integer> ids = new HashSet<>();
+            for (JsonNode element : responses) {
+                int id = element.path("id").asInt();
+                ids.add(id);
+                if (id == 51) {
+                    assertTrue(element.has("error") || element.path("result").path("isError").asBoolean(),
+                            element.toString());
+                } else {
+                    assertEquals(session, element.path("result").path("content").path(0).path("text").asText(),
+                            element.toString());
+                }
+            }
+            assertEquals(51, ids.size());
+
+            // A batch of notifications needs no response
+            assertEquals(202, post(address, other, null, "[" + call(null, "whoami") + "]").statusCode());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test void sessionsBeyondTheCapAreRefused() throws Exception {
+        HttpMcpServer server = server(2, null);
+        InetSocketAddress address = server.start(loopback());
+        try {
+            String first = initialize(address, null);
+            initialize(address, null);
+            HttpResponse<String> refused = post(address, null, null, INITIALIZE);
+            assertEquals(503, refused.statusCode());
+            assertTrue(refused.headers().firstValue("Retry-After").isPresent());
+            assertTrue(mapper.readTree(refused.body()).has("error"));
+            assertEquals(2, server.sessionCount());
+
+            HttpRequest delete = HttpRequest.newBuilder(
+                    URI.create("http://127.0.0.1:" + address.getPort() + HttpMcpServer.ENDPOINT))
+                    .header(HttpMcpServer.SESSION_HEADER, first)
+                    .DELETE().build();
+            assertEquals(204, http.send(delete, HttpResponse.BodyHandlers.discarding()).statusCode());
+            initialize(address, null);
+            assertEquals(2, server.sessionCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test void requestsWithoutTheTokenAreRejected() throws Exception {
+        HttpMcpServer server = server(10, "secret");
+        InetSocketAddress address = server.start(loopback());
+        try {
+            HttpResponse<String> missing = post(address, null, null, INITIALIZE);
+            assertEquals(401, missing.statusCode());
+            assertEquals("Bearer", missing.headers().firstValue("WWW-Authenticate").orElse(null));
+            assertEquals(401, post(address, null, "secreT", INITIALIZE).statusCode());
+            assertEquals(0, server.sessionCount());
+
+            String session = initialize(address, "secret");
+            assertEquals(401, post(address, session, null, call(1, "whoami")).statusCode());
+            assertEquals(200, post(address, session, "secret", call(1, "whoami")).statusCode());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test void otherMachinesAreOnlyServedWithAToken() throws Exception {
+        InetSocketAddress everywhere = new InetSocketAddress(0);
+        assertThrows(IllegalArgumentException.class, () -> server(10, null).start(everywhere));
+
+        HttpMcpServer server = server(10, "secret");
+        InetSocketAddress address = server.start(everywhere);
+        try {
+            initialize(address, "secret");
+        } finally {
+            server.stop();
+        }
+        assertThrows(IllegalArgumentException.class, () -> server(0, null));
+        assertThrows(IllegalArgumentException.class, () -> server(10, " "));
+    }
+}
@@ -0,0 +1,205 @@
+package mcpTools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonRpcServerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Dispatcher with scripted tools: "slow" sleeps while tracking how many
+     * calls overlap, "boom" throws, "fatal" throws an Error and "echo" prints
+     * its positional arguments
+     */
+    private static final class ScriptedDispatcher extends ToolDispatcher {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        @Override
+        public Map<String, String> listTools() {
+            return Map.of("slow", "slow", "boom", "boom", "fatal", "fatal",
+                    "echo", "echo <key> <value> [namespace] [ttl]");
+        }
+
+        @Override
+        public boolean hasTool(String toolName) {
+            return listTools().containsKey(toolName);
+        }
+
+        @Override
+        public Result execute(String toolName, String[] args) {
+            switch (toolName) {
+                case "boom" -> throw new IllegalStateException("boom");
+                case "fatal" -> throw new AssertionError("fatal");
+                case "echo" -> {
+                    return new Result(String.join("|", args), "", false);
+                }
+                default -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                    return new Result("ok", "", false);
+                }
+            }
+        }
+    }
+
+    private static String call(Object id, String tool) {
+        String idField = id == null ? "" : "\"id\":" + id + ",";
+        return "{\"jsonrpc\":\"2.0\"," + idField + "\"method\":\"tools/call\",\"params\":{\"name\":\"" + tool + "\"}}";
+    }
+
+    private static String ping(int id) {
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"ping\"}";
+    }
+
+    private List<JsonNode> serve(JsonRpcServer server, String... lines) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] in = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> server.serve(new ByteArrayInputStream(in), out));
+        return out.toString(StandardCharsets.UTF_8).lines().map(line -> {
+            try {
+                return mapper.readTree(line);
+            } catch (Exception e) {
+                throw new AssertionError("Not JSON: " + line, e);
+            }
+        }).toList();
+    }
+
+    @Test void unorderedBatchesReturnEveryResponse() {
+        JsonRpcServer server = new JsonRpcServer(new ScriptedDispatcher(), false);
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            batch.append(i == 0 ? "" : ",").append(ping(i));
+        }
+        String message = batch.append(']').toString();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int run = 0; run < 200; run++) {
+                JsonNode responses = server.handleMessage(message, executor);
+                assertEquals(100, responses.size(), "run " + run);
+                Set<Integer> ids = new HashSet<>();
+                responses.forEach(response -> ids.add(response.get("id").asInt()));
+                assertEquals(100, ids.size());
+            }
+        }
+    }
+
+    @Test void failingBatchElementGetsItsOwnError() {
+        for (boolean ordered : new boolean[] { false, true }) {
+            JsonRpcServer server = new JsonRpcServer(new ScriptedDispatcher(), ordered);
+            String message = "[" + ping(1) + "," + call(2, "boom") + "," + call(null, "boom") + ","
+                    + call(3, "fatal") + "]";
+            JsonNode responses;
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                responses = server.handleMessage(message, executor);
+            }
+            assertEquals(3, responses.size());
+            for (JsonNode response : responses) {
+                int id = response.get("id").asInt();
+                if (id == 1) {
+                    assertTrue(response.has("result"));
+                } else {
+                    assertEquals(JsonRpcServer.INTERNAL_ERROR, response.path("error").path("code").asInt());
+                }
+            }
+        }
+    }
+
+    @Test void orderedServingContinuesPastAnError() throws Exception {
+        JsonRpcServer server = new JsonRpcServer(new ScriptedDispatcher(), true);
+        List<JsonNode> responses = serve(server, ping(1), call(2, "fatal"), ping(3), call(4, "slow"));
+        assertEquals(4, responses.size());
+        assertEquals(1, responses.get(0).get("id").asInt());
+        assertEquals(JsonRpcServer.INTERNAL_ERROR, responses.get(1).path("error").path("code").asInt());
+        assertEquals(3, responses.get(2).get("id").asInt());
+        assertEquals(4, responses.get(3).get("id").asInt());
+    }
+
+    @Test void concurrentCallsAreBounded() throws Exception {
+        ScriptedDispatcher dispatcher = new ScriptedDispatcher();
+        JsonRpcServer server = new JsonRpcServer(dispatcher, false, 3);
+        String[] lines = new String[30];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = call(i, "slow");
+        }
+        assertEquals(30, serve(server, lines).size());
+        assertTrue(dispatcher.maxRunning.get() <= 3, "max concurrent calls " + dispatcher.maxRunning.get());
+
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 30; i++) {
+            batch.append(i == 0 ? "" : ",").append(call(i, "slow"));
+        }
+        dispatcher.maxRunning.set(0);
+        List<JsonNode> responses = serve(server, batch.append(']').toString());
+        assertEquals(30, responses.get(0).size());
+        assertTrue(dispatcher.maxRunning.get() <= 3, "max concurrent batch calls " + dispatcher.maxRunning.get());
+    }
+
+    @Test void namedArgumentsFollowTheUsageString() throws Exception {
+        JsonRpcServer server = new JsonRpcServer(new ScriptedDispatcher(), false);
+        JsonNode tools = server.handleRequest(mapper.readTree(
+                "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"tools/list\"}")).path("result").path("tools");
+        JsonNode schema = null;
+        for (JsonNode tool : tools) {
+            if (tool.path("name").asText().equals("echo")) {
+                schema = tool.path("inputSchema");
+            }
+        }
+        assertNotNull(schema);
+        List<String> properties = new ArrayList<>();
+        schema.path("properties").fieldNames().forEachRemaining(properties::add);
+        assertEquals(List.of("key", "value", "namespace", "ttl"), properties);
+        assertEquals("[\"key\",\"value\"]", schema.path("required").toString());
+
+        assertEquals("k|v", echo(server, "{\"value\":\"v\",\"key\":\"k\"}").path("result").path("content")
+                .path(0).path("text").asText());
+        assertEquals("k|v|ns|5", echo(server, "{\"ttl\":5,\"namespace\":\"ns\",\"key\":\"k\",\"value\":\"v\"}")
+                .path("result").path("content").path(0).path("text").asText());
+        assertEquals("a|b", echo(server, "[\"a\",\"b\"]").path("result").path("content").path(0).path("text")
+                .asText());
+
+        // A missing required argument, an optional one without the one before it, and an unknown name
+        for (String invalid : List.of("{\"key\":\"k\"}", "{\"key\":\"k\",\"value\":\"v\",\"ttl\":5}",
+                "{\"key\":\"k\",\"value\":\"v\",\"expirationTtl\":5}")) {
+            assertEquals(JsonRpcServer.INVALID_PARAMS, echo(server, invalid).path("error").path("code").asInt(),
+                    invalid);
+        }
+    }
+
+    private JsonNode echo(JsonRpcServer server, String arguments) throws Exception {
+        return server.handleRequest(mapper.readTree("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"tools/call\","
+                + "\"params\":{\"name\":\"echo\",\"arguments\":" + arguments + "}}"));
+    }
+
+    @Test void toolErrorsAreReportedInTheResult() {
+        JsonRpcServer server = new JsonRpcServer(new ToolDispatcher(), false);
+        JsonNode response = server.handleRequest(mapper.createObjectNode()
+                .put("jsonrpc", "2.0").put("id", 1).put("method", "tools/call")
+                .set("params", mapper.createObjectNode().put("name", "kv_get")));
+        assertTrue(response.path("result").path("isError").asBoolean());
+        assertEquals("Usage: kv_get <namespaceId> <key>",
+                response.path("result").path("content").path(0).path("text").asText());
+    }
+}
@@ -0,0 +1,68 @@
+package mcpTools;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+    private static LoadGenerator.Call call(long offsetMillis) {
+        return new LoadGenerator.Call(offsetMillis, "kv_get", JsonNodeFactory.instance.objectNode());
+    }
+
+    @Test void closedLoopIntervalComesFromTheRecording() {
+        List<LoadGenerator.Call> recorded = List.of(call(0), call(100), call(250), call(300));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), LoadGenerator.recordedInterval(recorded, 1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(400), LoadGenerator.recordedInterval(recorded, 4));
+        assertEquals(0, LoadGenerator.recordedInterval(List.of(call(0), call(0)), 4));
+        assertEquals(0, LoadGenerator.recordedInterval(List.of(call(0)), 4));
+    }
+
+    @Test void serverOutputThatIsNotJsonIsSkippedAndSilentCallsTimeOut() throws Exception {
+        // Answers the first call after a log line, never answers the second
+        List<String> server = List.of("sh", "-c", "read line; echo 'starting up';"
+                + " echo '{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":{}}'; read line; cat > /dev/null");
+        try (LoadGenerator.ProcessTarget target = new LoadGenerator.ProcessTarget(server)) {
+            LoadGenerator generator = new LoadGenerator(List.of(call(0)), target, TimeUnit.MILLISECONDS.toNanos(500));
+            assertTimeoutPreemptively(Duration.ofSeconds(10),
+                    () -> generator.runClosedLoop(1, 2, TimeUnit.SECONDS.toNanos(60), 0));
+            assertEquals(2, generator.completed());
+            assertEquals(1, generator.errors());
+            assertEquals(1, target.skippedLines());
+        }
+    }
+
+    @Test void eachRecordingStartsAFreshFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("calls.jsonl");
+        ObjectMapper mapper = new ObjectMapper();
+        for (String tool : List.of("first", "second")) {
+            try (TrafficRecorder recorder = new TrafficRecorder(file)) {
+                recorder.record(mapper.readTree("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"tools/call\","
+                        + "\"params\":{\"name\":\"" + tool + "\"}}"));
+            }
+        }
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(1, lines.size());
+        assertEquals("second", mapper.readTree(lines.get(0)).path("params").path("name").asText());
+    }
+
+    @Test void serverExitFailsPendingCalls() throws Exception {
+        try (LoadGenerator.ProcessTarget target = new LoadGenerator.ProcessTarget(
+                List.of("sh", "-c", "read line; exit 0"))) {
+            CompletableFuture<Boolean> pending = target.call(call(0));
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> pending.get(10, TimeUnit.SECONDS));
+            assertEquals("Server closed its output", failure.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package mcpTools;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LsmKVBackendTest {
+
+    /** Small memtables and segments, so a few hundred writes exercise every level */
+    private static final LsmKVBackend.Options SMALL = new LsmKVBackend.Options(4 * 1024, 2, 16 * 1024, 4, 4 * 1024, 1,
+            false);
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] bytes) {
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> files(Path dir, String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> file.getFileName().toString()).filter(name -> name.startsWith(prefix))
+                    .sorted().toList();
+        }
+    }
+
+    @Test void unflushedWritesAreReplayedFromTheLog(@TempDir Path dir) throws Exception {
+        try (LsmKVBackend backend = new LsmKVBackend(dir)) {
+            backend.put("ns", "a", bytes("1"), 0);
+            backend.put("ns", "b", bytes("2"), 0);
+            backend.delete("ns", "b");
+        }
+        assertTrue(files(dir, "seg-").isEmpty());
+
+        try (LsmKVBackend reopened = new LsmKVBackend(dir)) {
+            assertEquals("1", text(reopened.get("ns", "a")));
+            assertNull(reopened.get("ns", "b"));
+            assertEquals(List.of("a"), reopened.list("ns", "", 10));
+        }
+    }
+
+    @Test void manifestListsTheLiveSegments(@TempDir Path dir) throws Exception {
+        try (LsmKVBackend backend = new LsmKVBackend(dir)) {
+            backend.put("ns", "a", bytes("1"), 0);
+            backend.flush();
+            backend.put("ns", "b", bytes("2"), 0);
+            backend.flush();
+            assertEquals(2, backend.stats().levels().get(0).segments());
+        }
+        List<String> manifest = Files.readAllLines(dir.resolve("MANIFEST"));
+        List<String> segments = files(dir, "seg-");
+        assertEquals(2, segments.size());
+        for (String segment : segments) {
+            assertTrue(manifest.contains("0 " + segment), manifest.toString());
+        }
+        assertTrue(files(dir, "wal-").size() <= 1);
+
+        // A segment the manifest does not list is the output of an interrupted flush
+        Files.copy(dir.resolve(segments.get(0)), dir.resolve("seg-0000000000000009999.sst"));
+        try (LsmKVBackend reopened = new LsmKVBackend(dir)) {
+            assertEquals(2, reopened.stats().levels().get(0).segments());
+            assertEquals("1", text(reopened.get("ns", "a")));
+            assertEquals("2", text(reopened.get("ns", "b")));
+        }
+        assertEquals(segments, files(dir, "seg-"));
+    }
+
+    @Test void compactionKeepsTheNewestVersionOfEveryKey(@TempDir Path dir) throws Exception {
+        try (LsmKVBackend backend = new LsmKVBackend(dir, SMALL)) {
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < 300; i++) {
+                    backend.put("ns", String.format("k%04d", i), bytes("v" + round + "-" + i), 0);
+                }
+                backend.flush();
+            }
+            awaitCompactions(backend);
+            LsmKVBackend.Stats stats = backend.stats();
+            assertTrue(stats.compactions() > 0);
+            assertTrue(stats.levels().size() > 1);
+            for (int i = 0; i < 300; i += 37) {
+                assertEquals("v2-" + i, text(backend.get("ns", String.format("k%04d", i))));
+            }
+            assertEquals(300, backend.list("ns", "k", 1000).size());
+        }
+
+        try (LsmKVBackend reopened = new LsmKVBackend(dir, SMALL)) {
+            assertEquals("v2-299", text(reopened.get("ns", "k0299")));
+            assertEquals(300, reopened.list("ns", "", 1000).size());
+        }
+    }
+
+    @Test void tombstonesShadowOlderValuesUntilDropped(@TempDir Path dir) throws Exception {
+        try (LsmKVBackend backend = new LsmKVBackend(dir, SMALL)) {
+            for (int i = 0; i < 200; i++) {
+                backend.put("ns", String.format("k%04d", i), bytes("value " + i), 0);
+            }
+            backend.flush();
+            for (int i = 0; i < 200; i += 2) {
+                backend.delete("ns", String.format("k%04d", i));
+            }
+            backend.flush();
+
+            assertNull(backend.get("ns", "k0000"));
+            assertEquals("value 1", text(backend.get("ns", "k0001")));
+            assertEquals(List.of("k0001", "k0003"), backend.list("ns", "", 2));
+
+            for (int round = 0; round < 4; round++) {
+                backend.put("ns", "filler" + round, new byte[2048], 0);
+                backend.flush();
+            }
+            awaitCompactions(backend);
+            assertNull(backend.get("ns", "k0100"));
+            assertEquals(100, backend.list("ns", "k", 1000).size());
+        }
+    }
+
+    @Test void expiredValuesAreNotReturned(@TempDir Path dir) throws Exception {
+        try (LsmKVBackend backend = new LsmKVBackend(dir)) {
+            backend.put("ns", "short", bytes("x"), 1);
+            backend.put("ns", "long", bytes("y"), 3600);
+            assertEquals("x", text(backend.get("ns", "short")));
+            Thread.sleep(1_100);
+            assertNull(backend.get("ns", "short"));
+            assertEquals(List.of("long"), backend.list("ns", "", 10));
+        }
+    }
+
+    @Test void concurrentWritesShareLogCommits(@TempDir Path dir) throws Exception {
+        LsmKVBackend.Options synced = new LsmKVBackend.Options(4L << 20, 4, 32L << 20, 10, 8L << 20, 1, true);
+        int threads = 8;
+        int writes = 200;
+        try (LsmKVBackend backend = new LsmKVBackend(dir, synced)) {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                done.add(pool.submit(() -> {
+                    for (int i = 0; i < writes; i++) {
+                        backend.put("ns", thread + "-" + i, bytes("v" + i), 0);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get();
+            }
+            pool.shutdown();
+            assertTrue(backend.stats().logCommits() < threads * writes);
+        }
+        try (LsmKVBackend reopened = new LsmKVBackend(dir)) {
+            assertEquals(threads * writes, reopened.list("ns", "", Integer.MAX_VALUE).size());
+        }
+    }
+
+    @Test void failingFlushesFailWritesAndRecover(@TempDir Path dir) throws Exception {
+        LsmKVBackend.Options tiny = new LsmKVBackend.Options(512, 100, 1L << 30, 10, 8L << 20, 1, false);
+        LsmKVBackend backend = new LsmKVBackend(dir, tiny);
+        // Directories in place of the next segment files make every flush attempt fail
+        List<Path> blockers = new ArrayList<>();
+        for (int id = 0; id < 2_000; id++) {
+            blockers.add(Files.createDirectory(dir.resolve(String.format("seg-%019d.sst", id))));
+        }
+        try {
+            List<String> acknowledged = new ArrayList<>();
+            IOException failure = null;
+            for (int i = 0; i < 1_000 && failure == null; i++) {
+                try {
+                    backend.put("ns", "k" + i, new byte[100], 0);
+                    acknowledged.add("k" + i);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            assertNotNull(failure, "writes kept stalling behind failed flushes");
+            assertTrue(failure.getMessage().startsWith("KV memtable flushes are failing"), failure.getMessage());
+            assertTrue(backend.stats().flushFailures() > 0);
+            assertThrows(IOException.class, backend::flush);
+            for (String key : acknowledged) {
+                assertNotNull(backend.get("ns", key), key);
+            }
+
+            for (Path blocker : blockers) {
+                Files.delete(blocker);
+            }
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (backend.stats().immutableMemtables() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            backend.flush();
+            backend.put("ns", "after", bytes("ok"), 0);
+            backend.close();
+
+            try (LsmKVBackend reopened = new LsmKVBackend(dir, tiny)) {
+                for (String key : acknowledged) {
+                    assertNotNull(reopened.get("ns", key), key);
+                }
+                assertEquals("ok", text(reopened.get("ns", "after")));
+            }
+        } finally {
+            backend.close();
+        }
+    }
+
+    @Test void directoryIsLockedWhileOpen(@TempDir Path dir) throws Exception {
+        try (LsmKVBackend backend = new LsmKVBackend(dir)) {
+            backend.put("ns", "a", bytes("1"), 0);
+            IOException locked = assertThrows(IOException.class, () -> new LsmKVBackend(dir));
+            assertTrue(locked.getMessage().contains("already open"), locked.getMessage());
+            // The failed open left the log alone
+            assertEquals("1", text(backend.get("ns", "a")));
+            assertEquals(1, files(dir, "wal-").size());
+        }
+        try (LsmKVBackend reopened = new LsmKVBackend(dir)) {
+            assertEquals("1", text(reopened.get("ns", "a")));
+        }
+    }
+
+    @Test void closedBackendRejectsCalls(@TempDir Path dir) throws Exception {
+        LsmKVBackend backend = new LsmKVBackend(dir);
+        backend.put("ns", "a", bytes("1"), 0);
+        backend.flush();
+        backend.close();
+        assertThrows(IOException.class, () -> backend.get("ns", "a"));
+        assertThrows(IOException.class, () -> backend.list("ns", "", 10));
+        assertThrows(IOException.class, () -> backend.put("ns", "b", bytes("2"), 0));
+        backend.close();
+    }
+
+    private static void awaitCompactions(LsmKVBackend backend) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        long last = -1;
+        while (System.nanoTime() < deadline) {
+            long compactions = backend.stats().compactions();
+            if (compactions > 0 && compactions == last) {
+                return;
+            }
+            last = compactions;
+            Thread.sleep(200);
+        }
+    }
+}
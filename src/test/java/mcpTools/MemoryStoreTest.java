@@ -0,0 +1,101 @@
+package mcpTools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryStoreTest {
+
+    private static final String VALUE = "x".repeat(100);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test void namespacesShareTheTotalBudget() {
+        MemoryStore store = new MemoryStore(1 << 20, 20_000, clock::get);
+        for (int i = 0; i < 200; i++) {
+            store.put("a", "k" + i, VALUE, 0);
+            store.put("b", "k" + i, VALUE, 0);
+            assertTrue(store.totalBytes() <= 20_000, "namespaces exceed the total budget");
+        }
+        MemoryStore.Stats a = store.stats("a");
+        MemoryStore.Stats b = store.stats("b");
+        assertEquals(store.totalBytes(), a.bytes() + b.bytes());
+        assertTrue(a.evictions() > 0);
+        assertTrue(b.evictions() > 0);
+
+        store.clear("a");
+        assertEquals(b.bytes(), store.totalBytes());
+    }
+
+    @Test void busyNamespaceKeepsItsEntriesUnderPressure() {
+        MemoryStore store = new MemoryStore(1 << 20, 20_000, clock::get);
+        for (int i = 0; i < 20; i++) {
+            store.put("hot", "k" + i, VALUE, 0);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 20; i++) {
+                assertNotNull(store.get("hot", "k" + i));
+            }
+        }
+        for (int i = 0; i < 500; i++) {
+            store.put("cold", "k" + i, VALUE, 0);
+        }
+        for (int i = 0; i < 20; i++) {
+            assertNotNull(store.get("hot", "k" + i), "hot entry k" + i + " was evicted");
+        }
+        assertEquals(0, store.stats("hot").evictions());
+        assertTrue(store.stats("cold").evictions() > 0);
+    }
+
+    @Test void frequenciesSurviveSketchGrowth() {
+        // Room for about fifty entries, and a window of one
+        MemoryStore store = new MemoryStore(50 * 210, Long.MAX_VALUE, clock::get);
+        // Misses count as well, so "hot" is popular when it arrives and waits on probation. Only
+        // misses in a namespace that exists count, as reads never create one.
+        store.put("ns", "seed", VALUE, 0);
+        for (int i = 0; i < 10; i++) {
+            store.get("ns", "hot");
+        }
+        store.put("ns", "hot", VALUE, 0);
+        // The sketch widens at 17 and 33 entries
+        for (int i = 0; i < 500; i++) {
+            store.put("ns", "k" + i, VALUE, 0);
+        }
+        assertNotNull(store.get("ns", "hot"));
+        assertTrue(store.stats("ns").evictions() > 400);
+    }
+
+    @Test void entriesExpireAfterTheirTtl() {
+        MemoryStore store = new MemoryStore(1 << 20, 1 << 20, clock::get);
+        store.put("ns", "k", "v", 10);
+        assertEquals("v", store.get("ns", "k"));
+        clock.addAndGet(11_000_000_000L);
+        assertNull(store.get("ns", "k"));
+        assertEquals(1, store.stats("ns").expirations());
+        assertEquals(0, store.totalBytes());
+    }
+
+    @Test void newNamespacesTakeTheBudgetTheyAreCreatedWith() {
+        MemoryStore store = new MemoryStore(1 << 20, 1 << 20, clock::get);
+        store.put("session", "k", VALUE, 0, 4096);
+        store.put("session", "k2", VALUE, 0, 8192);
+        assertEquals(4096, store.stats("session").budgetBytes());
+
+        store.setBudget("configured", 2048);
+        store.put("configured", "k", VALUE, 0, 4096);
+        assertEquals(2048, store.stats("configured").budgetBytes());
+        store.put("plain", "k", VALUE, 0);
+        assertEquals(1 << 20, store.stats("plain").budgetBytes());
+    }
+
+    @Test void readingAnUnknownNamespaceDoesNotCreateIt() {
+        MemoryStore store = new MemoryStore(1 << 20, 1 << 20, clock::get);
+        for (int i = 0; i < 100; i++) {
+            assertNull(store.get("probe-" + i, "k"));
+        }
+        assertTrue(store.stats().isEmpty());
+        assertNull(store.stats("probe-0"));
+    }
+}
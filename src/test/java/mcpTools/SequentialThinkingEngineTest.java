@@ -0,0 +1,109 @@
+package mcpTools;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SequentialThinkingEngineTest {
+
+    @Test void longChainRunsWithoutOverflowingTheStack() throws Exception {
+        List<SequentialThinkingEngine.Step> steps = SequentialThinkingEngine.parseSteps("100000");
+        SequentialThinkingEngine.RunResult result = new SequentialThinkingEngine().run("q", steps);
+        assertEquals(100000, result.steps().size());
+        assertEquals("[step100000] q | after: step99999", result.steps().get("step100000").output());
+    }
+
+    @Test void independentStepsRunConcurrently() throws Exception {
+        // Both branches wait for each other, so the run only finishes if they overlap
+        CountDownLatch both = new CountDownLatch(2);
+        SequentialThinkingEngine.StepAction branch = (input, deps) -> {
+            both.countDown();
+            assertTrue(both.await(10, TimeUnit.SECONDS), "branches did not overlap");
+            return "done";
+        };
+        List<SequentialThinkingEngine.Step> steps = List.of(
+                new SequentialThinkingEngine.Step("left", List.of(), branch),
+                new SequentialThinkingEngine.Step("right", List.of(), branch),
+                new SequentialThinkingEngine.Step("join", List.of("left", "right"),
+                        (input, deps) -> String.join("+", deps.values())));
+        SequentialThinkingEngine.RunResult result = new SequentialThinkingEngine().run("q", steps);
+        assertEquals("done+done", result.steps().get("join").output());
+    }
+
+    @Test void dependenciesSeeOutputsOfTheStepsTheyFollow() throws Exception {
+        List<SequentialThinkingEngine.Step> steps = List.of(
+                new SequentialThinkingEngine.Step("b", List.of("a"), (input, deps) -> deps.get("a") + "b"),
+                new SequentialThinkingEngine.Step("a", List.of(), (input, deps) -> input + "a"));
+        SequentialThinkingEngine.RunResult result = new SequentialThinkingEngine().run(">", steps);
+        assertEquals(List.of("a", "b"), List.copyOf(result.steps().keySet()));
+        assertEquals(">ab", result.steps().get("b").output());
+    }
+
+    @Test void rerunReusesMemoisedOutputs(@TempDir Path memo) throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        SequentialThinkingEngine.StepAction counting = (input, deps) -> "n" + calls.incrementAndGet();
+        List<SequentialThinkingEngine.Step> steps = List.of(
+                new SequentialThinkingEngine.Step("a", List.of(), counting),
+                new SequentialThinkingEngine.Step("b", List.of("a"), counting));
+
+        new SequentialThinkingEngine(memo).run("q", steps);
+        assertEquals(2, calls.get());
+
+        SequentialThinkingEngine fresh = new SequentialThinkingEngine(memo);
+        SequentialThinkingEngine.RunResult again = fresh.run("q", steps);
+        assertEquals(2, calls.get());
+        assertEquals(2, again.cachedCount());
+
+        fresh.run("other input", steps);
+        assertEquals(4, calls.get());
+    }
+
+    @Test void changedActionsAreNotServedFromTheMemo(@TempDir Path memo) throws Exception {
+        SequentialThinkingEngine engine = new SequentialThinkingEngine(memo);
+        engine.run("q", List.of(new SequentialThinkingEngine.Step("a", List.of(), (input, deps) -> "old", "v1")));
+
+        SequentialThinkingEngine.RunResult renamed = engine.run("q", List.of(
+                new SequentialThinkingEngine.Step("a", List.of(), (input, deps) -> "new", "v2")));
+        assertEquals("new", renamed.steps().get("a").output());
+        assertEquals(0, renamed.cachedCount());
+
+        SequentialThinkingEngine.RunResult unkeyed = engine.run("q", List.of(
+                new SequentialThinkingEngine.Step("a", List.of(), (input, deps) -> "newer")));
+        assertEquals("newer", unkeyed.steps().get("a").output());
+    }
+
+    @Test void rejectsMalformedGraphs() {
+        SequentialThinkingEngine engine = new SequentialThinkingEngine();
+        IllegalArgumentException cycle = assertThrows(IllegalArgumentException.class,
+                () -> engine.run("q", SequentialThinkingEngine.parseSteps("a:c;b:a;c:b")));
+        assertTrue(cycle.getMessage().startsWith("Cycle detected"), cycle.getMessage());
+
+        IllegalArgumentException unknown = assertThrows(IllegalArgumentException.class,
+                () -> engine.run("q", SequentialThinkingEngine.parseSteps("a:missing")));
+        assertEquals("Step 'a' depends on unknown step 'missing'", unknown.getMessage());
+
+        IllegalArgumentException duplicate = assertThrows(IllegalArgumentException.class,
+                () -> engine.run("q", SequentialThinkingEngine.parseSteps("a;a")));
+        assertEquals("Duplicate step id: a", duplicate.getMessage());
+    }
+
+    @Test void failingStepFailsTheRun() {
+        List<SequentialThinkingEngine.Step> steps = List.of(
+                new SequentialThinkingEngine.Step("bad", List.of(), (input, deps) -> {
+                    throw new IllegalStateException("boom");
+                }),
+                new SequentialThinkingEngine.Step("after", List.of("bad"), (input, deps) -> "unreachable"));
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> new SequentialThinkingEngine().run("q", steps));
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        assertEquals("boom", failure.getCause().getMessage());
+    }
+}
@@ -0,0 +1,182 @@
+package mcpTools;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedKVBackendTest {
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] bytes) {
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Waits until every node holds the same version of the key; a write
+     * returns once a quorum has it, and the last replica may still be applying it
+     */
+    private static KVReplica.Versioned awaitReplicas(KVCluster cluster, int nodes, String key) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            KVReplica.Versioned first = cluster.getNode(0).getReplica().read("ns", key);
+            boolean settled = true;
+            for (int i = 1; i < nodes; i++) {
+                settled &= cluster.getNode(i).getReplica().read("ns", key).version() == first.version();
+            }
+            if (settled || System.nanoTime() > deadline) {
+                return first;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test void readsAndWritesSurviveOneReplicaDown() throws Exception {
+        try (KVCluster cluster = KVCluster.startInProcess(3, 3)) {
+            ShardedKVBackend backend = cluster.clientBackend();
+            for (int i = 0; i < 50; i++) {
+                backend.put("ns", "k" + i, bytes("v" + i), 0);
+            }
+            cluster.stopNode(0);
+
+            for (int i = 0; i < 50; i++) {
+                assertEquals("v" + i, text(backend.get("ns", "k" + i)));
+            }
+            backend.put("ns", "after", bytes("written"), 0);
+            backend.delete("ns", "k0");
+            assertEquals("written", text(backend.get("ns", "after")));
+            assertNull(backend.get("ns", "k0"));
+            assertEquals(50, backend.list("ns", "", 100).size());
+
+            cluster.stopNode(1);
+            assertThrows(IOException.class, () -> backend.put("ns", "lost", bytes("x"), 0));
+        }
+    }
+
+    @Test void readsReturnTheNewestVersionAndRepairStaleReplicas() throws Exception {
+        try (KVCluster cluster = KVCluster.startInProcess(3, 3)) {
+            ShardedKVBackend backend = cluster.clientBackend();
+            backend.put("ns", "k", bytes("old"), 0);
+
+            // A write that reached two replicas but not node-0
+            KVReplica.Versioned old = awaitReplicas(cluster, 3, "k");
+            KVReplica.Versioned newer = new KVReplica.Versioned(old.version() + 1, 0, bytes("new"));
+            assertTrue(cluster.getNode(1).getReplica().apply("ns", "k", newer));
+            assertTrue(cluster.getNode(2).getReplica().apply("ns", "k", newer));
+
+            for (int i = 0; i < 5; i++) {
+                assertEquals("new", text(backend.get("ns", "k")));
+            }
+            assertEquals("new", text(awaitReplicas(cluster, 3, "k").value()));
+            assertTrue(backend.readRepairs() > 0);
+
+            // Later writes through the backend are stamped after the version it read
+            backend.put("ns", "k", bytes("newest"), 0);
+            assertEquals("newest", text(backend.get("ns", "k")));
+        }
+    }
+
+    @Test void deletesAreTombstonesThatOlderWritesCannotUndo() throws Exception {
+        try (KVCluster cluster = KVCluster.startInProcess(3, 3)) {
+            ShardedKVBackend backend = cluster.clientBackend();
+            backend.put("ns", "k", bytes("v"), 0);
+            KVReplica.Versioned live = awaitReplicas(cluster, 3, "k");
+            backend.delete("ns", "k");
+            awaitReplicas(cluster, 3, "k");
+
+            // A lagging copy of the value arrives after the delete
+            for (int i = 0; i < 3; i++) {
+                assertFalse(cluster.getNode(i).getReplica().apply("ns", "k", live));
+            }
+            assertNull(backend.get("ns", "k"));
+            assertTrue(backend.list("ns", "", 10).isEmpty());
+
+            backend.put("ns", "k", bytes("again"), 0);
+            assertEquals("again", text(backend.get("ns", "k")));
+            assertEquals(List.of("k"), backend.list("ns", "", 10));
+        }
+    }
+
+    @Test void membersAndClientsShareTheData() throws Exception {
+        try (KVCluster cluster = KVCluster.startInProcess(4, 2)) {
+            ShardedKVBackend client = cluster.clientBackend();
+            ShardedKVBackend member = cluster.memberBackend(1);
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                String key = String.format("k%03d", i);
+                (i % 2 == 0 ? client : member).put("ns", key, bytes("v" + i), 0);
+                expected.add(key);
+            }
+            for (int i = 0; i < 100; i++) {
+                String key = String.format("k%03d", i);
+                assertEquals("v" + i, text(member.get("ns", key)));
+                assertEquals("v" + i, text(client.get("ns", key)));
+            }
+            assertEquals(expected, client.list("ns", "", 1000));
+            assertEquals(expected.subList(0, 10), member.list("ns", "k", 10));
+            for (int node = 0; node < 4; node++) {
+                assertTrue(cluster.getNode(node).getReplica().list("ns", "", 1000).size() < 100);
+            }
+        }
+    }
+
+    @Test void expiringValuesExpireOnEveryReplica() throws Exception {
+        try (KVCluster cluster = KVCluster.startInProcess(3, 3)) {
+            ShardedKVBackend backend = cluster.clientBackend();
+            backend.put("ns", "short", bytes("x"), 1);
+            assertEquals("x", text(backend.get("ns", "short")));
+            Thread.sleep(1_100);
+            assertNull(backend.get("ns", "short"));
+        }
+    }
+
+    @Test void quorumsMustOverlap() {
+        Map<String, InetSocketAddress> addresses = Map.of("a",
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 1));
+        assertThrows(IllegalArgumentException.class, () -> new ShardedKVBackend(null, null, addresses, 8, 3, 2, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ShardedKVBackend(null, null, addresses, 8, 3, 4, 2));
+        new ShardedKVBackend(null, null, addresses, 8, 3, 1, 3);
+    }
+
+    @Test void nodeAnswersPipelinedRequestsOutOfOrder() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        KVBackend slow = new InMemoryKVBackend() {
+            @Override
+            public byte[] get(String namespaceId, String key) {
+                if (key.equals("slow")) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.get(namespaceId, key);
+            }
+        };
+        try (KVNode node = new KVNode("n", slow, 0);
+                KVNodeClient client = new KVNodeClient(node.getAddress())) {
+            CompletableFuture<KVReplica.Versioned> blocked = client.get("ns", "slow");
+            assertEquals(KVReplica.Versioned.MISSING, client.get("ns", "fast").get(5, TimeUnit.SECONDS));
+            assertTrue(client.apply("ns", "fast", new KVReplica.Versioned(1, 0, bytes("v")))
+                    .get(5, TimeUnit.SECONDS));
+            assertFalse(blocked.isDone());
+
+            release.countDown();
+            assertEquals(KVReplica.Versioned.MISSING, blocked.get(5, TimeUnit.SECONDS));
+            assertEquals("v", text(client.get("ns", "fast").get(5, TimeUnit.SECONDS).value()));
+        }
+    }
+}
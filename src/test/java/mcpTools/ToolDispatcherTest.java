@@ -0,0 +1,89 @@
+package mcpTools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ToolDispatcherTest {
+
+    @Test void outputOfThreadsStartedByTheCallIsCaptured() {
+        ToolDispatcher.Result result = ToolDispatcher.capture(() -> {
+            System.out.println("from the call");
+            Thread helper = new Thread(() -> System.out.println("from a helper"));
+            helper.start();
+            try {
+                helper.join();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertEquals("from the call" + System.lineSeparator() + "from a helper" + System.lineSeparator(),
+                result.output());
+        assertFalse(result.isError());
+    }
+
+    @Test void outputAfterTheCallReturnsIsNotCaptured() throws Exception {
+        CountDownLatch callDone = new CountDownLatch(1);
+        CountDownLatch printed = new CountDownLatch(1);
+        AtomicReference<Thread> straggler = new AtomicReference<>();
+        ToolDispatcher.Result result = ToolDispatcher.capture(() -> {
+            Thread helper = new Thread(() -> {
+                try {
+                    callDone.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                System.err.println("late");
+                printed.countDown();
+            });
+            straggler.set(helper);
+            helper.start();
+        });
+        callDone.countDown();
+        assertTrue(printed.await(10, TimeUnit.SECONDS));
+        straggler.get().join();
+        assertEquals("", result.error());
+    }
+
+    @Test void standardErrorAloneIsNotAnError() {
+        ToolDispatcher.Result warned = ToolDispatcher.capture(() -> System.err.print("warning"));
+        assertEquals("warning", warned.error());
+        assertFalse(warned.isError());
+
+        ToolDispatcher.Result thrown = ToolDispatcher.capture(() -> {
+            throw new IllegalStateException("broken");
+        });
+        assertTrue(thrown.isError());
+        assertEquals("broken", thrown.error());
+    }
+
+    @Test void missingRequiredArgumentsAreAnError() {
+        ToolDispatcher dispatcher = new ToolDispatcher();
+        ToolDispatcher.Result result = dispatcher.execute("kv_get", new String[] { "namespace" });
+        assertTrue(result.isError());
+        assertEquals("Usage: kv_get <namespaceId> <key>", result.error());
+        assertThrows(IllegalArgumentException.class, () -> dispatcher.execute("no_such_tool", new String[0]));
+    }
+
+    @Test void callsQueuedBeforeTheAnalyticsStoreLoadsAreReported() {
+        long since = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            ToolDispatcher.capture(() -> ToolRunner.execute("d1_query", new String[] { "db", "select 1" }));
+        }
+        String until = Long.toString(System.currentTimeMillis() + 1);
+        String report = ToolDispatcher.capture(() -> ToolRunner.execute("analytics_get",
+                new String[] { "local", Long.toString(since), until })).output();
+        int count = Integer.parseInt(report.replaceAll("(?s).*?\n  d1_query: (\\d+) call.*", "$1"));
+        assertTrue(count >= 3, report);
+    }
+
+    @Test void requiredArgumentsComeFromTheUsage() {
+        assertEquals(0, ToolDispatcher.requiredArguments("get_kvs"));
+        assertEquals(2, ToolDispatcher.requiredArguments("kv_get <namespaceId> <key>"));
+        assertEquals(1, ToolDispatcher.requiredArguments("sequential_thinking <input> [steps] [context]"));
+    }
+}
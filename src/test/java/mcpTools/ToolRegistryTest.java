@@ -0,0 +1,39 @@
+package mcpTools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ToolRegistryTest {
+
+    @Test void everyDefinitionCreatesAMatchingTool() {
+        for (ToolRegistry.Definition definition : ToolRegistry.Definition.values()) {
+            ToolRegistry.Tool tool = ToolRegistry.create(definition);
+            assertEquals(definition.toolName(), tool.getName());
+            assertEquals(definition.usage(), tool.getUsage());
+            assertSame(definition, ToolRegistry.Definition.forName(definition.toolName()));
+            assertTrue(definition.usage().startsWith(definition.toolName()));
+        }
+        assertNull(ToolRegistry.create("no_such_tool"));
+    }
+
+    @Test void runnerIndexesExactlyTheDefinitions() {
+        ToolRunnerOOP runner = new ToolRunnerOOP();
+        Set<String> defined = Arrays.stream(ToolRegistry.Definition.values())
+                .map(ToolRegistry.Definition::toolName)
+                .collect(Collectors.toSet());
+        assertEquals(defined, runner.getToolNames());
+        runner.getToolUsages().forEach((name, usage) ->
+                assertEquals(ToolRegistry.Definition.forName(name).usage(), usage));
+    }
+
+    @Test void lazyToolReportsItsDefinitionBeforeCreatingTheTool() {
+        ToolRegistry.LazyTool tool = new ToolRegistry.LazyTool(ToolRegistry.Definition.R2_LIST_BUCKETS);
+        assertEquals("r2_list_buckets", tool.getName());
+        assertEquals("r2_list_buckets", tool.getUsage());
+    }
+}
@@ -0,0 +1,187 @@
+package mcpTools;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ToolResultCacheTest {
+
+    private static final String GET_USAGE = "kv_get <namespaceId> <key>";
+    private static final String PUT_USAGE = "kv_put <namespaceId> <key> <value> [expirationTtl]";
+    private static final ToolResultCache.Policy GET = ToolResultCache.Policy.reads(60, "kv:{namespaceId}:{key}");
+    private static final ToolResultCache.Policy PUT = ToolResultCache.Policy.writesExpiring("expirationTtl",
+            "kv:{namespaceId}:{key}", "kv-keys:{namespaceId}");
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger reads = new AtomicInteger();
+
+    private String get(ToolResultCache cache, String... args) {
+        return ToolDispatcher.capture(() -> cache.run("kv_get", GET_USAGE, GET, args,
+                () -> System.out.print("read " + reads.incrementAndGet()))).output();
+    }
+
+    private void put(ToolResultCache cache, String... args) {
+        cache.run("kv_put", PUT_USAGE, PUT, args, () -> { });
+    }
+
+    @Test void readsAreServedFromTheCacheUntilTheirTtl() {
+        ToolResultCache cache = new ToolResultCache(16, clock::get);
+        assertEquals("read 1", get(cache, "ns", "a"));
+        assertEquals("read 1", get(cache, "ns", "a"));
+        assertEquals("read 2", get(cache, "ns", "b"));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        assertEquals("read 3", get(cache, "ns", "a"));
+
+        ToolResultCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(3, stats.misses());
+        assertEquals(1, stats.expirations());
+    }
+
+    @Test void writesInvalidateExactlyTheirTags() {
+        ToolResultCache cache = new ToolResultCache(16, clock::get);
+        get(cache, "ns", "a");
+        get(cache, "ns", "b");
+        get(cache, "other", "a");
+
+        put(cache, "ns", "a", "v");
+        assertEquals("read 4", get(cache, "ns", "a"));
+        assertEquals("read 2", get(cache, "ns", "b"));
+        assertEquals("read 3", get(cache, "other", "a"));
+        assertEquals(1, cache.stats().invalidations());
+    }
+
+    @Test void expiringWritesCapTheTtlOfLaterReads() {
+        ToolResultCache cache = new ToolResultCache(16, clock::get);
+        put(cache, "ns", "a", "v", "5");
+        put(cache, "ns", "a", "v");
+        assertEquals("read 1", get(cache, "ns", "a"));
+        assertEquals("read 1", get(cache, "ns", "a"));
+
+        // The key expires after five seconds, well within the 60 second TTL
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(6));
+        assertEquals("read 2", get(cache, "ns", "a"));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        assertEquals("read 2", get(cache, "ns", "a"));
+    }
+
+    @Test void failedReadsAreNotCached() {
+        ToolResultCache cache = new ToolResultCache(16, clock::get);
+        String[] args = { "ns", "missing" };
+        for (int i = 0; i < 2; i++) {
+            ToolDispatcher.Result result = ToolDispatcher.capture(() -> cache.run("kv_get", GET_USAGE, GET, args,
+                    () -> System.err.print("Key 'missing' not found")));
+            assertEquals("Key 'missing' not found", result.error());
+        }
+        assertThrows(IllegalStateException.class, () -> cache.run("kv_get", GET_USAGE, GET, args, () -> {
+            throw new IllegalStateException("backend down");
+        }));
+        assertEquals(0, cache.stats().size());
+        assertEquals(3, cache.stats().misses());
+    }
+
+    @Test void readRacingAWriteIsNotCached() {
+        ToolResultCache cache = new ToolResultCache(16, clock::get);
+        String[] args = { "ns", "a" };
+        ToolDispatcher.capture(() -> cache.run("kv_get", GET_USAGE, GET, args, () -> {
+            System.out.print("old value");
+            put(cache, "ns", "a", "new value");
+        }));
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test void leastRecentlyUsedEntriesAreEvicted() {
+        ToolResultCache cache = new ToolResultCache(2, clock::get);
+        get(cache, "ns", "a");
+        get(cache, "ns", "b");
+        get(cache, "ns", "a");
+        get(cache, "ns", "c");
+
+        assertEquals(1, cache.stats().evictions());
+        assertEquals("read 1", get(cache, "ns", "a"));
+        assertEquals("read 4", get(cache, "ns", "b"));
+    }
+
+    @Test void sessionScopedEntriesStayInTheirSession() {
+        ToolResultCache cache = new ToolResultCache(16, clock::get);
+        ToolResultCache.Policy retrieve = ToolResultCache.Policy.reads(30, "memory:{namespace:default}:{key}")
+                .inSession();
+        String usage = "memory_retrieve <key> [namespace]";
+        McpSession first = new McpSession();
+        McpSession second = new McpSession();
+        AtomicInteger calls = new AtomicInteger();
+        Runnable call = () -> System.out.print("call " + calls.incrementAndGet());
+
+        String[] key = { "k" };
+        assertEquals("call 1", first.call(() -> ToolDispatcher.capture(
+                () -> cache.run("memory_retrieve", usage, retrieve, key, call)).output()));
+        assertEquals("call 2", second.call(() -> ToolDispatcher.capture(
+                () -> cache.run("memory_retrieve", usage, retrieve, key, call)).output()));
+        assertEquals("call 1", first.call(() -> ToolDispatcher.capture(
+                () -> cache.run("memory_retrieve", usage, retrieve, key, call)).output()));
+    }
+
+    @Test void tagsResolveParametersByName() {
+        List<String> parameters = ToolResultCache.parameterNames("memory_store <key> <value> [namespace] [ttl]");
+        assertEquals(List.of("key", "value", "namespace", "ttl"), parameters);
+        assertArrayEquals(new String[] { "memory:default:k", "memory:ns:k" }, new String[] {
+                ToolResultCache.resolveTags(List.of("memory:{namespace:default}:{key}"), parameters,
+                        new String[] { "k", "v" }, false)[0],
+                ToolResultCache.resolveTags(List.of("memory:{namespace:default}:{key}"), parameters,
+                        new String[] { "k", "v", "ns" }, false)[0] });
+        assertNotEquals(ToolResultCache.canonicalize(new String[] { "a,b" }),
+                ToolResultCache.canonicalize(new String[] { "a", "b" }));
+    }
+
+    @Test void mcpToolResultsAreCachedUnderTheRunnerTags() throws Exception {
+        ToolResultCache cache = new ToolResultCache(16, clock::get);
+        KVGetTool tool = new KVGetTool();
+        String namespace = "mcp-cache-test-" + System.nanoTime();
+        Map<String, Object> params = Map.of("namespaceId", namespace, "key", "k");
+        String[] missing = new String[1];
+        ToolDispatcher.capture(() -> {
+            try {
+                missing[0] = tool.executeCached(params, cache).getMessage();
+                KVBackends.shared().put(namespace, "k", "one".getBytes(StandardCharsets.UTF_8), 0);
+                assertEquals("one", tool.executeCached(params, cache).getData());
+                KVBackends.shared().put(namespace, "k", "two".getBytes(StandardCharsets.UTF_8), 0);
+                assertEquals("one", tool.executeCached(params, cache).getData());
+
+                put(cache, namespace, "k", "two");
+                assertEquals("two", tool.executeCached(params, cache).getData());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(missing[0].contains("not found"), missing[0]);
+        assertEquals(1, cache.stats().hits());
+        assertEquals(3, cache.stats().misses());
+    }
+
+    @Test void writesThroughEitherRunnerInvalidateTheSharedCache() {
+        ToolDispatcher dispatcher = new ToolDispatcher();
+        String namespace = "cache-test-" + System.nanoTime();
+        dispatcher.execute("kv_put", new String[] { namespace, "k", "one" });
+        String first = dispatcher.execute("kv_get", new String[] { namespace, "k" }).output();
+        long hits = ToolResultCache.shared().stats().hits();
+        assertEquals(first, dispatcher.execute("kv_get", new String[] { namespace, "k" }).output());
+        assertEquals(hits + 1, ToolResultCache.shared().stats().hits());
+
+        // kv_get is served by ToolRunnerOOP; this write goes through the function registry
+        ToolDispatcher.capture(() -> ToolRunner.execute("kv_put", new String[] { namespace, "k", "two" }));
+        assertTrue(dispatcher.execute("kv_get", new String[] { namespace, "k" }).output().contains("two"));
+
+        dispatcher.execute("memory_store", new String[] { "k", "first" });
+        assertTrue(dispatcher.execute("memory_retrieve", new String[] { "k", "default" }).output().contains("first"));
+        dispatcher.execute("memory_store", new String[] { "k", "second" });
+        assertTrue(dispatcher.execute("memory_retrieve", new String[] { "k", "default" }).output().contains("second"));
+    }
+}
@@ -0,0 +1,92 @@
+package mcpTools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TracerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private List<JsonNode> export(Tracer tracer) throws Exception {
+        StringWriter out = new StringWriter();
+        tracer.export(out);
+        List<JsonNode> spans = new ArrayList<>();
+        if (!out.toString().isEmpty()) {
+            mapper.readTree(out.toString()).path("resourceSpans").get(0).path("scopeSpans").get(0).path("spans")
+                    .forEach(spans::add);
+        }
+        return spans;
+    }
+
+    @Test void childSpansJoinTheTraceOfTheirParent() throws Exception {
+        Tracer tracer = new Tracer(true, 1, 16);
+        try (Tracer.Span root = tracer.startTrace("tools/call", System.nanoTime())) {
+            root.continueTrace("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01");
+            long parsed = System.nanoTime();
+            tracer.recordSpan("parse", parsed - 1_000, parsed);
+            try (Tracer.Span child = tracer.startSpan("ToolDispatcher.execute")) {
+                child.setAttribute("mcp.tool", "kv_get").setError("Key not found");
+            }
+        }
+
+        List<JsonNode> spans = export(tracer);
+        assertEquals(List.of("parse", "ToolDispatcher.execute", "tools/call"),
+                spans.stream().map(span -> span.path("name").asText()).toList());
+        JsonNode root = spans.get(2);
+        assertEquals("b7ad6b7169203331", root.path("parentSpanId").asText());
+        for (JsonNode span : spans) {
+            assertEquals("0af7651916cd43dd8448eb211c80319c", span.path("traceId").asText());
+        }
+        assertEquals(root.path("spanId").asText(), spans.get(0).path("parentSpanId").asText());
+        assertEquals(0, spans.get(0).path("attributes").size());
+        JsonNode child = spans.get(1);
+        assertEquals("kv_get", child.path("attributes").get(0).path("value").path("stringValue").asText());
+        assertEquals(2, child.path("status").path("code").asInt());
+        assertTrue(export(tracer).isEmpty());
+    }
+
+    @Test void unsampledTracesRecordNothing() throws Exception {
+        Tracer tracer = new Tracer(true, 0, 16);
+        try (Tracer.Span root = tracer.startTrace("tools/call", System.nanoTime())) {
+            assertFalse(root.isSampled());
+            assertSame(Tracer.NOOP, tracer.startSpan("child"));
+            tracer.recordSpan("parse", 0, 1);
+        }
+        assertTrue(export(tracer).isEmpty());
+    }
+
+    @Test void drainStopsAtSlotsThatAreClaimedButNotWritten() {
+        Tracer.RingBuffer buffer = new Tracer.RingBuffer(8);
+        long pending = buffer.claim();
+        buffer.record(1, 1, 2, 0, 0, 1, false, "later", null, null, 0);
+
+        ArrayNode spans = mapper.createArrayNode();
+        assertEquals(0, buffer.drainTo(spans, 0));
+        assertEquals(0, buffer.dropped());
+
+        buffer.write(pending, 1, 1, 3, 0, 0, 1, false, "first", null, new String[] { "k", "v" }, 1);
+        assertEquals(2, buffer.drainTo(spans, 0));
+        assertEquals("first", spans.get(0).path("name").asText());
+        assertEquals("later", spans.get(1).path("name").asText());
+        assertEquals(0, buffer.dropped());
+    }
+
+    @Test void spansOverwrittenBeforeExportAreCountedAsDropped() throws Exception {
+        Tracer tracer = new Tracer(true, 1, 4);
+        for (int i = 0; i < 10; i++) {
+            tracer.startTrace("span-" + i, System.nanoTime()).close();
+        }
+        List<JsonNode> spans = export(tracer);
+        assertEquals(4, spans.size());
+        assertEquals("span-9", spans.get(3).path("name").asText());
+        assertEquals(6, tracer.droppedSpans());
+    }
+}
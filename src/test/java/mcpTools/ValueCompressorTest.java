@@ -0,0 +1,77 @@
+package mcpTools;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueCompressorTest {
+
+    private final Queue<Runnable> trainings = new ArrayDeque<>();
+
+    private static byte[] document(String kind, int i) {
+        return ("{\"kind\":\"" + kind + "\",\"id\":" + i + ",\"owner\":\"team-" + kind + "\",\"status\":\"active\","
+                + "\"tags\":[\"" + kind + "-alpha\",\"" + kind + "-beta\"],\"note\":\"document number " + i + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test void trainingRunsOffTheWritingThread() throws Exception {
+        ValueCompressor compressor = new ValueCompressor(null, namespace -> true, trainings::add, 50_000);
+        List<byte[]> stored = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            stored.add(compressor.encode("ns", document("a", i)));
+        }
+        // The trainer has not run yet, so writes carried on without a dictionary
+        assertEquals(1, trainings.size());
+        assertEquals(0, compressor.stats("ns").dictionaryId());
+
+        trainings.poll().run();
+        assertNotEquals(0, compressor.stats("ns").dictionaryId());
+        byte[] withDictionary = compressor.encode("ns", document("a", 1_000));
+        assertTrue(withDictionary.length < stored.get(0).length);
+        for (int i = 0; i < stored.size(); i++) {
+            assertArrayEquals(document("a", i), compressor.decode("ns", stored.get(i)));
+        }
+        assertArrayEquals(document("a", 1_000), compressor.decode("ns", withDictionary));
+    }
+
+    @Test void retrainingSamplesOnlyValuesWrittenSinceTheLastTraining() {
+        ValueCompressor compressor = new ValueCompressor(null, namespace -> true, trainings::add, 5_000);
+        for (int i = 0; i < 64; i++) {
+            compressor.encode("ns", document("a", i));
+        }
+        trainings.poll().run();
+        for (int i = 0; i < 5_000; i++) {
+            compressor.encode("ns", document("a", i));
+        }
+        assertEquals(1, trainings.size());
+        trainings.poll().run();
+
+        // The documents changed shape after the last training
+        for (int i = 0; i < 4_000; i++) {
+            compressor.encode("ns", document("b", i));
+        }
+        List<byte[]> samples = compressor.samples("ns");
+        assertEquals(512, samples.size());
+        for (byte[] sample : samples) {
+            assertTrue(new String(sample, StandardCharsets.UTF_8).contains("\"kind\":\"b\""));
+        }
+    }
+
+    @Test void rawValuesStartingWithTheMarkerAreEscaped() throws Exception {
+        ValueCompressor compressor = new ValueCompressor(null, namespace -> false, trainings::add, 50_000);
+        byte[] binary = { (byte) 0xFF, 0, 1, 2 };
+        byte[] stored = compressor.encode("ns", binary);
+        assertEquals(binary.length + 2, stored.length);
+        assertArrayEquals(binary, compressor.decode("ns", stored));
+
+        byte[] text = "plain text".getBytes(StandardCharsets.UTF_8);
+        assertSame(text, compressor.encode("ns", text));
+        assertSame(text, compressor.decode("ns", text));
+    }
+}
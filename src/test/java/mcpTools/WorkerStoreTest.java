@@ -0,0 +1,128 @@
+package mcpTools;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkerStoreTest {
+
+    @Test void identicalScriptsShareOneBlob() {
+        WorkerStore store = new WorkerStore();
+        String script = "var greeting = 'hello';\n".repeat(32) + "greeting + input";
+        store.put("a", script, null, null, null);
+        store.put("b", script, null, null, null);
+        store.put("c", script + " ", null, null, null);
+
+        WorkerStore.Stats stats = store.stats();
+        assertEquals(3, stats.workers());
+        assertEquals(2, stats.blobs());
+        assertTrue(stats.storedBytes() < stats.rawBytes());
+        assertEquals(script, store.getScript("b"));
+
+        assertTrue(store.delete("a"));
+        assertEquals(2, store.stats().blobs());
+        assertTrue(store.delete("b"));
+        assertEquals(1, store.stats().blobs());
+        assertFalse(store.delete("b"));
+    }
+
+    @Test void invocationsReuseTheWarmEngine() throws Exception {
+        WorkerStore store = new WorkerStore("javascript", Long.MAX_VALUE);
+        store.put("greet", "'hello ' + input", null, null, null);
+
+        assertEquals("hello world", store.invoke("greet", "world"));
+        assertEquals("hello again", store.invoke("greet", "again"));
+
+        WorkerStore.Stats stats = store.stats();
+        assertEquals(1, stats.compilations());
+        assertEquals(1, stats.warmHits());
+        assertEquals(1, stats.warmScripts());
+        assertTrue(stats.warmBytes() > 0);
+    }
+
+    @Test void warmEnginesStayWithinTheBudget() throws Exception {
+        // The first engine also pays for loading the engine classes, so the
+        // size of one engine is taken from the second
+        WorkerStore probe = new WorkerStore("javascript", Long.MAX_VALUE);
+        probe.put("first", "input + 1", null, null, null);
+        probe.put("second", "input + 2", null, null, null);
+        probe.invoke("first", "x");
+        long firstBytes = probe.stats().warmBytes();
+        probe.invoke("second", "x");
+        long engineBytes = probe.stats().warmBytes() - firstBytes;
+
+        // Room for about two engines, while five workers each want one
+        long budget = engineBytes * 2 + engineBytes / 2;
+        WorkerStore store = new WorkerStore("javascript", budget);
+        for (int i = 0; i < 5; i++) {
+            store.put("w" + i, "input + " + i, null, null, null);
+        }
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 5; i++) {
+                assertEquals("x" + i, store.invoke("w" + i, "x"));
+                assertTrue(store.stats().warmBytes() <= budget, "warm engines exceed the budget");
+            }
+        }
+        assertTrue(store.stats().evictions() > 0);
+
+        WorkerStore tiny = new WorkerStore("javascript", 1);
+        tiny.put("w", "input", null, null, null);
+        tiny.invoke("w", "x");
+        assertEquals(0, tiny.stats().warmBytes());
+        assertEquals(0, tiny.stats().warmScripts());
+    }
+
+    @Test void missingEngineIsReportedWithoutRescanning() {
+        AtomicInteger lookups = new AtomicInteger();
+        WorkerStore store = new WorkerStore("none", () -> {
+            lookups.incrementAndGet();
+            return null;
+        }, Long.MAX_VALUE);
+        store.put("w", "input", null, null, null);
+
+        IllegalStateException first = assertThrows(IllegalStateException.class, () -> store.invoke("w", "x"));
+        assertEquals("No 'none' script engine on the classpath", first.getMessage());
+        assertThrows(IllegalStateException.class, () -> store.invoke("w", "x"));
+        assertEquals(1, lookups.get());
+        assertEquals(0, store.stats().compilations());
+    }
+
+    @Test void workersOutliveTheStoreThatDeployedThem(@TempDir Path dir) throws Exception {
+        String script = "var greeting = 'hello';\n".repeat(32) + "greeting + input";
+        WorkerStore first = WorkerStore.open(dir.toString());
+        first.put("a", script, "[]", "2024-01-01", null);
+        first.put("b", script, null, null, null);
+
+        WorkerStore second = WorkerStore.open(dir.toString());
+        assertEquals(script, second.getScript("a"));
+        assertEquals("2024-01-01", second.get("a").compatibilityDate());
+        assertNull(second.get("b").bindings());
+        assertEquals(2, second.stats().workers());
+        assertEquals(1, second.stats().blobs());
+
+        // The blob stays while a worker another store deployed still refers to it
+        second.put("c", script, null, null, null);
+        assertTrue(first.delete("a"));
+        assertTrue(first.delete("b"));
+        assertEquals(script, WorkerStore.open(dir.toString()).getScript("c"));
+        assertTrue(second.delete("a"));
+        assertTrue(second.delete("b"));
+        assertTrue(second.delete("c"));
+        try (Stream<Path> blobs = Files.list(dir.resolve("blobs"))) {
+            assertEquals(0, blobs.count());
+        }
+        assertEquals(0, WorkerStore.open(dir.toString()).stats().workers());
+    }
+
+    @Test void unknownWorkerIsRejected() {
+        WorkerStore store = new WorkerStore();
+        assertThrows(IllegalArgumentException.class, () -> store.invoke("missing", ""));
+        assertNull(store.getScript("missing"));
+    }
+}